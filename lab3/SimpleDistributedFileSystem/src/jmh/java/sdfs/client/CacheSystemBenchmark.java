@@ -0,0 +1,165 @@
+package sdfs.client;
+
+import org.openjdk.jmh.annotations.*;
+import sdfs.datanode.DataNode;
+import sdfs.entity.FileInfo;
+import sdfs.filetree.BlockInfo;
+import sdfs.filetree.BlockList;
+import sdfs.filetree.DataNodeTable;
+import sdfs.filetree.LocatedBlock;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the block cache of a channel, with data nodes that answer at once
+ * so that only the cost of looking blocks up and evicting them is measured
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CacheSystemBenchmark {
+    private static final int BLOCK_AMOUNT = 4096;
+    // how many accesses are generated up front and then repeated
+    private static final int ACCESS_AMOUNT = 1 << 16;
+
+    public enum Pattern {
+        // one block after another through the whole file
+        SEQUENTIAL,
+        // a few blocks are accessed most of the time, with zipfian popularity
+        ZIPFIAN,
+        // a sequential scan interleaved with accesses to a hot set half the size of the cache
+        SCAN_HOT
+    }
+
+    @Param({"16", "256"})
+    public int cacheSize;
+
+    @Param({"SEQUENTIAL", "ZIPFIAN", "SCAN_HOT"})
+    public Pattern pattern;
+
+    private CacheSystem cacheSystem;
+    private int[] accesses;
+    private int next;
+    // every block read from the data nodes has this data
+    private final byte[] blockData = new byte[DataNode.BLOCK_SIZE];
+    private final byte[] newData = new byte[DataNode.BLOCK_SIZE];
+
+    /**
+     * reads every block at once from memory
+     */
+    private class InstantReader extends HedgedReader {
+        @Override
+        public byte[] read(UUID token, BlockInfo blockInfo, int blockSize) {
+            return blockData;
+        }
+    }
+
+    /**
+     * drops every write instead of sending it to the data nodes
+     */
+    private class InstantCacheSystem extends CacheSystem {
+        InstantCacheSystem(FileInfo fileInfo) {
+            super(UUID.randomUUID(), fileInfo, cacheSize, new InstantReader(), new ClientMetrics());
+        }
+
+        @Override
+        void writeToDataNode(LocatedBlock first, long position, byte[] data, boolean fresh, List<LocatedBlock> downstream) {
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DataNodeTable dataNodeTable = new DataNodeTable();
+        int dataNodeIndex = dataNodeTable.indexOf(InetAddress.getLoopbackAddress(), 0);
+        BlockList blockList = new BlockList(1);
+        for (int i = 0; i < BLOCK_AMOUNT; i++) {
+            blockList.add(i, new int[]{dataNodeIndex});
+        }
+        FileInfo fileInfo = new FileInfo(blockList, dataNodeTable, (long) BLOCK_AMOUNT * DataNode.BLOCK_SIZE);
+        cacheSystem = new InstantCacheSystem(fileInfo);
+
+        Random random = new Random(42);
+        accesses = new int[ACCESS_AMOUNT];
+        switch (pattern) {
+            case SEQUENTIAL:
+                for (int i = 0; i < ACCESS_AMOUNT; i++) {
+                    accesses[i] = i % BLOCK_AMOUNT;
+                }
+                break;
+            case ZIPFIAN:
+                double[] cumulative = zipfianCumulative(BLOCK_AMOUNT, 0.99);
+                for (int i = 0; i < ACCESS_AMOUNT; i++) {
+                    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+                    accesses[i] = index >= 0 ? index : Math.min(-index - 1, BLOCK_AMOUNT - 1);
+                }
+                break;
+            case SCAN_HOT:
+                int hotAmount = Math.max(1, cacheSize / 2);
+                int scan = hotAmount;
+                for (int i = 0; i < ACCESS_AMOUNT; i++) {
+                    if (i % 2 == 0) {
+                        accesses[i] = random.nextInt(hotAmount);
+                    } else {
+                        accesses[i] = scan;
+                        scan = scan + 1 < BLOCK_AMOUNT ? scan + 1 : hotAmount;
+                    }
+                }
+                break;
+        }
+        next = 0;
+    }
+
+    /**
+     * @return the probability of accessing any of the first i+1 blocks at index i
+     */
+    private static double[] zipfianCumulative(int amount, double exponent) {
+        double[] cumulative = new double[amount];
+        double sum = 0;
+        for (int i = 0; i < amount; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < amount; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private int nextBlock() {
+        int block = accesses[next];
+        next = (next + 1) & (ACCESS_AMOUNT - 1);
+        return block;
+    }
+
+    @Benchmark
+    public byte[] read() throws IOException {
+        return cacheSystem.read(nextBlock());
+    }
+
+    /**
+     * a block written to is dirty, so evicting it later writes it back
+     */
+    @Benchmark
+    public void write() throws IOException {
+        cacheSystem.write(nextBlock(), newData, 0);
+    }
+
+    /**
+     * write a block and evict it at once, which writes it back
+     */
+    @Benchmark
+    public void evict() throws IOException {
+        int block = nextBlock();
+        cacheSystem.write(block, newData, 0);
+        cacheSystem.removeCachedBlock(block);
+    }
+}
@@ -0,0 +1,118 @@
+package sdfs.datanode;
+
+import org.openjdk.jmh.annotations.*;
+import sdfs.entity.AccessTokenPermission;
+import sdfs.entity.BlockReport;
+import sdfs.entity.DataNodeInfo;
+import sdfs.filetree.LocatedBlock;
+import sdfs.protocol.INameNodeDataNodeProtocol;
+import sdfs.protocol.SDFSConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the storage path of a data node, reading and writing block files in a temporary directory
+ * the name node is stubbed to allow every block, so only the disk work is measured
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataNodeBenchmark {
+    private static final int BLOCK_AMOUNT = 64;
+
+    // where in the block to read or write
+    @Param({"0", "16384"})
+    public int offset;
+
+    // how much to read or write
+    @Param({"512", "4096", "32768"})
+    public int size;
+
+    private File dataNodeDir;
+    private DataNode dataNode;
+    private final UUID token = UUID.randomUUID();
+    private byte[] buffer;
+
+    /**
+     * a name node that allows every block to be read and written
+     */
+    private static class AllowingNameNode implements INameNodeDataNodeProtocol {
+        private final AccessTokenPermission accessTokenPermission;
+
+        AllowingNameNode(Set<Integer> blocks) {
+            accessTokenPermission = new AccessTokenPermission(true, blocks, DataNode.BLOCK_SIZE);
+        }
+
+        @Override
+        public AccessTokenPermission getAccessTokenPermission(UUID token, InetAddress dataNodeAddress, int dataNodePort) {
+            return accessTokenPermission;
+        }
+
+        @Override
+        public void sendHeartbeat(DataNodeInfo dataNodeInfo) {
+        }
+
+        @Override
+        public List<Integer> blockReport(BlockReport blockReport) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void dropReplica(UUID token, LocatedBlock replica) {
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataNodeDir = Files.createTempDirectory("sdfs-datanode-benchmark").toFile();
+        Set<Integer> blocks = new HashSet<>();
+        for (int i = 0; i < BLOCK_AMOUNT; i++) {
+            blocks.add(i);
+        }
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLoopbackAddress(), 0, InetAddress.getLoopbackAddress(), 0);
+        dataNode = new DataNode(configuration, dataNodeDir.getAbsolutePath(), new AllowingNameNode(blocks));
+
+        // fill every block, so reads find whole blocks
+        byte[] block = new byte[DataNode.BLOCK_SIZE];
+        ThreadLocalRandom.current().nextBytes(block);
+        for (int i = 0; i < BLOCK_AMOUNT; i++) {
+            dataNode.write(token, i, 0, block);
+        }
+        buffer = new byte[size];
+        ThreadLocalRandom.current().nextBytes(buffer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] blockFiles = dataNodeDir.listFiles();
+        if (blockFiles != null) {
+            for (File blockFile : blockFiles) {
+                blockFile.delete();
+            }
+        }
+        dataNodeDir.delete();
+    }
+
+    @Benchmark
+    public byte[] read() {
+        return dataNode.read(token, ThreadLocalRandom.current().nextInt(BLOCK_AMOUNT), offset, size);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        dataNode.write(token, ThreadLocalRandom.current().nextInt(BLOCK_AMOUNT), offset, buffer);
+    }
+}
@@ -0,0 +1,175 @@
+package sdfs.namenode;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import sdfs.datanode.DataNode;
+import sdfs.entity.SDFSFileChannelData;
+import sdfs.protocol.SDFSConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * metadata operations of a name node driven in process, without sockets in between
+ * the name node logs to a temporary directory that is deleted after the trial
+ * run with ./gradlew jmh, the thread count is chosen with -Pjmh.args="-t 4"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NameNodeBenchmark {
+    // how many files the namespace holds before measuring
+    @Param({"1000", "100000"})
+    public int namespaceSize;
+
+    // how many files each directory holds
+    @Param({"16", "1024"})
+    public int fanOut;
+
+    private File nameNodeDir;
+    private NameNode nameNode;
+    private SDFSConfiguration configuration;
+    private int dirAmount;
+    // to give every created file and directory a new name
+    private final AtomicLong nameCounter = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        nameNodeDir = Files.createTempDirectory("sdfs-namenode-benchmark").toFile();
+        System.setProperty("sdfs.namenode.dir", nameNodeDir.getAbsolutePath());
+        configuration = new SDFSConfiguration(InetAddress.getLoopbackAddress(), 0, InetAddress.getLoopbackAddress(), 0);
+        // check points only when the log grows too much, not by the timer
+        nameNode = new NameNode(configuration, 3600);
+
+        dirAmount = (namespaceSize + fanOut - 1) / fanOut;
+        for (int i = 0; i < dirAmount; i++) {
+            nameNode.mkdir(dirName(i));
+        }
+        for (int i = 0; i < namespaceSize; i++) {
+            SDFSFileChannelData data = nameNode.create(fileName(i / fanOut, i % fanOut));
+            nameNode.addBlocks(data.getToken(), 1);
+            nameNode.closeReadwriteFile(data.getToken(), DataNode.BLOCK_SIZE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        delete(nameNodeDir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String dirName(int dir) {
+        return "d"+dir;
+    }
+
+    private String fileName(int dir, int file) {
+        return dirName(dir)+"/f"+file;
+    }
+
+    private String randomExistingFile() {
+        int file = ThreadLocalRandom.current().nextInt(namespaceSize);
+        return fileName(file / fanOut, file % fanOut);
+    }
+
+    private String newName() {
+        int dir = ThreadLocalRandom.current().nextInt(dirAmount);
+        return dirName(dir)+"/n"+nameCounter.incrementAndGet();
+    }
+
+    /**
+     * a file of each thread opened for writing, kept open through an iteration
+     */
+    @State(Scope.Thread)
+    public static class WritingFile {
+        UUID token;
+        long blockAmount;
+
+        @Setup(Level.Iteration)
+        public void open(NameNodeBenchmark benchmark) throws IOException {
+            token = benchmark.nameNode.create(benchmark.newName()).getToken();
+            blockAmount = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void close(NameNodeBenchmark benchmark) throws IOException {
+            benchmark.nameNode.closeReadwriteFile(token, blockAmount * DataNode.BLOCK_SIZE);
+        }
+    }
+
+    /**
+     * a file of each thread opened read only, kept open through the trial
+     */
+    @State(Scope.Thread)
+    public static class ReadingFile {
+        UUID token;
+
+        @Setup(Level.Trial)
+        public void open(NameNodeBenchmark benchmark) throws IOException {
+            token = benchmark.nameNode.openReadonly(benchmark.randomExistingFile()).getToken();
+        }
+
+        @TearDown(Level.Trial)
+        public void close(NameNodeBenchmark benchmark) throws IOException {
+            benchmark.nameNode.closeReadonlyFile(token);
+        }
+    }
+
+    @Benchmark
+    public void create() throws IOException {
+        UUID token = nameNode.create(newName()).getToken();
+        nameNode.closeReadwriteFile(token, 0);
+    }
+
+    @Benchmark
+    public void mkdir() throws IOException {
+        nameNode.mkdir(newName());
+    }
+
+    @Benchmark
+    public void openReadonly() throws IOException {
+        UUID token = nameNode.openReadonly(randomExistingFile()).getToken();
+        nameNode.closeReadonlyFile(token);
+    }
+
+    @Benchmark
+    public void openReadwrite() throws IOException {
+        UUID token;
+        try {
+            token = nameNode.openReadwrite(randomExistingFile()).getToken();
+        } catch (OverlappingFileLockException e) {
+            // another thread is writing the same file
+            return;
+        }
+        nameNode.closeReadwriteFile(token, DataNode.BLOCK_SIZE);
+    }
+
+    @Benchmark
+    public Object addBlocks(WritingFile writingFile) {
+        writingFile.blockAmount++;
+        return nameNode.addBlocks(writingFile.token, 1);
+    }
+
+    @Benchmark
+    public void getAccessTokenPermission(ReadingFile readingFile, Blackhole blackhole) {
+        blackhole.consume(nameNode.getAccessTokenPermission(readingFile.token, configuration.getDataNodeAddress(), configuration.getDataNodePort()));
+    }
+}
@@ -1,11 +1,16 @@
 package sdfs.client;
 
-import sdfs.datanode.DataNode;
 import sdfs.entity.FileInfo;
 import sdfs.exception.IllegalAccessTokenException;
 import sdfs.filetree.BlockInfo;
 import sdfs.filetree.LocatedBlock;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public class CacheSystem {
@@ -14,22 +19,41 @@ public class CacheSystem {
     private int cacheSize;
     private CachedBlock[] cachedBlockList;
     private int pointer;
+    private HedgedReader hedgedReader;
+    private ClientMetrics metrics;
+    // the indexes of the blocks given to the file since it was opened that have not been written to the data nodes yet
+    // a data node may still hold a stale block file of the same id, so such a block is never read from the data nodes
+    // and its first write starts it over
+    private Set<Integer> freshBlocks = new HashSet<>();
 
-    CacheSystem(UUID token, FileInfo fileInfo, int cacheSize) {
+    CacheSystem(UUID token, FileInfo fileInfo, int cacheSize, HedgedReader hedgedReader, ClientMetrics metrics) {
         this.token = token;
+        this.hedgedReader = hedgedReader;
+        this.metrics = metrics;
         this.fileInfo = fileInfo;
         this.cacheSize = cacheSize;
         this.cachedBlockList = new CachedBlock[cacheSize];
         this.pointer = 0;
     }
 
-    void flush() {
+    void flush() throws IOException {
         for (CachedBlock cachedBlock :
                 cachedBlockList) {
             if (cachedBlock != null && cachedBlock.dirty) {
                 writeToServer(cachedBlock);
             }
         }
+        // a hole left by writing past it has never been written, the data nodes drop a stale block file of its id for it
+        for (int blockNumber : new ArrayList<>(freshBlocks)) {
+            writeToServer(new CachedBlock(fileInfo.getBlockInfo(blockNumber), blockNumber, new byte[0]));
+        }
+    }
+
+    /**
+     * @param blockNumber a block given to the file since it was opened, as a hole, nothing has been written to it
+     */
+    void addHole(int blockNumber) {
+        freshBlocks.add(blockNumber);
     }
 
     boolean isDirty(int blockNumber) {
@@ -42,60 +66,121 @@ public class CacheSystem {
         return false;
     }
 
-    void removeCachedBlock(int blockNumber) {
+    /**
+     * write the block back if it is dirty and drop it from the cache
+     * a hole is forgotten, the block is only removed from the cache like this when it is written or removed from the file
+     */
+    void removeCachedBlock(int blockNumber) throws IOException {
         for (int i = 0; i < cachedBlockList.length; i++) {
             CachedBlock cachedBlock = cachedBlockList[i];
             if (cachedBlock != null && blockNumber == cachedBlock.blockIndex) {
                 remove(i);
             }
         }
+        freshBlocks.remove(blockNumber);
     }
 
-    byte[] read(int blockNumber) {
-        // search in cache
-        for (CachedBlock cachedBlock :
-                cachedBlockList) {
-            if (cachedBlock != null && blockNumber == cachedBlock.blockIndex) {
-                // set used
-                touchBlock(cachedBlock, false);
-                return cachedBlock.data;
-            }
+    byte[] read(int blockNumber) throws IOException {
+        CachedBlock cachedBlock = findCachedBlock(blockNumber);
+        if (cachedBlock.partial) {
+            // write the appended bytes back and read the whole block
+            removeCachedBlock(blockNumber);
+            cachedBlock = findCachedBlock(blockNumber);
         }
-        // not been cached, read from server
-        readFromServer(blockNumber);
-        // try again
-        return read(blockNumber);
+        // set used
+        touchBlock(cachedBlock, false);
+        return cachedBlock.data;
     }
 
-    void writeNew(int blockNumber, LocatedBlock locatedBlock, byte[] data) {
+    /**
+     * @param data  the data of the block up to its last written byte
+     * @param start the bytes of the new block before it are a hole, so they are not sent to the data nodes
+     */
+    void writeNew(int blockNumber, BlockInfo blockInfo, byte[] data, int start) throws IOException {
+        cache(blockNumber, blockInfo, data, start);
+        freshBlocks.add(blockNumber);
+    }
+
+    private void cache(int blockNumber, BlockInfo blockInfo, byte[] data, int start) throws IOException {
         for (CachedBlock cachedBlock :
                 cachedBlockList) {
             if (cachedBlock != null && blockNumber == cachedBlock.blockIndex) {
                 // set used
                 touchBlock(cachedBlock, true);
                 cachedBlock.data = data;
-                cachedBlock.locatedBlock = locatedBlock;
+                cachedBlock.blockInfo = blockInfo;
+                cachedBlock.dirtyStart = start;
+                cachedBlock.partial = false;
                 return;
             }
         }
         // not been cached, create a new cache
-        addToCache(locatedBlock, blockNumber, data, true);
+        addToCache(blockInfo, blockNumber, data, true).dirtyStart = start;
     }
 
-    void write(int blockNumber, byte[] data) {
+    /**
+     * @return the data of the block if it is cached in full, null otherwise, it is never read from the data nodes
+     */
+    byte[] peek(int blockNumber) {
         for (CachedBlock cachedBlock :
                 cachedBlockList) {
             if (cachedBlock != null && blockNumber == cachedBlock.blockIndex) {
-                // set used
-                touchBlock(cachedBlock, true);
-                cachedBlock.data = data;
-                return;
+                // the bytes of a partial block that has been written back are not needed any more
+                return cachedBlock.partial && !cachedBlock.dirty ? null : cachedBlock.data;
             }
         }
+        return null;
+    }
+
+    /**
+     * change a block of the file itself instead of a copy of it, which only a file opened to append to may do
+     * @param data    the data of the block up to its last written byte
+     * @param start   the first byte changed, only the bytes from it are sent to the data nodes
+     * @param partial whether the bytes before the start are not known, the block is read again before reading from it
+     */
+    void writeInPlace(int blockNumber, byte[] data, int start, boolean partial) throws IOException {
+        cache(blockNumber, fileInfo.getBlockInfo(blockNumber), data, start);
+        for (CachedBlock cachedBlock :
+                cachedBlockList) {
+            if (cachedBlock != null && blockNumber == cachedBlock.blockIndex) {
+                cachedBlock.partial = partial;
+            }
+        }
+    }
+
+    /**
+     * @param start the first byte changed
+     */
+    void write(int blockNumber, byte[] data, int start) throws IOException {
+        CachedBlock cachedBlock = findCachedBlock(blockNumber);
+        // set used
+        touchBlock(cachedBlock, true);
+        cachedBlock.data = data;
+        cachedBlock.dirtyStart = Math.min(cachedBlock.dirtyStart, start);
+    }
+
+    /**
+     * @return the cached block, read from server first if it has not been cached
+     */
+    private CachedBlock findCachedBlock(int blockNumber) throws IOException {
+        // search in cache
+        for (CachedBlock cachedBlock :
+                cachedBlockList) {
+            if (cachedBlock != null && blockNumber == cachedBlock.blockIndex) {
+                metrics.recordCacheHit();
+                return cachedBlock;
+            }
+        }
+        metrics.recordCacheMiss();
         // not been cached, read from server
         readFromServer(blockNumber);
-        // try again
-        write(blockNumber, data);
+        for (CachedBlock cachedBlock :
+                cachedBlockList) {
+            if (cachedBlock != null && blockNumber == cachedBlock.blockIndex) {
+                return cachedBlock;
+            }
+        }
+        throw new IllegalStateException("Block "+blockNumber+" is not cached after reading it");
     }
 
     private void touchBlock(CachedBlock cachedBlock, boolean changed) {
@@ -105,7 +190,7 @@ public class CacheSystem {
         }
     }
 
-    private void remove(int index) {
+    private void remove(int index) throws IOException {
         CachedBlock cachedBlock = cachedBlockList[index];
         if (cachedBlock.dirty) {
             writeToServer(cachedBlock);
@@ -117,14 +202,14 @@ public class CacheSystem {
         pointer = (pointer+1)%cacheSize;
     }
 
-    private void addToCache(LocatedBlock locatedBlock, int blockNumber, byte[] data, boolean dirty) {
-        CachedBlock cachedBlock = new CachedBlock(locatedBlock, blockNumber, data);
+    private CachedBlock addToCache(BlockInfo blockInfo, int blockNumber, byte[] data, boolean dirty) throws IOException {
+        CachedBlock cachedBlock = new CachedBlock(blockInfo, blockNumber, data);
         cachedBlock.dirty = dirty;
 
         for (int i = 0; i < cachedBlockList.length; i++) {
             if (cachedBlockList[i] == null) {
                 cachedBlockList[i] = cachedBlock;
-                return;
+                return cachedBlock;
             }
         }
 
@@ -136,36 +221,60 @@ public class CacheSystem {
         }
         next();
 
-        addToCache(locatedBlock, blockNumber, data, dirty);
+        return addToCache(blockInfo, blockNumber, data, dirty);
     }
 
-    private void readFromServer(int blockNumber) throws IllegalArgumentException, IllegalAccessTokenException {
+    private void readFromServer(int blockNumber) throws IllegalArgumentException, IllegalAccessTokenException, IOException {
         BlockInfo blockInfo = fileInfo.getBlockInfo(blockNumber);
-        LocatedBlock locatedBlock = blockInfo.iterator().next();
-        DataNodeStub dataNodeStub = new DataNodeStub(locatedBlock.getAddress(), locatedBlock.getPort());
-        byte[] data = dataNodeStub.read(token, locatedBlock.getId(), 0, DataNode.BLOCK_SIZE);
+        // any replica would do, let the hedged reader pick the fastest
+        // a block nothing has been written to is all hole, whatever the data nodes have of its id
+        byte[] data = freshBlocks.contains(blockNumber) ? new byte[0] : hedgedReader.read(token, blockInfo, fileInfo.getBlockSize());
         // add to cache
-        addToCache(locatedBlock, blockNumber, data, false);
+        addToCache(blockInfo, blockNumber, data, false);
     }
 
-    private void writeToServer(CachedBlock cachedBlock) {
-        byte[] data = cachedBlock.data;
-        LocatedBlock locatedBlock = cachedBlock.locatedBlock;
-        DataNodeStub dataNodeStub = new DataNodeStub(locatedBlock.getAddress(), locatedBlock.getPort());
-        dataNodeStub.write(token, locatedBlock.getId(), 0, data);
+    /**
+     * write the block to its first replica, which passes it down the pipeline to the others
+     * @throws IOException if a data node of the pipeline fails to store it, then the block stays dirty
+     */
+    private void writeToServer(CachedBlock cachedBlock) throws IOException {
+        // the data node has nothing of the block before the dirty start but a hole
+        int start = Math.min(cachedBlock.dirtyStart, cachedBlock.data.length);
+        byte[] data = Arrays.copyOfRange(cachedBlock.data, start, cachedBlock.data.length);
+        List<LocatedBlock> pipeline = new ArrayList<>();
+        for (LocatedBlock locatedBlock : cachedBlock.blockInfo) {
+            pipeline.add(locatedBlock);
+        }
+        LocatedBlock first = pipeline.get(0);
+        boolean fresh = freshBlocks.contains(cachedBlock.blockIndex);
+        writeToDataNode(first, start, data, fresh, new ArrayList<>(pipeline.subList(1, pipeline.size())));
         cachedBlock.dirty = false;
+        freshBlocks.remove(cachedBlock.blockIndex);
+    }
+
+    /**
+     * overridden by benchmarks to leave the data nodes out
+     * @param fresh whether it is the first write to a block given to the file since it was opened
+     */
+    void writeToDataNode(LocatedBlock first, long position, byte[] data, boolean fresh, List<LocatedBlock> downstream) throws IOException {
+        DataNodeStub dataNodeStub = new DataNodeStub(first.getAddress(), first.getPort());
+        dataNodeStub.write(token, first.getId(), position, data, fresh, downstream);
     }
 
 
     class CachedBlock {
-        private LocatedBlock locatedBlock;
+        private BlockInfo blockInfo;
         private int blockIndex;
         private byte[] data;
         private boolean flag;
         private boolean dirty;
+        // the first byte of a dirty block that the data nodes do not have yet
+        private int dirtyStart;
+        // only the bytes from the dirty start are known, the block has been appended to without reading it
+        private boolean partial;
 
-        CachedBlock(LocatedBlock locatedBlock, int blockIndex, byte[] data) {
-            this.locatedBlock = locatedBlock;
+        CachedBlock(BlockInfo blockInfo, int blockIndex, byte[] data) {
+            this.blockInfo = blockInfo;
             this.data = data;
             this.blockIndex = blockIndex;
             this.flag = true;
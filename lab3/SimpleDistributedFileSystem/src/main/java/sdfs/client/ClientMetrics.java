@@ -0,0 +1,57 @@
+package sdfs.client;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * counters of a client, shared by all of its channels
+ */
+public class ClientMetrics implements ClientMetricsMBean {
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    // read only opens that could use the cached file info, and those that could not
+    private final LongAdder metadataHits = new LongAdder();
+    private final LongAdder metadataMisses = new LongAdder();
+
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    void recordCacheMiss() {
+        cacheMisses.increment();
+    }
+
+    void recordMetadataHit() {
+        metadataHits.increment();
+    }
+
+    void recordMetadataMiss() {
+        metadataMisses.increment();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getMetadataHits() {
+        return metadataHits.sum();
+    }
+
+    @Override
+    public long getMetadataMisses() {
+        return metadataMisses.sum();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,16 @@
+package sdfs.client;
+
+/**
+ * the state of a client
+ */
+public interface ClientMetricsMBean {
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRatio();
+
+    long getMetadataHits();
+
+    long getMetadataMisses();
+}
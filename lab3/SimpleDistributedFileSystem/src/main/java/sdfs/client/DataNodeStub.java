@@ -5,6 +5,7 @@
 package sdfs.client;
 
 import sdfs.exception.IllegalAccessTokenException;
+import sdfs.filetree.LocatedBlock;
 import sdfs.packet.DataNodeRequest;
 import sdfs.packet.DataNodeResponse;
 import sdfs.protocol.IDataNodeProtocol;
@@ -14,6 +15,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.List;
 import java.util.UUID;
 
 public class DataNodeStub implements IDataNodeProtocol {
@@ -65,7 +67,7 @@ public class DataNodeStub implements IDataNodeProtocol {
     }
 
     @Override
-    public void write(UUID fileAccessToken, int blockNumber, long position, byte[] buffer) throws IllegalAccessTokenException, IllegalArgumentException {
+    public void write(UUID fileAccessToken, int blockNumber, long position, byte[] buffer) throws IllegalAccessTokenException, IllegalArgumentException, IOException {
         DataNodeRequest request = new DataNodeRequest(DataNodeRequest.Type.WRITE, fileAccessToken, blockNumber, position, 0, buffer);
         DataNodeResponse response = sentRequest(request);
         assert response != null;
@@ -73,6 +75,22 @@ public class DataNodeStub implements IDataNodeProtocol {
             throw response.getIllegalArgumentException();
         } else if (response.getIllegalAccessTokenException() != null) {
             throw response.getIllegalAccessTokenException();
+        } else if (response.getIOException() != null) {
+            throw response.getIOException();
+        }
+    }
+
+    @Override
+    public void write(UUID fileAccessToken, int blockNumber, long position, byte[] buffer, boolean fresh, List<LocatedBlock> downstream) throws IllegalAccessTokenException, IllegalArgumentException, IOException {
+        DataNodeRequest request = new DataNodeRequest(DataNodeRequest.Type.WRITE, fileAccessToken, blockNumber, position, buffer, fresh, downstream);
+        DataNodeResponse response = sentRequest(request);
+        assert response != null;
+        if (response.getIllegalArgumentException() != null) {
+            throw response.getIllegalArgumentException();
+        } else if (response.getIllegalAccessTokenException() != null) {
+            throw response.getIllegalAccessTokenException();
+        } else if (response.getIOException() != null) {
+            throw response.getIOException();
         }
     }
 }
@@ -0,0 +1,80 @@
+package sdfs.client;
+
+import sdfs.entity.DirListing;
+import sdfs.entity.FileStatus;
+import sdfs.protocol.INameNodeProtocol;
+
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * go through the entries of a directory page by page
+ * the next page is asked for in the background while the current one is gone through
+ * so at most two pages are held, however large the directory is
+ */
+class DirListingIterator implements Iterator<FileStatus> {
+    private final INameNodeProtocol nameNode;
+    private final String dirUri;
+    private final int pageSize;
+    private final Executor executor;
+
+    private Iterator<FileStatus> page;
+    private CompletableFuture<DirListing> nextPage;
+
+    /**
+     * @throws FileNotFoundException if the directory does not exist, the first page is listed right away to tell
+     */
+    DirListingIterator(INameNodeProtocol nameNode, String dirUri, int pageSize, Executor executor) throws FileNotFoundException {
+        this.nameNode = nameNode;
+        this.dirUri = dirUri;
+        this.pageSize = pageSize;
+        this.executor = executor;
+        accept(nameNode.list(dirUri, null, pageSize));
+    }
+
+    private void accept(DirListing dirListing) {
+        page = dirListing.getFileStatusList().iterator();
+        nextPage = null;
+        if (dirListing.hasMore()) {
+            String startAfter = dirListing.getLastName();
+            nextPage = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return nameNode.list(dirUri, startAfter, pageSize);
+                } catch (FileNotFoundException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext()) {
+            if (nextPage == null) {
+                return false;
+            }
+            try {
+                accept(nextPage.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public FileStatus next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+}
@@ -0,0 +1,173 @@
+package sdfs.client;
+
+import sdfs.exception.IllegalAccessTokenException;
+import sdfs.filetree.BlockInfo;
+import sdfs.filetree.LocatedBlock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * read blocks from their replicas, fastest first
+ * if the first replica does not answer within a latency threshold, the next one is asked as well
+ * and whichever answers first wins, so that a single slow data node does not stall the read
+ * the threshold is a percentile of the recently observed read latencies
+ * it is shared by all the channels of a client
+ */
+public class HedgedReader {
+    // how many recent read latencies the threshold is computed from
+    private static final int SAMPLE_AMOUNT = 256;
+    // recompute the threshold after this many new samples
+    private static final int RECOMPUTE_INTERVAL = 16;
+    // weight of a new sample in the moving average latency of a replica
+    private static final double SMOOTHING = 0.3;
+
+    private final double hedgePercentile = Double.parseDouble(System.getProperty("sdfs.client.hedge.percentile", "95"));
+    private final long minimumThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("sdfs.client.hedge.min.millis", 2));
+    // the threshold used before enough latencies are observed
+    private final long initialThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("sdfs.client.hedge.initial.millis", 50));
+
+    // ring of the latest read latencies, guarded by the lock
+    private final long[] samples = new long[SAMPLE_AMOUNT];
+    private int sampleCount = 0;
+    private int nextSample = 0;
+    private int samplesSinceRecompute = 0;
+    private ReentrantLock lock = new ReentrantLock();
+    private volatile long thresholdNanos = initialThresholdNanos;
+
+    // moving average read latency of each data node
+    private final Map<String, Double> latencyMap = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param token     the access token of the file
+     * @param blockInfo the replicas of the block
+     * @param blockSize the block size of the file
+     * @return the whole data of the block
+     * @throws IllegalArgumentException    if every replica rejects the read
+     * @throws IllegalAccessTokenException if every replica rejects the read
+     */
+    public byte[] read(UUID token, BlockInfo blockInfo, int blockSize) {
+        List<LocatedBlock> replicas = order(blockInfo);
+        if (replicas.size() == 1) {
+            return readReplica(token, replicas.get(0), blockSize);
+        }
+
+        CompletionService<byte[]> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<byte[]>> futures = new ArrayList<>();
+        RuntimeException failure = null;
+        int next = 0;
+        int running = 0;
+        try {
+            futures.add(completionService.submit(() -> readReplica(token, replicas.get(0), blockSize)));
+            next++;
+            running++;
+            while (running > 0) {
+                // hedge while there are replicas left, otherwise just wait for the running ones
+                Future<byte[]> done = next < replicas.size()
+                        ? completionService.poll(thresholdNanos, TimeUnit.NANOSECONDS)
+                        : completionService.take();
+                if (done == null) {
+                    final LocatedBlock hedge = replicas.get(next++);
+                    futures.add(completionService.submit(() -> readReplica(token, hedge, blockSize)));
+                    running++;
+                    continue;
+                }
+                running--;
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    if (failure == null && e.getCause() instanceof RuntimeException) {
+                        failure = (RuntimeException) e.getCause();
+                    }
+                    // try the next replica right away
+                    if (next < replicas.size()) {
+                        final LocatedBlock retry = replicas.get(next++);
+                        futures.add(completionService.submit(() -> readReplica(token, retry, blockSize)));
+                        running++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // the losers are not needed any more
+            for (Future<byte[]> future : futures) {
+                future.cancel(true);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        throw new IllegalStateException("No replica of the block could be read");
+    }
+
+    private byte[] readReplica(UUID token, LocatedBlock locatedBlock, int blockSize) {
+        long start = System.nanoTime();
+        try {
+            DataNodeStub dataNodeStub = new DataNodeStub(locatedBlock.getAddress(), locatedBlock.getPort());
+            byte[] data = dataNodeStub.read(token, locatedBlock.getId(), 0, blockSize);
+            recordLatency(locatedBlock, System.nanoTime() - start);
+            return data;
+        } catch (RuntimeException e) {
+            // a failing data node is put behind the others
+            recordFailure(locatedBlock);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the replicas ordered by their recent latency, replicas never read from come first
+     */
+    List<LocatedBlock> order(BlockInfo blockInfo) {
+        List<LocatedBlock> replicas = new ArrayList<>();
+        for (LocatedBlock locatedBlock : blockInfo) {
+            replicas.add(locatedBlock);
+        }
+        replicas.sort((a, b) -> Double.compare(latencyMap.getOrDefault(key(a), 0.0), latencyMap.getOrDefault(key(b), 0.0)));
+        return replicas;
+    }
+
+    /**
+     * @return the current hedging threshold
+     */
+    long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    void recordLatency(LocatedBlock locatedBlock, long latencyNanos) {
+        latencyMap.merge(key(locatedBlock), (double) latencyNanos, (old, sample) -> old + SMOOTHING * (sample - old));
+
+        lock.lock();
+        samples[nextSample] = latencyNanos;
+        nextSample = (nextSample + 1) % SAMPLE_AMOUNT;
+        sampleCount = Math.min(sampleCount + 1, SAMPLE_AMOUNT);
+        if (++samplesSinceRecompute == RECOMPUTE_INTERVAL) {
+            samplesSinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(hedgePercentile / 100 * sorted.length) - 1;
+            thresholdNanos = Math.max(minimumThresholdNanos, sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+        }
+        lock.unlock();
+    }
+
+    void recordFailure(LocatedBlock locatedBlock) {
+        // count a failure as a read ten times slower than the threshold
+        latencyMap.merge(key(locatedBlock), 10.0 * thresholdNanos, (old, sample) -> Math.max(old, sample));
+    }
+
+    private static String key(LocatedBlock locatedBlock) {
+        return locatedBlock.getAddress().getHostAddress() + ":" + locatedBlock.getPort();
+    }
+}
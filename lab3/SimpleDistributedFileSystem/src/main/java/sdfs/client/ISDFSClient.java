@@ -1,8 +1,15 @@
 package sdfs.client;
 
+import sdfs.entity.BatchOperation;
+import sdfs.entity.BatchResult;
+import sdfs.entity.FileAttributes;
+import sdfs.entity.FileStatus;
 import sdfs.exception.SDFSFileAlreadyExistsException;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
 
 public interface ISDFSClient {
     /**
@@ -23,6 +30,16 @@ public interface ISDFSClient {
      */
     SDFSFileChannel openReadWrite(String fileUri) throws FileNotFoundException;
 
+    /**
+     * Open a file that is already exist to append to.
+     * Every write goes to the end of the file, and the data already in the file can not be changed.
+     *
+     * @param fileUri The file uri to be open. The fileUri should look like /foo/bar.data which is a request to sdfs://[ip]:[port]/foo/bar.data
+     * @return file channel of this file
+     * @throws FileNotFoundException if the file is not exist
+     */
+    SDFSFileChannel openAppend(String fileUri) throws FileNotFoundException;
+
     /**
      * Create a empty file and return the output stream to this file.
      *
@@ -32,6 +49,17 @@ public interface ISDFSClient {
      */
     SDFSFileChannel create(String fileUri) throws SDFSFileAlreadyExistsException, FileNotFoundException;
 
+    /**
+     * Create a empty file with the given attributes and return the output stream to this file.
+     *
+     * @param fileUri        The file uri to be create. The fileUri should look like /foo/bar.data which is a request to sdfs://[ip]:[port]/foo/bar.data
+     * @param fileAttributes The attributes of the file, such as the number of data nodes each block is written to
+     * @return FileInfo channel of this file
+     * @throws SDFSFileAlreadyExistsException if the file is already exist
+     * @throws IllegalArgumentException       if the attributes are invalid
+     */
+    SDFSFileChannel create(String fileUri, FileAttributes fileAttributes) throws SDFSFileAlreadyExistsException, FileNotFoundException;
+
     /**
      * Make a directory on given file uri.
      *
@@ -39,4 +67,84 @@ public interface ISDFSClient {
      * @throws SDFSFileAlreadyExistsException if directory or file is already exist
      */
     void mkdir(String fileUri) throws SDFSFileAlreadyExistsException, FileNotFoundException;
+
+    /**
+     * Go through the entries of a directory in the order of their names.
+     * The entries are listed a page at a time, the next page is fetched while the current one is gone through.
+     * Entries added or changed while going through may or may not be seen.
+     *
+     * @param dirUri the directory path, empty for the root directory, dir/.snapshot for the snapshots of dir
+     * @return the status of each entry
+     * @throws FileNotFoundException if the directory is not exist
+     */
+    Iterator<FileStatus> list(String dirUri) throws FileNotFoundException;
+
+    /**
+     * Get the status of many files or directories in a single round trip, without opening any of them.
+     *
+     * @param fileUris the uris of the files or directories
+     * @return the status of each uri in the same order, null where there is nothing at the uri
+     */
+    List<FileStatus> stat(String... fileUris);
+
+    /**
+     * Copy a file to a new file on the name node, no data is sent, the blocks are shared until either file changes them.
+     *
+     * @param srcUri the file to copy, which may be in a snapshot
+     * @param dstUri the path of the new file
+     * @throws SDFSFileAlreadyExistsException if a directory or file is already at the new path
+     * @throws FileNotFoundException          if the file to copy or the directory of the new file is not exist
+     */
+    void copy(String srcUri, String dstUri) throws SDFSFileAlreadyExistsException, FileNotFoundException;
+
+    /**
+     * Append other files to a file.
+     * The sources are appended by the name node without sending any data where the file before them ends at the end of a block,
+     * the data of a source that would follow a partial block is copied through the client instead.
+     *
+     * @param targetUri  the file to append to
+     * @param sourceUris the files to append, in order, which are left as they are
+     * @throws FileNotFoundException                          if a file is not exist
+     * @throws java.nio.channels.OverlappingFileLockException if the file to append to is opened read write
+     * @throws IllegalArgumentException                       if there is no source or the file is a source
+     */
+    void concat(String targetUri, String... sourceUris) throws IOException;
+
+    /**
+     * Take a read only snapshot of a directory, whose files are opened read only at dirUri/.snapshot/snapshotName/...
+     *
+     * @param dirUri       the directory path, empty for the root directory
+     * @param snapshotName the name of the snapshot
+     * @throws SDFSFileAlreadyExistsException if the directory already has a snapshot with the name
+     * @throws IllegalArgumentException       if the name is empty or contains a slash,
+     *                                        or there are more directories and files below than a snapshot may copy
+     */
+    void createSnapshot(String dirUri, String snapshotName) throws SDFSFileAlreadyExistsException, FileNotFoundException;
+
+    /**
+     * Delete a snapshot of a directory.
+     *
+     * @param dirUri       the directory path, empty for the root directory
+     * @param snapshotName the name of the snapshot
+     * @throws FileNotFoundException if the directory or the snapshot is not exist
+     */
+    void deleteSnapshot(String dirUri, String snapshotName) throws FileNotFoundException;
+
+    /**
+     * Run several metadata operations in a single round trip to the name node.
+     *
+     * @param operations mkdir, create, open readonly and close operations, run in the given order
+     * @return the result of every operation, in the same order, an operation that fails does not stop the others
+     * @throws IllegalArgumentException if there are more operations than the name node runs in one batch, then none is run
+     */
+    List<BatchResult> batch(List<BatchOperation> operations) throws IllegalArgumentException;
+
+    /**
+     * Get the channel of a file created or opened in a batch.
+     *
+     * @param batchResult the result of a create or open readonly operation
+     * @return file channel of this file
+     * @throws IOException if the operation failed with it, such as FileNotFoundException
+     */
+    SDFSFileChannel getChannel(BatchResult batchResult) throws IOException;
 }
@@ -0,0 +1,55 @@
+package sdfs.client;
+
+import sdfs.protocol.INameNodeProtocol;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * keep the tokens of the open channels of a client alive on the name node
+ * the leases of all the tokens are renewed in one request, no matter how many files are open
+ * it is shared by all the channels of a client
+ */
+public class LeaseRenewer {
+    // should be well below the lease of the name node, so that a lost request or two does not matter
+    private final long renewSeconds = Long.getLong("sdfs.client.lease.renew.seconds", 20);
+
+    private final INameNodeProtocol nameNode;
+    private final Set<UUID> tokens = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    LeaseRenewer(INameNodeProtocol nameNode) {
+        this.nameNode = nameNode;
+        executor.scheduleWithFixedDelay(this::renew, renewSeconds, renewSeconds, TimeUnit.SECONDS);
+    }
+
+    void add(UUID token) {
+        tokens.add(token);
+    }
+
+    void remove(UUID token) {
+        tokens.remove(token);
+    }
+
+    void renew() {
+        if (tokens.isEmpty()) {
+            return;
+        }
+        try {
+            nameNode.renewLeases(new HashSet<>(tokens));
+        } catch (RuntimeException e) {
+            // try again next time, the lease lasts several renewals
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package sdfs.client;
+
+import sdfs.entity.FileInfo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * the file info of the files a client opened read only lately, by file uri
+ * a cached file info is only used after the name node confirmed the file is still at its version
+ * so it never makes a channel see stale data, it just saves sending the block list again
+ * the file infos are shared by the read only channels, which never change them
+ */
+public class MetadataCache {
+    private final int capacity = Integer.getInteger("sdfs.client.metadata.cache.size", 128);
+
+    // in access order, the least recently opened file is evicted first
+    private final Map<String, FileInfo> fileInfoMap = new LinkedHashMap<String, FileInfo>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileInfo> eldest) {
+            return size() > capacity;
+        }
+    };
+    private ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @return the cached file info of the file, null if there is none
+     */
+    FileInfo get(String fileUri) {
+        lock.lock();
+        FileInfo fileInfo = fileInfoMap.get(fileUri);
+        lock.unlock();
+        return fileInfo;
+    }
+
+    void put(String fileUri, FileInfo fileInfo) {
+        lock.lock();
+        fileInfoMap.put(fileUri, fileInfo);
+        lock.unlock();
+    }
+}
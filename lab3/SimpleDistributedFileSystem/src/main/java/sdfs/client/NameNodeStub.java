@@ -1,8 +1,14 @@
 package sdfs.client;
 
+import sdfs.entity.BatchOperation;
+import sdfs.entity.BatchResult;
+import sdfs.entity.DirListing;
+import sdfs.entity.FileAttributes;
+import sdfs.entity.FileStatus;
 import sdfs.entity.SDFSFileChannelData;
 import sdfs.exception.IllegalAccessTokenException;
 import sdfs.exception.SDFSFileAlreadyExistsException;
+import sdfs.filetree.BlockInfo;
 import sdfs.filetree.LocatedBlock;
 import sdfs.packet.NameNodeRequest;
 import sdfs.packet.NameNodeResponse;
@@ -16,6 +22,7 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.nio.channels.OverlappingFileLockException;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public class NameNodeStub implements INameNodeProtocol {
@@ -66,6 +73,32 @@ public class NameNodeStub implements INameNodeProtocol {
         }
     }
 
+    @Override
+    public SDFSFileChannelData openReadonlyIfChanged(String fileUri, long version) throws FileNotFoundException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.OPEN_READ_ONLY_IF_CHANGED, fileUri, null, version);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getFileNotFoundException() != null) {
+            throw response.getFileNotFoundException();
+        } else {
+            return response.getSDFSFileChannelData();
+        }
+    }
+
+    @Override
+    public SDFSFileChannelData openAppend(String fileUri) throws FileNotFoundException, OverlappingFileLockException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.OPEN_APPEND, fileUri, null, 0);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getFileNotFoundException() != null) {
+            throw response.getFileNotFoundException();
+        } else if (response.getOverlappingFileLockException() != null) {
+            throw response.getOverlappingFileLockException();
+        } else {
+            return response.getSDFSFileChannelData();
+        }
+    }
+
     @Override
     public SDFSFileChannelData openReadwrite(String fileUri) throws FileNotFoundException, OverlappingFileLockException {
         NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.OPEN_READ_WRITE, fileUri, null, 0);
@@ -94,6 +127,22 @@ public class NameNodeStub implements INameNodeProtocol {
         }
     }
 
+    @Override
+    public SDFSFileChannelData create(String fileUri, FileAttributes fileAttributes) throws SDFSFileAlreadyExistsException, FileNotFoundException, IllegalArgumentException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.CREATE, fileUri, fileAttributes);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getSDFSFileAlreadyExistsException() != null) {
+            throw response.getSDFSFileAlreadyExistsException();
+        } else if (response.getFileNotFoundException() != null) {
+            throw response.getFileNotFoundException();
+        } else if (response.getIllegalArgumentException() != null) {
+            throw response.getIllegalArgumentException();
+        } else {
+            return response.getSDFSFileChannelData();
+        }
+    }
+
     @Override
     public void mkdir(String fileUri) throws SDFSFileAlreadyExistsException, FileNotFoundException {
         NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.MK_DIR, fileUri, null, 0);
@@ -106,6 +155,78 @@ public class NameNodeStub implements INameNodeProtocol {
         }
     }
 
+    @Override
+    public DirListing list(String dirUri, String startAfter, int limit) throws FileNotFoundException, IllegalArgumentException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.LIST, dirUri, limit, startAfter);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getFileNotFoundException() != null) {
+            throw response.getFileNotFoundException();
+        } else if (response.getIllegalArgumentException() != null) {
+            throw response.getIllegalArgumentException();
+        } else {
+            return response.getDirListing();
+        }
+    }
+
+    @Override
+    public List<FileStatus> stat(List<String> fileUris) {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.STAT, fileUris);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        return response.getFileStatusList();
+    }
+
+    @Override
+    public void createSnapshot(String dirUri, String snapshotName) throws SDFSFileAlreadyExistsException, FileNotFoundException, IllegalArgumentException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.CREATE_SNAPSHOT, dirUri, snapshotName);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getSDFSFileAlreadyExistsException() != null) {
+            throw response.getSDFSFileAlreadyExistsException();
+        } else if (response.getFileNotFoundException() != null) {
+            throw response.getFileNotFoundException();
+        } else if (response.getIllegalArgumentException() != null) {
+            throw response.getIllegalArgumentException();
+        }
+    }
+
+    @Override
+    public void deleteSnapshot(String dirUri, String snapshotName) throws FileNotFoundException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.DELETE_SNAPSHOT, dirUri, snapshotName);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getFileNotFoundException() != null) {
+            throw response.getFileNotFoundException();
+        }
+    }
+
+    @Override
+    public void copy(String srcUri, String dstUri) throws SDFSFileAlreadyExistsException, FileNotFoundException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.COPY, srcUri, dstUri);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getSDFSFileAlreadyExistsException() != null) {
+            throw response.getSDFSFileAlreadyExistsException();
+        } else if (response.getFileNotFoundException() != null) {
+            throw response.getFileNotFoundException();
+        }
+    }
+
+    @Override
+    public void concat(String targetUri, List<String> sourceUris) throws FileNotFoundException, OverlappingFileLockException, IllegalArgumentException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.CONCAT, targetUri, sourceUris);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getFileNotFoundException() != null) {
+            throw response.getFileNotFoundException();
+        } else if (response.getOverlappingFileLockException() != null) {
+            throw response.getOverlappingFileLockException();
+        } else if (response.getIllegalArgumentException() != null) {
+            throw response.getIllegalArgumentException();
+        }
+    }
+
     @Override
     public void closeReadonlyFile(UUID fileAccessToken) throws IllegalAccessTokenException {
         NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.CLOSE_READ_ONLY, null, fileAccessToken, 0);
@@ -140,6 +261,20 @@ public class NameNodeStub implements INameNodeProtocol {
         }
     }
 
+    @Override
+    public List<BlockInfo> addReplicatedBlocks(UUID fileAccessToken, int blockAmount) throws IllegalAccessTokenException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.ADD_REPLICATED_BLOCKS, null, fileAccessToken, blockAmount);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getIllegalAccessTokenException() != null) {
+            throw response.getIllegalAccessTokenException();
+        } else if (response.getIllegalArgumentException() != null) {
+            throw response.getIllegalArgumentException();
+        } else {
+            return response.getBlockInfoList();
+        }
+    }
+
     @Override
     public void removeLastBlocks(UUID fileAccessToken, int blockAmount) throws IllegalAccessTokenException, IndexOutOfBoundsException {
         NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.REMOVE_LAST_BLOCKS, null, fileAccessToken, blockAmount);
@@ -165,4 +300,36 @@ public class NameNodeStub implements INameNodeProtocol {
             return response.getBlockList().get(0); // put the Located Block in the first index of the List
         }
     }
+
+    @Override
+    public BlockInfo newReplicatedCopyOnWriteBlock(UUID fileAccessToken, int fileBlockNumber) throws IllegalAccessTokenException, IndexOutOfBoundsException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.NEW_REPLICATED_COW_BLOCK, null, fileAccessToken, fileBlockNumber);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getIllegalAccessTokenException() != null) {
+            throw response.getIllegalAccessTokenException();
+        } else if (response.getIndexOutOfBoundsException() != null) {
+            throw response.getIndexOutOfBoundsException();
+        } else {
+            return response.getBlockInfoList().get(0);
+        }
+    }
+
+    @Override
+    public List<BatchResult> batch(List<BatchOperation> operations) throws IllegalArgumentException {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.BATCH, operations);
+        NameNodeResponse response = sendRequest(request);
+        assert response != null;
+        if (response.getIllegalArgumentException() != null) {
+            throw response.getIllegalArgumentException();
+        } else {
+            return response.getBatchResultList();
+        }
+    }
+
+    @Override
+    public void renewLeases(Set<UUID> fileAccessTokens) {
+        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.RENEW_LEASES, fileAccessTokens);
+        sendRequest(request);
+    }
 }
@@ -1,41 +1,212 @@
 package sdfs.client;
 
+import sdfs.entity.BatchOperation;
+import sdfs.entity.BatchResult;
+import sdfs.entity.FileAttributes;
+import sdfs.entity.FileInfo;
+import sdfs.entity.FileStatus;
 import sdfs.entity.SDFSFileChannelData;
 import sdfs.exception.SDFSFileAlreadyExistsException;
+import sdfs.metrics.MBeans;
 import sdfs.protocol.SDFSConfiguration;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SDFSClient implements ISDFSClient {
+    // to tell the clients of the same process apart in their MBean names
+    private static final AtomicInteger clientCounter = new AtomicInteger();
     private NameNodeStub nameNodeStub;
     private int fileDataBlockCacheSize;
+    // shared by all the channels so that replica latencies are learnt across files
+    private HedgedReader hedgedReader = new HedgedReader();
+    private ClientMetrics metrics = new ClientMetrics();
+    // renews the leases of all the open channels
+    private LeaseRenewer leaseRenewer;
+    // file infos of files opened read only, revalidated on every open
+    private MetadataCache metadataCache = new MetadataCache();
+    // the entries of a directory asked for at a time when listing it
+    private final int listPageSize = Integer.getInteger("sdfs.client.list.page.size", 1000);
+    // fetches the next pages of directory listings
+    private final ExecutorService listingExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
 
 
     public SDFSClient(SDFSConfiguration configuration, int fileDataBlockCacheSize) {
         this.fileDataBlockCacheSize = fileDataBlockCacheSize;
         this.nameNodeStub = new NameNodeStub(configuration.getNameNodeAddress(), configuration.getNameNodePort());
+        this.leaseRenewer = new LeaseRenewer(nameNodeStub);
+        MBeans.register("type=Client,id="+clientCounter.incrementAndGet(), metrics);
+    }
+
+    public ClientMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
     public SDFSFileChannel openReadonly(String fileUri) throws FileNotFoundException {
-        SDFSFileChannelData sdfsFileChannelData = nameNodeStub.openReadonly(fileUri);
-        return new SDFSFileChannel(sdfsFileChannelData, nameNodeStub, fileDataBlockCacheSize);
+        FileInfo cachedFileInfo = metadataCache.get(fileUri);
+        if (cachedFileInfo == null) {
+            metrics.recordMetadataMiss();
+            SDFSFileChannelData sdfsFileChannelData = nameNodeStub.openReadonly(fileUri);
+            metadataCache.put(fileUri, sdfsFileChannelData.getFileInfo());
+            return new SDFSFileChannel(sdfsFileChannelData, nameNodeStub, fileDataBlockCacheSize, hedgedReader, leaseRenewer, metrics);
+        }
+        SDFSFileChannelData sdfsFileChannelData = nameNodeStub.openReadonlyIfChanged(fileUri, cachedFileInfo.getVersion());
+        if (sdfsFileChannelData.getFileInfo() == null) {
+            // unchanged since cached
+            metrics.recordMetadataHit();
+            sdfsFileChannelData = new SDFSFileChannelData(cachedFileInfo, false, sdfsFileChannelData.getToken());
+        } else {
+            metrics.recordMetadataMiss();
+            metadataCache.put(fileUri, sdfsFileChannelData.getFileInfo());
+        }
+        return new SDFSFileChannel(sdfsFileChannelData, nameNodeStub, fileDataBlockCacheSize, hedgedReader, leaseRenewer, metrics);
     }
 
     @Override
     public SDFSFileChannel openReadWrite(String fileUri) throws FileNotFoundException {
         SDFSFileChannelData sdfsFileChannelData = nameNodeStub.openReadwrite(fileUri);
-        return new SDFSFileChannel(sdfsFileChannelData, nameNodeStub, fileDataBlockCacheSize);
+        return new SDFSFileChannel(sdfsFileChannelData, nameNodeStub, fileDataBlockCacheSize, hedgedReader, leaseRenewer, metrics);
+    }
+
+    @Override
+    public SDFSFileChannel openAppend(String fileUri) throws FileNotFoundException {
+        SDFSFileChannelData sdfsFileChannelData = nameNodeStub.openAppend(fileUri);
+        return new SDFSFileChannel(sdfsFileChannelData, nameNodeStub, fileDataBlockCacheSize, hedgedReader, leaseRenewer, metrics);
     }
 
     @Override
     public SDFSFileChannel create(String fileUri) throws SDFSFileAlreadyExistsException, FileNotFoundException {
         SDFSFileChannelData sdfsFileChannelData = nameNodeStub.create(fileUri);
-        return new SDFSFileChannel(sdfsFileChannelData, nameNodeStub, fileDataBlockCacheSize);
+        return new SDFSFileChannel(sdfsFileChannelData, nameNodeStub, fileDataBlockCacheSize, hedgedReader, leaseRenewer, metrics);
+    }
+
+    @Override
+    public SDFSFileChannel create(String fileUri, FileAttributes fileAttributes) throws SDFSFileAlreadyExistsException, FileNotFoundException {
+        SDFSFileChannelData sdfsFileChannelData = nameNodeStub.create(fileUri, fileAttributes);
+        return new SDFSFileChannel(sdfsFileChannelData, nameNodeStub, fileDataBlockCacheSize, hedgedReader, leaseRenewer, metrics);
     }
 
     @Override
     public void mkdir(String fileUri) throws SDFSFileAlreadyExistsException, FileNotFoundException {
         nameNodeStub.mkdir(fileUri);
     }
+
+    @Override
+    public Iterator<FileStatus> list(String dirUri) throws FileNotFoundException {
+        return new DirListingIterator(nameNodeStub, dirUri, listPageSize, listingExecutor);
+    }
+
+    @Override
+    public List<FileStatus> stat(String... fileUris) {
+        return nameNodeStub.stat(Arrays.asList(fileUris));
+    }
+
+    @Override
+    public void copy(String srcUri, String dstUri) throws SDFSFileAlreadyExistsException, FileNotFoundException {
+        nameNodeStub.copy(srcUri, dstUri);
+    }
+
+    /*
+    Each run of sources the name node can append without copying data goes in one request,
+    up to and including the first source that ends inside a block, after which the next source is copied
+    so is a source whose blocks are of another size or replication or stored otherwise
+     */
+    @Override
+    public void concat(String targetUri, String... sourceUris) throws IOException {
+        if (sourceUris.length == 0 || Arrays.asList(sourceUris).contains(targetUri)) {
+            throw new IllegalArgumentException();
+        }
+        // the status of the target, then of each source
+        List<String> fileUris = new ArrayList<>();
+        fileUris.add(targetUri);
+        fileUris.addAll(Arrays.asList(sourceUris));
+        List<FileStatus> fileStatusList = nameNodeStub.stat(fileUris);
+        for (FileStatus fileStatus : fileStatusList) {
+            if (fileStatus == null || fileStatus.isDirectory()) {
+                throw new FileNotFoundException();
+            }
+        }
+        int blockSize = fileStatusList.get(0).getBlockSize();
+        int replication = fileStatusList.get(0).getReplication();
+        boolean compressed = fileStatusList.get(0).isCompressed();
+        long targetSize = fileStatusList.get(0).getFileSize();
+        int next = 0;
+        while (next < sourceUris.length) {
+            int end = next;
+            if (targetSize % blockSize == 0) {
+                while (end < sourceUris.length && fileStatusList.get(end + 1).getBlockSize() == blockSize
+                        && fileStatusList.get(end + 1).getReplication() == replication && fileStatusList.get(end + 1).isCompressed() == compressed) {
+                    targetSize += fileStatusList.get(end + 1).getFileSize();
+                    end++;
+                    if (targetSize % blockSize != 0) {
+                        break;
+                    }
+                }
+            }
+            if (end > next) {
+                nameNodeStub.concat(targetUri, Arrays.asList(sourceUris).subList(next, end));
+                next = end;
+            } else {
+                targetSize = appendData(targetUri, sourceUris[next]);
+                next++;
+            }
+        }
+    }
+
+    /**
+     * append the data of a file to another through the channels, for a file that can not simply share its blocks
+     * @return the new size of the file appended to
+     */
+    private long appendData(String targetUri, String sourceUri) throws IOException {
+        try (SDFSFileChannel source = openReadonly(sourceUri); SDFSFileChannel target = openAppend(targetUri)) {
+            ByteBuffer buffer = ByteBuffer.allocate(source.getFileInfo().getBlockSize());
+            while (source.read(buffer) > 0) {
+                buffer.flip();
+                target.write(buffer);
+                buffer.clear();
+            }
+            return target.size();
+        }
+    }
+
+    @Override
+    public void createSnapshot(String dirUri, String snapshotName) throws SDFSFileAlreadyExistsException, FileNotFoundException {
+        nameNodeStub.createSnapshot(dirUri, snapshotName);
+    }
+
+    @Override
+    public void deleteSnapshot(String dirUri, String snapshotName) throws FileNotFoundException {
+        nameNodeStub.deleteSnapshot(dirUri, snapshotName);
+    }
+
+    @Override
+    public List<BatchResult> batch(List<BatchOperation> operations) throws IllegalArgumentException {
+        return nameNodeStub.batch(operations);
+    }
+
+    @Override
+    public SDFSFileChannel getChannel(BatchResult batchResult) throws IOException {
+        Exception exception = batchResult.getException();
+        if (exception instanceof IOException) {
+            throw (IOException) exception;
+        } else if (exception instanceof RuntimeException) {
+            throw (RuntimeException) exception;
+        } else if (batchResult.getSDFSFileChannelData() == null) {
+            throw new IllegalArgumentException();
+        }
+        return new SDFSFileChannel(batchResult.getSDFSFileChannelData(), nameNodeStub, fileDataBlockCacheSize, hedgedReader, leaseRenewer, metrics);
+    }
 }
@@ -7,7 +7,6 @@ package sdfs.client;
 import sdfs.entity.FileInfo;
 import sdfs.entity.SDFSFileChannelData;
 import sdfs.filetree.BlockInfo;
-import sdfs.filetree.LocatedBlock;
 
 import java.io.Flushable;
 import java.io.IOException;
@@ -15,14 +14,19 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
+import java.util.List;
 import java.util.UUID;
 
-import static sdfs.datanode.DataNode.BLOCK_SIZE;
 
 
 public class SDFSFileChannel implements SeekableByteChannel, Flushable {
     // permission field
     private boolean writable;
+    // only append to the file, the size of the file when opened can not be gone below
+    private boolean appending;
+    // the last block of a file opened to append to is shared with other files, it is copied on write the first time
+    private boolean tailShared;
+    private long committedSize;
 
     // data field
     private UUID token;
@@ -35,18 +39,24 @@ public class SDFSFileChannel implements SeekableByteChannel, Flushable {
 
     private NameNodeStub nameNodeStub;
     private CacheSystem cacheSystem;
+    private LeaseRenewer leaseRenewer;
 
-    SDFSFileChannel(SDFSFileChannelData data, NameNodeStub nameNodeStub, int fileDataBlockCacheSize) {
+    SDFSFileChannel(SDFSFileChannelData data, NameNodeStub nameNodeStub, int fileDataBlockCacheSize, HedgedReader hedgedReader, LeaseRenewer leaseRenewer, ClientMetrics metrics) {
         this.writable = data.isWritable();
+        this.appending = data.isAppending();
+        this.tailShared = data.isTailShared();
 
         this.token = data.getToken();
         this.fileInfo = data.getFileInfo();
+        this.committedSize = fileInfo.getFileSize();
 
         this.position = 0;
         this.closed = false;
 
-        this.cacheSystem = new CacheSystem(token, fileInfo, fileDataBlockCacheSize);
+        this.cacheSystem = new CacheSystem(token, fileInfo, fileDataBlockCacheSize, hedgedReader, metrics);
         this.nameNodeStub = nameNodeStub;
+        this.leaseRenewer = leaseRenewer;
+        leaseRenewer.add(token);
     }
 
     public FileInfo getFileInfo() {
@@ -63,16 +73,22 @@ public class SDFSFileChannel implements SeekableByteChannel, Flushable {
         }
         long oldPos = position;
 
+        int blockSize = fileInfo.getBlockSize();
         while (dst.hasRemaining() && position < fileInfo.getFileSize()) {
-            int blockIndex = (int) (position / BLOCK_SIZE);
-            int offset = (int) (position % BLOCK_SIZE);
+            int blockIndex = (int) (position / blockSize);
+            int offset = (int) (position % blockSize);
 
-            int size = Math.min(dst.limit() - dst.position(), BLOCK_SIZE - offset);
+            int size = Math.min(dst.limit() - dst.position(), blockSize - offset);
             if (position + size > fileInfo.getFileSize()) {
                 size = (int) (fileInfo.getFileSize() - position);
             }
             byte[] data = cacheSystem.read(blockIndex);
-            dst.put(data, offset, size);
+            // a block holds only the data up to its last written byte, the rest of it is a hole of zeros
+            int validSize = Math.max(0, Math.min(size, data.length - offset));
+            dst.put(data, offset, validSize);
+            for (int i = validSize; i < size; i++) {
+                dst.put((byte) 0);
+            }
             position += size;
         }
         return (int) (position - oldPos);
@@ -86,20 +102,43 @@ public class SDFSFileChannel implements SeekableByteChannel, Flushable {
         if (!this.writable) {
             throw new NonWritableChannelException();
         }
+        if (appending) {
+            position = fileInfo.getFileSize();
+        }
         long oldPos = position;
 
         // write data
+        int blockSize = fileInfo.getBlockSize();
         while (src.hasRemaining()) {
-            int blockIndex = (int) (position / BLOCK_SIZE);
-            int offset = (int) (position % BLOCK_SIZE);
-            int size = Math.min(src.limit() - src.position(), BLOCK_SIZE - offset);
+            int blockIndex = (int) (position / blockSize);
+            int offset = (int) (position % blockSize);
+            int size = Math.min(src.limit() - src.position(), blockSize - offset);
             byte[] bytes = new byte[size];
             src = src.get(bytes);
 
-            if (blockIndex < fileInfo.getBlockAmount()) {
+            if (appending && !tailShared && blockIndex < fileInfo.getBlockAmount()) {
+                // extend the last block in place, nothing before the end of the file is touched
+                // so it does not have to be copied on write, nor even read
+                byte[] oldData = cacheSystem.peek(blockIndex);
+                if (oldData == null) {
+                    byte[] newData = new byte[offset + size];
+                    System.arraycopy(bytes, 0, newData, offset, size);
+                    cacheSystem.writeInPlace(blockIndex, newData, offset, true);
+                } else {
+                    byte[] newData = new byte[Math.max(oldData.length, offset + size)];
+                    System.arraycopy(oldData, 0, newData, 0, oldData.length);
+                    System.arraycopy(bytes, 0, newData, offset, size);
+                    if (cacheSystem.isDirty(blockIndex)) {
+                        cacheSystem.write(blockIndex, newData, offset);
+                    } else {
+                        cacheSystem.writeInPlace(blockIndex, newData, offset, false);
+                    }
+                }
+            } else if (blockIndex < fileInfo.getBlockAmount()) {
                 // write on the block that may have data
                 byte[] oldData = cacheSystem.read(blockIndex);
-                byte[] newData = new byte[BLOCK_SIZE];
+                // no need to pad the block beyond the last written byte
+                byte[] newData = new byte[Math.max(oldData.length, offset + size)];
                 System.arraycopy(oldData, 0, newData, 0, oldData.length);
                 System.arraycopy(bytes, 0, newData, offset, size);
                 // if the block has been cached and is dirty
@@ -107,23 +146,28 @@ public class SDFSFileChannel implements SeekableByteChannel, Flushable {
                 // instead, we can write on the local block
                 if (cacheSystem.isDirty(blockIndex)) {
                     // write data to cache
-                    cacheSystem.write(blockIndex, newData);
+                    cacheSystem.write(blockIndex, newData, offset);
                 } else {
                     // open on write
-                    LocatedBlock cowBlock = nameNodeStub.newCopyOnWriteBlock(token, blockIndex);
-                    BlockInfo blockInfo = new BlockInfo();
-                    blockInfo.addLocatedBlock(cowBlock);
+                    BlockInfo blockInfo = nameNodeStub.newReplicatedCopyOnWriteBlock(token, blockIndex);
                     fileInfo.setBlockInfoByIndex(blockIndex, blockInfo);
-                    // write data to cache
-                    cacheSystem.writeNew(blockIndex, cowBlock, newData);
+                    // the copy belongs to this file alone, so it can be extended in place from now on
+                    tailShared = false;
+                    // write data to cache, the copy starts as a hole so only the old data and the new bytes are sent
+                    cacheSystem.writeNew(blockIndex, blockInfo, newData, oldData.length == 0 ? offset : 0);
                 }
             } else {
-                // write on new block
-                LocatedBlock newBlock = nameNodeStub.addBlocks(token, 1).get(0);
-                BlockInfo blockInfo = new BlockInfo();
-                blockInfo.addLocatedBlock(newBlock);
-                fileInfo.addBlockInfo(blockInfo);
-                cacheSystem.writeNew(blockIndex, newBlock, bytes);
+                // write on new block, the blocks skipped before it are left as holes and never written
+                List<BlockInfo> newBlockInfoList = nameNodeStub.addReplicatedBlocks(token, blockIndex - fileInfo.getBlockAmount() + 1);
+                for (BlockInfo blockInfo : newBlockInfoList) {
+                    fileInfo.addBlockInfo(blockInfo);
+                }
+                for (int i = blockIndex - newBlockInfoList.size() + 1; i < blockIndex; i++) {
+                    cacheSystem.addHole(i);
+                }
+                byte[] newData = new byte[offset + size];
+                System.arraycopy(bytes, 0, newData, offset, size);
+                cacheSystem.writeNew(blockIndex, newBlockInfoList.get(newBlockInfoList.size() - 1), newData, offset);
             }
             // src.position(src.position()+size);
             position += size;
@@ -171,7 +215,7 @@ public class SDFSFileChannel implements SeekableByteChannel, Flushable {
         if (!this.writable) {
             throw new NonWritableChannelException();
         } else {
-            if (newSize < 0) {
+            if (newSize < 0 || (appending && newSize < committedSize)) {
                 throw new IllegalArgumentException();
             } else {
                 if (newSize < fileInfo.getFileSize()) {
@@ -182,8 +226,9 @@ public class SDFSFileChannel implements SeekableByteChannel, Flushable {
                 }
                 // if block number exceeded file size
                 // remove redundant blocks, and clear cache
-                int neededBlockAmount = (int) (fileInfo.getFileSize() / BLOCK_SIZE);
-                if (fileInfo.getFileSize() % BLOCK_SIZE != 0) {
+                int blockSize = fileInfo.getBlockSize();
+                int neededBlockAmount = (int) (fileInfo.getFileSize() / blockSize);
+                if (fileInfo.getFileSize() % blockSize != 0) {
                     neededBlockAmount++;
                 }
                 if (neededBlockAmount < fileInfo.getBlockAmount()) {
@@ -211,6 +256,7 @@ public class SDFSFileChannel implements SeekableByteChannel, Flushable {
         if (!closed) {
             cacheSystem.flush();
             this.closed = true;
+            leaseRenewer.remove(token);
             if (writable) {
                 nameNodeStub.closeReadwriteFile(token, fileInfo.getFileSize());
             } else {
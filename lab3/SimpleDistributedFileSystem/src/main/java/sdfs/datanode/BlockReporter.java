@@ -0,0 +1,36 @@
+package sdfs.datanode;
+
+/**
+ * send block reports to the name node periodically and delete the blocks it gives back
+ * the first report is a full one, as is every full interval-th report and the one after a failed report
+ * the others only carry the blocks stored and deleted since the previous report
+ */
+public class BlockReporter implements Runnable {
+    private DataNode dataNode;
+    private long intervalMillis;
+    private int fullInterval;
+
+    BlockReporter(DataNode dataNode, long intervalMillis, int fullInterval) {
+        this.dataNode = dataNode;
+        this.intervalMillis = intervalMillis;
+        this.fullInterval = Math.max(1, fullInterval);
+    }
+
+    @Override
+    public void run() {
+        try {
+            int count = 0;
+            boolean full = true;
+            while (true) {
+                if (count % fullInterval == 0) {
+                    full = true;
+                }
+                full = !dataNode.sendBlockReport(full);
+                count++;
+                Thread.sleep(intervalMillis);
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
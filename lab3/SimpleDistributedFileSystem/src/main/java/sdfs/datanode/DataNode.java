@@ -1,107 +1,415 @@
 package sdfs.datanode;
 
 import sdfs.entity.AccessTokenPermission;
+import sdfs.entity.BlockReport;
+import sdfs.entity.DataNodeInfo;
 import sdfs.exception.IllegalAccessTokenException;
+import sdfs.filetree.LocatedBlock;
 import sdfs.protocol.IDataNodeProtocol;
+import sdfs.protocol.INameNodeDataNodeProtocol;
+import sdfs.protocol.SDFSConfiguration;
 
 import java.io.*;
 import java.net.InetAddress;
-import java.util.UUID;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class DataNode implements IDataNodeProtocol {
-    private final String FILE_PATH = System.getProperty("sdfs.datanode.dir")+"/";
+    private final String FILE_PATH;
+    // the block size of files created without one, unless the name node is configured otherwise
     public static final int BLOCK_SIZE = 64 * 1024;
 
-    private final NameNodeStub nameNodeStub;
+    private final INameNodeDataNodeProtocol nameNodeStub;
+    // the identity this data node registers with, the name node only allows the blocks placed on it
+    private final InetAddress address;
+    private final int port;
 
-    DataNode(InetAddress nameNodeAddress, int nameNodePort) {
-        this.nameNodeStub = new NameNodeStub(nameNodeAddress, nameNodePort);
+    // state reported in heartbeats
+    private final AtomicLong usedSpace = new AtomicLong();
+    private final AtomicInteger outstandingRequests = new AtomicInteger();
+
+    // the blocks stored and deleted since the last block report, guarded by the report lock
+    private Set<Integer> addedBlocks = new HashSet<>();
+    private Set<Integer> removedBlocks = new HashSet<>();
+    private ReentrantLock reportLock = new ReentrantLock();
+
+    // threads forwarding writes to the next data node of the pipeline
+    private final ExecutorService pipelineExecutor = Executors.newCachedThreadPool();
+
+    // a block of a compressed file is stored as a header and then its data up to its last written byte
+    // the header is how the data is stored and the length of the data before compression
+    private static final int COMPRESSION_HEADER_SIZE = 5;
+    private static final byte STORED_RAW = 0;
+    private static final byte STORED_LZ4 = 1;
+    // a write to a compressed block rewrites the whole block file, so the writes to a block are done one at a time
+    // a block file is replaced at once, so reads do not wait for them
+    private static final int BLOCK_LOCK_AMOUNT = 64;
+    private final ReentrantLock[] blockLocks = new ReentrantLock[BLOCK_LOCK_AMOUNT];
+    // the bytes of compressed blocks written, before and after compression, header included
+    private final AtomicLong compressionInputBytes = new AtomicLong();
+    private final AtomicLong compressionOutputBytes = new AtomicLong();
+
+    DataNode(SDFSConfiguration configuration, String dataNodeDir) {
+        this(configuration, dataNodeDir, new NameNodeStub(configuration.getNameNodeAddress(), configuration.getNameNodePort()));
+    }
+
+    /**
+     * @param nameNode the name node to ask for permissions and report to, a stub of the remote one unless benchmarking
+     */
+    DataNode(SDFSConfiguration configuration, String dataNodeDir, INameNodeDataNodeProtocol nameNode) {
+        this.FILE_PATH = dataNodeDir+"/";
+        this.nameNodeStub = nameNode;
+        this.address = configuration.getDataNodeAddress();
+        this.port = configuration.getDataNodePort();
+
+        for (int i = 0; i < BLOCK_LOCK_AMOUNT; i++) {
+            blockLocks[i] = new ReentrantLock();
+        }
+
+        // a block file written aside by a write that never finished, the block file itself is whole
+        File[] tempFiles = new File(dataNodeDir).listFiles((dir, name) -> name.endsWith(".block.tmp"));
+        if (tempFiles != null) {
+            for (File tempFile : tempFiles) {
+                if (!tempFile.delete()) {
+                    System.err.println("Fail to delete "+tempFile+"!");
+                }
+            }
+        }
+        File[] blockFiles = new File(dataNodeDir).listFiles((dir, name) -> name.endsWith(".block"));
+        if (blockFiles != null) {
+            for (File blockFile : blockFiles) {
+                usedSpace.addAndGet(blockFile.length());
+            }
+        }
+    }
+
+    /**
+     * @return the state of the data node to report to the name node
+     */
+    public DataNodeInfo getDataNodeInfo() {
+        return new DataNodeInfo(address, port, usedSpace.get(), outstandingRequests.get());
+    }
+
+    long getCompressionInputBytes() {
+        return compressionInputBytes.get();
+    }
+
+    long getCompressionOutputBytes() {
+        return compressionOutputBytes.get();
+    }
+
+    void sendHeartbeat() {
+        nameNodeStub.sendHeartbeat(getDataNodeInfo());
+    }
+
+    /**
+     * report the stored blocks to the name node and delete the blocks it gives back
+     * @param full whether to report all the stored blocks instead of the change since the last report
+     * @return false if the name node can not be reached, the next report should be a full one then
+     */
+    boolean sendBlockReport(boolean full) {
+        reportLock.lock();
+        List<Integer> added;
+        List<Integer> removed;
+        if (full) {
+            added = getStoredBlocks();
+            removed = Collections.emptyList();
+        } else {
+            added = new ArrayList<>(addedBlocks);
+            removed = new ArrayList<>(removedBlocks);
+        }
+        addedBlocks.clear();
+        removedBlocks.clear();
+        reportLock.unlock();
+
+        List<Integer> deletionList = nameNodeStub.blockReport(new BlockReport(address, port, full, added, removed));
+        if (deletionList == null) {
+            return false;
+        }
+        for (int blockID : deletionList) {
+            deleteBlock(blockID);
+        }
+        return true;
+    }
+
+    private List<Integer> getStoredBlocks() {
+        List<Integer> storedBlocks = new ArrayList<>();
+        String[] names = new File(FILE_PATH).list((dir, name) -> name.endsWith(".block"));
+        if (names != null) {
+            for (String name : names) {
+                try {
+                    storedBlocks.add(Integer.parseInt(name.substring(0, name.length() - ".block".length())));
+                } catch (NumberFormatException e) {
+                    // not a block of ours
+                }
+            }
+        }
+        return storedBlocks;
+    }
+
+    private void deleteBlock(int blockID) {
+        File blockFile = new File(FILE_PATH + blockID+".block");
+        long length = blockFile.length();
+        if (blockFile.delete()) {
+            usedSpace.addAndGet(-length);
+            reportLock.lock();
+            addedBlocks.remove(blockID);
+            removedBlocks.add(blockID);
+            reportLock.unlock();
+        }
+    }
+
+    void requestStarted() {
+        outstandingRequests.incrementAndGet();
+    }
+
+    void requestFinished() {
+        outstandingRequests.decrementAndGet();
     }
 
     @Override
     public byte[] read(UUID token, int blockID, long position, int size) throws IllegalAccessTokenException, IllegalArgumentException {
         // ask name node access token
-        AccessTokenPermission accessTokenPermission = nameNodeStub.getAccessTokenPermission(token, null);
+        AccessTokenPermission accessTokenPermission = nameNodeStub.getAccessTokenPermission(token, address, port);
         if (accessTokenPermission == null) {
             throw new IllegalAccessTokenException();
         }
         if (!accessTokenPermission.getAllowedBlocks().contains(blockID)) {
             throw new IllegalAccessTokenException();
         }
-        if (position < 0 || position+size > BLOCK_SIZE) {
+        if (position < 0 || size < 0 || position+size > accessTokenPermission.getBlockSize()) {
             throw new IllegalArgumentException();
         }
 
+        // the part of the block past the end of the block file is a hole, it is left out and read as zeros
         File blockFile = new File(FILE_PATH + blockID+".block");
-        FileInputStream fileInputStream;
-        try {
-            fileInputStream = new FileInputStream(blockFile);
-        } catch (FileNotFoundException e) {
+        if (!blockFile.exists()) {
             return new byte[0];
         }
-        byte[] allData = new byte[(int)position+size];
-        int readSize = 0;
-        try {
-            readSize = fileInputStream.read(allData);
-            fileInputStream.close();
+        if (accessTokenPermission.isCompressed()) {
+            try {
+                byte[] block = readCompressed(blockFile, accessTokenPermission.getBlockSize());
+                int validSize = (int) Math.max(0, Math.min(size, block.length - position));
+                return validSize == 0 ? new byte[0] : Arrays.copyOfRange(block, (int) position, (int) position + validSize);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new byte[0];
+            }
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(blockFile, "r")) {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            int validSize = (int) Math.max(0, Math.min(size, fileChannel.size() - position));
+            ByteBuffer data = ByteBuffer.allocate(validSize);
+            while (data.hasRemaining()) {
+                if (fileChannel.read(data, position + data.position()) < 0) {
+                    break;
+                }
+            }
+            return data.array();
         } catch (IOException e) {
             e.printStackTrace();
+            return new byte[0];
         }
-        size = Math.min(size, readSize-(int)position);
-        byte[] data = new byte[size];
-        System.arraycopy(allData, (int) position, data, 0, size);
-        return data;
     }
 
     @Override
-    public void write(UUID token, int blockID, long position, byte[] buffer) throws IllegalAccessTokenException, IllegalArgumentException {
+    public void write(UUID token, int blockID, long position, byte[] buffer) throws IllegalAccessTokenException, IllegalArgumentException, IOException {
+        write(token, blockID, position, buffer, false, Collections.emptyList());
+    }
+
+    @Override
+    public void write(UUID token, int blockID, long position, byte[] buffer, boolean fresh, List<LocatedBlock> downstream) throws IllegalAccessTokenException, IllegalArgumentException, IOException {
         // ask name node access token
-        AccessTokenPermission accessTokenPermission = nameNodeStub.getAccessTokenPermission(token, null);
+        AccessTokenPermission accessTokenPermission = nameNodeStub.getAccessTokenPermission(token, address, port);
         if (accessTokenPermission == null || !accessTokenPermission.isWritable()) {
             throw new IllegalAccessTokenException();
         }
         if (!accessTokenPermission.getAllowedBlocks().contains(blockID)) {
             throw new IllegalAccessTokenException();
         }
+        if (position < 0 || position+buffer.length > accessTokenPermission.getBlockSize()) {
+            throw new IllegalArgumentException();
+        }
+        if (position < accessTokenPermission.getWritableOffset(blockID)) {
+            throw new IllegalAccessTokenException();
+        }
+        // only a block given to the file since it was opened may be started over, the others hold its data
+        if (fresh && !accessTokenPermission.isNewBlock(blockID)) {
+            throw new IllegalAccessTokenException();
+        }
+
+        // forward to the next data node while writing locally
+        Future<?> forwarding = null;
+        if (downstream != null && !downstream.isEmpty()) {
+            forwarding = pipelineExecutor.submit(() -> {
+                forward(token, position, buffer, fresh, downstream);
+                return null;
+            });
+        }
 
         File blockFile = new File(FILE_PATH + blockID+".block");
-        if (!blockFile.exists()) {
+        if (fresh) {
+            // a block file already there is left by an older block of the same id, none of it is the data of this one
+            deleteBlock(blockID);
+        }
+        boolean created = !blockFile.exists();
+        // the rest of the pipeline is waited for even if this write fails, so that it is not left running
+        IOException writeException = null;
+        // nothing written fresh is a hole, which is left without a block file
+        if (buffer.length > 0 || !fresh) {
             try {
-                blockFile.createNewFile();
+                if (accessTokenPermission.isCompressed()) {
+                    writeCompressed(blockFile, blockID, (int) position, buffer, accessTokenPermission.getBlockSize());
+                } else {
+                    writeInPlace(blockFile, position, buffer);
+                }
             } catch (IOException e) {
-                e.printStackTrace();
+                writeException = e;
             }
         }
-        int offset = (int) position;
-        if (offset < 0 || offset+buffer.length > BLOCK_SIZE) {
-            throw new IllegalArgumentException();
+        if (created && blockFile.exists()) {
+            reportLock.lock();
+            removedBlocks.remove(blockID);
+            addedBlocks.add(blockID);
+            reportLock.unlock();
+        }
+
+        // acknowledge only after the rest of the pipeline has
+        Throwable forwardingFailure = null;
+        if (forwarding != null) {
+            try {
+                forwarding.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                forwarding.cancel(true);
+                forwardingFailure = new InterruptedIOException("Interrupted while forwarding block "+blockID);
+            } catch (ExecutionException e) {
+                forwardingFailure = e.getCause();
+            }
         }
+        // a failure here comes first, the one of the rest of the pipeline is kept with it
+        if (writeException != null) {
+            if (forwardingFailure != null) {
+                writeException.addSuppressed(forwardingFailure);
+            }
+            throw writeException;
+        }
+        if (forwardingFailure instanceof RuntimeException) {
+            throw (RuntimeException) forwardingFailure;
+        } else if (forwardingFailure instanceof Error) {
+            throw (Error) forwardingFailure;
+        } else if (forwardingFailure instanceof IOException) {
+            throw (IOException) forwardingFailure;
+        } else if (forwardingFailure != null) {
+            throw new IOException(forwardingFailure);
+        }
+    }
+
+    /**
+     * write in place, a write past the end of the block file leaves a hole instead of zeros on the disk
+     */
+    private void writeInPlace(File blockFile, long position, byte[] buffer) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(blockFile, "rw")) {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            long oldLength = fileChannel.size();
+            ByteBuffer data = ByteBuffer.wrap(buffer);
+            while (data.hasRemaining()) {
+                fileChannel.write(data, position + data.position());
+            }
+            usedSpace.addAndGet(Math.max(0, fileChannel.size() - oldLength));
+        }
+    }
+
+    /**
+     * @param blockSize the size of the block, no data of it is longer
+     * @return the data of a compressed block up to its last written byte
+     * @throws IOException if the block file can not be read or is corrupt
+     */
+    private byte[] readCompressed(File blockFile, int blockSize) throws IOException {
+        byte[] stored = Files.readAllBytes(blockFile.toPath());
+        if (stored.length < COMPRESSION_HEADER_SIZE) {
+            throw new IOException("corrupt block");
+        }
+        ByteBuffer header = ByteBuffer.wrap(stored, 0, COMPRESSION_HEADER_SIZE);
+        byte form = header.get();
+        int length = header.getInt();
+        if (form == STORED_RAW && length == stored.length - COMPRESSION_HEADER_SIZE) {
+            return Arrays.copyOfRange(stored, COMPRESSION_HEADER_SIZE, stored.length);
+        } else if (form == STORED_LZ4) {
+            return LZ4Codec.decompress(stored, COMPRESSION_HEADER_SIZE, stored.length - COMPRESSION_HEADER_SIZE, length, blockSize);
+        }
+        throw new IOException("corrupt block");
+    }
+
+    /**
+     * change a compressed block by decompressing it, writing the data on it and compressing it again
+     * the data is stored as it is if compressing it does not make it smaller
+     * @throws IOException if the block is corrupt or the new block file can not be put in place, the old one is left as it was
+     */
+    private void writeCompressed(File blockFile, int blockID, int position, byte[] buffer, int blockSize) throws IOException {
+        ReentrantLock blockLock = blockLocks[Math.floorMod(blockID, BLOCK_LOCK_AMOUNT)];
+        File tempFile = new File(blockFile.getPath() + ".tmp");
+        blockLock.lock();
         try {
-            FileInputStream fileInputStream = new FileInputStream(blockFile);
-            byte[] oldData = new byte[offset];
-            int readSize = fileInputStream.read(oldData);
-            fileInputStream.close();
-            // if old data
-            // need to load original data
-            byte[] newData = new byte[offset+buffer.length];
-            if (readSize != -1) {
-                System.arraycopy(oldData, 0, newData, 0, readSize);
-                for (int i = readSize; i < offset; i++) {
-                    newData[i] = 0;
-                }
+            long oldLength = blockFile.length();
+            byte[] block = blockFile.exists() ? readCompressed(blockFile, blockSize) : new byte[0];
+            if (position + buffer.length > block.length) {
+                block = Arrays.copyOf(block, position + buffer.length);
+            }
+            System.arraycopy(buffer, 0, block, position, buffer.length);
+
+            byte[] compressed = new byte[LZ4Codec.maxCompressedLength(block.length)];
+            int compressedLength = LZ4Codec.compress(block, block.length, compressed);
+            ByteBuffer stored;
+            if (compressedLength < block.length) {
+                stored = ByteBuffer.allocate(COMPRESSION_HEADER_SIZE + compressedLength);
+                stored.put(STORED_LZ4).putInt(block.length).put(compressed, 0, compressedLength);
             } else {
-                for (int i = 0; i < offset; i++) {
-                    newData[i] = 0;
-                }
+                stored = ByteBuffer.allocate(COMPRESSION_HEADER_SIZE + block.length);
+                stored.put(STORED_RAW).putInt(block.length).put(block);
             }
-            System.arraycopy(buffer, 0, newData, offset, buffer.length);
-            FileOutputStream fileOutputStream = new FileOutputStream(blockFile);
-            fileOutputStream.write(newData);
-            fileOutputStream.close();
+
+            // write the new block file aside and then put it in place of the old one, so a read sees either of them whole
+            Files.write(tempFile.toPath(), stored.array());
+            Files.move(tempFile.toPath(), blockFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            usedSpace.addAndGet(stored.capacity() - oldLength);
+            compressionInputBytes.addAndGet(block.length);
+            compressionOutputBytes.addAndGet(stored.capacity());
         } catch (IOException e) {
-            e.printStackTrace();
+            if (tempFile.exists() && !tempFile.delete()) {
+                System.err.println("Fail to delete "+tempFile+"!");
+            }
+            throw e;
+        } finally {
+            blockLock.unlock();
         }
     }
 
-
+    /**
+     * write the data to the next data node of the pipeline, which forwards it to the rest
+     * a data node that can not be reached is dropped from the pipeline and reported to the name node
+     * which takes it out of the block, and the data goes to the one after it instead
+     */
+    private void forward(UUID token, long position, byte[] buffer, boolean fresh, List<LocatedBlock> downstream) throws IOException {
+        for (int i = 0; i < downstream.size(); i++) {
+            LocatedBlock next = downstream.get(i);
+            List<LocatedBlock> rest = new ArrayList<>(downstream.subList(i + 1, downstream.size()));
+            DataNodeStub dataNodeStub = new DataNodeStub(next.getAddress(), next.getPort());
+            if (dataNodeStub.write(token, next.getId(), position, buffer, fresh, rest)) {
+                return;
+            }
+            System.err.println("Data node "+next.getAddress()+":"+next.getPort()+" dropped from the pipeline of block "+next.getId());
+            nameNodeStub.dropReplica(token, next);
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package sdfs.datanode;
+
+/**
+ * gauges read from a data node whenever they are asked for
+ */
+public class DataNodeMetrics implements DataNodeMetricsMBean {
+    private final DataNode dataNode;
+
+    DataNodeMetrics(DataNode dataNode) {
+        this.dataNode = dataNode;
+    }
+
+    @Override
+    public long getUsedSpace() {
+        return dataNode.getDataNodeInfo().getUsedSpace();
+    }
+
+    @Override
+    public int getOutstandingRequests() {
+        return dataNode.getDataNodeInfo().getOutstandingRequests();
+    }
+
+    @Override
+    public long getCompressionInputBytes() {
+        return dataNode.getCompressionInputBytes();
+    }
+
+    @Override
+    public long getCompressionOutputBytes() {
+        return dataNode.getCompressionOutputBytes();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long outputBytes = dataNode.getCompressionOutputBytes();
+        return outputBytes == 0 ? 1 : (double) dataNode.getCompressionInputBytes() / outputBytes;
+    }
+}
@@ -0,0 +1,25 @@
+package sdfs.datanode;
+
+/**
+ * the state of a data node
+ */
+public interface DataNodeMetricsMBean {
+    long getUsedSpace();
+
+    int getOutstandingRequests();
+
+    /**
+     * @return the bytes written to compressed blocks, before compression
+     */
+    long getCompressionInputBytes();
+
+    /**
+     * @return the bytes written to compressed blocks, after compression and with their headers
+     */
+    long getCompressionOutputBytes();
+
+    /**
+     * @return how many times smaller the compressed blocks written are, 1 if none is
+     */
+    double getCompressionRatio();
+}
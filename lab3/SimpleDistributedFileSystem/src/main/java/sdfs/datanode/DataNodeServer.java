@@ -1,6 +1,8 @@
 package sdfs.datanode;
 
 import sdfs.exception.IllegalAccessTokenException;
+import sdfs.metrics.MBeans;
+import sdfs.metrics.RequestMetrics;
 import sdfs.packet.DataNodeRequest;
 import sdfs.packet.DataNodeResponse;
 import sdfs.protocol.SDFSConfiguration;
@@ -11,11 +13,28 @@ import java.net.Socket;
 import java.util.UUID;
 
 public class DataNodeServer implements Runnable {
+    private final long HEARTBEAT_INTERVAL_MILLIS = 1000 * Long.getLong("sdfs.datanode.heartbeat.seconds", 3);
+    private final long BLOCK_REPORT_INTERVAL_MILLIS = 1000 * Long.getLong("sdfs.datanode.blockreport.seconds", 3);
+    // every this many block reports one is a full report, the others only carry the change
+    private final int FULL_BLOCK_REPORT_INTERVAL = Integer.getInteger("sdfs.datanode.blockreport.full.interval", 20);
     private DataNode dataNode;
     private ServerSocket serverSocket;
+    // how long handling each type of request takes, from receiving it to sending the response
+    private final RequestMetrics<DataNodeRequest.Type> requestMetrics = new RequestMetrics<>(DataNodeRequest.Type.class);
 
     public DataNodeServer(SDFSConfiguration configuration) {
-        this.dataNode = new DataNode(configuration.getNameNodeAddress(), configuration.getNameNodePort());
+        this(configuration, System.getProperty("sdfs.datanode.dir"));
+    }
+
+    /**
+     * to run several data nodes in the same process, each on its own port and directory
+     * @param configuration the data node address and port of it are the identity of this data node
+     * @param dataNodeDir the directory to store blocks in
+     */
+    public DataNodeServer(SDFSConfiguration configuration, String dataNodeDir) {
+        this.dataNode = new DataNode(configuration, dataNodeDir);
+        MBeans.register("type=DataNode,port="+configuration.getDataNodePort(), new DataNodeMetrics(dataNode));
+        requestMetrics.register("type=DataNodeRequest,port="+configuration.getDataNodePort());
         try {
             this.serverSocket = new ServerSocket(configuration.getDataNodePort());
         } catch (IOException e) {
@@ -27,8 +46,16 @@ public class DataNodeServer implements Runnable {
         return dataNode;
     }
 
+    public RequestMetrics<DataNodeRequest.Type> getRequestMetrics() {
+        return requestMetrics;
+    }
+
     @Override
     public void run() {
+        // register with the name node and keep it informed
+        new Thread(new HeartbeatSender(dataNode, HEARTBEAT_INTERVAL_MILLIS)).start();
+        // tell the name node which blocks are stored here and reclaim the unreferenced ones
+        new Thread(new BlockReporter(dataNode, BLOCK_REPORT_INTERVAL_MILLIS, FULL_BLOCK_REPORT_INTERVAL)).start();
         while (true) {
             Socket socketWithClient = null;
             try {
@@ -55,8 +82,10 @@ public class DataNodeServer implements Runnable {
                     InputStream inputStream = socketWithClient.getInputStream();
                     ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
                     DataNodeRequest request = (DataNodeRequest) objectInputStream.readObject();
+                    long start = System.nanoTime();
                     DataNodeResponse response;
                     // switch request type
+                    dataNode.requestStarted();
                     switch (request.getType()) {
                         case READ:
                             response = handleRead(request);
@@ -65,13 +94,16 @@ public class DataNodeServer implements Runnable {
                             response = handleWrite(request);
                             break;
                         default: // ignore this request
+                            dataNode.requestFinished();
                             return;
                     }
+                    dataNode.requestFinished();
                     // send response
                     OutputStream outputStream = socketWithClient.getOutputStream();
                     ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
                     objectOutputStream.writeObject(response);
                     objectOutputStream.flush();
+                    requestMetrics.record(request.getType(), System.nanoTime() - start);
                 }
             } catch (IOException | ClassNotFoundException | NullPointerException ignored) {
             }
@@ -102,11 +134,13 @@ public class DataNodeServer implements Runnable {
             long offset = request.getPosition();
             byte[] data = request.getData();
             try {
-                dataNode.write(token, blockNumber, offset, data);
+                dataNode.write(token, blockNumber, offset, data, request.isFresh(), request.getDownstream());
             } catch (IllegalAccessTokenException e) {
                 response.setIllegalAccessTokenException(e);
             } catch (IllegalArgumentException e) {
                 response.setIllegalArgumentException(e);
+            } catch (IOException e) {
+                response.setIOException(e);
             }
             return response;
         }
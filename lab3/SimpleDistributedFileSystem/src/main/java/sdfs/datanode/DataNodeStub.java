@@ -0,0 +1,72 @@
+package sdfs.datanode;
+
+import sdfs.exception.IllegalAccessTokenException;
+import sdfs.filetree.LocatedBlock;
+import sdfs.packet.DataNodeRequest;
+import sdfs.packet.DataNodeResponse;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * the stub a data node forwards writes of the pipeline with
+ */
+class DataNodeStub {
+    private InetAddress address;
+    private int port;
+
+    DataNodeStub(InetAddress address, int port) {
+        this.address = address;
+        this.port = port;
+    }
+
+    /**
+     * send request to DataNode and return the response
+     * @param request sent to DataNode
+     * @return response from DataNode, null if it can not be reached
+     */
+    private DataNodeResponse sendRequest(DataNodeRequest request) {
+        try {
+            Socket socket = new Socket(address, port);
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
+            objectOutputStream.writeObject(request);
+            objectOutputStream.flush();
+            ObjectInputStream objectInputStream = new ObjectInputStream(socket.getInputStream());
+            DataNodeResponse dataNodeResponse = (DataNodeResponse) objectInputStream.readObject();
+            socket.close();
+            return dataNodeResponse;
+        } catch (IOException e) {
+            System.err.println("Socket error!");
+            e.printStackTrace();
+        } catch (ClassNotFoundException e) {
+            System.err.println("Illegal response!");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * @return false if the data node can not be reached
+     * @throws IOException if the data node or one after it fails to store the data
+     */
+    boolean write(UUID fileAccessToken, int blockNumber, long position, byte[] buffer, boolean fresh, List<LocatedBlock> downstream) throws IllegalAccessTokenException, IllegalArgumentException, IOException {
+        DataNodeRequest request = new DataNodeRequest(DataNodeRequest.Type.WRITE, fileAccessToken, blockNumber, position, buffer, fresh, downstream);
+        DataNodeResponse response = sendRequest(request);
+        if (response == null) {
+            return false;
+        }
+        if (response.getIllegalArgumentException() != null) {
+            throw response.getIllegalArgumentException();
+        } else if (response.getIllegalAccessTokenException() != null) {
+            throw response.getIllegalAccessTokenException();
+        } else if (response.getIOException() != null) {
+            throw response.getIOException();
+        }
+        return true;
+    }
+}
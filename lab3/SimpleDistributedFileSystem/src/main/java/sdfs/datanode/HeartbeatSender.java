@@ -0,0 +1,27 @@
+package sdfs.datanode;
+
+/**
+ * send the state of the data node to the name node periodically
+ * the first heartbeat registers the data node
+ */
+public class HeartbeatSender implements Runnable {
+    private DataNode dataNode;
+    private long intervalMillis;
+
+    HeartbeatSender(DataNode dataNode, long intervalMillis) {
+        this.dataNode = dataNode;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                dataNode.sendHeartbeat();
+                Thread.sleep(intervalMillis);
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
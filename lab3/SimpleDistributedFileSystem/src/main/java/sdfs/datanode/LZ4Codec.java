@@ -0,0 +1,170 @@
+package sdfs.datanode;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * the lz4 block format in plain java, fast rather than small
+ * a block is a run of sequences, each some literals copied as they are and then a match copied from the data before it
+ * a token byte holds the literal length in its high 4 bits and the match length minus MIN_MATCH in its low 4 bits
+ * a length of 15 goes on in the following bytes, each added to it, until one is not 255
+ * the match is given by its distance back, 2 bytes little endian, the last sequence has literals only
+ */
+final class LZ4Codec {
+    private static final int MIN_MATCH = 4;
+    // the last match must start this far before the end, and the last bytes are always literals
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int LAST_LITERALS = 5;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int RUN_MASK = 15;
+
+    private static final int HASH_BITS = 12;
+
+    private LZ4Codec() {
+    }
+
+    /**
+     * @return the most bytes the data of the length may take once compressed
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * @param dest at least maxCompressedLength(length) long
+     * @return the number of bytes written to dest
+     */
+    static int compress(byte[] src, int length, byte[] dest) {
+        // the last position each hash of 4 bytes was seen at
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int anchor = 0;
+        int destPos = 0;
+        int position = 0;
+        int matchLimit = length - MATCH_FIND_LIMIT;
+        int literalLimit = length - LAST_LITERALS;
+        while (position <= matchLimit) {
+            int sequence = readInt(src, position);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int match = table[hash];
+            table[hash] = position;
+            if (match < 0 || position - match > MAX_DISTANCE || readInt(src, match) != sequence) {
+                position++;
+                continue;
+            }
+            // take in the equal bytes before the match, as long as they are not written already
+            while (position > anchor && match > 0 && src[position - 1] == src[match - 1]) {
+                position--;
+                match--;
+            }
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < literalLimit && src[position + matchLength] == src[match + matchLength]) {
+                matchLength++;
+            }
+            destPos = writeSequence(src, anchor, position - anchor, position - match, matchLength, dest, destPos);
+            position += matchLength;
+            anchor = position;
+        }
+        return writeLastLiterals(src, anchor, length - anchor, dest, destPos);
+    }
+
+    /**
+     * @param length the length of the data before it was compressed
+     * @param maxLength the longest the data may be, a longer length is taken as corrupt instead of allocated
+     * @return the data
+     * @throws IOException if the compressed data is corrupt
+     */
+    static byte[] decompress(byte[] src, int offset, int compressedLength, int length, int maxLength) throws IOException {
+        if (length < 0 || length > maxLength) {
+            throw new IOException("corrupt block");
+        }
+        byte[] dest = new byte[length];
+        int end = offset + compressedLength;
+        int srcPos = offset;
+        int destPos = 0;
+        try {
+            while (true) {
+                int token = src[srcPos++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[srcPos++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, srcPos, dest, destPos, literalLength);
+                srcPos += literalLength;
+                destPos += literalLength;
+                if (srcPos >= end) {
+                    break;
+                }
+                int distance = (src[srcPos] & 0xFF) | (src[srcPos + 1] & 0xFF) << 8;
+                srcPos += 2;
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[srcPos++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int match = destPos - distance;
+                if (distance == 0 || match < 0 || destPos + matchLength > length) {
+                    throw new IOException("corrupt block");
+                }
+                // the match may overlap the bytes it is copied to, so it is copied a byte at a time
+                for (int i = 0; i < matchLength; i++) {
+                    dest[destPos++] = dest[match++];
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("corrupt block", e);
+        }
+        if (srcPos != end || destPos != length) {
+            throw new IOException("corrupt block");
+        }
+        return dest;
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int distance, int matchLength, byte[] dest, int destPos) {
+        int tokenPos = destPos++;
+        int literalRun = Math.min(literalLength, RUN_MASK);
+        int matchRun = Math.min(matchLength - MIN_MATCH, RUN_MASK);
+        dest[tokenPos] = (byte) (literalRun << 4 | matchRun);
+        destPos = writeLength(literalLength, dest, destPos);
+        System.arraycopy(src, literalStart, dest, destPos, literalLength);
+        destPos += literalLength;
+        dest[destPos++] = (byte) distance;
+        dest[destPos++] = (byte) (distance >>> 8);
+        return writeLength(matchLength - MIN_MATCH, dest, destPos);
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalStart, int literalLength, byte[] dest, int destPos) {
+        dest[destPos++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+        destPos = writeLength(literalLength, dest, destPos);
+        System.arraycopy(src, literalStart, dest, destPos, literalLength);
+        return destPos + literalLength;
+    }
+
+    /**
+     * write the part of a length the token can not hold
+     */
+    private static int writeLength(int length, byte[] dest, int destPos) {
+        if (length < RUN_MASK) {
+            return destPos;
+        }
+        length -= RUN_MASK;
+        while (length >= 255) {
+            dest[destPos++] = (byte) 255;
+            length -= 255;
+        }
+        dest[destPos++] = (byte) length;
+        return destPos;
+    }
+
+    private static int readInt(byte[] src, int position) {
+        return (src[position] & 0xFF) | (src[position + 1] & 0xFF) << 8 | (src[position + 2] & 0xFF) << 16 | (src[position + 3] & 0xFF) << 24;
+    }
+}
@@ -1,6 +1,9 @@
 package sdfs.datanode;
 
 import sdfs.entity.AccessTokenPermission;
+import sdfs.entity.BlockReport;
+import sdfs.entity.DataNodeInfo;
+import sdfs.filetree.LocatedBlock;
 import sdfs.packet.NameNodeRequest;
 import sdfs.packet.NameNodeResponse;
 import sdfs.protocol.INameNodeDataNodeProtocol;
@@ -10,6 +13,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.List;
 import java.util.UUID;
 
 public class NameNodeStub implements INameNodeDataNodeProtocol {
@@ -21,9 +25,7 @@ public class NameNodeStub implements INameNodeDataNodeProtocol {
         this.port = port;
     }
 
-    @Override
-    public AccessTokenPermission getAccessTokenPermission(UUID token, InetAddress dataNodeAddress) {
-        NameNodeRequest request = new NameNodeRequest(NameNodeRequest.Type.GET_ACCESS_TOKEN_PERMISSION, null, token, 0);
+    private NameNodeResponse sendRequest(NameNodeRequest request) {
         NameNodeResponse response = null;
         try {
             Socket socket = new Socket(this.address, port);
@@ -40,7 +42,35 @@ public class NameNodeStub implements INameNodeDataNodeProtocol {
             System.err.println("Illegal response!");
             e.printStackTrace();
         }
+        return response;
+    }
+
+    @Override
+    public AccessTokenPermission getAccessTokenPermission(UUID token, InetAddress dataNodeAddress, int dataNodePort) {
+        DataNodeInfo dataNodeInfo = new DataNodeInfo(dataNodeAddress, dataNodePort, 0, 0);
+        NameNodeResponse response = sendRequest(new NameNodeRequest(NameNodeRequest.Type.GET_ACCESS_TOKEN_PERMISSION, token, dataNodeInfo));
         assert response != null;
         return response.getAccessTokenPermission();
     }
+
+    @Override
+    public void sendHeartbeat(DataNodeInfo dataNodeInfo) {
+        // a lost heartbeat is simply retried by the next one
+        sendRequest(new NameNodeRequest(NameNodeRequest.Type.HEARTBEAT, null, dataNodeInfo));
+    }
+
+    /**
+     * @return the blocks to delete, null if the name node can not be reached
+     */
+    @Override
+    public List<Integer> blockReport(BlockReport blockReport) {
+        NameNodeResponse response = sendRequest(new NameNodeRequest(NameNodeRequest.Type.BLOCK_REPORT, blockReport));
+        return response == null ? null : response.getDeletionList();
+    }
+
+    @Override
+    public void dropReplica(UUID token, LocatedBlock replica) {
+        // if the name node can not be reached the replica stays listed, readers fall back to the other replicas
+        sendRequest(new NameNodeRequest(NameNodeRequest.Type.DROP_REPLICA, token, replica));
+    }
 }
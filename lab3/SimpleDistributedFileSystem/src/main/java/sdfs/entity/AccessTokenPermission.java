@@ -1,16 +1,67 @@
 package sdfs.entity;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 public class AccessTokenPermission implements Serializable {
     private static final long serialVersionUID = -6174811460052859447L;
     private boolean writable;
     private Set<Integer> allowedBlocks;
+    // the block size of the file, no read or write may go past it
+    private int blockSize;
+    // for a file opened to append to, the offset each of its old blocks may be written from, null otherwise
+    private Map<Integer, Integer> appendOffsets;
+    // whether the blocks of the file are stored compressed
+    private boolean compressed;
+    // the allowed blocks given to a file opened to write since it was opened, which the writer may start over
+    private Set<Integer> newBlocks;
 
-    public AccessTokenPermission(boolean writable, Set<Integer> allowBlocks) {
+    public AccessTokenPermission(boolean writable, Set<Integer> allowBlocks, int blockSize) {
+        this(writable, allowBlocks, blockSize, null);
+    }
+
+    public AccessTokenPermission(boolean writable, Set<Integer> allowBlocks, int blockSize, Map<Integer, Integer> appendOffsets) {
+        this(writable, allowBlocks, blockSize, appendOffsets, false);
+    }
+
+    public AccessTokenPermission(boolean writable, Set<Integer> allowBlocks, int blockSize, Map<Integer, Integer> appendOffsets, boolean compressed) {
+        this(writable, allowBlocks, blockSize, appendOffsets, compressed, Collections.emptySet());
+    }
+
+    public AccessTokenPermission(boolean writable, Set<Integer> allowBlocks, int blockSize, Map<Integer, Integer> appendOffsets, boolean compressed, Set<Integer> newBlocks) {
         this.writable = writable;
         this.allowedBlocks = allowBlocks;
+        this.blockSize = blockSize;
+        this.appendOffsets = appendOffsets;
+        this.compressed = compressed;
+        this.newBlocks = newBlocks;
+    }
+
+    /**
+     * @return the first offset the block may be written at
+     */
+    public int getWritableOffset(int blockID) {
+        if (appendOffsets == null) {
+            return 0;
+        }
+        return appendOffsets.getOrDefault(blockID, 0);
+    }
+
+    /**
+     * @return whether the block was given to the file since it was opened, a block file of its id is stale then
+     */
+    public boolean isNewBlock(int blockID) {
+        return newBlocks.contains(blockID);
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
     }
 
     public boolean isWritable() {
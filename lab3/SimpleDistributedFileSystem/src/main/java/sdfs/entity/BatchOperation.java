@@ -0,0 +1,72 @@
+package sdfs.entity;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * one operation of a batch sent to the name node in a single request
+ */
+public class BatchOperation implements Serializable {
+    private static final long serialVersionUID = -3303530520862186493L;
+    private Type type;
+    private String fileUri;
+    private FileAttributes fileAttributes;
+    private UUID token;
+    private long newFileSize;
+
+    private BatchOperation(Type type, String fileUri, FileAttributes fileAttributes, UUID token, long newFileSize) {
+        this.type = type;
+        this.fileUri = fileUri;
+        this.fileAttributes = fileAttributes;
+        this.token = token;
+        this.newFileSize = newFileSize;
+    }
+
+    public static BatchOperation mkdir(String fileUri) {
+        return new BatchOperation(Type.MK_DIR, fileUri, null, null, 0);
+    }
+
+    public static BatchOperation create(String fileUri) {
+        return create(fileUri, new FileAttributes());
+    }
+
+    public static BatchOperation create(String fileUri, FileAttributes fileAttributes) {
+        return new BatchOperation(Type.CREATE, fileUri, fileAttributes, null, 0);
+    }
+
+    public static BatchOperation openReadonly(String fileUri) {
+        return new BatchOperation(Type.OPEN_READ_ONLY, fileUri, null, null, 0);
+    }
+
+    public static BatchOperation closeReadonlyFile(UUID token) {
+        return new BatchOperation(Type.CLOSE_READ_ONLY, null, null, token, 0);
+    }
+
+    public static BatchOperation closeReadwriteFile(UUID token, long newFileSize) {
+        return new BatchOperation(Type.CLOSE_READ_WRITE, null, null, token, newFileSize);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getFileUri() {
+        return fileUri;
+    }
+
+    public FileAttributes getFileAttributes() {
+        return fileAttributes;
+    }
+
+    public UUID getToken() {
+        return token;
+    }
+
+    public long getNewFileSize() {
+        return newFileSize;
+    }
+
+    public enum Type {
+        MK_DIR, CREATE, OPEN_READ_ONLY, CLOSE_READ_ONLY, CLOSE_READ_WRITE
+    }
+}
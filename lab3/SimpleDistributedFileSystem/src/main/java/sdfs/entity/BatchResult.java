@@ -0,0 +1,42 @@
+package sdfs.entity;
+
+import java.io.Serializable;
+
+/**
+ * the result of one operation of a batch
+ * an operation either succeeds, with the opened file for create and open, or fails with the exception it threw
+ */
+public class BatchResult implements Serializable {
+    private static final long serialVersionUID = 6150217906474740651L;
+    private SDFSFileChannelData sdfsFileChannelData;
+    private Exception exception;
+
+    public BatchResult() {
+    }
+
+    public BatchResult(SDFSFileChannelData sdfsFileChannelData) {
+        this.sdfsFileChannelData = sdfsFileChannelData;
+    }
+
+    public BatchResult(Exception exception) {
+        this.exception = exception;
+    }
+
+    public boolean isSucceeded() {
+        return exception == null;
+    }
+
+    /**
+     * @return the opened file of a create or open, null for other operations or if failed
+     */
+    public SDFSFileChannelData getSDFSFileChannelData() {
+        return sdfsFileChannelData;
+    }
+
+    /**
+     * @return the exception the operation threw, null if succeeded
+     */
+    public Exception getException() {
+        return exception;
+    }
+}
@@ -0,0 +1,50 @@
+package sdfs.entity;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * the blocks a data node stores, or the change of them since its last report
+ */
+public class BlockReport implements Serializable {
+    private static final long serialVersionUID = 4181146017362553742L;
+    private InetAddress address;
+    private int port;
+    private boolean full;
+    private List<Integer> addedBlocks;
+    private List<Integer> removedBlocks;
+
+    /**
+     * @param full          whether the added blocks are all the blocks of the data node
+     * @param addedBlocks   the blocks stored since the last report, or all the blocks for a full report
+     * @param removedBlocks the blocks deleted since the last report, empty for a full report
+     */
+    public BlockReport(InetAddress address, int port, boolean full, List<Integer> addedBlocks, List<Integer> removedBlocks) {
+        this.address = address;
+        this.port = port;
+        this.full = full;
+        this.addedBlocks = addedBlocks;
+        this.removedBlocks = removedBlocks;
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public List<Integer> getAddedBlocks() {
+        return addedBlocks;
+    }
+
+    public List<Integer> getRemovedBlocks() {
+        return removedBlocks;
+    }
+}
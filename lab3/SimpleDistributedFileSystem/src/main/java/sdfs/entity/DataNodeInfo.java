@@ -0,0 +1,38 @@
+package sdfs.entity;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+
+/**
+ * what a data node tells the name node about itself in a heartbeat
+ */
+public class DataNodeInfo implements Serializable {
+    private static final long serialVersionUID = -3315716399296466117L;
+    private InetAddress address;
+    private int port;
+    private long usedSpace;
+    private int outstandingRequests;
+
+    public DataNodeInfo(InetAddress address, int port, long usedSpace, int outstandingRequests) {
+        this.address = address;
+        this.port = port;
+        this.usedSpace = usedSpace;
+        this.outstandingRequests = outstandingRequests;
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getUsedSpace() {
+        return usedSpace;
+    }
+
+    public int getOutstandingRequests() {
+        return outstandingRequests;
+    }
+}
@@ -0,0 +1,35 @@
+package sdfs.entity;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * one page of the entries of a directory, in the order of their names
+ */
+public class DirListing implements Serializable {
+    private List<FileStatus> fileStatusList;
+    private boolean hasMore;
+
+    /**
+     * @param hasMore whether there are entries after the last one of this page
+     */
+    public DirListing(List<FileStatus> fileStatusList, boolean hasMore) {
+        this.fileStatusList = fileStatusList;
+        this.hasMore = hasMore;
+    }
+
+    public List<FileStatus> getFileStatusList() {
+        return fileStatusList;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * @return the name to list the next page after, null if the page is empty
+     */
+    public String getLastName() {
+        return fileStatusList.isEmpty() ? null : fileStatusList.get(fileStatusList.size() - 1).getName();
+    }
+}
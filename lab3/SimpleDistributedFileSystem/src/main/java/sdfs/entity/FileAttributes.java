@@ -0,0 +1,61 @@
+package sdfs.entity;
+
+import java.io.Serializable;
+
+/**
+ * the attributes of a file, chosen when it is created
+ */
+public class FileAttributes implements Serializable {
+    // kept from before the compression was added, so that the file trees and logs written then can still be read
+    private static final long serialVersionUID = 2536431303107424625L;
+    public static final int DEFAULT_REPLICATION = 1;
+    // leave the block size to the name node
+    public static final int DEFAULT_BLOCK_SIZE = 0;
+
+    private int replication;
+    private int blockSize;
+    // whether the data nodes store the blocks of the file compressed
+    private boolean compressed;
+
+    public FileAttributes() {
+        this(DEFAULT_REPLICATION);
+    }
+
+    /**
+     * @param replication the number of data nodes each block of the file is written to
+     */
+    public FileAttributes(int replication) {
+        this(replication, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param replication the number of data nodes each block of the file is written to
+     * @param blockSize   the size of each block of the file in bytes, DEFAULT_BLOCK_SIZE for the default of the cluster
+     */
+    public FileAttributes(int replication, int blockSize) {
+        this(replication, blockSize, false);
+    }
+
+    /**
+     * @param replication the number of data nodes each block of the file is written to
+     * @param blockSize   the size of each block of the file in bytes, DEFAULT_BLOCK_SIZE for the default of the cluster
+     * @param compressed  whether the data nodes store the blocks of the file compressed, which suits text and logs
+     */
+    public FileAttributes(int replication, int blockSize, boolean compressed) {
+        this.replication = replication;
+        this.blockSize = blockSize;
+        this.compressed = compressed;
+    }
+
+    public int getReplication() {
+        return replication;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+}
@@ -1,6 +1,9 @@
 package sdfs.entity;
 
+import sdfs.datanode.DataNode;
 import sdfs.filetree.BlockInfo;
+import sdfs.filetree.BlockList;
+import sdfs.filetree.DataNodeTable;
 import sdfs.filetree.LocatedBlock;
 
 import java.io.Serializable;
@@ -10,56 +13,176 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+/**
+ * blocks are kept in a compact block list
+ * block info and located block views are only materialized when asked for
+ */
 public class FileInfo implements Serializable {
-    private List<BlockInfo> blockInfoList = new ArrayList<>();
+    private BlockList blockList;
+    private DataNodeTable dataNodeTable;
     private long fileSize;
+    // the version of the file node this info was copied from
+    private long version;
+    private int blockSize;
 
-    public FileInfo(List<BlockInfo> blockInfoList, long fileSize) {
-        this.blockInfoList = blockInfoList;
+    public FileInfo(BlockList blockList, DataNodeTable dataNodeTable, long fileSize) {
+        this(blockList, dataNodeTable, fileSize, 0, DataNode.BLOCK_SIZE);
+    }
+
+    public FileInfo(BlockList blockList, DataNodeTable dataNodeTable, long fileSize, long version, int blockSize) {
+        this.blockList = blockList;
+        this.dataNodeTable = dataNodeTable;
         this.fileSize = fileSize;
+        this.version = version;
+        this.blockSize = blockSize;
+    }
+
+    public BlockList getBlockList() {
+        return blockList;
     }
 
     public List<BlockInfo> getBlockInfoList() {
+        List<BlockInfo> blockInfoList = new ArrayList<>();
+        for (int i = 0; i < blockList.size(); i++) {
+            blockInfoList.add(getBlockInfo(i));
+        }
         return blockInfoList;
     }
 
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
     public long getFileSize() {
         return fileSize;
     }
 
-    public Set<Integer> getBlockNumberSetOfAddress(InetAddress inetAddress) {
+    public Set<Integer> getBlockNumberSetOfDataNode(InetAddress inetAddress, int port) {
+        // find the data node in the table first, the table is much smaller than the file
+        int tableSize = dataNodeTable.size();
+        boolean[] onDataNode = new boolean[tableSize];
+        for (int i = 0; i < tableSize; i++) {
+            onDataNode[i] = dataNodeTable.getAddress(i).equals(inetAddress) && dataNodeTable.getPort(i) == port;
+        }
         Set<Integer> result = new HashSet<>();
-        for (BlockInfo blockInfo : blockInfoList) {
-            for (LocatedBlock locatedBlock : blockInfo) {
-                if (locatedBlock.getAddress().equals(inetAddress)) {
-                    result.add(locatedBlock.getId());
+        for (int i = 0; i < blockList.size(); i++) {
+            for (int j = 0; j < blockList.getReplication(); j++) {
+                int dataNodeIndex = blockList.getDataNodeIndex(i, j);
+                if (dataNodeIndex >= 0 && dataNodeIndex < tableSize && onDataNode[dataNodeIndex]) {
+                    result.add(blockList.getId(i));
                 }
             }
         }
         return result;
     }
 
+    /**
+     * @return all the replicas of the block, the first one is where writes start
+     */
     public BlockInfo getBlockInfo(int blockNumber) {
-        return blockInfoList.get(blockNumber);
+        BlockInfo blockInfo = new BlockInfo();
+        int id = blockList.getId(blockNumber);
+        for (int i = 0; i < blockList.getReplication(); i++) {
+            int dataNodeIndex = blockList.getDataNodeIndex(blockNumber, i);
+            if (dataNodeIndex != BlockList.NO_DATA_NODE) {
+                blockInfo.addLocatedBlock(dataNodeTable.getLocatedBlock(dataNodeIndex, id));
+            }
+        }
+        return blockInfo;
+    }
+
+    /**
+     * @return the first replica of the block
+     */
+    public LocatedBlock getLocatedBlock(int blockNumber) {
+        return dataNodeTable.getLocatedBlock(blockList.getDataNodeIndex(blockNumber, 0), blockList.getId(blockNumber));
+    }
+
+    /**
+     * take a replica that did not get the data of its block out of the block, the other replicas keep their order
+     * @return false if no block of the file has the replica, or it is the only replica of its block
+     */
+    public boolean removeLocatedBlock(LocatedBlock locatedBlock) {
+        // the data node is not added to the table if it is not there, unlike indexOf
+        int dataNodeIndex = BlockList.NO_DATA_NODE;
+        for (int i = 0; i < dataNodeTable.size(); i++) {
+            if (dataNodeTable.getAddress(i).equals(locatedBlock.getAddress()) && dataNodeTable.getPort(i) == locatedBlock.getPort()) {
+                dataNodeIndex = i;
+            }
+        }
+        if (dataNodeIndex == BlockList.NO_DATA_NODE) {
+            return false;
+        }
+        // the block written last is the likeliest one
+        for (int i = blockList.size() - 1; i >= 0; i--) {
+            if (blockList.getId(i) != locatedBlock.getId()) {
+                continue;
+            }
+            List<Integer> remaining = new ArrayList<>();
+            boolean found = false;
+            for (int j = 0; j < blockList.getReplication(); j++) {
+                int replica = blockList.getDataNodeIndex(i, j);
+                if (replica == dataNodeIndex) {
+                    found = true;
+                } else if (replica != BlockList.NO_DATA_NODE) {
+                    remaining.add(replica);
+                }
+            }
+            if (!found || remaining.isEmpty()) {
+                return false;
+            }
+            int[] dataNodeIndexes = new int[remaining.size()];
+            for (int j = 0; j < dataNodeIndexes.length; j++) {
+                dataNodeIndexes[j] = remaining.get(j);
+            }
+            blockList.set(i, locatedBlock.getId(), dataNodeIndexes);
+            return true;
+        }
+        return false;
     }
 
     public int getBlockAmount() {
-        return blockInfoList.size();
+        return blockList.size();
+    }
+
+    public int getReplication() {
+        return blockList.getReplication();
     }
 
     public void setBlockInfoByIndex(int blockIndex, BlockInfo blockInfo) {
-        blockInfoList.set(blockIndex, blockInfo);
+        blockList.set(blockIndex, blockInfo.iterator().next().getId(), toDataNodeIndexes(blockInfo));
     }
 
     public void addBlockInfo(BlockInfo blockInfo) {
-        blockInfoList.add(blockInfo);
+        blockList.add(blockInfo.iterator().next().getId(), toDataNodeIndexes(blockInfo));
+    }
+
+    private int[] toDataNodeIndexes(BlockInfo blockInfo) {
+        List<Integer> dataNodeIndexList = new ArrayList<>();
+        for (LocatedBlock locatedBlock : blockInfo) {
+            dataNodeIndexList.add(dataNodeTable.indexOf(locatedBlock.getAddress(), locatedBlock.getPort()));
+        }
+        int[] dataNodeIndexes = new int[dataNodeIndexList.size()];
+        for (int i = 0; i < dataNodeIndexes.length; i++) {
+            dataNodeIndexes[i] = dataNodeIndexList.get(i);
+        }
+        return dataNodeIndexes;
     }
 
     public void setFileSize(long fileSize) {
         this.fileSize = fileSize;
     }
 
-    public void removeLastBlockInfo() {
-        blockInfoList.remove(blockInfoList.size()-1);
+    /**
+     * @return the id of the removed block
+     */
+    public int removeLastBlockInfo() {
+        int id = blockList.getId(blockList.size() - 1);
+        blockList.removeLast();
+        return id;
     }
 }
@@ -0,0 +1,73 @@
+package sdfs.entity;
+
+import sdfs.filetree.Node;
+
+import java.io.Serializable;
+
+/**
+ * what is known of a file or directory without opening it
+ * a directory has no size, blocks, block size, replication or version of its own, they are all 0
+ */
+public class FileStatus implements Serializable {
+    private String name;
+    private Node.Type type;
+    private long fileSize;
+    private int blockAmount;
+    private int blockSize;
+    private int replication;
+    private boolean compressed;
+    private long version;
+
+    public FileStatus(String name, Node.Type type, long fileSize, int blockAmount, int blockSize, int replication, boolean compressed, long version) {
+        this.name = name;
+        this.type = type;
+        this.fileSize = fileSize;
+        this.blockAmount = blockAmount;
+        this.blockSize = blockSize;
+        this.replication = replication;
+        this.compressed = compressed;
+        this.version = version;
+    }
+
+    /**
+     * @return the name in its directory, without the path
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Node.Type getType() {
+        return type;
+    }
+
+    public boolean isDirectory() {
+        return type == Node.Type.DIR;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getBlockAmount() {
+        return blockAmount;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getReplication() {
+        return replication;
+    }
+
+    /**
+     * @return whether the data nodes store the blocks of the file compressed
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
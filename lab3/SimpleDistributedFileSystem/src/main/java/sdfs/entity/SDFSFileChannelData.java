@@ -9,11 +9,33 @@ public class SDFSFileChannelData implements Serializable {
     private UUID token;
     private FileInfo fileInfo;
     private boolean writable;
+    // only data past the end of the file when it was opened may be written
+    private boolean appending;
+    // the partial last block of a file opened to append to is shared with other files, so it is copied on write
+    private boolean tailShared;
 
     public SDFSFileChannelData(FileInfo fileInfo, boolean writable, UUID token) {
+        this(fileInfo, writable, false, token);
+    }
+
+    public SDFSFileChannelData(FileInfo fileInfo, boolean writable, boolean appending, UUID token) {
+        this(fileInfo, writable, appending, false, token);
+    }
+
+    public SDFSFileChannelData(FileInfo fileInfo, boolean writable, boolean appending, boolean tailShared, UUID token) {
         this.token = token;
         this.fileInfo = fileInfo;
         this.writable = writable;
+        this.appending = appending;
+        this.tailShared = tailShared;
+    }
+
+    public boolean isAppending() {
+        return appending;
+    }
+
+    public boolean isTailShared() {
+        return tailShared;
     }
 
     public UUID getToken() {
@@ -31,13 +31,4 @@ public class BlockInfo implements Serializable, Iterable<LocatedBlock> {
     public int hashCode() {
         return locatedBlockList.hashCode();
     }
-
-    BlockInfo copy() {
-        BlockInfo blockInfo = new BlockInfo();
-        for (LocatedBlock locatedBlock :
-                locatedBlockList) {
-            blockInfo.addLocatedBlock(locatedBlock.copy());
-        }
-        return blockInfo;
-    }
 }
@@ -0,0 +1,250 @@
+package sdfs.filetree;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * compact list of the blocks of a file
+ * each block is stored as its id and the indexes of the data nodes holding its replicas
+ * in primitive arrays, instead of as block info and located block objects
+ * the blocks are kept in leaves of LEAF_SIZE blocks under a tree of LEAF_SIZE wide nodes
+ * so that a copy shares all the nodes with the original, and changing a block of either copies only the path to it
+ * in a leaf the data node indexes of block i are at [i * replication, (i+1) * replication), -1 for a missing replica
+ * it is not thread safe, the file node or the opened file owning it takes care of that
+ */
+public class BlockList implements Serializable {
+    private static final long serialVersionUID = -3122872521497115167L;
+    public static final int NO_DATA_NODE = -1;
+
+    private static final int LEAF_BITS = 5;
+    private static final int LEAF_SIZE = 1 << LEAF_BITS;
+    private static final int LEAF_MASK = LEAF_SIZE - 1;
+
+    private final int replication;
+    private transient int size;
+    // the number of index bits below the root, 0 if the root is a leaf
+    private transient int shift;
+    private transient TreeNode root;
+    // only the nodes created for this list since it was last copied may be changed in place
+    private transient Object owner = new Object();
+
+    public BlockList(int replication) {
+        if (replication < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.replication = replication;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getReplication() {
+        return replication;
+    }
+
+    public int getId(int index) {
+        checkIndex(index);
+        return leafOf(index).ids[index & LEAF_MASK];
+    }
+
+    /**
+     * @param index   the index of the block in the file
+     * @param replica the index of the replica, the first one is where writes start
+     * @return the index of the data node in the data node table, or NO_DATA_NODE
+     */
+    public int getDataNodeIndex(int index, int replica) {
+        checkIndex(index);
+        if (replica < 0 || replica >= replication) {
+            throw new IndexOutOfBoundsException();
+        }
+        return leafOf(index).dataNodeIndexes[(index & LEAF_MASK) * replication + replica];
+    }
+
+    /**
+     * @param dataNodeIndexes the data nodes of the replicas, no more than the replication
+     */
+    public void add(int id, int[] dataNodeIndexes) {
+        if (root == null) {
+            root = new TreeNode(owner, 0, replication);
+        } else if (size == LEAF_SIZE << shift) {
+            // the tree is full, grow a level on top
+            TreeNode newRoot = new TreeNode(owner);
+            newRoot.children[0] = root;
+            root = newRoot;
+            shift += LEAF_BITS;
+        }
+        size++;
+        set(size - 1, id, dataNodeIndexes);
+    }
+
+    /**
+     * @param dataNodeIndexes the data nodes of the replicas, no more than the replication
+     */
+    public void set(int index, int id, int[] dataNodeIndexes) {
+        checkIndex(index);
+        if (dataNodeIndexes.length > replication) {
+            throw new IllegalArgumentException();
+        }
+        root = editable(root, shift);
+        TreeNode node = root;
+        for (int level = shift; level > 0; level -= LEAF_BITS) {
+            int childIndex = (index >>> level) & LEAF_MASK;
+            node.children[childIndex] = editable(node.children[childIndex], level - LEAF_BITS);
+            node = node.children[childIndex];
+        }
+        int slot = index & LEAF_MASK;
+        node.ensureLeafCapacity(slot + 1, replication);
+        node.ids[slot] = id;
+        int offset = slot * replication;
+        System.arraycopy(dataNodeIndexes, 0, node.dataNodeIndexes, offset, dataNodeIndexes.length);
+        Arrays.fill(node.dataNodeIndexes, offset + dataNodeIndexes.length, offset + replication, NO_DATA_NODE);
+    }
+
+    /**
+     * add the blocks of another list after the blocks of this one, with all of their replicas
+     * @throws IllegalArgumentException if the other list has another replication
+     */
+    public void addAll(BlockList blockList) throws IllegalArgumentException {
+        if (blockList.replication != replication) {
+            throw new IllegalArgumentException();
+        }
+        int[] dataNodeIndexes = new int[replication];
+        for (int i = 0; i < blockList.size; i++) {
+            for (int j = 0; j < dataNodeIndexes.length; j++) {
+                dataNodeIndexes[j] = blockList.getDataNodeIndex(i, j);
+            }
+            add(blockList.getId(i), dataNodeIndexes);
+        }
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if there is no block
+     */
+    public void removeLast() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        // the block is left in its leaf, it is overwritten when a block is added again
+        size--;
+    }
+
+    /**
+     * the copy shares every node with this list, so it takes constant time
+     * neither list changes the shared nodes in place afterwards
+     */
+    public BlockList copy() {
+        BlockList blockList = new BlockList(replication);
+        blockList.size = size;
+        blockList.shift = shift;
+        blockList.root = root;
+        owner = new Object();
+        return blockList;
+    }
+
+    private TreeNode leafOf(int index) {
+        TreeNode node = root;
+        for (int level = shift; level > 0; level -= LEAF_BITS) {
+            node = node.children[(index >>> level) & LEAF_MASK];
+        }
+        return node;
+    }
+
+    /**
+     * @param level the number of index bits below the node, 0 for a leaf
+     * @return the node if this list may change it, otherwise a copy of it this list may change
+     */
+    private TreeNode editable(TreeNode node, int level) {
+        if (node == null) {
+            return level == 0 ? new TreeNode(owner, 0, replication) : new TreeNode(owner);
+        }
+        if (node.owner == owner) {
+            return node;
+        }
+        return node.copy(owner);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /**
+     * a leaf holds the ids and data node indexes of up to LEAF_SIZE blocks, an inner node the nodes below it
+     * a leaf only grows its arrays as far as it is filled, so that a small file does not take a whole leaf
+     */
+    private static class TreeNode {
+        private final Object owner;
+        private TreeNode[] children;
+        private int[] ids;
+        private int[] dataNodeIndexes;
+
+        private TreeNode(Object owner) {
+            this.owner = owner;
+            this.children = new TreeNode[LEAF_SIZE];
+        }
+
+        private TreeNode(Object owner, int capacity, int replication) {
+            this.owner = owner;
+            this.ids = new int[capacity];
+            this.dataNodeIndexes = new int[capacity * replication];
+        }
+
+        private TreeNode copy(Object owner) {
+            TreeNode node;
+            if (children != null) {
+                node = new TreeNode(owner);
+                System.arraycopy(children, 0, node.children, 0, LEAF_SIZE);
+            } else {
+                node = new TreeNode(owner, 0, 0);
+                node.ids = ids.clone();
+                node.dataNodeIndexes = dataNodeIndexes.clone();
+            }
+            return node;
+        }
+
+        private void ensureLeafCapacity(int capacity, int replication) {
+            if (capacity > ids.length) {
+                int newCapacity = Math.min(LEAF_SIZE, Math.max(Math.max(4, capacity), ids.length + (ids.length >> 1)));
+                ids = Arrays.copyOf(ids, newCapacity);
+                dataNodeIndexes = Arrays.copyOf(dataNodeIndexes, newCapacity * replication);
+            }
+        }
+    }
+
+    /**
+     * only write the blocks, in the same form whatever the shape of the tree
+     * @param stream the output stream
+     * @throws IOException io exception
+     */
+    private void writeObject(ObjectOutputStream stream) throws IOException {
+        stream.defaultWriteObject();
+        stream.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            TreeNode leaf = leafOf(i);
+            int offset = (i & LEAF_MASK) * replication;
+            stream.writeInt(leaf.ids[i & LEAF_MASK]);
+            for (int j = 0; j < replication; j++) {
+                stream.writeInt(leaf.dataNodeIndexes[offset + j]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        stream.defaultReadObject();
+        owner = new Object();
+        int amount = stream.readInt();
+        int[] dataNodeIndexes = new int[replication];
+        for (int i = 0; i < amount; i++) {
+            int id = stream.readInt();
+            for (int j = 0; j < replication; j++) {
+                dataNodeIndexes[j] = stream.readInt();
+            }
+            add(id, dataNodeIndexes);
+        }
+    }
+}
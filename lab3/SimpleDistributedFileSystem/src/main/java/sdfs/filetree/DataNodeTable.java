@@ -0,0 +1,68 @@
+package sdfs.filetree;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * table of all the data nodes known by the name node
+ * blocks refer to the data node they are located on by its index in this table
+ * so that a block costs two integers instead of a located block object
+ * an index never changes once it is given out
+ */
+public class DataNodeTable implements Serializable {
+    private static final long serialVersionUID = -9029455018013538393L;
+    private final List<InetAddress> addressList = new ArrayList<>();
+    private final List<Integer> portList = new ArrayList<>();
+
+    /**
+     * find the index of a data node, add it to the table if it is not yet there
+     * @param address the address of the data node
+     * @param port the port of the data node
+     * @return the index of the data node
+     */
+    public synchronized int indexOf(InetAddress address, int port) {
+        for (int i = 0; i < addressList.size(); i++) {
+            if (portList.get(i) == port && addressList.get(i).equals(address)) {
+                return i;
+            }
+        }
+        addressList.add(address);
+        portList.add(port);
+        return addressList.size()-1;
+    }
+
+    public synchronized InetAddress getAddress(int index) {
+        return addressList.get(index);
+    }
+
+    public synchronized int getPort(int index) {
+        return portList.get(index);
+    }
+
+    public synchronized int size() {
+        return addressList.size();
+    }
+
+    /**
+     * materialize a located block view of a block
+     * @param dataNodeIndex the index of the data node holding the block
+     * @param blockId the id of the block
+     * @return the located block
+     */
+    public synchronized LocatedBlock getLocatedBlock(int dataNodeIndex, int blockId) {
+        return new LocatedBlock(addressList.get(dataNodeIndex), portList.get(dataNodeIndex), blockId);
+    }
+
+    /**
+     * the table is shared by every opened file and may grow while one of them is being sent
+     * @param stream the output stream
+     * @throws IOException io exception
+     */
+    private synchronized void writeObject(ObjectOutputStream stream) throws IOException {
+        stream.defaultWriteObject();
+    }
+}
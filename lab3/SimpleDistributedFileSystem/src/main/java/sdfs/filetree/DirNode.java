@@ -1,20 +1,35 @@
 package sdfs.filetree;
 
+import sdfs.entity.DirListing;
+import sdfs.entity.FileAttributes;
+import sdfs.entity.FileStatus;
 import sdfs.exception.SDFSFileAlreadyExistsException;
 import sdfs.namenode.DataBlockManager;
 import sdfs.namenode.OpenedFileNode;
 import sdfs.namenode.OpenedFileNodeManager;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class DirNode extends Node implements Serializable {
-    private final Set<Entry> entries = new HashSet<>();
+    private static final long serialVersionUID = -4442302879482204556L;
+    // the name under which the snapshots of a directory are found, no entry may take it
+    public static final String SNAPSHOT_DIR_NAME = ".snapshot";
+
+    // sorted by name, so that an entry is found without going through all of them and the entries can be listed page by page
+    private final NavigableMap<String, Entry> entries = new TreeMap<>();
+    // the read only copies of this directory taken so far, by name
+    private final NavigableMap<String, DirNode> snapshots = new TreeMap<>();
 
     private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -25,10 +40,13 @@ public class DirNode extends Node implements Serializable {
     @Override
     public void recordExistence(DataBlockManager dataBlockManager) {
         lock.readLock().lock();
-        for (Entry entry : entries) {
+        for (Entry entry : entries.values()) {
             Node node = entry.getNode();
             node.recordExistence(dataBlockManager);
         }
+        for (DirNode snapshot : snapshots.values()) {
+            snapshot.recordExistence(dataBlockManager);
+        }
         lock.readLock().unlock();
     }
 
@@ -40,14 +58,9 @@ public class DirNode extends Node implements Serializable {
      */
     public Entry findEntry(String name) {
         lock.readLock().lock();
-        for (Entry e : entries) {
-            if (e.getName().equals(name)) {
-                lock.readLock().unlock();
-                return e;
-            }
-        }
+        Entry e = entries.get(name);
         lock.readLock().unlock();
-        return null;
+        return e;
     }
 
 
@@ -56,52 +69,237 @@ public class DirNode extends Node implements Serializable {
      * first check if there is already a entry with the same filename in this directory
      * use wite lock to make it atomic
      * @param fileName the file name of the newly created file
+     * @param fileAttributes the attributes of the newly created file
      * @return the file node created, return null if file already exists
      * @throws SDFSFileAlreadyExistsException if name already exists
      */
-    public OpenedFileNode createFile(String fileName, UUID token, OpenedFileNodeManager openedFileNodeManager) throws SDFSFileAlreadyExistsException {
+    public OpenedFileNode createFile(String fileName, FileAttributes fileAttributes, UUID token, OpenedFileNodeManager openedFileNodeManager) throws SDFSFileAlreadyExistsException {
+        if (fileName.equals(SNAPSHOT_DIR_NAME)) {
+            throw new SDFSFileAlreadyExistsException();
+        }
         lock.writeLock().lock();
         // check if there is already an entry with the same name in this directory
         // if there is, return null to acknowledge its caller
-        for (Entry e : entries) {
-            if (e.getName().equals(fileName)) {
-                lock.writeLock().unlock();
-                throw new SDFSFileAlreadyExistsException();
-            }
+        if (entries.containsKey(fileName)) {
+            lock.writeLock().unlock();
+            throw new SDFSFileAlreadyExistsException();
         }
         // else create a new empty file node
-        FileNode fileNode = new FileNode();
+        FileNode fileNode = new FileNode(fileAttributes);
         // add it to this directory
         Entry newEntry = new Entry(fileName, fileNode);
-        entries.add(newEntry);
+        entries.put(fileName, newEntry);
         // open it
         OpenedFileNode writingNode = openedFileNodeManager.openWrite(fileNode, token);
         lock.writeLock().unlock();
         return writingNode;
     }
 
+    /**
+     * add a copy of a file under this directory, the copy shares the blocks of the file
+     * use write lock to make it atomic
+     * @param fileName the file name of the copy
+     * @param source the file to copy, which may be in a snapshot
+     * @throws SDFSFileAlreadyExistsException if name already exists
+     */
+    public void copyFile(String fileName, FileNode source, DataBlockManager dataBlockManager) throws SDFSFileAlreadyExistsException {
+        if (fileName.equals(SNAPSHOT_DIR_NAME)) {
+            throw new SDFSFileAlreadyExistsException();
+        }
+        lock.writeLock().lock();
+        if (entries.containsKey(fileName)) {
+            lock.writeLock().unlock();
+            throw new SDFSFileAlreadyExistsException();
+        }
+        Entry newEntry = new Entry(fileName, source.copy(dataBlockManager));
+        entries.put(fileName, newEntry);
+        lock.writeLock().unlock();
+    }
+
     /**
      * create a directory under this directory
      * @param dirName the dir name to be created
      * @throws SDFSFileAlreadyExistsException if name already exists
      */
     public void createDir(String dirName) throws SDFSFileAlreadyExistsException {
+        if (dirName.equals(SNAPSHOT_DIR_NAME)) {
+            throw new SDFSFileAlreadyExistsException();
+        }
         lock.writeLock().lock();
         // check if there is already an entry with the same name in this directory
         // if there is, return null to acknowledge its caller
-        for (Entry e : entries) {
-            if (e.getName().equals(dirName)) {
-                lock.writeLock().unlock();
-                throw new SDFSFileAlreadyExistsException();
-            }
+        if (entries.containsKey(dirName)) {
+            lock.writeLock().unlock();
+            throw new SDFSFileAlreadyExistsException();
         }
         // else create a new dir
         DirNode newDirNode = new DirNode();
         Entry newEntry = new Entry(dirName, newDirNode);
-        entries.add(newEntry);
+        entries.put(dirName, newEntry);
+        lock.writeLock().unlock();
+    }
+
+    /**
+     * take a snapshot of this directory
+     * every directory and file below is locked until all of them are copied, so that the snapshot is of a single moment
+     * so a change below this directory, even the close of a file, waits for as long as it takes to copy every entry
+     * which is why the number of entries is capped, they are counted first, one directory locked at a time
+     * the files of the snapshot share their block lists with the files they are taken of
+     * @param snapshotName the name of the snapshot
+     * @param limit the most directories and files the snapshot may copy
+     * @throws SDFSFileAlreadyExistsException if there is already a snapshot with the name
+     * @throws IllegalArgumentException if the name is empty or contains a slash, or there are more entries below than the limit
+     */
+    public void createSnapshot(String snapshotName, int limit) throws SDFSFileAlreadyExistsException, IllegalArgumentException {
+        if (snapshotName.isEmpty() || snapshotName.contains("/")) {
+            throw new IllegalArgumentException();
+        }
+        // entries made meanwhile may take the snapshot a little past the limit
+        if (countNodes(limit) > limit) {
+            throw new IllegalArgumentException();
+        }
+        lock.writeLock().lock();
+        if (snapshots.containsKey(snapshotName)) {
+            lock.writeLock().unlock();
+            throw new SDFSFileAlreadyExistsException();
+        }
+        List<Lock> heldLocks = new ArrayList<>();
+        DirNode snapshot = snapshot(heldLocks);
+        for (int i = heldLocks.size() - 1; i >= 0; i--) {
+            heldLocks.get(i).unlock();
+        }
+        snapshots.put(snapshotName, snapshot);
         lock.writeLock().unlock();
     }
 
+    /**
+     * @return the snapshot with the name, null if there is none
+     */
+    public DirNode getSnapshot(String snapshotName) {
+        lock.readLock().lock();
+        DirNode snapshot = snapshots.get(snapshotName);
+        lock.readLock().unlock();
+        return snapshot;
+    }
+
+    /**
+     * delete a snapshot of this directory
+     * a block only kept by the snapshot becomes garbage once no file of the snapshot is read any more
+     * @throws FileNotFoundException if there is no snapshot with the name
+     */
+    public void deleteSnapshot(String snapshotName, DataBlockManager dataBlockManager) throws FileNotFoundException {
+        lock.writeLock().lock();
+        DirNode snapshot = snapshots.remove(snapshotName);
+        lock.writeLock().unlock();
+        if (snapshot == null) {
+            throw new FileNotFoundException();
+        }
+        snapshot.deleteSnapshot(dataBlockManager);
+    }
+
+    /**
+     * count the directories and files below this directory, without their snapshots
+     * @return the count, or a count past the limit as soon as there are more than the limit
+     */
+    private int countNodes(int limit) {
+        List<DirNode> dirNodes = new ArrayList<>();
+        lock.readLock().lock();
+        int count = entries.size();
+        for (Entry entry : entries.values()) {
+            if (entry.getNode().getType() == Type.DIR) {
+                dirNodes.add((DirNode) entry.getNode());
+            }
+        }
+        lock.readLock().unlock();
+        for (int i = 0; i < dirNodes.size() && count <= limit; i++) {
+            count += dirNodes.get(i).countNodes(limit - count);
+        }
+        return count;
+    }
+
+    /**
+     * copy this directory and everything below it, without their snapshots
+     * @param heldLocks the locks to release once the whole snapshot is taken, the read lock of this directory is added
+     */
+    private DirNode snapshot(List<Lock> heldLocks) {
+        lock.readLock().lock();
+        heldLocks.add(lock.readLock());
+        DirNode snapshot = new DirNode();
+        for (Entry entry : entries.values()) {
+            Node node = entry.getNode();
+            if (node.getType() == Type.DIR) {
+                snapshot.entries.put(entry.getName(), new Entry(entry.getName(), ((DirNode) node).snapshot(heldLocks)));
+            } else {
+                snapshot.entries.put(entry.getName(), new Entry(entry.getName(), ((FileNode) node).snapshot(heldLocks)));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * give the block lists of all the files below this directory of a deleted snapshot back
+     */
+    private void deleteSnapshot(DataBlockManager dataBlockManager) {
+        for (Entry entry : entries.values()) {
+            Node node = entry.getNode();
+            if (node.getType() == Type.DIR) {
+                ((DirNode) node).deleteSnapshot(dataBlockManager);
+            } else {
+                ((FileNode) node).deleteSnapshot(dataBlockManager);
+            }
+        }
+    }
+
+    /**
+     * list the entries of this directory in the order of their names, without opening any file
+     * @param startAfter the name to start after, null to start from the first entry
+     * @param limit the most entries to list
+     * @return the entries after the name, no more than the limit
+     */
+    public DirListing list(String startAfter, int limit) {
+        lock.readLock().lock();
+        NavigableMap<String, Entry> tail = startAfter == null ? entries : entries.tailMap(startAfter, false);
+        List<FileStatus> fileStatusList = new ArrayList<>();
+        Iterator<Entry> iterator = tail.values().iterator();
+        while (fileStatusList.size() < limit && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            Node node = entry.getNode();
+            if (node.getType() == Type.DIR) {
+                fileStatusList.add(getStatus(entry.getName()));
+            } else {
+                fileStatusList.add(((FileNode) node).getStatus(entry.getName()));
+            }
+        }
+        DirListing dirListing = new DirListing(fileStatusList, iterator.hasNext());
+        lock.readLock().unlock();
+        return dirListing;
+    }
+
+    /**
+     * list the snapshots of this directory as directories, in the order of their names
+     * @param startAfter the name to start after, null to start from the first snapshot
+     * @param limit the most snapshots to list
+     */
+    public DirListing listSnapshots(String startAfter, int limit) {
+        lock.readLock().lock();
+        NavigableMap<String, DirNode> tail = startAfter == null ? snapshots : snapshots.tailMap(startAfter, false);
+        List<FileStatus> fileStatusList = new ArrayList<>();
+        Iterator<String> iterator = tail.keySet().iterator();
+        while (fileStatusList.size() < limit && iterator.hasNext()) {
+            fileStatusList.add(getStatus(iterator.next()));
+        }
+        DirListing dirListing = new DirListing(fileStatusList, iterator.hasNext());
+        lock.readLock().unlock();
+        return dirListing;
+    }
+
+    /**
+     * @param name the name of this directory in its parent
+     */
+    public FileStatus getStatus(String name) {
+        return new FileStatus(name, Type.DIR, 0, 0, 0, 0, false, 0);
+    }
+
     /**
      * override default write object method to lock the file tree
      * so that no change will made during flushing the disk
@@ -3,6 +3,7 @@ package sdfs.filetree;
 import java.io.Serializable;
 
 public class Entry implements Serializable {
+    private static final long serialVersionUID = 3268715935919305891L;
     private final Node node;
     private String name;
 
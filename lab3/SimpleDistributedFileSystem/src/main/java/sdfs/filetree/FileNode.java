@@ -1,55 +1,225 @@
 package sdfs.filetree;
 
+import sdfs.entity.FileAttributes;
 import sdfs.entity.FileInfo;
+import sdfs.entity.FileStatus;
 import sdfs.namenode.DataBlockManager;
 import sdfs.namenode.OpenedFileNode;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class FileNode extends Node implements Serializable {
-    private List<BlockInfo> blockInfoList = new ArrayList<>();
+    private static final long serialVersionUID = -3932427459892800640L;
+    private final FileAttributes fileAttributes;
+    private BlockList blockList;
     private long fileSize;
+    // bumped whenever a read-write close changes the file, so that clients can tell whether their copy is stale
+    private long version;
+
+    // readers share the block list of the version they opened instead of copying it
+    // and hold a single reference to it between them, instead of one to each of its blocks
+    // the number of readers of the current block list
+    private transient AtomicInteger readerAmount = new AtomicInteger();
+    // replaced block lists that are still read, with the number of their readers
+    // they keep the references the file tree held to their blocks until the last reader closes
+    private transient Map<BlockList, AtomicInteger> retiredReaderAmounts = new IdentityHashMap<>();
+
+    // the file this one is a snapshot of, null if it is not in a snapshot
+    // a snapshot is one more reader of the block list of its file, that only closes when the snapshot is deleted
+    private final FileNode source;
+    // set once the snapshot is deleted, the block list is given back when its last reader closes
+    private transient boolean snapshotDeleted;
 
     private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
-    FileNode() {
+    FileNode(FileAttributes fileAttributes) {
+        super(Type.FILE);
+        this.fileAttributes = fileAttributes;
+        this.blockList = new BlockList(fileAttributes.getReplication());
+        this.source = null;
+    }
+
+    private FileNode(FileNode source) {
         super(Type.FILE);
+        this.fileAttributes = source.fileAttributes;
+        this.blockList = source.blockList;
+        this.fileSize = source.fileSize;
+        this.version = source.version;
+        this.source = source;
+    }
+
+    private FileNode(FileAttributes fileAttributes, BlockList blockList, long fileSize) {
+        super(Type.FILE);
+        this.fileAttributes = fileAttributes;
+        this.blockList = blockList;
+        this.fileSize = fileSize;
+        this.source = null;
+    }
+
+    public FileAttributes getFileAttributes() {
+        return fileAttributes;
+    }
+
+    /**
+     * @param name the name of this file in its directory
+     * @return the status of the last version of the file, a change not closed yet is not seen
+     */
+    public FileStatus getStatus(String name) {
+        lock.readLock().lock();
+        FileStatus fileStatus = new FileStatus(name, Type.FILE, fileSize, blockList.size(), fileAttributes.getBlockSize(), fileAttributes.getReplication(), fileAttributes.isCompressed(), version);
+        lock.readLock().unlock();
+        return fileStatus;
     }
 
     @Override
     public void recordExistence(DataBlockManager dataBlockManager) {
+        if (source != null) {
+            // the blocks are referenced on behalf of the snapshot by the file it was taken of
+            source.recordSnapshotExistence(blockList, dataBlockManager);
+            return;
+        }
         lock.readLock().lock();
-        for (BlockInfo blockInfo : blockInfoList) {
-            for (LocatedBlock locatedBlock : blockInfo) {
-                dataBlockManager.recordExistence(locatedBlock);
+        for (int i = 0; i < blockList.size(); i++) {
+            dataBlockManager.recordExistence(blockList.getId(i));
+        }
+        lock.readLock().unlock();
+    }
+
+    /**
+     * open the file read only
+     * the block list of this file node is shared, it is never changed in place
+     * use read lock to make sure the block list is not replaced meanwhile
+     * @param dataNodeTable the table the data node indexes of the blocks refer to
+     * @return the opened file sharing the current block list
+     * @throws FileNotFoundException if this file is in a snapshot that has been deleted since it was found
+     */
+    public OpenedFileNode openRead(DataNodeTable dataNodeTable) throws FileNotFoundException {
+        lock.readLock().lock();
+        // once deleted, the snapshot may have given its block list back already, a new reader would give it back again
+        if (snapshotDeleted) {
+            lock.readLock().unlock();
+            throw new FileNotFoundException();
+        }
+        FileInfo fileInfo = new FileInfo(this.blockList, dataNodeTable, this.fileSize, this.version, fileAttributes.getBlockSize());
+        OpenedFileNode openedFileNode = new OpenedFileNode(this, fileInfo);
+        readerAmount.incrementAndGet();
+        lock.readLock().unlock();
+        return openedFileNode;
+    }
+
+    /**
+     * close a read only file
+     * the blocks of a replaced block list lose the reference of the file tree with its last reader
+     */
+    public void closeRead(FileInfo fileInfo, DataBlockManager dataBlockManager) {
+        closeRead(fileInfo.getBlockList(), dataBlockManager);
+    }
+
+    private void closeRead(BlockList blockList, DataBlockManager dataBlockManager) {
+        lock.writeLock().lock();
+        if (blockList == this.blockList) {
+            if (readerAmount.decrementAndGet() == 0 && snapshotDeleted) {
+                source.closeRead(blockList, dataBlockManager);
+            }
+        } else {
+            AtomicInteger retiredReaderAmount = retiredReaderAmounts.get(blockList);
+            if (retiredReaderAmount != null && retiredReaderAmount.decrementAndGet() == 0) {
+                retiredReaderAmounts.remove(blockList);
+                dataBlockManager.recordClose(blockList);
             }
         }
+        lock.writeLock().unlock();
+    }
+
+    /**
+     * take a snapshot of the file, which shares its current block list as one more reader
+     * the read lock is held until the caller has taken the snapshot of everything else, so that the file does not change meanwhile
+     * @param heldLocks the locks to release once the whole snapshot is taken, the read lock of this file is added
+     * @return the file node in the snapshot
+     */
+    FileNode snapshot(List<Lock> heldLocks) {
+        lock.readLock().lock();
+        heldLocks.add(lock.readLock());
+        readerAmount.incrementAndGet();
+        return new FileNode(this);
+    }
+
+    /**
+     * copy the last closed version of the file into a new file, without copying any block
+     * the copy shares the blocks with this file, the file tree holds one more reference to each of them
+     * so that a block changed in either file is copied on write, just as if it were opened read write
+     * use read lock to make sure the block list is not replaced meanwhile
+     * @return the new file node, which is a file of its own even if this one is in a snapshot
+     */
+    FileNode copy(DataBlockManager dataBlockManager) {
+        lock.readLock().lock();
+        FileNode fileNode = new FileNode(fileAttributes, blockList.copy(), fileSize);
+        dataBlockManager.recordCopy(fileNode.blockList);
         lock.readLock().unlock();
+        return fileNode;
+    }
+
+    /**
+     * delete the file node of a snapshot
+     * its block list is given back to the file it was taken of once no reader of the snapshot is left
+     */
+    void deleteSnapshot(DataBlockManager dataBlockManager) {
+        lock.writeLock().lock();
+        snapshotDeleted = true;
+        if (readerAmount.get() == 0) {
+            source.closeRead(blockList, dataBlockManager);
+        }
+        lock.writeLock().unlock();
+    }
+
+    /**
+     * count a snapshot loaded with the file tree as a reader again
+     * a replaced block list only read by snapshots gets back the references of the file tree to its blocks
+     */
+    private void recordSnapshotExistence(BlockList blockList, DataBlockManager dataBlockManager) {
+        lock.writeLock().lock();
+        if (blockList == this.blockList) {
+            readerAmount.incrementAndGet();
+        } else {
+            AtomicInteger retiredReaderAmount = retiredReaderAmounts.get(blockList);
+            if (retiredReaderAmount == null) {
+                retiredReaderAmount = new AtomicInteger();
+                retiredReaderAmounts.put(blockList, retiredReaderAmount);
+                for (int i = 0; i < blockList.size(); i++) {
+                    dataBlockManager.recordExistence(blockList.getId(i));
+                }
+            }
+            retiredReaderAmount.incrementAndGet();
+        }
+        lock.writeLock().unlock();
     }
 
     /**
-     * open the file
-     * deep copy this file node
+     * open the file read write
+     * copy the block list of this file node, which shares all of its nodes until they are changed
      * use read lock to make sure file info would not be changed when copying it
+     * @param dataNodeTable the table the data node indexes of the blocks refer to
      * @return the copy of the current file node
      */
-    public OpenedFileNode open(DataBlockManager dataBlockManager) {
+    public OpenedFileNode openWrite(DataBlockManager dataBlockManager, DataNodeTable dataNodeTable) {
         lock.readLock().lock();
-        // deep copy the file node
-        List<BlockInfo> blockInfoList = new ArrayList<>();
-        for (BlockInfo b : this.blockInfoList) {
-            blockInfoList.add(b.copy());
-        }
-        FileInfo fileInfo = new FileInfo(blockInfoList, this.fileSize);
+        BlockList blockList = this.blockList.copy();
+        FileInfo fileInfo = new FileInfo(blockList, dataNodeTable, this.fileSize, this.version, fileAttributes.getBlockSize());
         OpenedFileNode openedFileNode = new OpenedFileNode(this, fileInfo);
 
         // record the openness of the file node
-        dataBlockManager.recordOpen(blockInfoList);
+        dataBlockManager.recordOpen(blockList);
 
         lock.readLock().unlock();
         return openedFileNode;
@@ -63,21 +233,77 @@ public class FileNode extends Node implements Serializable {
      */
     public void closeUpdate(FileInfo fileInfo, DataBlockManager dataBlockManager) {
         lock.writeLock().lock();
-        this.blockInfoList = fileInfo.getBlockInfoList();
-        this.fileSize = fileInfo.getFileSize();
-        dataBlockManager.recordClose(fileInfo.getBlockInfoList());
+        // the reference of the closing file to each new block is handed over to the file tree
+        replace(fileInfo.getBlockList(), fileInfo.getFileSize(), dataBlockManager);
         lock.writeLock().unlock();
     }
 
     /**
-     * close read write file
-     * update old file node
+     * append the last closed versions of other files to this file, without copying any block
+     * this file and all the sources but the last must end at the end of a block, so that no block has to be filled up
+     * the sources are copied one at a time before this file is locked, so that no two files are ever locked together
+     * @param sourceNodes the files to append, in order, which keep their blocks as well
+     * @throws IllegalArgumentException if a file ends inside a block, or a source has another block size or replication or is stored otherwise
+     */
+    public void concat(List<FileNode> sourceNodes, DataBlockManager dataBlockManager) throws IllegalArgumentException {
+        // each copy holds a reference to each of its blocks, which is handed over to this file
+        List<FileNode> parts = new ArrayList<>();
+        for (FileNode sourceNode : sourceNodes) {
+            parts.add(sourceNode.copy(dataBlockManager));
+        }
+        lock.writeLock().lock();
+        long blockSize = fileAttributes.getBlockSize();
+        boolean aligned = fileSize % blockSize == 0;
+        for (FileNode part : parts) {
+            if (!aligned || part.fileAttributes.getBlockSize() != blockSize || part.fileAttributes.getReplication() != fileAttributes.getReplication()
+                    || part.fileAttributes.isCompressed() != fileAttributes.isCompressed()) {
+                lock.writeLock().unlock();
+                for (FileNode dropped : parts) {
+                    dataBlockManager.recordClose(dropped.blockList);
+                }
+                throw new IllegalArgumentException();
+            }
+            aligned = part.fileSize % blockSize == 0;
+        }
+        BlockList newBlockList = blockList.copy();
+        long newFileSize = fileSize;
+        for (FileNode part : parts) {
+            newBlockList.addAll(part.blockList);
+            newFileSize += part.fileSize;
+        }
+        // the new block list holds the blocks of this file as well, the old one lets go of them
+        dataBlockManager.recordCopy(blockList);
+        replace(newBlockList, newFileSize, dataBlockManager);
+        lock.writeLock().unlock();
+    }
+
+    /**
+     * make a new block list the version of this file, which the file tree already holds a reference to each block of
+     * only the old blocks lose a reference, that of the file tree
+     * unless the old block list is still read, then its last reader drops it
+     * the write lock must be held
+     */
+    private void replace(BlockList newBlockList, long newFileSize, DataBlockManager dataBlockManager) {
+        BlockList oldBlockList = this.blockList;
+        this.blockList = newBlockList;
+        this.fileSize = newFileSize;
+        this.version++;
+        if (readerAmount.get() > 0) {
+            retiredReaderAmounts.put(oldBlockList, readerAmount);
+            readerAmount = new AtomicInteger();
+        } else {
+            dataBlockManager.recordClose(oldBlockList);
+        }
+    }
+
+    /**
+     * close read write file without changing the file node
      * notify DataBlockManager
      * use write lock to make sure it is atomic
      */
-    public void close(FileInfo fileInfo, DataBlockManager dataBlockManager) {
+    public void closeWrite(FileInfo fileInfo, DataBlockManager dataBlockManager) {
         lock.writeLock().lock();
-        dataBlockManager.recordClose(fileInfo.getBlockInfoList());
+        dataBlockManager.recordClose(fileInfo.getBlockList());
         lock.writeLock().unlock();
     }
 
@@ -92,5 +318,12 @@ public class FileNode extends Node implements Serializable {
         stream.defaultWriteObject();
         lock.readLock().unlock();
     }
+
+    private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        stream.defaultReadObject();
+        // read only files are not reopened after a restart
+        readerAmount = new AtomicInteger();
+        retiredReaderAmounts = new IdentityHashMap<>();
+    }
 }
 
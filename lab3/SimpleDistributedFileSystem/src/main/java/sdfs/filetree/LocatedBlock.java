@@ -45,8 +45,4 @@ public class LocatedBlock implements Serializable {
         result = 31 * result + id;
         return result;
     }
-
-    LocatedBlock copy() {
-        return new LocatedBlock(this.address, this.port, this.id);
-    }
 }
@@ -5,6 +5,8 @@ import sdfs.namenode.DataBlockManager;
 import java.io.Serializable;
 
 public abstract class Node implements Serializable {
+    // pinned, as in every class of the image, so that a change that keeps the fields does not make the image unreadable
+    private static final long serialVersionUID = -1755092920616644922L;
     private Type type;
 
     public enum Type {
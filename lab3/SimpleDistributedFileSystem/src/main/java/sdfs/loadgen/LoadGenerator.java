@@ -0,0 +1,251 @@
+package sdfs.loadgen;
+
+import sdfs.client.SDFSClient;
+import sdfs.client.SDFSFileChannel;
+import sdfs.datanode.DataNodeServer;
+import sdfs.namenode.NameNodeServer;
+import sdfs.protocol.SDFSConfiguration;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * generate load on a cluster with a mix of operations and measure their latencies
+ * it either starts a cluster in process or drives a running one
+ *
+ * in a closed loop every thread issues its next operation as soon as the last one is done
+ * in an open loop operations are due at a fixed rate, and latency counts from when an operation was due
+ * so that a stalled cluster is not hidden by operations that were never issued
+ *
+ * run with ./gradlew loadgen -Dsdfs.loadgen.workload=METADATA ..., see LoadOptions for all the options
+ */
+public class LoadGenerator {
+    private final LoadOptions options;
+    private final int preparedFiles;
+    private final byte[] fileData;
+    private final byte[] ioData;
+    // the directory all the files of this run are made in
+    private final String runDir = "loadgen" + Long.toString(System.currentTimeMillis(), 36);
+
+    public LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.preparedFiles = Math.max(options.getFiles(), options.getThreads());
+        Random random = new Random();
+        fileData = new byte[options.getFileSize()];
+        random.nextBytes(fileData);
+        ioData = new byte[Math.min(options.getIoSize(), options.getFileSize())];
+        random.nextBytes(ioData);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadOptions options = new LoadOptions();
+        LoadReport report = new LoadGenerator(options).run();
+        System.out.print(report.toText());
+        if (!options.getJsonPath().isEmpty()) {
+            FileOutputStream fileOutputStream = new FileOutputStream(options.getJsonPath());
+            fileOutputStream.write(report.toJson().getBytes(StandardCharsets.UTF_8));
+            fileOutputStream.close();
+        }
+        // the servers of an in-process cluster never stop by themselves
+        System.exit(0);
+    }
+
+    public LoadReport run() throws IOException, InterruptedException {
+        SDFSClient client = new SDFSClient(connect(), options.getCacheSize());
+        prepare(client);
+
+        LoadReport report = new LoadReport(options);
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(options.getWarmupSeconds());
+        long end = measureStart + TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+        Thread[] threads = new Thread[options.getThreads()];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Worker(i, client, report, start, measureStart, end));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report.setMeasuredNanos(end - measureStart);
+        return report;
+    }
+
+    /**
+     * @return the configuration for clients of the cluster to load
+     */
+    private SDFSConfiguration connect() throws IOException, InterruptedException {
+        InetSocketAddress nameNodeAddress = options.getNameNodeAddress();
+        if (nameNodeAddress != null) {
+            return new SDFSConfiguration(nameNodeAddress.getAddress(), nameNodeAddress.getPort(), nameNodeAddress.getAddress(), 0);
+        }
+
+        InetAddress localHost = InetAddress.getLocalHost();
+        // a throwaway cluster, it must not load the image of another one
+        System.setProperty("sdfs.namenode.dir", Files.createTempDirectory("sdfs-loadgen-namenode").toString());
+        int nameNodePort = freePort();
+        int[] dataNodePorts = new int[Math.max(1, options.getDataNodes())];
+        for (int i = 0; i < dataNodePorts.length; i++) {
+            dataNodePorts[i] = freePort();
+        }
+        SDFSConfiguration configuration = new SDFSConfiguration(localHost, nameNodePort, localHost, dataNodePorts[0]);
+        NameNodeServer nameNodeServer = new NameNodeServer(configuration, 10);
+        new Thread(nameNodeServer).start();
+        for (int dataNodePort : dataNodePorts) {
+            SDFSConfiguration dataNodeConfiguration = new SDFSConfiguration(localHost, nameNodePort, localHost, dataNodePort);
+            String dataNodeDir = Files.createTempDirectory("sdfs-loadgen-datanode").toString();
+            new Thread(new DataNodeServer(dataNodeConfiguration, dataNodeDir)).start();
+        }
+        // wait for the data nodes to register
+        for (int i = 0; i < 100 && nameNodeServer.getNameNode().getLiveDataNodes().size() < dataNodePorts.length; i++) {
+            Thread.sleep(100);
+        }
+        return configuration;
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0);
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        return port;
+    }
+
+    /**
+     * make the directories of the run and the files to read and overwrite
+     */
+    private void prepare(SDFSClient client) throws IOException {
+        client.mkdir(runDir);
+        for (int i = 0; i < options.getThreads(); i++) {
+            client.mkdir(threadDir(i));
+        }
+        for (int i = 0; i < preparedFiles; i++) {
+            SDFSFileChannel channel = client.create(preparedFile(i));
+            channel.write(ByteBuffer.wrap(fileData));
+            channel.close();
+        }
+    }
+
+    private String threadDir(int threadIndex) {
+        return runDir + "/t" + threadIndex;
+    }
+
+    private String preparedFile(int fileIndex) {
+        return runDir + "/f" + fileIndex;
+    }
+
+    private class Worker implements Runnable {
+        private final int index;
+        private final SDFSClient client;
+        private final LoadReport report;
+        private final long start;
+        private final long measureStart;
+        private final long end;
+        private final Random random;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(fileData.length);
+        // to name the files and directories this worker makes
+        private int nameCounter = 0;
+
+        Worker(int index, SDFSClient client, LoadReport report, long start, long measureStart, long end) {
+            this.index = index;
+            this.client = client;
+            this.report = report;
+            this.start = start;
+            this.measureStart = measureStart;
+            this.end = end;
+            this.random = new Random(index);
+        }
+
+        @Override
+        public void run() {
+            long intervalNanos = options.getRate() > 0 ? (long) (1e9 * options.getThreads() / options.getRate()) : 0;
+            // spread the threads of an open loop over the interval
+            long due = start + intervalNanos * index / options.getThreads();
+            while (true) {
+                long operationStart;
+                if (intervalNanos > 0) {
+                    long now = System.nanoTime();
+                    if (due > now) {
+                        LockSupport.parkNanos(due - now);
+                    }
+                    operationStart = due;
+                    due += intervalNanos;
+                } else {
+                    operationStart = System.nanoTime();
+                }
+                if (operationStart >= end) {
+                    return;
+                }
+                Operation operation = options.getWorkload().choose(random);
+                boolean succeeded = execute(operation);
+                long latency = System.nanoTime() - operationStart;
+                if (operationStart >= measureStart) {
+                    if (succeeded) {
+                        report.recordLatency(operation, latency);
+                    } else {
+                        report.recordError(operation);
+                    }
+                }
+            }
+        }
+
+        private boolean execute(Operation operation) {
+            try {
+                SDFSFileChannel channel;
+                switch (operation) {
+                    case MKDIR:
+                        client.mkdir(threadDir(index) + "/d" + nameCounter++);
+                        break;
+                    case CREATE:
+                        client.create(threadDir(index) + "/c" + nameCounter++).close();
+                        break;
+                    case OPEN_CLOSE:
+                        client.openReadonly(randomFile()).close();
+                        break;
+                    case SEQUENTIAL_READ:
+                        channel = client.openReadonly(randomFile());
+                        readBuffer.clear();
+                        while (readBuffer.hasRemaining() && channel.read(readBuffer) > 0) {
+                            // read on till the end of the file
+                        }
+                        channel.close();
+                        break;
+                    case RANDOM_READ:
+                        channel = client.openReadonly(randomFile());
+                        channel.position(random.nextInt(fileData.length - ioData.length + 1));
+                        readBuffer.clear();
+                        readBuffer.limit(ioData.length);
+                        channel.read(readBuffer);
+                        channel.close();
+                        break;
+                    case OVERWRITE:
+                        // only this worker writes the files of its share, so opening never conflicts
+                        channel = client.openReadWrite(preparedFile(index + options.getThreads() * random.nextInt(preparedFiles / options.getThreads())));
+                        channel.position(random.nextInt(fileData.length - ioData.length + 1));
+                        channel.write(ByteBuffer.wrap(ioData));
+                        channel.close();
+                        break;
+                    case SMALL_FILE:
+                        channel = client.create(threadDir(index) + "/s" + nameCounter++);
+                        channel.write(ByteBuffer.wrap(ioData));
+                        channel.close();
+                        break;
+                }
+                return true;
+            } catch (IOException | RuntimeException e) {
+                return false;
+            }
+        }
+
+        private String randomFile() {
+            return preparedFile(random.nextInt(preparedFiles));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package sdfs.loadgen;
+
+import java.net.InetSocketAddress;
+
+/**
+ * what load to generate, each option defaults to the system property named after it
+ */
+public class LoadOptions {
+    private Workload workload = Workload.valueOf(System.getProperty("sdfs.loadgen.workload", "MIXED").toUpperCase());
+    private int threads = Integer.getInteger("sdfs.loadgen.threads", 16);
+    private long warmupSeconds = Long.getLong("sdfs.loadgen.warmup.seconds", 5);
+    private long durationSeconds = Long.getLong("sdfs.loadgen.duration.seconds", 30);
+    // operations per second over all threads, 0 to issue the next operation as soon as the last one is done
+    private double rate = Double.parseDouble(System.getProperty("sdfs.loadgen.rate", "0"));
+    // prepared files to read and overwrite
+    private int files = Integer.getInteger("sdfs.loadgen.files", 64);
+    private int fileSize = Integer.getInteger("sdfs.loadgen.file.size", 256 * 1024);
+    // size of random reads, overwrites and small files
+    private int ioSize = Integer.getInteger("sdfs.loadgen.io.size", 4096);
+    private int cacheSize = Integer.getInteger("sdfs.loadgen.cache.size", 16);
+    // host:port of a running name node, an in-process cluster is started when not given
+    private String nameNode = System.getProperty("sdfs.loadgen.namenode", "");
+    // data nodes of the in-process cluster
+    private int dataNodes = Integer.getInteger("sdfs.loadgen.datanodes", 3);
+    // file to write the report to as json, none when not given
+    private String jsonPath = System.getProperty("sdfs.loadgen.json", "");
+
+    public Workload getWorkload() {
+        return workload;
+    }
+
+    public void setWorkload(Workload workload) {
+        this.workload = workload;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public long getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public void setWarmupSeconds(long warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(long durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public void setFiles(int files) {
+        this.files = files;
+    }
+
+    public int getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(int fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public int getIoSize() {
+        return ioSize;
+    }
+
+    public void setIoSize(int ioSize) {
+        this.ioSize = ioSize;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * @return the address of a running name node, null to start an in-process cluster
+     */
+    public InetSocketAddress getNameNodeAddress() {
+        if (nameNode.isEmpty()) {
+            return null;
+        }
+        int colon = nameNode.lastIndexOf(':');
+        return new InetSocketAddress(nameNode.substring(0, colon), Integer.parseInt(nameNode.substring(colon + 1)));
+    }
+
+    public void setNameNode(String nameNode) {
+        this.nameNode = nameNode;
+    }
+
+    public int getDataNodes() {
+        return dataNodes;
+    }
+
+    public void setDataNodes(int dataNodes) {
+        this.dataNodes = dataNodes;
+    }
+
+    public String getJsonPath() {
+        return jsonPath;
+    }
+
+    public void setJsonPath(String jsonPath) {
+        this.jsonPath = jsonPath;
+    }
+}
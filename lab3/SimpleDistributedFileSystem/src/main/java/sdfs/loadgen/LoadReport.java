@@ -0,0 +1,113 @@
+package sdfs.loadgen;
+
+import sdfs.metrics.LatencyHistogram;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * throughput and latencies of every operation measured in a load generator run
+ * only operations started after the warm up count
+ */
+public class LoadReport {
+    private final Workload workload;
+    private final int threads;
+    private final double rate;
+    private final Map<Operation, LatencyHistogram> histogramMap = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errorMap = new EnumMap<>(Operation.class);
+    private volatile long measuredNanos;
+
+    LoadReport(LoadOptions options) {
+        this.workload = options.getWorkload();
+        this.threads = options.getThreads();
+        this.rate = options.getRate();
+        for (Operation operation : Operation.values()) {
+            histogramMap.put(operation, new LatencyHistogram());
+            errorMap.put(operation, new LongAdder());
+        }
+    }
+
+    void recordLatency(Operation operation, long nanos) {
+        histogramMap.get(operation).record(nanos);
+    }
+
+    void recordError(Operation operation) {
+        errorMap.get(operation).increment();
+    }
+
+    void setMeasuredNanos(long measuredNanos) {
+        this.measuredNanos = measuredNanos;
+    }
+
+    public LatencyHistogram getHistogram(Operation operation) {
+        return histogramMap.get(operation);
+    }
+
+    public long getErrors(Operation operation) {
+        return errorMap.get(operation).sum();
+    }
+
+    /**
+     * @return operations completed per second
+     */
+    public double getThroughput(Operation operation) {
+        double seconds = measuredNanos / 1e9;
+        return seconds == 0 ? 0 : histogramMap.get(operation).getCount() / seconds;
+    }
+
+    public double getTotalThroughput() {
+        double throughput = 0;
+        for (Operation operation : Operation.values()) {
+            throughput += getThroughput(operation);
+        }
+        return throughput;
+    }
+
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "workload %s, %d threads, %s, %.1f s measured, %.1f ops/s%n",
+                workload, threads, rate > 0 ? String.format(Locale.ROOT, "open loop at %.1f ops/s", rate) : "closed loop",
+                measuredNanos / 1e9, getTotalThroughput()));
+        sb.append(String.format(Locale.ROOT, "%-16s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "ops/s", "p50 us", "p99 us", "p999 us", "max us"));
+        for (Operation operation : workload.getWeightMap().keySet()) {
+            LatencyHistogram histogram = histogramMap.get(operation);
+            sb.append(String.format(Locale.ROOT, "%-16s %10d %8d %10.1f %10d %10d %10d %10d%n",
+                    operation, histogram.getCount(), getErrors(operation), getThroughput(operation),
+                    histogram.getP50Micros(), histogram.getP99Micros(), histogram.getP999Micros(), histogram.getMaxMicros()));
+        }
+        return sb.toString();
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"workload\":\"").append(workload).append('"');
+        sb.append(",\"threads\":").append(threads);
+        sb.append(",\"rate\":").append(rate);
+        sb.append(",\"measuredSeconds\":").append(TimeUnit.NANOSECONDS.toMillis(measuredNanos) / 1000.0);
+        sb.append(",\"throughput\":").append(String.format(Locale.ROOT, "%.3f", getTotalThroughput()));
+        sb.append(",\"operations\":{");
+        boolean first = true;
+        for (Operation operation : workload.getWeightMap().keySet()) {
+            LatencyHistogram histogram = histogramMap.get(operation);
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append('"').append(operation).append("\":{");
+            sb.append("\"count\":").append(histogram.getCount());
+            sb.append(",\"errors\":").append(getErrors(operation));
+            sb.append(",\"throughput\":").append(String.format(Locale.ROOT, "%.3f", getThroughput(operation)));
+            sb.append(",\"p50Micros\":").append(histogram.getP50Micros());
+            sb.append(",\"p99Micros\":").append(histogram.getP99Micros());
+            sb.append(",\"p999Micros\":").append(histogram.getP999Micros());
+            sb.append(",\"maxMicros\":").append(histogram.getMaxMicros());
+            sb.append('}');
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package sdfs.loadgen;
+
+/**
+ * the operations a load generator issues, each timed from start to the close of its channel
+ */
+public enum Operation {
+    // make a new directory
+    MKDIR,
+    // create an empty file
+    CREATE,
+    // open a prepared file read only and close it again
+    OPEN_CLOSE,
+    // read a whole prepared file from the start
+    SEQUENTIAL_READ,
+    // read a small piece at a random position of a prepared file
+    RANDOM_READ,
+    // write a small piece at a random position of a prepared file
+    OVERWRITE,
+    // create a file and write a small piece of data into it
+    SMALL_FILE
+}
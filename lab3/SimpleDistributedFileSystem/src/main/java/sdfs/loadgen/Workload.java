@@ -0,0 +1,50 @@
+package sdfs.loadgen;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * a mix of operations, each chosen with a probability proportional to its weight
+ */
+public enum Workload {
+    METADATA(new int[]{10, 30, 60, 0, 0, 0, 0}),
+    SEQUENTIAL_READ(new int[]{0, 0, 0, 100, 0, 0, 0}),
+    RANDOM_READ(new int[]{0, 0, 0, 0, 100, 0, 0}),
+    OVERWRITE(new int[]{0, 0, 0, 0, 20, 80, 0}),
+    SMALL_FILES(new int[]{0, 0, 20, 0, 30, 0, 50}),
+    MIXED(new int[]{2, 8, 20, 20, 30, 15, 5});
+
+    private final Map<Operation, Integer> weightMap = new EnumMap<>(Operation.class);
+    private final int totalWeight;
+
+    /**
+     * @param weights the weight of every operation, in the order operations are declared
+     */
+    Workload(int[] weights) {
+        int total = 0;
+        for (Operation operation : Operation.values()) {
+            int weight = weights[operation.ordinal()];
+            if (weight > 0) {
+                weightMap.put(operation, weight);
+                total += weight;
+            }
+        }
+        totalWeight = total;
+    }
+
+    public Map<Operation, Integer> getWeightMap() {
+        return weightMap;
+    }
+
+    Operation choose(Random random) {
+        int chosen = random.nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> entry : weightMap.entrySet()) {
+            chosen -= entry.getValue();
+            if (chosen < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+}
@@ -0,0 +1,136 @@
+package sdfs.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a histogram of latencies that can be recorded into from many threads without locking
+ * values are counted in buckets growing by powers of two, each split into a fixed number of sub buckets
+ * so every recorded value is kept with a relative error below one over the sub bucket amount
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    // 2^SUB_BUCKET_BITS sub buckets for each power of two
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_AMOUNT = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_AMOUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param nanos the latency to record, negative values are counted as zero
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalCount.increment();
+        totalNanos.add(nanos);
+        if (nanos > maxNanos.get()) {
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    static int bucketIndex(long value) {
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        if (magnitude < SUB_BUCKET_BITS) {
+            // small values have a bucket of their own
+            return (int) value;
+        }
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKET_AMOUNT - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKET_AMOUNT + subBucket;
+    }
+
+    /**
+     * @return the largest value that falls into the bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_AMOUNT) {
+            return index;
+        }
+        int magnitude = index / SUB_BUCKET_AMOUNT + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKET_AMOUNT;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        long lowerBound = (SUB_BUCKET_AMOUNT + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the latency in nanoseconds that the given percentage of the recorded latencies do not exceed
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    @Override
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+    }
+
+    @Override
+    public long getP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(50));
+    }
+
+    @Override
+    public long getP90Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(90));
+    }
+
+    @Override
+    public long getP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(99));
+    }
+
+    @Override
+    public long getP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(99.9));
+    }
+
+    /**
+     * forget every recorded latency
+     * latencies recorded at the same time may be partly kept
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+}
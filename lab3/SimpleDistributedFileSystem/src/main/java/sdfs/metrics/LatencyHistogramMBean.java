@@ -0,0 +1,22 @@
+package sdfs.metrics;
+
+/**
+ * the latencies of one kind of request, in microseconds
+ */
+public interface LatencyHistogramMBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    long getMaxMicros();
+
+    long getP50Micros();
+
+    long getP90Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    void reset();
+}
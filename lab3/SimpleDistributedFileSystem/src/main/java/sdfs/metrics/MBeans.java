@@ -0,0 +1,33 @@
+package sdfs.metrics;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * to publish MBeans to the platform MBean server under the sdfs domain
+ */
+public class MBeans {
+    public static final String DOMAIN = "sdfs";
+
+    private MBeans() {
+    }
+
+    /**
+     * register the MBean, replacing the one already registered with the same name
+     * failing to register is not fatal, the server works on without being observed
+     * @param name the key properties of the object name, e.g. type=NameNode,port=1234
+     * @param mBean the MBean
+     */
+    public static void register(String name, Object mBean) {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN+":"+name);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(mBean, objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package sdfs.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * a latency histogram for every type of request a server handles
+ * @param <T> the request type
+ */
+public class RequestMetrics<T extends Enum<T>> {
+    private final Map<T, LatencyHistogram> histogramMap;
+
+    public RequestMetrics(Class<T> typeClass) {
+        // filled up front, so that recording never changes the map
+        histogramMap = new EnumMap<>(typeClass);
+        for (T type : typeClass.getEnumConstants()) {
+            histogramMap.put(type, new LatencyHistogram());
+        }
+    }
+
+    public void record(T type, long nanos) {
+        histogramMap.get(type).record(nanos);
+    }
+
+    public LatencyHistogram getHistogram(T type) {
+        return histogramMap.get(type);
+    }
+
+    /**
+     * publish every histogram as an MBean named by the given name and the request type
+     * @param name the name of the server, as key properties of an object name, e.g. type=NameNodeRequest,port=1234
+     */
+    public void register(String name) {
+        for (Map.Entry<T, LatencyHistogram> entry : histogramMap.entrySet()) {
+            MBeans.register(name+",request="+entry.getKey().name(), entry.getValue());
+        }
+    }
+}
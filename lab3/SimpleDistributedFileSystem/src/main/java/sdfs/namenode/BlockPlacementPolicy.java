@@ -0,0 +1,16 @@
+package sdfs.namenode;
+
+import java.util.List;
+
+/**
+ * decide which data nodes the replicas of a new block are placed on
+ * it is always called with the lock of the data node manager held
+ */
+public interface BlockPlacementPolicy {
+    /**
+     * @param candidates the live data nodes, never empty
+     * @param amount     the number of data nodes to choose, no more than the number of candidates
+     * @return distinct data nodes chosen from the candidates
+     */
+    List<DataNodeDescriptor> chooseDataNodes(List<DataNodeDescriptor> candidates, int amount);
+}
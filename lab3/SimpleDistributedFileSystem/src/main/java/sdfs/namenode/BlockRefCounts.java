@@ -0,0 +1,195 @@
+package sdfs.namenode;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * the reference count of each block, by block id
+ * the ids are spread over stripes, each an open addressing table of primitive ints with a lock of its own
+ * so that opening or closing a large file only ever holds one stripe for one block at a time
+ * a block without any reference is not in the table
+ */
+class BlockRefCounts {
+    // must be a power of two
+    private static final int STRIPE_AMOUNT = 64;
+    private static final int STRIPE_BITS = Integer.numberOfTrailingZeros(STRIPE_AMOUNT);
+
+    private final Stripe[] stripes = new Stripe[STRIPE_AMOUNT];
+
+    BlockRefCounts() {
+        for (int i = 0; i < STRIPE_AMOUNT; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * add a reference to the block
+     */
+    void reference(int blockID) {
+        int hash = hash(blockID);
+        Stripe stripe = stripes[hash & (STRIPE_AMOUNT - 1)];
+        stripe.lock.lock();
+        stripe.add(blockID, hash >>> STRIPE_BITS, false);
+        stripe.lock.unlock();
+    }
+
+    /**
+     * give the block its first reference
+     * @return false if the block is referenced already, it is left as it is then
+     */
+    boolean referenceIfAbsent(int blockID) {
+        int hash = hash(blockID);
+        Stripe stripe = stripes[hash & (STRIPE_AMOUNT - 1)];
+        stripe.lock.lock();
+        boolean added = stripe.add(blockID, hash >>> STRIPE_BITS, true);
+        stripe.lock.unlock();
+        return added;
+    }
+
+    /**
+     * drop a reference to the block, a block without any reference is ignored
+     */
+    void release(int blockID) {
+        int hash = hash(blockID);
+        Stripe stripe = stripes[hash & (STRIPE_AMOUNT - 1)];
+        stripe.lock.lock();
+        stripe.release(blockID, hash >>> STRIPE_BITS);
+        stripe.lock.unlock();
+    }
+
+    boolean contains(int blockID) {
+        return getCount(blockID) > 0;
+    }
+
+    /**
+     * @return the number of references to the block, 0 if there is none
+     */
+    int getCount(int blockID) {
+        int hash = hash(blockID);
+        Stripe stripe = stripes[hash & (STRIPE_AMOUNT - 1)];
+        stripe.lock.lock();
+        int index = stripe.find(blockID, hash >>> STRIPE_BITS);
+        int count = index < 0 ? 0 : stripe.counts[index];
+        stripe.lock.unlock();
+        return count;
+    }
+
+    /**
+     * @return the number of referenced blocks, each stripe is counted at a different moment
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            size += stripe.size;
+            stripe.lock.unlock();
+        }
+        return size;
+    }
+
+    private static int hash(int blockID) {
+        // the ids are given out in order, so scatter them over the stripes and the slots
+        int hash = blockID * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * linear probing with backward shift deletion, so that there are no tombstones to clean up
+     */
+    private static class Stripe {
+        private static final int EMPTY = -1;
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private int[] ids = newIds(INITIAL_CAPACITY);
+        private int[] counts = new int[INITIAL_CAPACITY];
+        private int size;
+
+        private static int[] newIds(int capacity) {
+            int[] ids = new int[capacity];
+            Arrays.fill(ids, EMPTY);
+            return ids;
+        }
+
+        private int find(int blockID, int hash) {
+            int mask = ids.length - 1;
+            for (int index = hash & mask; ; index = (index + 1) & mask) {
+                if (ids[index] == blockID) {
+                    return index;
+                }
+                if (ids[index] == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * @return false if only absent blocks are to be added and the block is present
+         */
+        private boolean add(int blockID, int hash, boolean onlyIfAbsent) {
+            int mask = ids.length - 1;
+            int index = hash & mask;
+            while (ids[index] != EMPTY) {
+                if (ids[index] == blockID) {
+                    if (onlyIfAbsent) {
+                        return false;
+                    }
+                    counts[index]++;
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            ids[index] = blockID;
+            counts[index] = 1;
+            size++;
+            // keep the table at most half full
+            if (size * 2 > ids.length) {
+                resize(ids.length * 2);
+            }
+            return true;
+        }
+
+        private void release(int blockID, int hash) {
+            int index = find(blockID, hash);
+            if (index < 0) {
+                return;
+            }
+            if (--counts[index] > 0) {
+                return;
+            }
+            size--;
+            // move the following entries of the run back into the gap
+            int mask = ids.length - 1;
+            int gap = index;
+            for (int next = (gap + 1) & mask; ids[next] != EMPTY; next = (next + 1) & mask) {
+                int home = hash(ids[next]) >>> STRIPE_BITS & mask;
+                // the entry may fill the gap only if its home slot is not between the gap and itself
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    ids[gap] = ids[next];
+                    counts[gap] = counts[next];
+                    gap = next;
+                }
+            }
+            ids[gap] = EMPTY;
+            counts[gap] = 0;
+        }
+
+        private void resize(int capacity) {
+            int[] oldIds = ids;
+            int[] oldCounts = counts;
+            ids = newIds(capacity);
+            counts = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != EMPTY) {
+                    int index = hash(oldIds[i]) >>> STRIPE_BITS & mask;
+                    while (ids[index] != EMPTY) {
+                        index = (index + 1) & mask;
+                    }
+                    ids[index] = oldIds[i];
+                    counts[index] = oldCounts[i];
+                }
+            }
+        }
+    }
+}
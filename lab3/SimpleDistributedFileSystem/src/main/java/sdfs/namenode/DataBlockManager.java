@@ -1,89 +1,258 @@
 package sdfs.namenode;
 
-import sdfs.filetree.BlockInfo;
+import sdfs.filetree.BlockList;
 import sdfs.filetree.DirNode;
-import sdfs.filetree.LocatedBlock;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * to manage available block id of each data node
  * and recordExistence whether each block is still in use or not
+ * and which unreferenced blocks the data nodes should delete
  */
 public class DataBlockManager {
-    // map block id to its reference count
-    // if the file that contains this block is in the current file tree
-    // the reference count would be one
-    // if a user is opening a file
-    // then all the blocks of such file would +1 reference
-    // if a user closes a file
-    // then all the blocks of such file would -1 reference
-    private Map<Integer, Integer> id2RefCount = new HashMap<>();
+    // the most blocks a data node is told to delete in reply to one block report
+    private final int deletionLimit = Integer.getInteger("sdfs.namenode.block.deletion.limit", 64);
+    // how long after a restart an id that may still be stored waits for the data nodes to report, before it is given out anyway
+    private final long reportWaitNanos = TimeUnit.SECONDS.toNanos(Long.getLong("sdfs.namenode.startup.report.wait.seconds", 60));
 
+    // the reference count of each block
+    // the file tree holds one reference to each block of its files
+    // an opened file holds one reference to each block in its own block list
+    // from the time the block enters the list until it leaves it or the file is closed
+    // a block without any reference is garbage
+    // it has locks of its own, so opening and closing files does not take the lock below
+    private final BlockRefCounts refCounts = new BlockRefCounts();
+
+    // the blocks each data node reported to store, by the index of the data node in the table
+    private Map<Integer, Set<Integer>> storedBlockMap = new HashMap<>();
+    // map block id to the number of data nodes storing it
+    // an unreferenced block still stored somewhere is pending deletion and its id is not given out again
+    private Map<Integer, Integer> id2StoredCount = new HashMap<>();
+
+    // new ids are given out in increasing order, so that a freed id is not reused right away
+    // it is kept in the image, since the file tree does not tell the ids of blocks no file refers to any more
+    private int nextBlockNumber;
+    // no id from this one on has ever been given out, so none of them is stored anywhere
+    // Integer.MAX_VALUE once ids have wrapped around, or when the image did not keep the next block number
+    private int neverGivenOut;
+
+    // the data nodes of the table at startup that have not sent a full block report since
+    // until they have, an id given out before may be stored on one of them without id2StoredCount knowing it
+    private final Set<Integer> unreportedDataNodes = new HashSet<>();
+    private final long startNanos = System.nanoTime();
+    private final Condition reported;
+
+    // guards the stored blocks and the next block number
     private ReentrantLock lock = new ReentrantLock();
 
-    DataBlockManager(DirNode root) {
+    /**
+     * @param nextBlockNumber the next block number kept in the image, -1 if the image did not keep it
+     * @param dataNodeAmount the number of data nodes in the table of the image
+     */
+    DataBlockManager(DirNode root, int nextBlockNumber, int dataNodeAmount) {
+        reported = lock.newCondition();
         root.recordExistence(this);
+        this.nextBlockNumber = Math.max(this.nextBlockNumber, nextBlockNumber);
+        neverGivenOut = nextBlockNumber < 0 ? Integer.MAX_VALUE : this.nextBlockNumber;
+        for (int i = 0; i < dataNodeAmount; i++) {
+            unreportedDataNodes.add(i);
+        }
+    }
+
+    /**
+     * record a reference from the file tree when loading it
+     */
+    public void recordExistence(int blockID) {
+        refCounts.reference(blockID);
+        // only called while loading, before any block is given out
+        nextBlockNumber = Math.max(nextBlockNumber, blockID + 1);
     }
 
-    public void recordExistence(LocatedBlock locatedBlock) {
-        int blockID = locatedBlock.getId();
+    /**
+     * @return the next block number to keep in the image
+     */
+    int getNextBlockNumberToKeep() {
         lock.lock();
-        id2RefCount.putIfAbsent(blockID, 1);
+        int blockNumber = nextBlockNumber;
         lock.unlock();
+        return blockNumber;
+    }
+
+    /**
+     * record the references of a newly opened file
+     */
+    public void recordOpen(BlockList blockList) {
+        for (int i = 0; i < blockList.size(); i++) {
+            refCounts.reference(blockList.getId(i));
+        }
+    }
+
+    /**
+     * record the references of the file tree to the blocks of a file copied from another one
+     */
+    public void recordCopy(BlockList blockList) {
+        for (int i = 0; i < blockList.size(); i++) {
+            refCounts.reference(blockList.getId(i));
+        }
     }
 
-    public void recordOpen(Iterable<BlockInfo> blockInfoIterable) {
+    /**
+     * @return the number of references to the block, of the file tree and of the opened files
+     */
+    int getReferenceCount(int blockID) {
+        return refCounts.getCount(blockID);
+    }
+
+    /**
+     * drop the references of an opened file that is closed without changing the file tree
+     */
+    public void recordClose(BlockList blockList) {
+        for (int i = 0; i < blockList.size(); i++) {
+            refCounts.release(blockList.getId(i));
+        }
+    }
+
+    /**
+     * record the reference of an opened file to a block it has just been given, when redoing the log
+     * the ids given out after the image was written are not given out again
+     */
+    void recordAllocation(int blockID) {
+        refCounts.reference(blockID);
         lock.lock();
-        for (BlockInfo blockInfo : blockInfoIterable) {
-            for (LocatedBlock locatedBlock : blockInfo) {
-                int blockID = locatedBlock.getId();
-                if (id2RefCount.containsKey(blockID)) {
-                    int oldRefCount = id2RefCount.get(blockID);
-                    id2RefCount.replace(blockID, oldRefCount+1);
-                } else {
-                    id2RefCount.put(blockID, 1);
-                }
-            }
+        nextBlockNumber = Math.max(nextBlockNumber, blockID + 1);
+        if (neverGivenOut != Integer.MAX_VALUE) {
+            neverGivenOut = Math.max(neverGivenOut, nextBlockNumber);
         }
         lock.unlock();
     }
 
-    public void recordClose(Iterable<BlockInfo> blockInfoIterable) {
+    /**
+     * drop the reference of an opened file to a block it has replaced or removed
+     */
+    void recordRelease(int blockID) {
+        refCounts.release(blockID);
+    }
+
+    /**
+     * an id that may have been given out before the restart is only given out again once every data node has reported
+     * or the wait for the reports is over, so that a data node that is gone is not waited for forever
+     * @return a block id that is neither referenced nor still stored on a data node, with one reference
+     */
+    int getNextBlockNumber() {
         lock.lock();
-        for (BlockInfo blockInfo : blockInfoIterable) {
-            for (LocatedBlock locatedBlock : blockInfo) {
-                int blockID = locatedBlock.getId();
-                if (id2RefCount.containsKey(blockID)) {
-                    int oldRefCount = id2RefCount.get(blockID);
-                    if (oldRefCount == 1) {
-                        id2RefCount.remove(blockID);
-                    } else {
-                        id2RefCount.replace(blockID, oldRefCount-1);
-                    }
+        if (nextBlockNumber < neverGivenOut) {
+            awaitReports();
+        }
+        // an unreferenced block only gets referenced again here, so it can not be taken meanwhile
+        while (id2StoredCount.containsKey(nextBlockNumber) || !refCounts.referenceIfAbsent(nextBlockNumber)) {
+            nextBlockNumber = nextBlockNumber == Integer.MAX_VALUE ? 0 : nextBlockNumber + 1;
+        }
+        int blockNumber = nextBlockNumber;
+        if (nextBlockNumber == Integer.MAX_VALUE) {
+            nextBlockNumber = 0;
+            neverGivenOut = Integer.MAX_VALUE;
+        } else {
+            nextBlockNumber++;
+            neverGivenOut = Math.max(neverGivenOut, nextBlockNumber);
+        }
+        lock.unlock();
+        return blockNumber;
+    }
+
+    /**
+     * wait until every data node of the table at startup has sent a full block report, or the wait is over
+     * the lock must be held
+     */
+    private void awaitReports() {
+        long waitNanos = startNanos + reportWaitNanos - System.nanoTime();
+        while (!unreportedDataNodes.isEmpty() && waitNanos > 0) {
+            try {
+                waitNanos = reported.awaitNanos(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        unreportedDataNodes.clear();
+    }
+
+    /**
+     * update the blocks stored on a data node
+     * @param dataNodeIndex the index of the data node in the data node table
+     * @param full whether the added blocks are all the blocks of the data node, instead of the change since the last report
+     * @param addedBlocks the blocks stored since the last report, or all of them
+     * @param removedBlocks the blocks deleted since the last report
+     * @return the unreferenced blocks the data node should delete, no more than the deletion limit
+     */
+    List<Integer> blockReport(int dataNodeIndex, boolean full, Collection<Integer> addedBlocks, Collection<Integer> removedBlocks) {
+        lock.lock();
+        Set<Integer> storedBlocks = storedBlockMap.computeIfAbsent(dataNodeIndex, k -> new HashSet<>());
+        if (full) {
+            for (int blockID : storedBlocks) {
+                unstore(blockID);
+            }
+            storedBlocks.clear();
+            if (unreportedDataNodes.remove(dataNodeIndex)) {
+                reported.signalAll();
+            }
+        } else {
+            for (int blockID : removedBlocks) {
+                if (storedBlocks.remove(blockID)) {
+                    unstore(blockID);
                 }
             }
         }
+        for (int blockID : addedBlocks) {
+            if (storedBlocks.add(blockID)) {
+                id2StoredCount.merge(blockID, 1, Integer::sum);
+            }
+        }
+
+        List<Integer> deletion = new ArrayList<>();
+        for (int blockID : storedBlocks) {
+            if (deletion.size() >= deletionLimit) {
+                break;
+            }
+            if (!refCounts.contains(blockID)) {
+                deletion.add(blockID);
+            }
+        }
         lock.unlock();
+        return deletion;
     }
 
-    int getNextBlockNumber() {
-        int index = 0;
+    private void unstore(int blockID) {
+        int storedCount = id2StoredCount.get(blockID);
+        if (storedCount == 1) {
+            id2StoredCount.remove(blockID);
+        } else {
+            id2StoredCount.replace(blockID, storedCount-1);
+        }
+    }
+
+    /**
+     * @return the number of blocks referenced by the file tree or an opened file
+     */
+    int getLiveBlockAmount() {
+        return refCounts.size();
+    }
+
+    /**
+     * @return the number of blocks stored on some data node without being referenced
+     */
+    int getPendingDeletionAmount() {
         lock.lock();
-        while (true) {
-            if (!id2RefCount.containsKey(index)) {
-                id2RefCount.put(index, 1);
-                lock.unlock();
-                return index;
-            } else if (id2RefCount.get(index) == 0) {
-                id2RefCount.replace(index,1);
-                lock.unlock();
-                return index;
+        int amount = 0;
+        for (int blockID : id2StoredCount.keySet()) {
+            if (!refCounts.contains(blockID)) {
+                amount++;
             }
-            index++;
         }
+        lock.unlock();
+        return amount;
     }
 }
@@ -0,0 +1,66 @@
+package sdfs.namenode;
+
+import java.net.InetAddress;
+
+/**
+ * the state of a registered data node as seen by the name node
+ * it is guarded by the lock of the data node manager
+ */
+public class DataNodeDescriptor {
+    private final int index;
+    private final InetAddress address;
+    private final int port;
+    private long reportedUsedSpace;
+    private int outstandingRequests;
+    private long lastHeartbeatMillis;
+    // the size of the blocks placed on this data node since its last heartbeat
+    // so that a burst of allocations does not all go to the same emptiest node
+    private long placedSpace;
+
+    DataNodeDescriptor(int index, InetAddress address, int port) {
+        this.index = index;
+        this.address = address;
+        this.port = port;
+    }
+
+    /**
+     * @return the index of the data node in the data node table
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return the used space reported by the last heartbeat, plus the blocks placed since then
+     */
+    public long getUsedSpace() {
+        return reportedUsedSpace + placedSpace;
+    }
+
+    public int getOutstandingRequests() {
+        return outstandingRequests;
+    }
+
+    public long getLastHeartbeatMillis() {
+        return lastHeartbeatMillis;
+    }
+
+    void updateHeartbeat(long usedSpace, int outstandingRequests, long heartbeatMillis) {
+        this.reportedUsedSpace = usedSpace;
+        this.outstandingRequests = outstandingRequests;
+        this.lastHeartbeatMillis = heartbeatMillis;
+        this.placedSpace = 0;
+    }
+
+    void blockPlaced(int blockSize) {
+        placedSpace += blockSize;
+    }
+}
@@ -0,0 +1,114 @@
+package sdfs.namenode;
+
+import sdfs.entity.DataNodeInfo;
+import sdfs.filetree.DataNodeTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * keep track of the data nodes registered by their heartbeats
+ * and choose the data nodes new blocks are placed on
+ */
+public class DataNodeManager {
+    // a data node is considered dead if it has not sent a heartbeat for this long
+    private final long expireMillis = 1000 * Long.getLong("sdfs.namenode.datanode.expire.seconds", 30);
+
+    private final DataNodeTable dataNodeTable;
+    // the data node of the configuration, used while no data node is alive
+    private final int defaultDataNodeIndex;
+    // map the index of each registered data node in the table to its state
+    private final Map<Integer, DataNodeDescriptor> descriptorMap = new HashMap<>();
+    private BlockPlacementPolicy placementPolicy;
+
+    private ReentrantLock lock = new ReentrantLock();
+
+    DataNodeManager(DataNodeTable dataNodeTable, int defaultDataNodeIndex) {
+        this.dataNodeTable = dataNodeTable;
+        this.defaultDataNodeIndex = defaultDataNodeIndex;
+        this.placementPolicy = createPlacementPolicy(System.getProperty("sdfs.namenode.placement.policy", "round-robin"));
+    }
+
+    /**
+     * @param name round-robin, least-used-space or least-outstanding-requests
+     * @return the placement policy of such name
+     * @throws IllegalArgumentException if there is no such policy
+     */
+    static BlockPlacementPolicy createPlacementPolicy(String name) {
+        switch (name) {
+            case "round-robin": return new RoundRobinPlacementPolicy();
+            case "least-used-space": return new LeastUsedSpacePlacementPolicy();
+            case "least-outstanding-requests": return new LeastOutstandingRequestsPlacementPolicy();
+            default: throw new IllegalArgumentException("Unknown placement policy "+name);
+        }
+    }
+
+    void setPlacementPolicy(BlockPlacementPolicy placementPolicy) {
+        lock.lock();
+        this.placementPolicy = placementPolicy;
+        lock.unlock();
+    }
+
+    /**
+     * register the data node if it is the first heartbeat of it, and update its state
+     * @param dataNodeInfo what the data node reports
+     */
+    void heartbeat(DataNodeInfo dataNodeInfo) {
+        int index = dataNodeTable.indexOf(dataNodeInfo.getAddress(), dataNodeInfo.getPort());
+        lock.lock();
+        DataNodeDescriptor descriptor = descriptorMap.get(index);
+        if (descriptor == null) {
+            descriptor = new DataNodeDescriptor(index, dataNodeInfo.getAddress(), dataNodeInfo.getPort());
+            descriptorMap.put(index, descriptor);
+        }
+        descriptor.updateHeartbeat(dataNodeInfo.getUsedSpace(), dataNodeInfo.getOutstandingRequests(), System.currentTimeMillis());
+        lock.unlock();
+    }
+
+    /**
+     * @return the data nodes that have sent a heartbeat recently
+     */
+    List<DataNodeDescriptor> getLiveDataNodes() {
+        lock.lock();
+        List<DataNodeDescriptor> liveDataNodes = liveDataNodes();
+        lock.unlock();
+        return liveDataNodes;
+    }
+
+    private List<DataNodeDescriptor> liveDataNodes() {
+        long now = System.currentTimeMillis();
+        List<DataNodeDescriptor> liveDataNodes = new ArrayList<>();
+        for (DataNodeDescriptor descriptor : descriptorMap.values()) {
+            if (now - descriptor.getLastHeartbeatMillis() <= expireMillis) {
+                liveDataNodes.add(descriptor);
+            }
+        }
+        return liveDataNodes;
+    }
+
+    /**
+     * choose the data nodes to place the replicas of a new block on
+     * @param replication the number of replicas wanted
+     * @param blockSize the block size of the file, to estimate the space the block takes
+     * @return the indexes of distinct data nodes in the data node table, fewer if not enough data nodes are alive
+     */
+    int[] chooseDataNodes(int replication, int blockSize) {
+        lock.lock();
+        List<DataNodeDescriptor> liveDataNodes = liveDataNodes();
+        if (liveDataNodes.isEmpty()) {
+            lock.unlock();
+            return new int[]{defaultDataNodeIndex};
+        }
+        List<DataNodeDescriptor> chosen = placementPolicy.chooseDataNodes(liveDataNodes, Math.min(replication, liveDataNodes.size()));
+        int[] dataNodeIndexes = new int[chosen.size()];
+        for (int i = 0; i < dataNodeIndexes.length; i++) {
+            chosen.get(i).blockPlaced(blockSize);
+            dataNodeIndexes[i] = chosen.get(i).getIndex();
+        }
+        lock.unlock();
+        return dataNodeIndexes;
+    }
+}
@@ -1,47 +1,96 @@
 package sdfs.namenode;
 
+import sdfs.filetree.DataNodeTable;
 import sdfs.filetree.DirNode;
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
-import java.util.concurrent.locks.ReentrantLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 public class DiskFlusher implements Runnable {
+    // the image starts with these two before its objects, so that an image of another format is refused instead of misread
+    static final int IMAGE_MAGIC = 0x53444653;
+    // raised whenever what the image holds changes, an image without the header is of version 0
+    // version 2 keeps the next block number after the data node table
+    static final int IMAGE_VERSION = 2;
+
     private DirNode rootNode;
+    private DataNodeTable dataNodeTable;
+    private DataBlockManager dataBlockManager;
     private long internalSeconds;
     private Logger logger;
     private File file;
+    private File tempFile;
+
+    // set when the logger asks for a check point before the timer expires
+    private boolean checkPointRequested = false;
+
+    // how long writing the last check point took, and how many have been written
+    private volatile long lastCheckPointNanos;
+    private volatile long checkPointCount;
 
-    DiskFlusher(DirNode rootNode, Logger logger, String fileTreePath, long internalSeconds) {
+    DiskFlusher(DirNode rootNode, DataNodeTable dataNodeTable, DataBlockManager dataBlockManager, Logger logger, String fileTreePath, long internalSeconds) {
         this.rootNode = rootNode;
+        this.dataNodeTable = dataNodeTable;
+        this.dataBlockManager = dataBlockManager;
         this.logger = logger;
         this.internalSeconds = internalSeconds;
         file = new File(fileTreePath);
-        if (!file.exists()) {
-            try {
-                file.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+        tempFile = new File(fileTreePath+".tmp");
     }
 
+    /**
+     * wake the flusher up to write a check point now
+     * called by the logger once enough log has been written, so it must not block
+     */
+    synchronized void requestCheckPoint() {
+        checkPointRequested = true;
+        notifyAll();
+    }
+
+    long getLastCheckPointNanos() {
+        return lastCheckPointNanos;
+    }
+
+    long getCheckPointCount() {
+        return checkPointCount;
+    }
 
     @Override
     public void run() {
 
         try {
             while (true) {
-                FileOutputStream fileOutputStream = new FileOutputStream(file, false);
+                // write the image to a temporary file and move it over the old one
+                // so that a crash never leaves a half written image behind
+                long start = System.nanoTime();
+                FileOutputStream fileOutputStream = new FileOutputStream(tempFile, false);
+                DataOutputStream dataOutputStream = new DataOutputStream(fileOutputStream);
+                dataOutputStream.writeInt(IMAGE_MAGIC);
+                dataOutputStream.writeInt(IMAGE_VERSION);
                 ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream);
                 logger.prepToFlush();
                 objectOutputStream.writeObject(rootNode);
+                objectOutputStream.writeObject(dataNodeTable);
+                objectOutputStream.writeInt(dataBlockManager.getNextBlockNumberToKeep());
                 objectOutputStream.flush();
+                fileOutputStream.getFD().sync();
                 objectOutputStream.close();
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                // only now the log covered by the image can be dropped
                 logger.checkPoint();
-                Thread.sleep(1000 * internalSeconds);
+                lastCheckPointNanos = System.nanoTime() - start;
+                checkPointCount++;
+                synchronized (this) {
+                    if (!checkPointRequested) {
+                        wait(1000 * internalSeconds);
+                    }
+                    checkPointRequested = false;
+                }
             }
         } catch (InterruptedException | IOException e) {
             e.printStackTrace();
@@ -0,0 +1,26 @@
+package sdfs.namenode;
+
+/**
+ * periodically close the files opened by clients that stopped renewing their leases
+ */
+public class LeaseReaper implements Runnable {
+    private NameNode nameNode;
+    private long internalSeconds;
+
+    LeaseReaper(NameNode nameNode, long internalSeconds) {
+        this.nameNode = nameNode;
+        this.internalSeconds = internalSeconds;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                Thread.sleep(1000 * internalSeconds);
+                nameNode.expireLeases();
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package sdfs.namenode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * place blocks on the data nodes using the least disk space
+ */
+public class LeastUsedSpacePlacementPolicy implements BlockPlacementPolicy {
+    @Override
+    public List<DataNodeDescriptor> chooseDataNodes(List<DataNodeDescriptor> candidates, int amount) {
+        List<DataNodeDescriptor> sortedCandidates = new ArrayList<>(candidates);
+        sortedCandidates.sort(Comparator.comparingLong(DataNodeDescriptor::getUsedSpace)
+                .thenComparingInt(DataNodeDescriptor::getIndex));
+        return new ArrayList<>(sortedCandidates.subList(0, amount));
+    }
+}
@@ -1,5 +1,8 @@
 package sdfs.namenode;
 
+import sdfs.entity.FileAttributes;
+import sdfs.filetree.BlockInfo;
+import sdfs.filetree.LocatedBlock;
 import sdfs.namenode.log.*;
 
 import java.io.*;
@@ -7,6 +10,12 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * write ahead log of the name node
+ * the log is split into segments named [log path].[segment number]
+ * a new segment is started once the current one grows beyond a size threshold and no transaction is open, and at every check point
+ * segments fully covered by the image on the disk are deleted after a check point
+ */
 public class Logger {
     private ObjectOutputStream oos;
     private ReentrantLock logLock = new ReentrantLock();
@@ -14,22 +23,56 @@ public class Logger {
     private AtomicInteger onActionCounter = new AtomicInteger(0);
     private ReentrantLock flushLock = new ReentrantLock();
 
+    private final String logPath;
+    // start a new segment once the current one exceeds this size
+    private final long segmentBytesLimit = Long.getLong("sdfs.namenode.log.segment.bytes", 4 * 1024 * 1024);
+    // ask for a check point once this much log has been written since the last one
+    private final long checkPointBytesLimit = Long.getLong("sdfs.namenode.checkpoint.log.bytes", 16 * 1024 * 1024);
+
+    // the following fields are guarded by log lock
+    private FileOutputStream segmentOutputStream;
+    private long oldestSegment;
+    private long currentSegment;
+    private long segmentBytes;
+    private long bytesSinceCheckPoint;
+    private boolean checkPointRequested;
+    // transactions started but neither committed nor aborted yet
+    private int openTransactions;
+    private Runnable checkPointTrigger;
+    // all the log written since the name node started
+    private volatile long bytesWritten;
+    // whether the current thread runs a batch, whose logs are flushed together once it ends
+    private final ThreadLocal<Boolean> batching = ThreadLocal.withInitial(() -> false);
+    // map every token that is still open to the segment holding its open log
+    // such segment must be kept, since the open log is needed to re-open the token on restart
+    private final Map<UUID, Long> openTokenSegmentMap = new HashMap<>();
+    // open and close logs waiting for their commit or abort
+    private final Map<Integer, Log> pendingTokenLogMap = new HashMap<>();
+    private final Map<Integer, Long> pendingTokenSegmentMap = new HashMap<>();
+
     Logger(String logPath, NameNode nameNode) {
-        File logFile = new File(logPath);
-        if (logFile.exists()) {
-            // re-construct name node context from previous log file
+        this.logPath = logPath;
+        adoptUnsegmentedLog();
+        List<Long> segmentList = listSegments();
+        if (!segmentList.isEmpty()) {
+            // re-construct name node context from previous log segments
             try {
-                FileInputStream fileInputStream = new FileInputStream(logFile);
-                ObjectInputStream ois = new ObjectInputStream(fileInputStream);
                 ArrayList<Log> logList = new ArrayList<>();
-                // load all the log into a list
-                while (true) {
-                    try {
-                        logList.add((Log) ois.readObject());
-                    } catch (EOFException e) {
-                        break;
+                // load all the log into a list, segment by segment
+                for (long segment : segmentList) {
+                    int segmentStart = logList.size();
+                    readSegment(segment, logList);
+                    for (int i = segmentStart; i < logList.size(); i++) {
+                        Log currentLog = logList.get(i);
+                        // go on numbering after the largest id ever used
+                        if (currentLog.getId() > id.get()) {
+                            id.set(currentLog.getId());
+                        }
+                        trackTokens(currentLog, segment);
                     }
                 }
+                oldestSegment = segmentList.get(0);
+                currentSegment = segmentList.get(segmentList.size()-1);
 
                 // find the last time when CHECK POINT log appears
                 int lastCheckPointIndex = 0;
@@ -55,8 +98,11 @@ public class Logger {
                             break;
                         }
                         case COMMIT: {
-                            committedLog.add(possibleLogMap.get(currentLog.getId()));
-                            possibleLogMap.remove(currentLog.getId());
+                            // the logs of a transaction may be gone together with a segment older than its commit
+                            Log committed = possibleLogMap.remove(currentLog.getId());
+                            if (committed != null) {
+                                committedLog.add(committed);
+                            }
                             break;
                         }
                         case CHECK_POINT: {
@@ -72,15 +118,12 @@ public class Logger {
                 assert possibleLogMap.isEmpty();
 
                 // extract out all unclosed file and its logs
-                Map<UUID, OpenReadLog> openedReadMap = new HashMap<>();
+                // the open log of a closed file may have been deleted together with its segment
                 Map<UUID, List<Log>> openedWriteMap = new HashMap<>();
                 for (Log currentLog : committedLog) {
                     switch (currentLog.getType()) {
-                        case OPEN_READ: {
-                            openedReadMap.put(((OpenReadLog) currentLog).getToken(), (OpenReadLog) currentLog);
-                            break;
-                        }
-                        case OPEN_WRITE: {
+                        case OPEN_WRITE:
+                        case OPEN_APPEND: {
                             List<Log> writeList = new ArrayList<>();
                             writeList.add(currentLog);
                             openedWriteMap.put(((OpenWriteLog) currentLog).getToken(), writeList);
@@ -94,39 +137,47 @@ public class Logger {
                         }
                         case COPY_ON_WRITE_BLOCK: {
                             List<Log> logs = openedWriteMap.get(((CopyOnWriteBlockLog) currentLog).getToken());
-                            logs.add(currentLog);
+                            if (logs != null) {
+                                logs.add(currentLog);
+                            }
                             break;
                         }
                         case ADD_BLOCKS: {
                             List<Log> logs = openedWriteMap.get(((AddBlocksLog) currentLog).getToken());
-                            logs.add(currentLog);
+                            if (logs != null) {
+                                logs.add(currentLog);
+                            }
                             break;
                         }
                         case REMOVE_BLOCKS: {
                             List<Log> logs = openedWriteMap.get(((RemoveBlocksLog) currentLog).getToken());
-                            logs.add(currentLog);
+                            if (logs != null) {
+                                logs.add(currentLog);
+                            }
+                            break;
+                        }
+                        case DROP_REPLICA: {
+                            List<Log> logs = openedWriteMap.get(((DropReplicaLog) currentLog).getToken());
+                            if (logs != null) {
+                                logs.add(currentLog);
+                            }
                             break;
                         }
                         case CLOSE_WRITE: {
                             openedWriteMap.remove(((CloseWriteLog) currentLog).getToken());
                             break;
                         }
-                        case CLOSE_READ: {
-                            openedReadMap.remove(((CloseReadLog) currentLog).getToken());
+                        case EXPIRE_WRITE: {
+                            openedWriteMap.remove(((ExpireWriteLog) currentLog).getToken());
                             break;
                         }
+                        // read only opens and closes are only found in logs of older name nodes
+                        // read only tokens are not recovered any more
                         default: break;
                     }
                 }
 
 
-                // re-open read-only file
-                if (openedReadMap.values().size() > 0) {
-                    for (OpenReadLog l : openedReadMap.values()) {
-                        nameNode.redoOpenReadonly(l.getFileUri(), l.getToken());
-                    }
-                }
-
                 // re-open read-write file and redo the action
                 if (openedWriteMap.values().size() > 0) {
                     for (List<Log> list : openedWriteMap.values()) {
@@ -136,6 +187,10 @@ public class Logger {
                                     nameNode.redoOpenReadwrite(((OpenWriteLog) l).getFileUri(), ((OpenWriteLog) l).getToken());
                                     break;
                                 }
+                                case OPEN_APPEND: {
+                                    nameNode.redoOpenAppend(((OpenAppendLog) l).getFileUri(), ((OpenAppendLog) l).getToken());
+                                    break;
+                                }
                                 case CREATE: {
                                     nameNode.redoOpenReadwrite(((CreateFileLog) l).getFileUri(), ((CreateFileLog) l).getToken());
                                     break;
@@ -145,11 +200,16 @@ public class Logger {
                                     break;
                                 }
                                 case ADD_BLOCKS: {
-                                    nameNode.redoAddBlocks(((AddBlocksLog) l).getToken(), ((AddBlocksLog) l).getNewBlockNumberList());
+                                    nameNode.redoAddBlocks(((AddBlocksLog) l).getToken(), ((AddBlocksLog) l).getNewBlockInfoList());
                                     break;
                                 }
                                 case COPY_ON_WRITE_BLOCK: {
-                                    nameNode.redoNewCopyOnWriteBlock(((CopyOnWriteBlockLog) l).getToken(), ((CopyOnWriteBlockLog) l).getFileBlockNumber(), ((CopyOnWriteBlockLog) l).getNewBlockNumber());
+                                    nameNode.redoNewCopyOnWriteBlock(((CopyOnWriteBlockLog) l).getToken(), ((CopyOnWriteBlockLog) l).getFileBlockNumber(), ((CopyOnWriteBlockLog) l).getNewBlockInfo());
+                                    break;
+                                }
+                                case DROP_REPLICA: {
+                                    nameNode.redoDropReplica(((DropReplicaLog) l).getToken(), ((DropReplicaLog) l).getReplica());
+                                    break;
                                 }
                             }
                         }
@@ -172,7 +232,10 @@ public class Logger {
                             break;
                         }
                         case COMMIT: {
-                            committedLog.add(possibleLogMap.get(currentLog.getId()));
+                            Log committed = possibleLogMap.get(currentLog.getId());
+                            if (committed != null) {
+                                committedLog.add(committed);
+                            }
                             break;
                         }
                         default: {
@@ -185,74 +248,365 @@ public class Logger {
                 // redo all the committed logs
                 for (Log currentLog : committedLog) {
                     switch (currentLog.getType()) {
-                        case OPEN_READ: {
-                            nameNode.redoOpenReadonly(((OpenReadLog) currentLog).getFileUri(), ((OpenReadLog) currentLog).getToken());
-                            break;
-                        }
                         case OPEN_WRITE: {
                             nameNode.redoOpenReadwrite(((OpenWriteLog) currentLog).getFileUri(), ((OpenWriteLog) currentLog).getToken());
                             break;
                         }
+                        case OPEN_APPEND: {
+                            nameNode.redoOpenAppend(((OpenAppendLog) currentLog).getFileUri(), ((OpenAppendLog) currentLog).getToken());
+                            break;
+                        }
                         case CREATE: {
-                            nameNode.redoCreate(((CreateFileLog) currentLog).getFileUri(), ((CreateFileLog) currentLog).getToken());
+                            nameNode.redoCreate(((CreateFileLog) currentLog).getFileUri(), ((CreateFileLog) currentLog).getFileAttributes(), ((CreateFileLog) currentLog).getToken());
                             break;
                         }
                         case COPY_ON_WRITE_BLOCK: {
-                            nameNode.redoNewCopyOnWriteBlock(((CopyOnWriteBlockLog) currentLog).getToken(), ((CopyOnWriteBlockLog) currentLog).getFileBlockNumber(), ((CopyOnWriteBlockLog) currentLog).getNewBlockNumber());
+                            nameNode.redoNewCopyOnWriteBlock(((CopyOnWriteBlockLog) currentLog).getToken(), ((CopyOnWriteBlockLog) currentLog).getFileBlockNumber(), ((CopyOnWriteBlockLog) currentLog).getNewBlockInfo());
                             break;
                         }
                         case ADD_BLOCKS: {
-                            nameNode.redoAddBlocks(((AddBlocksLog) currentLog).getToken(), ((AddBlocksLog) currentLog).getNewBlockNumberList());
+                            nameNode.redoAddBlocks(((AddBlocksLog) currentLog).getToken(), ((AddBlocksLog) currentLog).getNewBlockInfoList());
                             break;
                         }
                         case REMOVE_BLOCKS: {
                             nameNode.redoRemoveBlocks(((RemoveBlocksLog) currentLog).getToken(), ((RemoveBlocksLog) currentLog).getBlockAmount());
                             break;
                         }
+                        case DROP_REPLICA: {
+                            nameNode.redoDropReplica(((DropReplicaLog) currentLog).getToken(), ((DropReplicaLog) currentLog).getReplica());
+                            break;
+                        }
                         case CLOSE_WRITE: {
                             nameNode.redoCloseReadwrite(((CloseWriteLog) currentLog).getToken(), ((CloseWriteLog) currentLog).getNewFileSize());
                             break;
                         }
-                        case CLOSE_READ: {
-                            nameNode.redoCloseReadonly(((CloseReadLog) currentLog).getToken());
+                        case EXPIRE_WRITE: {
+                            nameNode.redoExpireReadwrite(((ExpireWriteLog) currentLog).getToken());
                             break;
                         }
                         case MK_DIR: {
                             nameNode.redoMkdir(((MkdirLog) currentLog).getFileUri());
                             break;
                         }
+                        case CREATE_SNAPSHOT: {
+                            nameNode.redoCreateSnapshot(((CreateSnapshotLog) currentLog).getDirUri(), ((CreateSnapshotLog) currentLog).getSnapshotName());
+                            break;
+                        }
+                        case DELETE_SNAPSHOT: {
+                            nameNode.redoDeleteSnapshot(((DeleteSnapshotLog) currentLog).getDirUri(), ((DeleteSnapshotLog) currentLog).getSnapshotName());
+                            break;
+                        }
+                        case COPY: {
+                            nameNode.redoCopy(((CopyLog) currentLog).getSrcUri(), ((CopyLog) currentLog).getDstUri());
+                            break;
+                        }
+                        case CONCAT: {
+                            nameNode.redoConcat(((ConcatLog) currentLog).getTargetUri(), ((ConcatLog) currentLog).getSourceUris());
+                            break;
+                        }
                         default:
                             break;
                     }
                 }
 
-            } catch (IOException | ClassNotFoundException e) {
+            } catch (IOException e) {
                 e.printStackTrace();
             }
-        } else {
+        }
+
+        // never append to an old segment, always start a new one
+        logLock.lock();
+        openSegment(currentSegment+1);
+        if (segmentList.isEmpty()) {
+            oldestSegment = currentSegment;
+        }
+        logLock.unlock();
+    }
+
+    /**
+     * a name node from before the log was segmented wrote the whole log to [log path] itself
+     * such log is turned into segment 0, so that it is replayed before every later segment
+     * and deleted like any other segment once a check point covers it
+     */
+    private void adoptUnsegmentedLog() {
+        File logFile = new File(logPath);
+        if (!logFile.exists()) {
+            return;
+        }
+        if (segmentFile(0).exists()) {
+            throw new IllegalStateException("Both the log "+logPath+" and its segment 0 exist");
+        }
+        if (!logFile.renameTo(segmentFile(0))) {
+            throw new IllegalStateException("Fail to turn the log "+logPath+" into a segment");
+        }
+    }
+
+    /**
+     * @return the numbers of all the segments on the disk, in ascending order
+     */
+    private List<Long> listSegments() {
+        File logFile = new File(logPath).getAbsoluteFile();
+        String prefix = logFile.getName()+".";
+        List<Long> segmentList = new ArrayList<>();
+        File[] files = logFile.getParentFile().listFiles();
+        if (files == null) {
+            return segmentList;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(prefix)) {
+                try {
+                    segmentList.add(Long.parseLong(file.getName().substring(prefix.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        Collections.sort(segmentList);
+        return segmentList;
+    }
+
+    private File segmentFile(long segment) {
+        return new File(logPath+"."+segment);
+    }
+
+    /**
+     * load all the logs of a segment
+     * a log torn by a crash at the end of the segment is ignored
+     * @param segment the segment to read
+     * @param logList the list to add the logs to
+     */
+    private void readSegment(long segment, List<Log> logList) throws IOException {
+        FileInputStream fileInputStream = new FileInputStream(segmentFile(segment));
+        ObjectInputStream ois;
+        try {
+            ois = new ObjectInputStream(fileInputStream);
+        } catch (EOFException e) {
+            // the segment was created but nothing was written to it
+            fileInputStream.close();
+            return;
+        }
+        while (true) {
             try {
-                logFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
+                logList.add((Log) ois.readObject());
+            } catch (EOFException e) {
+                break;
+            } catch (InvalidClassException e) {
+                // not torn, but written by a name node whose logs differ, the logs after it must not be skipped
+                ois.close();
+                throw new IllegalStateException("The log segment "+segment+" was written by a name node of another version", e);
+            } catch (ClassNotFoundException | ObjectStreamException e) {
+                System.err.println("Torn log in segment "+segment+"!");
+                break;
             }
         }
+        ois.close();
+    }
 
+    /**
+     * close the current segment and write to a new one from now on
+     * should be called with log lock held
+     * @param segment the number of the new segment
+     */
+    private void openSegment(long segment) {
         try {
-            FileOutputStream fileOutputStream = new FileOutputStream(logFile, true);
-            oos = new ObjectOutputStream(fileOutputStream);
+            if (oos != null) {
+                flushLog();
+                oos.close();
+            }
+            segmentOutputStream = new FileOutputStream(segmentFile(segment));
+            // logs of a batch are only written to the file when flushed
+            oos = new ObjectOutputStream(new BufferedOutputStream(segmentOutputStream, 64 * 1024));
+            oos.flush();
+            currentSegment = segment;
+            segmentBytes = segmentOutputStream.getChannel().position();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * delete every segment older than the last check point
+     * unless it holds the open log of a token that is still open
+     * should be called with log lock held
+     */
+    private void deleteCoveredSegments() {
+        long oldestNeededSegment = currentSegment;
+        for (long segment : openTokenSegmentMap.values()) {
+            oldestNeededSegment = Math.min(oldestNeededSegment, segment);
+        }
+        while (oldestSegment < oldestNeededSegment) {
+            File file = segmentFile(oldestSegment);
+            if (file.exists() && !file.delete()) {
+                System.err.println("Fail to delete log segment "+oldestSegment+"!");
+                return;
+            }
+            oldestSegment++;
+        }
+    }
+
+    /**
+     * keep track of which token is still open and which segment holds its open log
+     * should be called with log lock held, for every log in the order they are written
+     * @param log the log just written
+     * @param segment the segment it is written to
+     */
+    private void trackTokens(Log log, long segment) {
+        switch (log.getType()) {
+            case OPEN_WRITE:
+            case OPEN_APPEND:
+            case CREATE:
+            case CLOSE_WRITE:
+            case EXPIRE_WRITE: {
+                pendingTokenLogMap.put(log.getId(), log);
+                pendingTokenSegmentMap.put(log.getId(), segment);
+                break;
+            }
+            case COMMIT:
+            case ABORT: {
+                Log pendingLog = pendingTokenLogMap.remove(log.getId());
+                Long pendingSegment = pendingTokenSegmentMap.remove(log.getId());
+                if (pendingLog == null) {
+                    break;
+                }
+                boolean committed = log.getType() == Log.Type.COMMIT;
+                switch (pendingLog.getType()) {
+                    case OPEN_WRITE:
+                    case OPEN_APPEND: {
+                        if (committed) {
+                            openTokenSegmentMap.put(((OpenWriteLog) pendingLog).getToken(), pendingSegment);
+                        }
+                        break;
+                    }
+                    case CREATE: {
+                        if (committed) {
+                            openTokenSegmentMap.put(((CreateFileLog) pendingLog).getToken(), pendingSegment);
+                        }
+                        break;
+                    }
+                    // even an aborted close drops the token on the name node
+                    case CLOSE_WRITE: {
+                        openTokenSegmentMap.remove(((CloseWriteLog) pendingLog).getToken());
+                        break;
+                    }
+                    // an aborted expiry means the lease was renewed meanwhile
+                    case EXPIRE_WRITE: {
+                        if (committed) {
+                            openTokenSegmentMap.remove(((ExpireWriteLog) pendingLog).getToken());
+                        }
+                        break;
+                    }
+                    default: break;
+                }
+                break;
+            }
+            default: break;
+        }
+    }
+
+    /**
+     * set the action to run once enough log has been written since the last check point
+     * @param checkPointTrigger the action, it must not block
+     */
+    void setCheckPointTrigger(Runnable checkPointTrigger) {
+        logLock.lock();
+        this.checkPointTrigger = checkPointTrigger;
+        logLock.unlock();
+    }
+
+    /**
+     * @return the bytes of log written since the name node started
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the bytes of log written since the last check point
+     */
+    long getBytesSinceCheckPoint() {
+        logLock.lock();
+        long bytes = bytesSinceCheckPoint;
+        logLock.unlock();
+        return bytes;
+    }
+
     private void writeLog(Log log) {
         logLock.lock();
         try {
             oos.writeObject(log);
-            oos.flush();
+            // do not let the stream hold every log ever written
+            oos.reset();
+            trackTokens(log, currentSegment);
+            switch (log.getType()) {
+                case START: {
+                    openTransactions++;
+                    break;
+                }
+                case COMMIT:
+                case ABORT: {
+                    openTransactions--;
+                    break;
+                }
+                default: break;
+            }
+            if (!batching.get()) {
+                flushLog();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        checkLimits();
+        logLock.unlock();
+    }
+
+    /**
+     * write the buffered logs to the current segment and account for their size
+     * should be called with log lock held
+     */
+    private void flushLog() throws IOException {
+        oos.flush();
+        long newSegmentBytes = segmentOutputStream.getChannel().position();
+        bytesSinceCheckPoint += newSegmentBytes - segmentBytes;
+        bytesWritten += newSegmentBytes - segmentBytes;
+        segmentBytes = newSegmentBytes;
+    }
+
+    /**
+     * start a new segment or ask for a check point if the log has grown enough
+     * a new segment is only started between transactions, so that a segment never holds
+     * the commit of a transaction whose other logs are in an older segment, which may be deleted
+     * should be called with log lock held
+     */
+    private void checkLimits() {
+        if (segmentBytes >= segmentBytesLimit && openTransactions == 0) {
+            openSegment(currentSegment+1);
+        }
+        if (bytesSinceCheckPoint >= checkPointBytesLimit && !checkPointRequested && checkPointTrigger != null) {
+            checkPointRequested = true;
+            checkPointTrigger.run();
+        }
+    }
+
+    /**
+     * from now on, keep the logs of the current thread in memory until the batch ends
+     * so that a batch of operations costs a single write of the log
+     */
+    void startBatch() {
+        batching.set(true);
+    }
+
+    /**
+     * write all the logs of the batch of the current thread at once
+     * the batch must not be answered before this returns
+     */
+    void endBatch() {
+        batching.set(false);
+        logLock.lock();
+        try {
+            flushLog();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        checkLimits();
         logLock.unlock();
     }
 
@@ -286,16 +640,27 @@ public class Logger {
         }
     }
 
+    /**
+     * should be called once the image is safely on the disk
+     * the check point log starts a new segment, so that every older segment
+     * only holds logs covered by the image, and can be deleted once no open token needs it
+     */
     void checkPoint() {
         int newID = id.incrementAndGet();
         CheckPointLog checkPointLog = new CheckPointLog(newID);
+        logLock.lock();
+        openSegment(currentSegment+1);
         writeLog(checkPointLog);
+        bytesSinceCheckPoint = 0;
+        checkPointRequested = false;
+        deleteCoveredSegments();
+        logLock.unlock();
         flushLock.unlock();
     }
 
-    void openRead(int logID, String fileUri, UUID token) {
-        OpenReadLog openReadLog = new OpenReadLog(logID, fileUri, token);
-        writeLog(openReadLog);
+    void openAppend(int logID, String fileUri, UUID token) {
+        OpenAppendLog openAppendLog = new OpenAppendLog(logID, fileUri, token);
+        writeLog(openAppendLog);
     }
 
     void openWrite(int logID, String fileUri, UUID token) {
@@ -303,8 +668,8 @@ public class Logger {
         writeLog(openWriteLog);
     }
 
-    void create(int logID, String fileUri, UUID token) {
-        CreateFileLog createFileLog = new CreateFileLog(logID, fileUri, token);
+    void create(int logID, String fileUri, FileAttributes fileAttributes, UUID token) {
+        CreateFileLog createFileLog = new CreateFileLog(logID, fileUri, fileAttributes, token);
         writeLog(createFileLog);
     }
 
@@ -313,9 +678,24 @@ public class Logger {
         writeLog(mkdirLog);
     }
 
-    void closeRead(int logID, UUID token) {
-        CloseReadLog closeReadLog = new CloseReadLog(logID, token);
-        writeLog(closeReadLog);
+    void createSnapshot(int logID, String dirUri, String snapshotName) {
+        CreateSnapshotLog createSnapshotLog = new CreateSnapshotLog(logID, dirUri, snapshotName);
+        writeLog(createSnapshotLog);
+    }
+
+    void deleteSnapshot(int logID, String dirUri, String snapshotName) {
+        DeleteSnapshotLog deleteSnapshotLog = new DeleteSnapshotLog(logID, dirUri, snapshotName);
+        writeLog(deleteSnapshotLog);
+    }
+
+    void copy(int logID, String srcUri, String dstUri) {
+        CopyLog copyLog = new CopyLog(logID, srcUri, dstUri);
+        writeLog(copyLog);
+    }
+
+    void concat(int logID, String targetUri, List<String> sourceUris) {
+        ConcatLog concatLog = new ConcatLog(logID, targetUri, sourceUris);
+        writeLog(concatLog);
     }
 
     void closeWrite(int logID, UUID token, long newFileSize) {
@@ -323,8 +703,13 @@ public class Logger {
         writeLog(closeWriteLog);
     }
 
-    void addBlocks(int logID, UUID token, List<Integer> newBlockNumberList) {
-        AddBlocksLog addBlocksLog = new AddBlocksLog(logID, token, newBlockNumberList);
+    void expireWrite(int logID, UUID token) {
+        ExpireWriteLog expireWriteLog = new ExpireWriteLog(logID, token);
+        writeLog(expireWriteLog);
+    }
+
+    void addBlocks(int logID, UUID token, List<BlockInfo> newBlockInfoList) {
+        AddBlocksLog addBlocksLog = new AddBlocksLog(logID, token, newBlockInfoList);
         writeLog(addBlocksLog);
     }
 
@@ -333,8 +718,13 @@ public class Logger {
         writeLog(removeBlocksLog);
     }
 
-    void copyOnWriteBlock(int logID, UUID token, int fileBlockNumber, int newBlockNumber) {
-        CopyOnWriteBlockLog copyOnWriteBlockLog = new CopyOnWriteBlockLog(logID, token, fileBlockNumber, newBlockNumber);
+    void dropReplica(int logID, UUID token, LocatedBlock replica) {
+        DropReplicaLog dropReplicaLog = new DropReplicaLog(logID, token, replica);
+        writeLog(dropReplicaLog);
+    }
+
+    void copyOnWriteBlock(int logID, UUID token, int fileBlockNumber, BlockInfo newBlockInfo) {
+        CopyOnWriteBlockLog copyOnWriteBlockLog = new CopyOnWriteBlockLog(logID, token, fileBlockNumber, newBlockInfo);
         writeLog(copyOnWriteBlockLog);
     }
 }
@@ -1,11 +1,20 @@
 package sdfs.namenode;
 
+import sdfs.datanode.DataNode;
 import sdfs.entity.AccessTokenPermission;
+import sdfs.entity.BatchOperation;
+import sdfs.entity.BatchResult;
+import sdfs.entity.BlockReport;
+import sdfs.entity.DataNodeInfo;
+import sdfs.entity.DirListing;
+import sdfs.entity.FileAttributes;
 import sdfs.entity.FileInfo;
+import sdfs.entity.FileStatus;
 import sdfs.entity.SDFSFileChannelData;
 import sdfs.exception.IllegalAccessTokenException;
 import sdfs.exception.SDFSFileAlreadyExistsException;
 import sdfs.filetree.*;
+import sdfs.metrics.MBeans;
 import sdfs.protocol.INameNodeDataNodeProtocol;
 import sdfs.protocol.INameNodeProtocol;
 import sdfs.protocol.SDFSConfiguration;
@@ -14,9 +23,13 @@ import java.io.*;
 import java.net.InetAddress;
 import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 
 public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
@@ -24,38 +37,113 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
     private final String FILE_TREE_PATH = NAME_NODE_DIR+"/root.node";
     private final String LOG_PATH = NAME_NODE_DIR+"/namenode.log";
     private final SDFSConfiguration configuration;
+    public static final int MAX_REPLICATION = 16;
+    public static final int MIN_BLOCK_SIZE = 4 * 1024;
+    public static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+    // the block size of files created without one
+    private final int defaultBlockSize = Integer.getInteger("sdfs.namenode.block.size", DataNode.BLOCK_SIZE);
+    // a token whose lease is not renewed for this long is closed by the name node
+    private final long leaseNanos = TimeUnit.SECONDS.toNanos(Long.getLong("sdfs.namenode.lease.seconds", 60));
+    private final long leaseCheckSeconds = Long.getLong("sdfs.namenode.lease.check.seconds", 5);
+    // the most entries listed in one page, however many are asked for
+    private final int listLimit = Integer.getInteger("sdfs.namenode.list.limit", 1000);
+    // the most directories and files a snapshot may copy, every change below the directory waits while they are copied
+    private final int snapshotLimit = Integer.getInteger("sdfs.namenode.snapshot.limit", 100000);
+    // the most operations run in one batch, a larger batch is refused as a whole
+    private final int batchLimit = Integer.getInteger("sdfs.namenode.batch.limit", 1000);
 
     // components
     private final DataBlockManager dataBlockManager;
     private final OpenedFileNodeManager openedFileNodeManager;
+    private final DataNodeManager dataNodeManager;
     private final Logger logger;
+    private final NameNodeMetrics metrics;
 
     private DirNode rootNode;
+    // all the data nodes that blocks refer to, stored in the image next to the file tree
+    private DataNodeTable dataNodeTable;
 
     public NameNode(SDFSConfiguration configuration, long flushDiskInternalSeconds) {
         this.configuration = configuration;
 
         // read file tree stored on the disk
         File rootNodeFile = new File(FILE_TREE_PATH);
+        int nextBlockNumber;
         if (!rootNodeFile.exists()) {
             rootNode = new DirNode();
+            dataNodeTable = new DataNodeTable();
+            nextBlockNumber = 0;
         } else {
-            try {
-                ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(rootNodeFile));
-                rootNode = (DirNode) objectInputStream.readObject();
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
-            }
+            nextBlockNumber = readImage(rootNodeFile);
         }
+        // the data nodes that may store blocks from before the restart
+        int dataNodeAmount = dataNodeTable.size();
+        // blocks go to the data node of the configuration until some data node registers
+        int defaultDataNodeIndex = dataNodeTable.indexOf(configuration.getDataNodeAddress(), configuration.getDataNodePort());
 
         // init components
-        dataBlockManager = new DataBlockManager(rootNode);
-        openedFileNodeManager = new OpenedFileNodeManager(dataBlockManager);
+        dataBlockManager = new DataBlockManager(rootNode, nextBlockNumber, dataNodeAmount);
+        dataNodeManager = new DataNodeManager(dataNodeTable, defaultDataNodeIndex);
+        openedFileNodeManager = new OpenedFileNodeManager(dataBlockManager, dataNodeTable);
         logger = new Logger(LOG_PATH, this);
-        DiskFlusher diskFlusher = new DiskFlusher(rootNode, logger, FILE_TREE_PATH, flushDiskInternalSeconds);
+        DiskFlusher diskFlusher = new DiskFlusher(rootNode, dataNodeTable, dataBlockManager, logger, FILE_TREE_PATH, flushDiskInternalSeconds);
+        // also check point whenever the log grows too much between two timer ticks
+        logger.setCheckPointTrigger(diskFlusher::requestCheckPoint);
+
+        metrics = new NameNodeMetrics(openedFileNodeManager, dataBlockManager, dataNodeManager, logger, diskFlusher);
+        MBeans.register("type=NameNode,port="+configuration.getNameNodePort(), metrics);
 
         // start flushing to disk
         new Thread(diskFlusher).start();
+        // start expiring the tokens of clients that are gone
+        new Thread(new LeaseReaper(this, leaseCheckSeconds)).start();
+    }
+
+    /**
+     * read the file tree and the data node table from the image
+     * an image of version 0, written before the image had a header, holds the same objects and is read as well
+     * @return the next block number kept in the image, -1 if the image is of a version that did not keep it
+     * @throws IllegalStateException if the image is of a newer version or can not be read, the name node must not start without it
+     */
+    private int readImage(File imageFile) {
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(imageFile)))) {
+            dataInputStream.mark(4);
+            int version = 0;
+            if (dataInputStream.readInt() == DiskFlusher.IMAGE_MAGIC) {
+                version = dataInputStream.readInt();
+            } else {
+                dataInputStream.reset();
+            }
+            if (version > DiskFlusher.IMAGE_VERSION) {
+                throw new IllegalStateException("The image "+imageFile+" is of version "+version+", newer than version "+DiskFlusher.IMAGE_VERSION+" this name node reads");
+            }
+            ObjectInputStream objectInputStream = new ObjectInputStream(dataInputStream);
+            rootNode = (DirNode) objectInputStream.readObject();
+            dataNodeTable = (DataNodeTable) objectInputStream.readObject();
+            return version >= 2 ? objectInputStream.readInt() : -1;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // such as an image of the name node before the image had a version, whose objects differ
+            throw new IllegalStateException("The image "+imageFile+" can not be read, it may be of an older name node", e);
+        }
+    }
+
+    public NameNodeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * to replace the policy new blocks are placed with
+     * @param placementPolicy the new placement policy
+     */
+    public void setBlockPlacementPolicy(BlockPlacementPolicy placementPolicy) {
+        dataNodeManager.setPlacementPolicy(placementPolicy);
+    }
+
+    /**
+     * @return the data nodes that have sent heartbeats recently
+     */
+    public List<DataNodeDescriptor> getLiveDataNodes() {
+        return dataNodeManager.getLiveDataNodes();
     }
 
     /**
@@ -66,10 +154,29 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
      * @throws FileNotFoundException if the directory does not exist
      */
     private DirNode locateDir(String fileUri) throws FileNotFoundException {
+        return locateDir(fileUri, false);
+    }
+
+    /**
+     * @param inSnapshots whether the uri may go into a snapshot, as dir/.snapshot/name/..., only to read
+     */
+    private DirNode locateDir(String fileUri, boolean inSnapshots) throws FileNotFoundException {
         String[] dirStrList = fileUri.split("/");
         int nextIndex = 0;
         DirNode currentRoot = rootNode;
         while (nextIndex < dirStrList.length-1) {
+            if (inSnapshots && dirStrList[nextIndex].equals(DirNode.SNAPSHOT_DIR_NAME)) {
+                // the name of the snapshot must follow, before the name of the file
+                if (nextIndex+1 >= dirStrList.length-1) {
+                    throw new FileNotFoundException();
+                }
+                currentRoot = currentRoot.getSnapshot(dirStrList[nextIndex+1]);
+                if (currentRoot == null) {
+                    throw new FileNotFoundException();
+                }
+                nextIndex += 2;
+                continue;
+            }
             Entry e = currentRoot.findEntry(dirStrList[nextIndex]);
             if (e == null || e.getNode().getType() == Node.Type.FILE) {
                 throw new FileNotFoundException();
@@ -88,11 +195,18 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
      * @throws FileNotFoundException if the file does not exist or the directory does not exist
      */
     private FileNode locateFile(String fileUri) throws FileNotFoundException {
+        return locateFile(fileUri, false);
+    }
+
+    /**
+     * @param inSnapshots whether the uri may go into a snapshot, as dir/.snapshot/name/..., only to read
+     */
+    private FileNode locateFile(String fileUri, boolean inSnapshots) throws FileNotFoundException {
         if (fileUri.endsWith("/")) {
             throw new FileNotFoundException();
         }
         String fileName = fileUri.substring(fileUri.lastIndexOf('/')+1);
-        DirNode dirNode = locateDir(fileUri);
+        DirNode dirNode = locateDir(fileUri, inSnapshots);
         Entry entry = dirNode.findEntry(fileName);
         if (entry == null || entry.getNode().getType() != Node.Type.FILE) {
             throw new FileNotFoundException();
@@ -101,88 +215,233 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
         }
     }
 
+    /**
+     * to located a directory itself, rather than the directory of a file
+     * @param dirUri the uri of the directory, empty for the root directory
+     * @throws FileNotFoundException if the directory does not exist
+     */
+    private DirNode locateDirNode(String dirUri) throws FileNotFoundException {
+        return locateDirNode(dirUri, false);
+    }
+
+    /**
+     * @param inSnapshots whether the uri may go into a snapshot, as dir/.snapshot/name/..., only to read
+     */
+    private DirNode locateDirNode(String dirUri, boolean inSnapshots) throws FileNotFoundException {
+        DirNode currentRoot = rootNode;
+        String[] dirStrList = dirUri.split("/");
+        for (int i = 0; i < dirStrList.length; i++) {
+            String dirName = dirStrList[i];
+            if (dirName.isEmpty()) {
+                continue;
+            }
+            if (inSnapshots && dirName.equals(DirNode.SNAPSHOT_DIR_NAME)) {
+                if (i+1 >= dirStrList.length) {
+                    throw new FileNotFoundException();
+                }
+                currentRoot = currentRoot.getSnapshot(dirStrList[++i]);
+                if (currentRoot == null) {
+                    throw new FileNotFoundException();
+                }
+                continue;
+            }
+            Entry e = currentRoot.findEntry(dirName);
+            if (e == null || e.getNode().getType() == Node.Type.FILE) {
+                throw new FileNotFoundException();
+            }
+            currentRoot = (DirNode) e.getNode();
+        }
+        return currentRoot;
+    }
+
     /*
     Since token is unique to each client
     we do not need to consider thread safety for this action
      */
     @Override
-    public AccessTokenPermission getAccessTokenPermission(UUID token, InetAddress dataNodeAddress) {
+    public AccessTokenPermission getAccessTokenPermission(UUID token, InetAddress dataNodeAddress, int dataNodePort) {
         if (openedFileNodeManager.isReading(token)) {
-            FileInfo fileInfo = openedFileNodeManager.getReadingFile(token).getFileInfo();
-            Set<Integer> allowedBlocks = fileInfo.getBlockNumberSetOfAddress(dataNodeAddress);
-            return new AccessTokenPermission(false, allowedBlocks);
+            OpenedFileNode openedFileNode = openedFileNodeManager.getReadingFile(token);
+            FileInfo fileInfo = openedFileNode.getFileInfo();
+            Set<Integer> allowedBlocks = fileInfo.getBlockNumberSetOfDataNode(dataNodeAddress, dataNodePort);
+            boolean compressed = openedFileNode.getFileNode().getFileAttributes().isCompressed();
+            return new AccessTokenPermission(false, allowedBlocks, fileInfo.getBlockSize(), null, compressed);
         } else if (openedFileNodeManager.isWriting(token)) {
-            FileInfo fileInfo = openedFileNodeManager.getWritingFile(token).getFileInfo();
-            Set<Integer> allowedBlocks = fileInfo.getBlockNumberSetOfAddress(dataNodeAddress);
-            return new AccessTokenPermission(true, allowedBlocks);
+            OpenedFileNode openedFileNode = openedFileNodeManager.getWritingFile(token);
+            FileInfo fileInfo = openedFileNode.getFileInfo();
+            Set<Integer> allowedBlocks = fileInfo.getBlockNumberSetOfDataNode(dataNodeAddress, dataNodePort);
+            boolean compressed = openedFileNode.getFileNode().getFileAttributes().isCompressed();
+            Set<Integer> newBlocks = new HashSet<>();
+            for (int blockID : allowedBlocks) {
+                if (openedFileNode.isAllocated(blockID)) {
+                    newBlocks.add(blockID);
+                }
+            }
+            if (!openedFileNode.isAppending()) {
+                return new AccessTokenPermission(true, allowedBlocks, fileInfo.getBlockSize(), null, compressed, newBlocks);
+            }
+            // the blocks the file had when opened may only be written past the old end of the file
+            Map<Integer, Integer> appendOffsets = new HashMap<>();
+            long committedSize = openedFileNode.getCommittedSize();
+            for (int i = 0; i < openedFileNode.getCommittedBlockAmount(); i++) {
+                int blockID = fileInfo.getBlockList().getId(i);
+                if (i == openedFileNode.getSharedTailIndex()) {
+                    // a last block shared with other files is not written at all, only its copy is
+                    appendOffsets.put(blockID, fileInfo.getBlockSize());
+                } else if (allowedBlocks.contains(blockID) && !(i == openedFileNode.getCommittedBlockAmount() - 1 && openedFileNode.isTailCopied())) {
+                    long blockStart = (long) i * fileInfo.getBlockSize();
+                    appendOffsets.put(blockID, (int) Math.min(fileInfo.getBlockSize(), Math.max(0, committedSize - blockStart)));
+                }
+            }
+            return new AccessTokenPermission(true, allowedBlocks, fileInfo.getBlockSize(), appendOffsets, compressed, newBlocks);
         }
         return null;
     }
 
+    /*
+    The writer waits for the write the replica was dropped from
+    so it does not change the blocks of the file meanwhile
+     */
+    @Override
+    public void dropReplica(UUID token, LocatedBlock replica) {
+        // log START
+        int logID = logger.start();
+        if (!openedFileNodeManager.isWriting(token)) {
+            // log ABORT
+            logger.abort(logID);
+            return;
+        }
+        logger.dropReplica(logID, token, replica);
+        if (openedFileNodeManager.getWritingFile(token).getFileInfo().removeLocatedBlock(replica)) {
+            logger.commit(logID);
+        } else {
+            // dropped by an earlier write already
+            logger.abort(logID);
+        }
+    }
+
+    @Override
+    public void sendHeartbeat(DataNodeInfo dataNodeInfo) {
+        dataNodeManager.heartbeat(dataNodeInfo);
+    }
+
+    @Override
+    public List<Integer> blockReport(BlockReport blockReport) {
+        int dataNodeIndex = dataNodeTable.indexOf(blockReport.getAddress(), blockReport.getPort());
+        return dataBlockManager.blockReport(dataNodeIndex, blockReport.isFull(), blockReport.getAddedBlocks(), blockReport.getRemovedBlocks());
+    }
+
+    /**
+     * @return the number of blocks stored on data nodes that no file refers to any more
+     */
+    public int getPendingDeletionAmount() {
+        return dataBlockManager.getPendingDeletionAmount();
+    }
+
+    /*
+    Opening a file read only changes nothing in the file tree, so it is not logged
+    a read only token lives in memory only and does not survive a restart of the name node
+     */
     @Override
     public SDFSFileChannelData openReadonly(String fileUri) throws FileNotFoundException {
+        UUID token = UUID.randomUUID();
+        FileNode fileNode = locateFile(fileUri, true);
+        // open the file node and record its openness
+        OpenedFileNode readingNode = openedFileNodeManager.openRead(fileNode, token);
+        return new SDFSFileChannelData(readingNode.getFileInfo(), false, token);
+    }
+
+    @Override
+    public SDFSFileChannelData openReadonlyIfChanged(String fileUri, long version) throws FileNotFoundException {
+        UUID token = UUID.randomUUID();
+        FileNode fileNode = locateFile(fileUri, true);
+        OpenedFileNode readingNode = openedFileNodeManager.openRead(fileNode, token);
+        // the token shares the current block list of the file like any reader, only the file info is not sent back
+        if (readingNode.getFileInfo().getVersion() == version) {
+            return new SDFSFileChannelData(null, false, token);
+        }
+        return new SDFSFileChannelData(readingNode.getFileInfo(), false, token);
+    }
+
+    @Override
+    public SDFSFileChannelData openReadwrite(String fileUri) throws OverlappingFileLockException, FileNotFoundException {
         // log START
         int logID = logger.start();
 
         try {
             UUID token = UUID.randomUUID();
-            logger.openRead(logID, fileUri, token);
+            logger.openWrite(logID, fileUri, token);
+
             FileNode fileNode = locateFile(fileUri);
-            // open the file node and record its openness
-            OpenedFileNode readingNode = openedFileNodeManager.openRead(fileNode, token);
-            // ready to do
+            OpenedFileNode writingNode = openedFileNodeManager.openWrite(fileNode, token);
+
+
             logger.commit(logID);
-            return new SDFSFileChannelData(readingNode.getFileInfo(), false, token);
-        } catch (FileNotFoundException e) {
+            return new SDFSFileChannelData(writingNode.getFileInfo(), true, token);
+        } catch (OverlappingFileLockException | FileNotFoundException e) {
             // log ABORT
             logger.abort(logID);
             throw e;
         }
+
     }
 
     @Override
-    public SDFSFileChannelData openReadwrite(String fileUri) throws OverlappingFileLockException, FileNotFoundException {
+    public SDFSFileChannelData openAppend(String fileUri) throws OverlappingFileLockException, FileNotFoundException {
         // log START
         int logID = logger.start();
 
         try {
             UUID token = UUID.randomUUID();
-            logger.openWrite(logID, fileUri, token);
+            logger.openAppend(logID, fileUri, token);
 
             FileNode fileNode = locateFile(fileUri);
-            OpenedFileNode writingNode = openedFileNodeManager.openWrite(fileNode, token);
-
+            OpenedFileNode writingNode = openedFileNodeManager.openWrite(fileNode, token, true);
 
             logger.commit(logID);
-            return new SDFSFileChannelData(writingNode.getFileInfo(), true, token);
+            return new SDFSFileChannelData(writingNode.getFileInfo(), true, true, writingNode.isTailShared(), token);
         } catch (OverlappingFileLockException | FileNotFoundException e) {
             // log ABORT
             logger.abort(logID);
             throw e;
         }
-
     }
 
     @Override
     public SDFSFileChannelData create(String fileUri) throws SDFSFileAlreadyExistsException, FileNotFoundException {
+        return create(fileUri, new FileAttributes());
+    }
+
+    @Override
+    public SDFSFileChannelData create(String fileUri, FileAttributes fileAttributes) throws SDFSFileAlreadyExistsException, FileNotFoundException, IllegalArgumentException {
         // log START
         int logID = logger.start();
 
         try {
             UUID token = UUID.randomUUID();
-            logger.create(logID, fileUri, token);
+            // the file is logged with the block size it really gets, so that replay does not depend on the default
+            if (fileAttributes.getBlockSize() == FileAttributes.DEFAULT_BLOCK_SIZE) {
+                fileAttributes = new FileAttributes(fileAttributes.getReplication(), defaultBlockSize, fileAttributes.isCompressed());
+            }
+            logger.create(logID, fileUri, fileAttributes, token);
 
+            if (fileAttributes.getReplication() < 1 || fileAttributes.getReplication() > MAX_REPLICATION) {
+                throw new IllegalArgumentException();
+            }
+            if (fileAttributes.getBlockSize() < MIN_BLOCK_SIZE || fileAttributes.getBlockSize() > MAX_BLOCK_SIZE) {
+                throw new IllegalArgumentException();
+            }
             if (fileUri.endsWith("/")) {
                 throw new FileNotFoundException();
             }
             String fileName = fileUri.substring(fileUri.lastIndexOf('/')+1);
             DirNode dirNode = locateDir(fileUri);
-            OpenedFileNode openedFileNode = dirNode.createFile(fileName, token, openedFileNodeManager);
+            OpenedFileNode openedFileNode = dirNode.createFile(fileName, fileAttributes, token, openedFileNodeManager);
 
 
             logger.commit(logID);
             return new SDFSFileChannelData(openedFileNode.getFileInfo(), true, token);
-        } catch (SDFSFileAlreadyExistsException | FileNotFoundException e) {
+        } catch (SDFSFileAlreadyExistsException | FileNotFoundException | IllegalArgumentException e) {
             // log ABORT
             logger.abort(logID);
             throw e;
@@ -214,22 +473,168 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
     }
 
     @Override
-    public void closeReadonlyFile(UUID token) throws IllegalAccessTokenException {
+    public void copy(String srcUri, String dstUri) throws SDFSFileAlreadyExistsException, FileNotFoundException {
         // log START
         int logID = logger.start();
 
         try {
-            logger.closeRead(logID, token);
-            openedFileNodeManager.closeRead(token);
+            logger.copy(logID, srcUri, dstUri);
+
+            FileNode srcNode = locateFile(srcUri, true);
+            if (dstUri.endsWith("/")) {
+                throw new FileNotFoundException();
+            }
+            String fileName = dstUri.substring(dstUri.lastIndexOf('/')+1);
+            DirNode dirNode = locateDir(dstUri);
+            dirNode.copyFile(fileName, srcNode, dataBlockManager);
             logger.commit(logID);
 
-        } catch (IllegalAccessTokenException e) {
+        } catch (SDFSFileAlreadyExistsException | FileNotFoundException e) {
             // log ABORT
             logger.abort(logID);
             throw e;
         }
     }
 
+    @Override
+    public void concat(String targetUri, List<String> sourceUris) throws FileNotFoundException, OverlappingFileLockException, IllegalArgumentException {
+        // log START
+        int logID = logger.start();
+
+        try {
+            // the sources are appended in a single transaction, or not at all
+            logger.concat(logID, targetUri, sourceUris);
+            concatFiles(targetUri, sourceUris);
+            logger.commit(logID);
+
+        } catch (FileNotFoundException | OverlappingFileLockException | IllegalArgumentException e) {
+            // log ABORT
+            logger.abort(logID);
+            throw e;
+        }
+    }
+
+    private void concatFiles(String targetUri, List<String> sourceUris) throws FileNotFoundException, OverlappingFileLockException, IllegalArgumentException {
+        if (sourceUris.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        FileNode targetNode = locateFile(targetUri);
+        List<FileNode> sourceNodes = new ArrayList<>();
+        for (String sourceUri : sourceUris) {
+            FileNode sourceNode = locateFile(sourceUri, true);
+            if (sourceNode == targetNode) {
+                throw new IllegalArgumentException();
+            }
+            sourceNodes.add(sourceNode);
+        }
+        openedFileNodeManager.concat(targetNode, sourceNodes);
+    }
+
+    /*
+    Listing changes nothing in the file tree, so it is not logged, and no file is opened
+     */
+    @Override
+    public DirListing list(String dirUri, String startAfter, int limit) throws FileNotFoundException, IllegalArgumentException {
+        if (limit < 1) {
+            throw new IllegalArgumentException();
+        }
+        limit = Math.min(limit, listLimit);
+        // dir/.snapshot lists the snapshots of dir
+        String snapshotSuffix = "/" + DirNode.SNAPSHOT_DIR_NAME;
+        if (dirUri.equals(DirNode.SNAPSHOT_DIR_NAME) || dirUri.endsWith(snapshotSuffix)) {
+            String parentUri = dirUri.substring(0, Math.max(0, dirUri.length() - snapshotSuffix.length()));
+            return locateDirNode(parentUri, true).listSnapshots(startAfter, limit);
+        }
+        return locateDirNode(dirUri, true).list(startAfter, limit);
+    }
+
+    /*
+    Neither is stat logged nor does it open any file
+     */
+    @Override
+    public List<FileStatus> stat(List<String> fileUris) {
+        List<FileStatus> fileStatusList = new ArrayList<>();
+        for (String fileUri : fileUris) {
+            try {
+                fileStatusList.add(stat(fileUri));
+            } catch (FileNotFoundException e) {
+                fileStatusList.add(null);
+            }
+        }
+        return fileStatusList;
+    }
+
+    /**
+     * @param fileUri the uri of a file or directory, which may be in a snapshot
+     * @throws FileNotFoundException if there is nothing at the uri
+     */
+    private FileStatus stat(String fileUri) throws FileNotFoundException {
+        while (fileUri.endsWith("/")) {
+            fileUri = fileUri.substring(0, fileUri.length()-1);
+        }
+        if (fileUri.isEmpty()) {
+            return rootNode.getStatus("");
+        }
+        String name = fileUri.substring(fileUri.lastIndexOf('/')+1);
+        String parentUri = fileUri.substring(0, Math.max(0, fileUri.lastIndexOf('/')));
+        String parentName = parentUri.substring(parentUri.lastIndexOf('/')+1);
+        if (name.equals(DirNode.SNAPSHOT_DIR_NAME)) {
+            // the directory holding the snapshots
+            return locateDirNode(parentUri, true).getStatus(name);
+        }
+        if (parentName.equals(DirNode.SNAPSHOT_DIR_NAME)) {
+            return locateDirNode(fileUri, true).getStatus(name);
+        }
+        Entry entry = locateDirNode(parentUri, true).findEntry(name);
+        if (entry == null) {
+            throw new FileNotFoundException();
+        } else if (entry.getNode().getType() == Node.Type.DIR) {
+            return ((DirNode) entry.getNode()).getStatus(name);
+        } else {
+            return ((FileNode) entry.getNode()).getStatus(name);
+        }
+    }
+
+    @Override
+    public void createSnapshot(String dirUri, String snapshotName) throws SDFSFileAlreadyExistsException, FileNotFoundException, IllegalArgumentException {
+        // log START
+        int logID = logger.start();
+
+        try {
+            logger.createSnapshot(logID, dirUri, snapshotName);
+            locateDirNode(dirUri).createSnapshot(snapshotName, snapshotLimit);
+            logger.commit(logID);
+
+        } catch (SDFSFileAlreadyExistsException | FileNotFoundException | IllegalArgumentException e) {
+            // log ABORT
+            logger.abort(logID);
+            throw e;
+        }
+    }
+
+    @Override
+    public void deleteSnapshot(String dirUri, String snapshotName) throws FileNotFoundException {
+        // log START
+        int logID = logger.start();
+
+        try {
+            logger.deleteSnapshot(logID, dirUri, snapshotName);
+            locateDirNode(dirUri).deleteSnapshot(snapshotName, dataBlockManager);
+            logger.commit(logID);
+
+        } catch (FileNotFoundException e) {
+            // log ABORT
+            logger.abort(logID);
+            throw e;
+        }
+    }
+
+    @Override
+    public void closeReadonlyFile(UUID token) throws IllegalAccessTokenException {
+        // not logged either, as opening
+        openedFileNodeManager.closeRead(token);
+    }
+
     @Override
     public void closeReadwriteFile(UUID token, long newFileSize) throws IllegalAccessTokenException, IllegalArgumentException {
         // log START
@@ -247,38 +652,116 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
         }
     }
 
+    @Override
+    public void renewLeases(Set<UUID> tokens) {
+        // not logged, tokens open again after a restart get a fresh lease anyway
+        openedFileNodeManager.renewLeases(tokens);
+    }
+
+    /**
+     * close every opened file whose lease has expired
+     * a read-write file is closed without changing the file tree, as if the client had never written to it
+     */
+    void expireLeases() {
+        long now = System.nanoTime();
+        for (UUID token : openedFileNodeManager.getExpiredReadingTokens(now, leaseNanos)) {
+            openedFileNodeManager.expireRead(token, now, leaseNanos);
+        }
+        for (UUID token : openedFileNodeManager.getExpiredWritingTokens(now, leaseNanos)) {
+            // log START
+            int logID = logger.start();
+            logger.expireWrite(logID, token);
+            if (openedFileNodeManager.expireWrite(token, now, leaseNanos)) {
+                logger.commit(logID);
+            } else {
+                // closed or renewed meanwhile
+                logger.abort(logID);
+            }
+        }
+    }
+
+    @Override
+    public List<BatchResult> batch(List<BatchOperation> operations) throws IllegalArgumentException {
+        if (operations.size() > batchLimit) {
+            throw new IllegalArgumentException();
+        }
+        List<BatchResult> results = new ArrayList<>();
+        // each operation is still logged as an action of its own, only the writes of the logs are put together
+        logger.startBatch();
+        try {
+            for (BatchOperation operation : operations) {
+                try {
+                    switch (operation.getType()) {
+                        case MK_DIR:
+                            mkdir(operation.getFileUri());
+                            results.add(new BatchResult());
+                            break;
+                        case CREATE:
+                            results.add(new BatchResult(create(operation.getFileUri(), operation.getFileAttributes())));
+                            break;
+                        case OPEN_READ_ONLY:
+                            results.add(new BatchResult(openReadonly(operation.getFileUri())));
+                            break;
+                        case CLOSE_READ_ONLY:
+                            closeReadonlyFile(operation.getToken());
+                            results.add(new BatchResult());
+                            break;
+                        case CLOSE_READ_WRITE:
+                            closeReadwriteFile(operation.getToken(), operation.getNewFileSize());
+                            results.add(new BatchResult());
+                            break;
+                        default:
+                            results.add(new BatchResult(new IllegalArgumentException()));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    results.add(new BatchResult(e));
+                }
+            }
+        } finally {
+            // also when an operation fails unexpectedly, the logs of the batch must be written
+            logger.endBatch();
+        }
+        return results;
+    }
+
+    @Override
+    public List<LocatedBlock> addBlocks(UUID token, int blockAmount) throws IllegalAccessTokenException, IllegalArgumentException {
+        List<LocatedBlock> newBlockList = new ArrayList<>();
+        for (BlockInfo blockInfo : addReplicatedBlocks(token, blockAmount)) {
+            newBlockList.add(blockInfo.iterator().next());
+        }
+        return newBlockList;
+    }
+
     /*
     Since token is unique to each client
     we do not need to consider thread safety for this action
      */
     @Override
-    public List<LocatedBlock> addBlocks(UUID token, int blockAmount) throws IllegalAccessTokenException, IllegalArgumentException {
+    public List<BlockInfo> addReplicatedBlocks(UUID token, int blockAmount) throws IllegalAccessTokenException, IllegalArgumentException {
         // log START
         int logID = logger.start();
 
         try {
-            List<Integer> newBlockNumberList = new ArrayList<>();
-            for (int i = 0; i < blockAmount; i++) {
-                newBlockNumberList.add(dataBlockManager.getNextBlockNumber());
-            }
-            logger.addBlocks(logID, token, newBlockNumberList);
+            // the replication of the file is needed to place the blocks, so check the token first
             if (!openedFileNodeManager.isWriting(token)) {
                 throw new IllegalAccessTokenException();
             }
             if (blockAmount < 0) {
                 throw new IllegalArgumentException();
             }
-            List<LocatedBlock> newBlockList = new ArrayList<>();
             OpenedFileNode openedFileNode = openedFileNodeManager.getWritingFile(token);
+            List<BlockInfo> newBlockInfoList = new ArrayList<>();
             for (int i = 0; i < blockAmount; i++) {
-                BlockInfo blockInfo = new BlockInfo();
-                LocatedBlock locatedBlock = new LocatedBlock(configuration.getDataNodeAddress(), configuration.getDataNodePort(), newBlockNumberList.get(i));
-                blockInfo.addLocatedBlock(locatedBlock);
-                openedFileNode.getFileInfo().addBlockInfo(blockInfo);
-                newBlockList.add(locatedBlock);
+                newBlockInfoList.add(newBlockInfo(openedFileNode.getFileInfo()));
+            }
+            logger.addBlocks(logID, token, newBlockInfoList);
+            for (BlockInfo newBlockInfo : newBlockInfoList) {
+                openedFileNode.recordAllocation(newBlockInfo.iterator().next().getId());
+                openedFileNode.getFileInfo().addBlockInfo(newBlockInfo);
             }
             logger.commit(logID);
-            return newBlockList;
+            return newBlockInfoList;
         } catch (IllegalAccessTokenException | IllegalArgumentException e) {
             // log ABORT
             logger.abort(logID);
@@ -286,6 +769,20 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
         }
     }
 
+    /**
+     * to allocate a new block and place its replicas
+     * @param replication the number of replicas wanted, fewer are placed if there are not enough data nodes
+     * @return the replicas of the new block, in the order the write pipeline goes through them
+     */
+    private BlockInfo newBlockInfo(FileInfo fileInfo) {
+        int blockNumber = dataBlockManager.getNextBlockNumber();
+        BlockInfo blockInfo = new BlockInfo();
+        for (int dataNodeIndex : dataNodeManager.chooseDataNodes(fileInfo.getReplication(), fileInfo.getBlockSize())) {
+            blockInfo.addLocatedBlock(dataNodeTable.getLocatedBlock(dataNodeIndex, blockNumber));
+        }
+        return blockInfo;
+    }
+
     /*
     Since token is unique to each client
     we do not need to consider thread safety for this action
@@ -304,8 +801,13 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
                 throw new IllegalArgumentException();
             }
             OpenedFileNode openedFileNode = openedFileNodeManager.getWritingFile(token);
+            // a file opened to append to keeps the blocks it already had
+            if (openedFileNode.isAppending() && openedFileNode.getFileInfo().getBlockAmount() - blockAmount < openedFileNode.getCommittedBlockAmount()) {
+                throw new IndexOutOfBoundsException();
+            }
             for (int i = 0; i < blockAmount; i++) {
-                openedFileNode.getFileInfo().removeLastBlockInfo();
+                int removedBlockNumber = openedFileNode.getFileInfo().removeLastBlockInfo();
+                dataBlockManager.recordRelease(removedBlockNumber);
             }
             logger.commit(logID);
         } catch (IllegalAccessTokenException | IndexOutOfBoundsException e) {
@@ -315,18 +817,21 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
         }
     }
 
+    @Override
+    public LocatedBlock newCopyOnWriteBlock(UUID token, int fileBlockNumber) throws IllegalAccessTokenException, IndexOutOfBoundsException {
+        return newReplicatedCopyOnWriteBlock(token, fileBlockNumber).iterator().next();
+    }
+
     /*
     Since token is unique to each client
     we do not need to consider thread safety for this action
      */
     @Override
-    public LocatedBlock newCopyOnWriteBlock(UUID token, int fileBlockNumber) throws IllegalAccessTokenException, IndexOutOfBoundsException {
+    public BlockInfo newReplicatedCopyOnWriteBlock(UUID token, int fileBlockNumber) throws IllegalAccessTokenException, IndexOutOfBoundsException {
         // log START
         int logID = logger.start();
 
         try {
-            int newBlockNumber = dataBlockManager.getNextBlockNumber();
-            logger.copyOnWriteBlock(logID, token, fileBlockNumber, newBlockNumber);
             if (!openedFileNodeManager.isWriting(token)) {
                 throw new IllegalAccessTokenException();
             }
@@ -334,12 +839,17 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
             if (fileBlockNumber < 0 || fileBlockNumber >= openedFileNode.getFileInfo().getBlockAmount()) {
                 throw new IndexOutOfBoundsException();
             }
-            BlockInfo blockInfo = new BlockInfo();
-            LocatedBlock locatedBlock = new LocatedBlock(configuration.getDataNodeAddress(), configuration.getDataNodePort(), newBlockNumber);
-            blockInfo.addLocatedBlock(locatedBlock);
-            openedFileNode.getFileInfo().setBlockInfoByIndex(fileBlockNumber, blockInfo);
+            if (!openedFileNode.isCopyOnWriteAllowed(fileBlockNumber)) {
+                throw new IllegalAccessTokenException();
+            }
+            BlockInfo newBlockInfo = newBlockInfo(openedFileNode.getFileInfo());
+            logger.copyOnWriteBlock(logID, token, fileBlockNumber, newBlockInfo);
+            int oldBlockNumber = openedFileNode.getFileInfo().getBlockList().getId(fileBlockNumber);
+            openedFileNode.recordAllocation(newBlockInfo.iterator().next().getId());
+            openedFileNode.getFileInfo().setBlockInfoByIndex(fileBlockNumber, newBlockInfo);
+            dataBlockManager.recordRelease(oldBlockNumber);
             logger.commit(logID);
-            return locatedBlock;
+            return newBlockInfo;
         } catch (IllegalAccessTokenException | IndexOutOfBoundsException e) {
             // log ABORT
             logger.abort(logID);
@@ -347,46 +857,49 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
         }
     }
 
-    void redoOpenReadonly(String fileUri, UUID token) throws FileNotFoundException {
+    void redoOpenReadwrite(String fileUri, UUID token) throws FileNotFoundException, OverlappingFileLockException {
         FileNode fileNode = locateFile(fileUri);
-        openedFileNodeManager.openRead(fileNode, token);
+        openedFileNodeManager.openWrite(fileNode, token);
     }
 
-    void redoOpenReadwrite(String fileUri, UUID token) throws FileNotFoundException, OverlappingFileLockException {
+    void redoOpenAppend(String fileUri, UUID token) throws FileNotFoundException, OverlappingFileLockException {
         FileNode fileNode = locateFile(fileUri);
-        openedFileNodeManager.openWrite(fileNode, token);
+        openedFileNodeManager.openWrite(fileNode, token, true);
     }
 
-    void redoAddBlocks(UUID token, List<Integer> newBlockNumberList) {
+    void redoAddBlocks(UUID token, List<BlockInfo> newBlockInfoList) {
         OpenedFileNode openedFileNode = openedFileNodeManager.getWritingFile(token);
-        for (Integer aNewBlockNumberList : newBlockNumberList) {
-            BlockInfo blockInfo = new BlockInfo();
-            LocatedBlock locatedBlock = new LocatedBlock(configuration.getDataNodeAddress(), configuration.getDataNodePort(), aNewBlockNumberList);
-            blockInfo.addLocatedBlock(locatedBlock);
-            dataBlockManager.recordExistence(locatedBlock);
-            openedFileNode.getFileInfo().addBlockInfo(blockInfo);
+        for (BlockInfo newBlockInfo : newBlockInfoList) {
+            dataBlockManager.recordAllocation(newBlockInfo.iterator().next().getId());
+            openedFileNode.recordAllocation(newBlockInfo.iterator().next().getId());
+            openedFileNode.getFileInfo().addBlockInfo(newBlockInfo);
         }
     }
 
+    void redoDropReplica(UUID token, LocatedBlock replica) {
+        openedFileNodeManager.getWritingFile(token).getFileInfo().removeLocatedBlock(replica);
+    }
+
     void redoRemoveBlocks(UUID token, int blockAmount) {
         OpenedFileNode openedFileNode = openedFileNodeManager.getWritingFile(token);
         for (int i = 0; i < blockAmount; i++) {
-            openedFileNode.getFileInfo().removeLastBlockInfo();
+            dataBlockManager.recordRelease(openedFileNode.getFileInfo().removeLastBlockInfo());
         }
     }
 
-    void redoNewCopyOnWriteBlock(UUID token, int fileBlockNumber, int newBlockNumber) {
+    void redoNewCopyOnWriteBlock(UUID token, int fileBlockNumber, BlockInfo newBlockInfo) {
         OpenedFileNode openedFileNode = openedFileNodeManager.getWritingFile(token);
-        BlockInfo blockInfo = new BlockInfo();
-        LocatedBlock locatedBlock = new LocatedBlock(configuration.getDataNodeAddress(), configuration.getDataNodePort(), newBlockNumber);
-        blockInfo.addLocatedBlock(locatedBlock);
-        openedFileNode.getFileInfo().setBlockInfoByIndex(fileBlockNumber, blockInfo);
+        int oldBlockNumber = openedFileNode.getFileInfo().getBlockList().getId(fileBlockNumber);
+        dataBlockManager.recordAllocation(newBlockInfo.iterator().next().getId());
+        openedFileNode.recordAllocation(newBlockInfo.iterator().next().getId());
+        openedFileNode.getFileInfo().setBlockInfoByIndex(fileBlockNumber, newBlockInfo);
+        dataBlockManager.recordRelease(oldBlockNumber);
     }
 
-    void redoCreate(String fileUri, UUID token) throws FileNotFoundException, SDFSFileAlreadyExistsException {
+    void redoCreate(String fileUri, FileAttributes fileAttributes, UUID token) throws FileNotFoundException, SDFSFileAlreadyExistsException {
         String fileName = fileUri.substring(fileUri.lastIndexOf('/')+1);
         DirNode dirNode = locateDir(fileUri);
-        dirNode.createFile(fileName, token, openedFileNodeManager);
+        dirNode.createFile(fileName, fileAttributes, token, openedFileNodeManager);
     }
 
     void redoMkdir(String fileUri) throws SDFSFileAlreadyExistsException, FileNotFoundException {
@@ -395,11 +908,31 @@ public class NameNode implements INameNodeProtocol, INameNodeDataNodeProtocol {
         dirNode.createDir(dirName);
     }
 
-    void redoCloseReadonly(UUID token) throws IllegalAccessTokenException {
-        openedFileNodeManager.closeRead(token);
+    void redoCreateSnapshot(String dirUri, String snapshotName) throws SDFSFileAlreadyExistsException, FileNotFoundException {
+        // taken once already, so not refused for its size again
+        locateDirNode(dirUri).createSnapshot(snapshotName, Integer.MAX_VALUE);
+    }
+
+    void redoDeleteSnapshot(String dirUri, String snapshotName) throws FileNotFoundException {
+        locateDirNode(dirUri).deleteSnapshot(snapshotName, dataBlockManager);
+    }
+
+    void redoCopy(String srcUri, String dstUri) throws SDFSFileAlreadyExistsException, FileNotFoundException {
+        FileNode srcNode = locateFile(srcUri, true);
+        String fileName = dstUri.substring(dstUri.lastIndexOf('/')+1);
+        DirNode dirNode = locateDir(dstUri);
+        dirNode.copyFile(fileName, srcNode, dataBlockManager);
+    }
+
+    void redoConcat(String targetUri, List<String> sourceUris) throws FileNotFoundException, OverlappingFileLockException, IllegalArgumentException {
+        concatFiles(targetUri, sourceUris);
     }
 
     void redoCloseReadwrite(UUID token, long newFileSize) throws IllegalAccessTokenException, IllegalArgumentException {
         openedFileNodeManager.closeWrite(token, newFileSize);
     }
+
+    void redoExpireReadwrite(UUID token) {
+        openedFileNodeManager.expireWrite(token, System.nanoTime(), -1);
+    }
 }
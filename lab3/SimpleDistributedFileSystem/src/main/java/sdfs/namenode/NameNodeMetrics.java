@@ -0,0 +1,67 @@
+package sdfs.namenode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * gauges read from the components of a name node whenever they are asked for
+ */
+public class NameNodeMetrics implements NameNodeMetricsMBean {
+    private final OpenedFileNodeManager openedFileNodeManager;
+    private final DataBlockManager dataBlockManager;
+    private final DataNodeManager dataNodeManager;
+    private final Logger logger;
+    private final DiskFlusher diskFlusher;
+
+    NameNodeMetrics(OpenedFileNodeManager openedFileNodeManager, DataBlockManager dataBlockManager, DataNodeManager dataNodeManager, Logger logger, DiskFlusher diskFlusher) {
+        this.openedFileNodeManager = openedFileNodeManager;
+        this.dataBlockManager = dataBlockManager;
+        this.dataNodeManager = dataNodeManager;
+        this.logger = logger;
+        this.diskFlusher = diskFlusher;
+    }
+
+    @Override
+    public int getOpenReadonlyFileAmount() {
+        return openedFileNodeManager.getReadingAmount();
+    }
+
+    @Override
+    public int getOpenReadwriteFileAmount() {
+        return openedFileNodeManager.getWritingAmount();
+    }
+
+    @Override
+    public int getLiveBlockAmount() {
+        return dataBlockManager.getLiveBlockAmount();
+    }
+
+    @Override
+    public int getPendingDeletionBlockAmount() {
+        return dataBlockManager.getPendingDeletionAmount();
+    }
+
+    @Override
+    public int getLiveDataNodeAmount() {
+        return dataNodeManager.getLiveDataNodes().size();
+    }
+
+    @Override
+    public long getLogBytesWritten() {
+        return logger.getBytesWritten();
+    }
+
+    @Override
+    public long getLogBytesSinceCheckPoint() {
+        return logger.getBytesSinceCheckPoint();
+    }
+
+    @Override
+    public long getLastCheckPointMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(diskFlusher.getLastCheckPointNanos());
+    }
+
+    @Override
+    public long getCheckPointCount() {
+        return diskFlusher.getCheckPointCount();
+    }
+}
@@ -0,0 +1,24 @@
+package sdfs.namenode;
+
+/**
+ * the state of a name node
+ */
+public interface NameNodeMetricsMBean {
+    int getOpenReadonlyFileAmount();
+
+    int getOpenReadwriteFileAmount();
+
+    int getLiveBlockAmount();
+
+    int getPendingDeletionBlockAmount();
+
+    int getLiveDataNodeAmount();
+
+    long getLogBytesWritten();
+
+    long getLogBytesSinceCheckPoint();
+
+    long getLastCheckPointMillis();
+
+    long getCheckPointCount();
+}
@@ -1,10 +1,15 @@
 package sdfs.namenode;
 
 import sdfs.entity.AccessTokenPermission;
+import sdfs.entity.BlockReport;
+import sdfs.entity.DataNodeInfo;
+import sdfs.entity.FileAttributes;
 import sdfs.entity.SDFSFileChannelData;
 import sdfs.exception.IllegalAccessTokenException;
 import sdfs.exception.SDFSFileAlreadyExistsException;
+import sdfs.filetree.BlockInfo;
 import sdfs.filetree.LocatedBlock;
+import sdfs.metrics.RequestMetrics;
 import sdfs.packet.NameNodeRequest;
 import sdfs.packet.NameNodeResponse;
 import sdfs.protocol.SDFSConfiguration;
@@ -20,9 +25,12 @@ import java.util.UUID;
 public class NameNodeServer implements Runnable {
     private NameNode nameNode;
     private ServerSocket serverSocket;
+    // how long handling each type of request takes, from receiving it to sending the response
+    private final RequestMetrics<NameNodeRequest.Type> requestMetrics = new RequestMetrics<>(NameNodeRequest.Type.class);
 
     public NameNodeServer(SDFSConfiguration configuration, long flushDiskInternalSeconds) {
         this.nameNode = new NameNode(configuration, flushDiskInternalSeconds);
+        requestMetrics.register("type=NameNodeRequest,port="+configuration.getNameNodePort());
 
         try {
             this.serverSocket = new ServerSocket(configuration.getNameNodePort());
@@ -36,6 +44,10 @@ public class NameNodeServer implements Runnable {
         return nameNode;
     }
 
+    public RequestMetrics<NameNodeRequest.Type> getRequestMetrics() {
+        return requestMetrics;
+    }
+
     @Override
     public void run() {
         while (true) {
@@ -64,6 +76,7 @@ public class NameNodeServer implements Runnable {
                     // deserialize request
                     ObjectInputStream objectInputStream = new ObjectInputStream(socketWithClient.getInputStream());
                     NameNodeRequest request = (NameNodeRequest) objectInputStream.readObject();
+                    long start = System.nanoTime();
                     NameNodeResponse response;
                     // switch request type
                     switch (request.getType()) {
@@ -85,8 +98,38 @@ public class NameNodeServer implements Runnable {
                             break;
                         case NEW_COW_BLOCK: response = handleNewCOWBlock(request);
                             break;
+                        case ADD_REPLICATED_BLOCKS: response = handleAddReplicatedBlocks(request);
+                            break;
+                        case NEW_REPLICATED_COW_BLOCK: response = handleNewReplicatedCOWBlock(request);
+                            break;
                         case GET_ACCESS_TOKEN_PERMISSION: response = handleGetOriginalPermission(request);
                             break;
+                        case HEARTBEAT: response = handleHeartbeat(request);
+                            break;
+                        case BLOCK_REPORT: response = handleBlockReport(request);
+                            break;
+                        case DROP_REPLICA: response = handleDropReplica(request);
+                            break;
+                        case BATCH: response = handleBatch(request);
+                            break;
+                        case RENEW_LEASES: response = handleRenewLeases(request);
+                            break;
+                        case OPEN_READ_ONLY_IF_CHANGED: response = handleOpenReadOnlyIfChanged(request);
+                            break;
+                        case OPEN_APPEND: response = handleOpenAppend(request);
+                            break;
+                        case CREATE_SNAPSHOT: response = handleCreateSnapshot(request);
+                            break;
+                        case DELETE_SNAPSHOT: response = handleDeleteSnapshot(request);
+                            break;
+                        case LIST: response = handleList(request);
+                            break;
+                        case STAT: response = handleStat(request);
+                            break;
+                        case COPY: response = handleCopy(request);
+                            break;
+                        case CONCAT: response = handleConcat(request);
+                            break;
                         default: // ignore this request
                             return;
                     }
@@ -95,6 +138,7 @@ public class NameNodeServer implements Runnable {
                     ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
                     objectOutputStream.writeObject(response);
                     objectOutputStream.flush();
+                    requestMetrics.record(request.getType(), System.nanoTime() - start);
                 }
             } catch (IOException | ClassNotFoundException | NullPointerException ignored) {
             }
@@ -105,11 +149,64 @@ public class NameNodeServer implements Runnable {
         NameNodeResponse handleGetOriginalPermission(NameNodeRequest request) {
             NameNodeResponse response = new NameNodeResponse();
             UUID token = request.getToken();
-            AccessTokenPermission accessTokenPermission = nameNode.getAccessTokenPermission(token, socketWithClient.getInetAddress());
+            // the address is that of the connection, so that a caller can not ask for the blocks of another data node
+            // only the port, which the connection does not tell, is taken from the request
+            int dataNodePort = request.getDataNodeInfo().getPort();
+            AccessTokenPermission accessTokenPermission = nameNode.getAccessTokenPermission(token, socketWithClient.getInetAddress(), dataNodePort);
             response.setAccessTokenPermission(accessTokenPermission);
             return response;
         }
 
+        NameNodeResponse handleHeartbeat(NameNodeRequest request) {
+            // like for a permission, the address is that of the connection and only the port is taken from the request
+            // so that a caller can not register or update another data node
+            DataNodeInfo dataNodeInfo = request.getDataNodeInfo();
+            nameNode.sendHeartbeat(new DataNodeInfo(socketWithClient.getInetAddress(), dataNodeInfo.getPort(),
+                    dataNodeInfo.getUsedSpace(), dataNodeInfo.getOutstandingRequests()));
+            return new NameNodeResponse();
+        }
+
+        NameNodeResponse handleBatch(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            try {
+                response.setBatchResultList(nameNode.batch(request.getBatchOperationList()));
+            } catch (IllegalArgumentException e) {
+                response.setIllegalArgumentException(e);
+            }
+            return response;
+        }
+
+        NameNodeResponse handleRenewLeases(NameNodeRequest request) {
+            nameNode.renewLeases(request.getTokenSet());
+            return new NameNodeResponse();
+        }
+
+        NameNodeResponse handleBlockReport(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            // the address is that of the connection, so that a caller can not report the blocks of another data node
+            BlockReport blockReport = request.getBlockReport();
+            response.setDeletionList(nameNode.blockReport(new BlockReport(socketWithClient.getInetAddress(), blockReport.getPort(),
+                    blockReport.isFull(), blockReport.getAddedBlocks(), blockReport.getRemovedBlocks())));
+            return response;
+        }
+
+        NameNodeResponse handleDropReplica(NameNodeRequest request) {
+            nameNode.dropReplica(request.getToken(), request.getLocatedBlock());
+            return new NameNodeResponse();
+        }
+
+
+        NameNodeResponse handleOpenReadOnlyIfChanged(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            String fileUri = request.getString();
+            try {
+                SDFSFileChannelData sdfsFileChannelData = nameNode.openReadonlyIfChanged(fileUri, request.getNumber());
+                response.setSDFSFileChannelData(sdfsFileChannelData);
+            } catch (FileNotFoundException e) {
+                response.setFileNotFoundException(e);
+            }
+            return response;
+        }
 
         NameNodeResponse handleOpenReadOnly(NameNodeRequest request) {
             NameNodeResponse response = new NameNodeResponse();
@@ -123,6 +220,20 @@ public class NameNodeServer implements Runnable {
             return response;
         }
 
+        NameNodeResponse handleOpenAppend(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            String fileUri = request.getString();
+            try {
+                SDFSFileChannelData sdfsFileChannelData = nameNode.openAppend(fileUri);
+                response.setSDFSFileChannelData(sdfsFileChannelData);
+            } catch (FileNotFoundException e) {
+                response.setFileNotFoundException(e);
+            } catch (OverlappingFileLockException e) {
+                response.setOverlappingFileLockException(e);
+            }
+            return response;
+        }
+
         NameNodeResponse handleOpenReadWrite(NameNodeRequest request) {
             NameNodeResponse response = new NameNodeResponse();
             String fileUri = request.getString();
@@ -140,13 +251,16 @@ public class NameNodeServer implements Runnable {
         NameNodeResponse handleCreate(NameNodeRequest request) {
             NameNodeResponse response = new NameNodeResponse();
             String fileUri = request.getString();
+            FileAttributes fileAttributes = request.getFileAttributes();
             try {
-                SDFSFileChannelData sdfsFileChannelData = nameNode.create(fileUri);
+                SDFSFileChannelData sdfsFileChannelData = fileAttributes == null ? nameNode.create(fileUri) : nameNode.create(fileUri, fileAttributes);
                 response.setSDFSFileChannelData(sdfsFileChannelData);
             } catch (SDFSFileAlreadyExistsException e) {
                 response.setSDFSFileAlreadyExistException(e);
             } catch (FileNotFoundException e) {
                 response.setFileNotFoundException(e);
+            } catch (IllegalArgumentException e) {
+                response.setIllegalArgumentException(e);
             }
             return response;
         }
@@ -164,6 +278,74 @@ public class NameNodeServer implements Runnable {
             return response;
         }
 
+        NameNodeResponse handleList(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            try {
+                response.setDirListing(nameNode.list(request.getString(), request.getName(), (int) request.getNumber()));
+            } catch (FileNotFoundException e) {
+                response.setFileNotFoundException(e);
+            } catch (IllegalArgumentException e) {
+                response.setIllegalArgumentException(e);
+            }
+            return response;
+        }
+
+        NameNodeResponse handleStat(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            response.setFileStatusList(nameNode.stat(request.getFileUriList()));
+            return response;
+        }
+
+        NameNodeResponse handleCreateSnapshot(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            try {
+                nameNode.createSnapshot(request.getString(), request.getName());
+            } catch (SDFSFileAlreadyExistsException e) {
+                response.setSDFSFileAlreadyExistException(e);
+            } catch (FileNotFoundException e) {
+                response.setFileNotFoundException(e);
+            } catch (IllegalArgumentException e) {
+                response.setIllegalArgumentException(e);
+            }
+            return response;
+        }
+
+        NameNodeResponse handleDeleteSnapshot(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            try {
+                nameNode.deleteSnapshot(request.getString(), request.getName());
+            } catch (FileNotFoundException e) {
+                response.setFileNotFoundException(e);
+            }
+            return response;
+        }
+
+        NameNodeResponse handleCopy(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            try {
+                nameNode.copy(request.getString(), request.getName());
+            } catch (SDFSFileAlreadyExistsException e) {
+                response.setSDFSFileAlreadyExistException(e);
+            } catch (FileNotFoundException e) {
+                response.setFileNotFoundException(e);
+            }
+            return response;
+        }
+
+        NameNodeResponse handleConcat(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            try {
+                nameNode.concat(request.getString(), request.getFileUriList());
+            } catch (FileNotFoundException e) {
+                response.setFileNotFoundException(e);
+            } catch (OverlappingFileLockException e) {
+                response.setOverlappingFileLockException(e);
+            } catch (IllegalArgumentException e) {
+                response.setIllegalArgumentException(e);
+            }
+            return response;
+        }
+
         NameNodeResponse handleCloseReadOnly(NameNodeRequest request) {
             NameNodeResponse response = new NameNodeResponse();
             UUID token = request.getToken();
@@ -202,6 +384,21 @@ public class NameNodeServer implements Runnable {
             return response;
         }
 
+        NameNodeResponse handleAddReplicatedBlocks(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            UUID token = request.getToken();
+            int blockAmount = (int) request.getNumber(); // cast long to integer
+            try {
+                List<BlockInfo> blockInfoList = nameNode.addReplicatedBlocks(token, blockAmount);
+                response.setBlockInfoList(blockInfoList);
+            } catch (IllegalAccessTokenException e) {
+                response.setIllegalAccessTokenException(e);
+            } catch (IllegalArgumentException e) {
+                response.setIllegalArgumentException(e);
+            }
+            return response;
+        }
+
         NameNodeResponse handleRemoveLastBlocks(NameNodeRequest request) {
             NameNodeResponse response = new NameNodeResponse();
             UUID token = request.getToken();
@@ -232,5 +429,22 @@ public class NameNodeServer implements Runnable {
             }
             return response;
         }
+
+        private NameNodeResponse handleNewReplicatedCOWBlock(NameNodeRequest request) {
+            NameNodeResponse response = new NameNodeResponse();
+            UUID token = request.getToken();
+            int fileBlockNumber = (int) request.getNumber(); // cast long to integer
+            try {
+                BlockInfo blockInfo = nameNode.newReplicatedCopyOnWriteBlock(token, fileBlockNumber);
+                List<BlockInfo> blockInfoList = new ArrayList<>();
+                blockInfoList.add(blockInfo);
+                response.setBlockInfoList(blockInfoList);
+            } catch (IllegalAccessTokenException e) {
+                response.setIllegalAccessTokenException(e);
+            } catch (IndexOutOfBoundsException e) {
+                response.setIndexOutOfBoundsException(e);
+            }
+            return response;
+        }
     }
 }
@@ -3,13 +3,117 @@ package sdfs.namenode;
 import sdfs.entity.FileInfo;
 import sdfs.filetree.FileNode;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class OpenedFileNode {
     private FileNode fileNode;
     private FileInfo fileInfo;
+    // when the client holding the token last renewed its lease, by System.nanoTime so that a change of the clock does not move it
+    private volatile long leaseRenewedNanos;
+    // the size of a file opened to append to when it was opened, -1 if not appending
+    // nothing before it may be changed, so that the last block can be extended in place
+    private long committedSize = -1;
+    private int committedBlockAmount;
+    // the id of the partial last block of a file opened to append to, if other files may hold it too, -1 otherwise
+    // such as a copy of the file, which would see it change, so it is copied on write instead of extended in place
+    private int sharedTailID = -1;
+    // the ids given to the file since it was opened, as new blocks or copies on write
+    // a data node may still have a stale block file of such an id, the writer starts it over
+    // read by the data nodes asking for permissions while the writer adds to it
+    private final Set<Integer> allocatedBlocks = ConcurrentHashMap.newKeySet();
 
     public OpenedFileNode(FileNode fileNode, FileInfo fileInfo) {
         this.fileNode = fileNode;
         this.fileInfo = fileInfo;
+        this.leaseRenewedNanos = System.nanoTime();
+    }
+
+    /**
+     * the file tree and this opened file hold one reference each to a last block no other file holds
+     * a replaced version still read holds one too, then the block is copied although it need not be
+     */
+    void startAppending(DataBlockManager dataBlockManager) {
+        committedSize = fileInfo.getFileSize();
+        committedBlockAmount = fileInfo.getBlockAmount();
+        if (committedBlockAmount > 0 && committedSize % fileInfo.getBlockSize() != 0) {
+            int tailID = fileInfo.getBlockList().getId(committedBlockAmount - 1);
+            if (dataBlockManager.getReferenceCount(tailID) > 2) {
+                sharedTailID = tailID;
+            }
+        }
+    }
+
+    boolean isAppending() {
+        return committedSize >= 0;
+    }
+
+    long getCommittedSize() {
+        return committedSize;
+    }
+
+    /**
+     * @return the number of blocks holding data of the file when it was opened to append to
+     */
+    int getCommittedBlockAmount() {
+        return committedBlockAmount;
+    }
+
+    /**
+     * @return whether the partial last block is shared with other files, so it can not be extended in place
+     */
+    boolean isTailShared() {
+        return sharedTailID >= 0;
+    }
+
+    /**
+     * @return whether the block at the index may be copied on write
+     * the data already in a file opened to append to may not be changed, not even in a copy
+     * except that a shared last block is copied before it is extended
+     */
+    boolean isCopyOnWriteAllowed(int index) {
+        return !isAppending() || index >= committedBlockAmount || getSharedTailIndex() == index;
+    }
+
+    /**
+     * @return the index of the last block if it is still the one shared with other files, -1 otherwise
+     */
+    int getSharedTailIndex() {
+        if (sharedTailID >= 0 && fileInfo.getBlockList().getId(committedBlockAmount - 1) == sharedTailID) {
+            return committedBlockAmount - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether the last block was shared with other files and has been copied on write since
+     */
+    boolean isTailCopied() {
+        return sharedTailID >= 0 && getSharedTailIndex() < 0;
+    }
+
+    void recordAllocation(int blockID) {
+        allocatedBlocks.add(blockID);
+    }
+
+    /**
+     * @return whether the block was given to the file since it was opened
+     */
+    boolean isAllocated(int blockID) {
+        return allocatedBlocks.contains(blockID);
+    }
+
+    void renewLease() {
+        leaseRenewedNanos = System.nanoTime();
+    }
+
+    /**
+     * @param now System.nanoTime at the check
+     * @param leaseNanos how long a lease lasts, a negative one expires it anyway
+     */
+    boolean isLeaseExpired(long now, long leaseNanos) {
+        // nano times may only be compared by their difference, which is never negative here
+        return now - leaseRenewedNanos > leaseNanos;
     }
 
     /**
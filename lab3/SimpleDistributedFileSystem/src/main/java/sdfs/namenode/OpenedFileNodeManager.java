@@ -1,15 +1,19 @@
 package sdfs.namenode;
 
 import sdfs.exception.IllegalAccessTokenException;
+import sdfs.filetree.DataNodeTable;
 import sdfs.filetree.FileNode;
 
+import java.io.FileNotFoundException;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import static sdfs.datanode.DataNode.BLOCK_SIZE;
 
 public class OpenedFileNodeManager {
     // map currently opened read-only file token to its accordingly opened file
@@ -23,9 +27,11 @@ public class OpenedFileNodeManager {
     private ReentrantReadWriteLock lockForWriting = new ReentrantReadWriteLock();
 
     private DataBlockManager dataBlockManager;
+    private DataNodeTable dataNodeTable;
 
-    OpenedFileNodeManager(DataBlockManager dataBlockManager) {
+    OpenedFileNodeManager(DataBlockManager dataBlockManager, DataNodeTable dataNodeTable) {
         this.dataBlockManager = dataBlockManager;
+        this.dataNodeTable = dataNodeTable;
     }
 
     boolean isReading(UUID token) {
@@ -42,6 +48,71 @@ public class OpenedFileNodeManager {
         return isWriting;
     }
 
+    int getReadingAmount() {
+        lockForReading.readLock().lock();
+        int amount = readingMap.size();
+        lockForReading.readLock().unlock();
+        return amount;
+    }
+
+    int getWritingAmount() {
+        lockForWriting.readLock().lock();
+        int amount = writingMap.size();
+        lockForWriting.readLock().unlock();
+        return amount;
+    }
+
+    /**
+     * renew the leases of the tokens, tokens that are not open are ignored
+     */
+    void renewLeases(Collection<UUID> tokens) {
+        lockForReading.readLock().lock();
+        lockForWriting.readLock().lock();
+        for (UUID token : tokens) {
+            OpenedFileNode openedFileNode = readingMap.get(token);
+            if (openedFileNode == null) {
+                openedFileNode = writingMap.get(token);
+            }
+            if (openedFileNode != null) {
+                openedFileNode.renewLease();
+            }
+        }
+        lockForWriting.readLock().unlock();
+        lockForReading.readLock().unlock();
+    }
+
+    /**
+     * @param now System.nanoTime at the check
+     * @param leaseNanos leases not renewed for this long are expired
+     */
+    List<UUID> getExpiredReadingTokens(long now, long leaseNanos) {
+        lockForReading.readLock().lock();
+        List<UUID> tokens = new ArrayList<>();
+        for (Map.Entry<UUID, OpenedFileNode> entry : readingMap.entrySet()) {
+            if (entry.getValue().isLeaseExpired(now, leaseNanos)) {
+                tokens.add(entry.getKey());
+            }
+        }
+        lockForReading.readLock().unlock();
+        return tokens;
+    }
+
+    /**
+     * @param now System.nanoTime at the check
+     * @param leaseNanos leases not renewed for this long are expired
+     */
+    List<UUID> getExpiredWritingTokens(long now, long leaseNanos) {
+        lockForWriting.readLock().lock();
+        List<UUID> tokens = new ArrayList<>();
+        for (Map.Entry<UUID, OpenedFileNode> entry : writingMap.entrySet()) {
+            if (entry.getValue().isLeaseExpired(now, leaseNanos)) {
+                tokens.add(entry.getKey());
+            }
+        }
+        lockForWriting.readLock().unlock();
+        return tokens;
+    }
+
     OpenedFileNode getReadingFile(UUID token) {
         lockForReading.readLock().lock();
         OpenedFileNode readingNode = readingMap.get(token);
@@ -56,18 +127,37 @@ public class OpenedFileNodeManager {
         return writingNode;
     }
 
-    OpenedFileNode openRead(FileNode fileNode, UUID token) {
+    /**
+     * @throws FileNotFoundException if the file is in a snapshot deleted since it was found
+     */
+    OpenedFileNode openRead(FileNode fileNode, UUID token) throws FileNotFoundException {
         lockForReading.writeLock().lock();
-        OpenedFileNode openedFileNode = fileNode.open(dataBlockManager);
+        OpenedFileNode openedFileNode;
+        try {
+            openedFileNode = fileNode.openRead(dataNodeTable);
+        } catch (FileNotFoundException e) {
+            lockForReading.writeLock().unlock();
+            throw e;
+        }
         readingMap.put(token, openedFileNode);
         lockForReading.writeLock().unlock();
         return openedFileNode;
     }
 
     public OpenedFileNode openWrite(FileNode fileNode, UUID token) throws OverlappingFileLockException {
+        return openWrite(fileNode, token, false);
+    }
+
+    /**
+     * @param appending whether the data already in the file must be left as it is
+     */
+    OpenedFileNode openWrite(FileNode fileNode, UUID token, boolean appending) throws OverlappingFileLockException {
         lockForWriting.writeLock().lock();
         if (!writingMap.containsValue(new OpenedFileNode(fileNode, null))) {
-            OpenedFileNode openedFileNode = fileNode.open(dataBlockManager);
+            OpenedFileNode openedFileNode = fileNode.openWrite(dataBlockManager, dataNodeTable);
+            if (appending) {
+                openedFileNode.startAppending(dataBlockManager);
+            }
             writingMap.put(token, openedFileNode);
             lockForWriting.writeLock().unlock();
             return openedFileNode;
@@ -77,6 +167,27 @@ public class OpenedFileNodeManager {
         }
     }
 
+    /**
+     * append other files to a file no one is writing to
+     * the lock keeps the file from being opened to write meanwhile, whose close would lose the appended blocks
+     * @throws OverlappingFileLockException if the file is opened read write
+     * @throws IllegalArgumentException if the files can not be concatenated without copying data
+     */
+    void concat(FileNode fileNode, List<FileNode> sourceNodes) throws OverlappingFileLockException, IllegalArgumentException {
+        lockForWriting.writeLock().lock();
+        if (writingMap.containsValue(new OpenedFileNode(fileNode, null))) {
+            lockForWriting.writeLock().unlock();
+            throw new OverlappingFileLockException();
+        }
+        try {
+            fileNode.concat(sourceNodes, dataBlockManager);
+        } catch (IllegalArgumentException e) {
+            lockForWriting.writeLock().unlock();
+            throw e;
+        }
+        lockForWriting.writeLock().unlock();
+    }
+
     void closeRead(UUID token) throws IllegalAccessTokenException {
         lockForReading.writeLock().lock();
         if (!readingMap.containsKey(token)) {
@@ -84,7 +195,7 @@ public class OpenedFileNodeManager {
             throw new IllegalAccessTokenException();
         } else {
             OpenedFileNode openedFileNode = readingMap.get(token);
-            openedFileNode.getFileNode().close(openedFileNode.getFileInfo(), dataBlockManager);
+            openedFileNode.getFileNode().closeRead(openedFileNode.getFileInfo(), dataBlockManager);
             readingMap.remove(token);
             lockForReading.writeLock().unlock();
         }
@@ -98,11 +209,13 @@ public class OpenedFileNodeManager {
         } else {
             OpenedFileNode openedFileNode = writingMap.get(token);
             int blockAmount = openedFileNode.getFileInfo().getBlockAmount();
-            if (newFileSize < 0 || newFileSize <= (blockAmount-1) * BLOCK_SIZE || newFileSize > blockAmount * BLOCK_SIZE) {
+            long blockSize = openedFileNode.getFileInfo().getBlockSize();
+            if (newFileSize < 0 || newFileSize <= (blockAmount-1) * blockSize || newFileSize > blockAmount * blockSize
+                    || newFileSize < openedFileNode.getCommittedSize()) {
                 // still need to remove from cache
                 writingMap.remove(token);
                 // but do not update file tree
-                openedFileNode.getFileNode().close(openedFileNode.getFileInfo(), dataBlockManager);
+                openedFileNode.getFileNode().closeWrite(openedFileNode.getFileInfo(), dataBlockManager);
                 lockForWriting.writeLock().unlock();
                 throw new IllegalArgumentException();
             } else {
@@ -116,4 +229,42 @@ public class OpenedFileNodeManager {
             }
         }
     }
+
+    /**
+     * close a read only file whose lease has expired
+     * @param now System.nanoTime at the check
+     * @param leaseNanos the lease is expired if not renewed for this long
+     * @return false if the token is not open any more or its lease has been renewed meanwhile
+     */
+    boolean expireRead(UUID token, long now, long leaseNanos) {
+        lockForReading.writeLock().lock();
+        OpenedFileNode openedFileNode = readingMap.get(token);
+        if (openedFileNode == null || !openedFileNode.isLeaseExpired(now, leaseNanos)) {
+            lockForReading.writeLock().unlock();
+            return false;
+        }
+        readingMap.remove(token);
+        openedFileNode.getFileNode().closeRead(openedFileNode.getFileInfo(), dataBlockManager);
+        lockForReading.writeLock().unlock();
+        return true;
+    }
+
+    /**
+     * close a read-write file whose lease has expired, dropping every change made through it
+     * @param now System.nanoTime at the check
+     * @param leaseNanos the lease is expired if not renewed for this long, a negative length expires it anyway
+     * @return false if the token is not open any more or its lease has been renewed meanwhile
+     */
+    boolean expireWrite(UUID token, long now, long leaseNanos) {
+        lockForWriting.writeLock().lock();
+        OpenedFileNode openedFileNode = writingMap.get(token);
+        if (openedFileNode == null || !openedFileNode.isLeaseExpired(now, leaseNanos)) {
+            lockForWriting.writeLock().unlock();
+            return false;
+        }
+        writingMap.remove(token);
+        openedFileNode.getFileNode().closeWrite(openedFileNode.getFileInfo(), dataBlockManager);
+        lockForWriting.writeLock().unlock();
+        return true;
+    }
 }
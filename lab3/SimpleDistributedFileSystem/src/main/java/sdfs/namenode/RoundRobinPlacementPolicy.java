@@ -0,0 +1,25 @@
+package sdfs.namenode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * place blocks on each data node in turn
+ */
+public class RoundRobinPlacementPolicy implements BlockPlacementPolicy {
+    private int next = 0;
+
+    @Override
+    public List<DataNodeDescriptor> chooseDataNodes(List<DataNodeDescriptor> candidates, int amount) {
+        List<DataNodeDescriptor> sortedCandidates = new ArrayList<>(candidates);
+        sortedCandidates.sort(Comparator.comparingInt(DataNodeDescriptor::getIndex));
+        List<DataNodeDescriptor> chosen = new ArrayList<>();
+        int start = next % sortedCandidates.size();
+        for (int i = 0; i < amount; i++) {
+            chosen.add(sortedCandidates.get((start + i) % sortedCandidates.size()));
+        }
+        next = start + 1;
+        return chosen;
+    }
+}
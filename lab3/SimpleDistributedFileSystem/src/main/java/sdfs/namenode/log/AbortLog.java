@@ -3,6 +3,7 @@ package sdfs.namenode.log;
 import java.io.Serializable;
 
 public class AbortLog extends Log implements Serializable {
+    private static final long serialVersionUID = 5940555658345976656L;
 
     public AbortLog(int id) {
         super(id, Type.ABORT);
@@ -1,24 +1,28 @@
 package sdfs.namenode.log;
 
+import sdfs.filetree.BlockInfo;
+
 import java.io.Serializable;
 import java.util.List;
 import java.util.UUID;
 
 public class AddBlocksLog extends Log implements Serializable {
+    private static final long serialVersionUID = -1869621972912921488L;
     private UUID token;
-    private List<Integer> newBlockNumberList;
+    // the data nodes of each block are logged as well, since placement is not deterministic
+    private List<BlockInfo> newBlockInfoList;
 
-    public AddBlocksLog(int logID, UUID token, List<Integer> newBlockNumberList) {
+    public AddBlocksLog(int logID, UUID token, List<BlockInfo> newBlockInfoList) {
         super(logID, Type.ADD_BLOCKS);
         this.token = token;
-        this.newBlockNumberList = newBlockNumberList;
+        this.newBlockInfoList = newBlockInfoList;
     }
 
     public UUID getToken() {
         return token;
     }
 
-    public List<Integer> getNewBlockNumberList() {
-        return newBlockNumberList;
+    public List<BlockInfo> getNewBlockInfoList() {
+        return newBlockInfoList;
     }
 }
@@ -3,6 +3,7 @@ package sdfs.namenode.log;
 import java.io.Serializable;
 
 public class CheckPointLog extends Log implements Serializable {
+    private static final long serialVersionUID = -1908856576470349461L;
     public CheckPointLog(int id) {
         super(id, Type.CHECK_POINT);
     }
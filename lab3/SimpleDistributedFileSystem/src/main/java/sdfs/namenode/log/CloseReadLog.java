@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.UUID;
 
 public class CloseReadLog extends Log implements Serializable {
+    private static final long serialVersionUID = 5345033119611614985L;
 
     private UUID token;
 
@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.UUID;
 
 public class CloseWriteLog extends Log implements Serializable {
+    private static final long serialVersionUID = -6253219733164592392L;
     private UUID token;
     private long newFileSize;
 
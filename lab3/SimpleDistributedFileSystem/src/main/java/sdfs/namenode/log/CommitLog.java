@@ -3,6 +3,7 @@ package sdfs.namenode.log;
 import java.io.Serializable;
 
 public class CommitLog extends Log implements Serializable {
+    private static final long serialVersionUID = -5551787399468816141L;
 
     public CommitLog(int id) {
         super(id, Type.COMMIT);
@@ -0,0 +1,24 @@
+package sdfs.namenode.log;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class ConcatLog extends Log implements Serializable {
+    private static final long serialVersionUID = -2120031142674936121L;
+    private String targetUri;
+    private List<String> sourceUris;
+
+    public ConcatLog(int logID, String targetUri, List<String> sourceUris) {
+        super(logID, Type.CONCAT);
+        this.targetUri = targetUri;
+        this.sourceUris = sourceUris;
+    }
+
+    public String getTargetUri() {
+        return targetUri;
+    }
+
+    public List<String> getSourceUris() {
+        return sourceUris;
+    }
+}
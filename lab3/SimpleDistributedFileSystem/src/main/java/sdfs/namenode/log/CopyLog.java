@@ -0,0 +1,23 @@
+package sdfs.namenode.log;
+
+import java.io.Serializable;
+
+public class CopyLog extends Log implements Serializable {
+    private static final long serialVersionUID = 4611128703963211413L;
+    private String srcUri;
+    private String dstUri;
+
+    public CopyLog(int logID, String srcUri, String dstUri) {
+        super(logID, Type.COPY);
+        this.srcUri = srcUri;
+        this.dstUri = dstUri;
+    }
+
+    public String getSrcUri() {
+        return srcUri;
+    }
+
+    public String getDstUri() {
+        return dstUri;
+    }
+}
@@ -1,18 +1,21 @@
 package sdfs.namenode.log;
 
+import sdfs.filetree.BlockInfo;
+
 import java.io.Serializable;
 import java.util.UUID;
 
 public class CopyOnWriteBlockLog extends Log implements Serializable {
+    private static final long serialVersionUID = -6716722367064067032L;
     private UUID token;
     private int fileBlockNumber;
-    private int newBlockNumber;
+    private BlockInfo newBlockInfo;
 
-    public CopyOnWriteBlockLog(int logID, UUID token, int fileBlockNumber, int newBlockNumber) {
+    public CopyOnWriteBlockLog(int logID, UUID token, int fileBlockNumber, BlockInfo newBlockInfo) {
         super(logID, Type.COPY_ON_WRITE_BLOCK);
         this.token = token;
         this.fileBlockNumber = fileBlockNumber;
-        this.newBlockNumber = newBlockNumber;
+        this.newBlockInfo = newBlockInfo;
     }
 
     public UUID getToken() {
@@ -23,7 +26,7 @@ public class CopyOnWriteBlockLog extends Log implements Serializable {
         return fileBlockNumber;
     }
 
-    public int getNewBlockNumber() {
-        return newBlockNumber;
+    public BlockInfo getNewBlockInfo() {
+        return newBlockInfo;
     }
 }
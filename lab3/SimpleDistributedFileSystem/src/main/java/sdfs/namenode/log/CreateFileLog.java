@@ -1,15 +1,20 @@
 package sdfs.namenode.log;
 
+import sdfs.entity.FileAttributes;
+
 import java.io.Serializable;
 import java.util.UUID;
 
 public class CreateFileLog extends Log implements Serializable {
+    private static final long serialVersionUID = -8159725435414778802L;
     private String fileUri;
+    private FileAttributes fileAttributes;
     private UUID token;
 
-    public CreateFileLog(int logID, String fileUri, UUID token) {
+    public CreateFileLog(int logID, String fileUri, FileAttributes fileAttributes, UUID token) {
         super(logID, Type.CREATE);
         this.fileUri = fileUri;
+        this.fileAttributes = fileAttributes;
         this.token = token;
     }
 
@@ -17,6 +22,10 @@ public class CreateFileLog extends Log implements Serializable {
         return fileUri;
     }
 
+    public FileAttributes getFileAttributes() {
+        return fileAttributes;
+    }
+
     public UUID getToken() {
         return token;
     }
@@ -0,0 +1,23 @@
+package sdfs.namenode.log;
+
+import java.io.Serializable;
+
+public class CreateSnapshotLog extends Log implements Serializable {
+    private static final long serialVersionUID = 6601457723180895918L;
+    private String dirUri;
+    private String snapshotName;
+
+    public CreateSnapshotLog(int logID, String dirUri, String snapshotName) {
+        super(logID, Type.CREATE_SNAPSHOT);
+        this.dirUri = dirUri;
+        this.snapshotName = snapshotName;
+    }
+
+    public String getDirUri() {
+        return dirUri;
+    }
+
+    public String getSnapshotName() {
+        return snapshotName;
+    }
+}
@@ -0,0 +1,23 @@
+package sdfs.namenode.log;
+
+import java.io.Serializable;
+
+public class DeleteSnapshotLog extends Log implements Serializable {
+    private static final long serialVersionUID = 1585319181957024608L;
+    private String dirUri;
+    private String snapshotName;
+
+    public DeleteSnapshotLog(int logID, String dirUri, String snapshotName) {
+        super(logID, Type.DELETE_SNAPSHOT);
+        this.dirUri = dirUri;
+        this.snapshotName = snapshotName;
+    }
+
+    public String getDirUri() {
+        return dirUri;
+    }
+
+    public String getSnapshotName() {
+        return snapshotName;
+    }
+}
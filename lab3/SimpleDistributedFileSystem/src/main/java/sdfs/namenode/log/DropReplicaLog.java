@@ -0,0 +1,27 @@
+package sdfs.namenode.log;
+
+import sdfs.filetree.LocatedBlock;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+public class DropReplicaLog extends Log implements Serializable {
+    private static final long serialVersionUID = -1742650243282989733L;
+    private UUID token;
+    // the replica that did not get a write of the pipeline
+    private LocatedBlock replica;
+
+    public DropReplicaLog(int logID, UUID token, LocatedBlock replica) {
+        super(logID, Type.DROP_REPLICA);
+        this.token = token;
+        this.replica = replica;
+    }
+
+    public UUID getToken() {
+        return token;
+    }
+
+    public LocatedBlock getReplica() {
+        return replica;
+    }
+}
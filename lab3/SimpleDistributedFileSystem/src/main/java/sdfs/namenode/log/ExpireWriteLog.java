@@ -0,0 +1,21 @@
+package sdfs.namenode.log;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * a read-write token whose lease expired, the file is closed without changing the file tree
+ */
+public class ExpireWriteLog extends Log implements Serializable {
+    private static final long serialVersionUID = 5861997953196036356L;
+    private UUID token;
+
+    public ExpireWriteLog(int logID, UUID token) {
+        super(logID, Type.EXPIRE_WRITE);
+        this.token = token;
+    }
+
+    public UUID getToken() {
+        return token;
+    }
+}
@@ -3,12 +3,15 @@ package sdfs.namenode.log;
 import java.io.Serializable;
 
 public abstract class Log implements Serializable {
+    // pinned, as in every log, so that the logs left by a name node can be replayed by the next one
+    private static final long serialVersionUID = -2673433190698645558L;
     private int id;
     private Type type;
 
     public enum Type {
         START, ABORT, ADD_BLOCKS, CHECK_POINT, CLOSE_READ, CLOSE_WRITE, COMMIT, COPY_ON_WRITE_BLOCK,
-        CREATE, MK_DIR, OPEN_READ, OPEN_WRITE, REMOVE_BLOCKS;
+        CREATE, MK_DIR, OPEN_READ, OPEN_WRITE, REMOVE_BLOCKS, EXPIRE_WRITE, OPEN_APPEND,
+        CREATE_SNAPSHOT, DELETE_SNAPSHOT, COPY, CONCAT, DROP_REPLICA;
 
         @Override
         public String toString() {
@@ -26,6 +29,13 @@ public abstract class Log implements Serializable {
                 case OPEN_READ: return "open_read";
                 case OPEN_WRITE: return "open_write";
                 case REMOVE_BLOCKS: return "remove_blocks";
+                case EXPIRE_WRITE: return "expire_write";
+                case OPEN_APPEND: return "open_append";
+                case CREATE_SNAPSHOT: return "create_snapshot";
+                case DELETE_SNAPSHOT: return "delete_snapshot";
+                case COPY: return "copy";
+                case CONCAT: return "concat";
+                case DROP_REPLICA: return "drop_replica";
                 default: return "";
             }
         }
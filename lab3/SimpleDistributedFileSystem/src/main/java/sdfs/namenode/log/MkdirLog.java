@@ -3,6 +3,7 @@ package sdfs.namenode.log;
 import java.io.Serializable;
 
 public class MkdirLog extends Log implements Serializable {
+    private static final long serialVersionUID = -2489089916343857437L;
     private String fileUri;
 
     public MkdirLog(int logID, String fileUri) {
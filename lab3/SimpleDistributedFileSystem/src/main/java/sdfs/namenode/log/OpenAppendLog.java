@@ -0,0 +1,14 @@
+package sdfs.namenode.log;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * a file opened to append to, which is an open to write that may not change the data already in the file
+ */
+public class OpenAppendLog extends OpenWriteLog implements Serializable {
+    private static final long serialVersionUID = -4320034462794836833L;
+    public OpenAppendLog(int logID, String fileUri, UUID token) {
+        super(logID, Type.OPEN_APPEND, fileUri, token);
+    }
+}
@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.UUID;
 
 public class OpenReadLog extends Log implements Serializable {
+    private static final long serialVersionUID = -6348179623591429295L;
     private String fileUri;
     private UUID token;
 
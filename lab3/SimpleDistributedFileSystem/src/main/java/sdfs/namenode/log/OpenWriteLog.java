@@ -4,11 +4,16 @@ import java.io.Serializable;
 import java.util.UUID;
 
 public class OpenWriteLog extends Log implements Serializable {
+    private static final long serialVersionUID = -5169085388790283613L;
     private String fileUri;
     private UUID token;
 
     public OpenWriteLog(int logID, String fileUri, UUID token) {
-        super(logID, Type.OPEN_WRITE);
+        this(logID, Type.OPEN_WRITE, fileUri, token);
+    }
+
+    OpenWriteLog(int logID, Type type, String fileUri, UUID token) {
+        super(logID, type);
         this.fileUri = fileUri;
         this.token = token;
     }
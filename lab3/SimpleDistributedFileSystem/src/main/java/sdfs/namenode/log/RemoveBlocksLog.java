@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.UUID;
 
 public class RemoveBlocksLog extends Log implements Serializable {
+    private static final long serialVersionUID = 9073833319072516772L;
     private UUID token;
     private int blockAmount;
 
@@ -3,6 +3,7 @@ package sdfs.namenode.log;
 import java.io.Serializable;
 
 public class StartLog extends Log  implements Serializable {
+    private static final long serialVersionUID = -1162832642562647629L;
 
     public StartLog(int id) {
         super(id, Type.START);
@@ -1,6 +1,9 @@
 package sdfs.packet;
 
+import sdfs.filetree.LocatedBlock;
+
 import java.io.Serializable;
+import java.util.List;
 import java.util.UUID;
 
 public class DataNodeRequest implements Serializable {
@@ -9,6 +12,10 @@ public class DataNodeRequest implements Serializable {
     private int blockNumber, size;
     private long position;
     private byte[] data;
+    // whether a write is the first one to a block given to the file since it was opened
+    private boolean fresh;
+    // the replicas a write is forwarded to
+    private List<LocatedBlock> downstream;
 
     public DataNodeRequest(Type type, UUID token, int blockNumber, long position, int size, byte[] data) {
         this.type = type;
@@ -19,6 +26,12 @@ public class DataNodeRequest implements Serializable {
         this.data = data;
     }
 
+    public DataNodeRequest(Type type, UUID token, int blockNumber, long position, byte[] data, boolean fresh, List<LocatedBlock> downstream) {
+        this(type, token, blockNumber, position, 0, data);
+        this.fresh = fresh;
+        this.downstream = downstream;
+    }
+
     public enum Type {
         READ, WRITE
     }
@@ -46,4 +59,12 @@ public class DataNodeRequest implements Serializable {
     public byte[] getData() {
         return data;
     }
+
+    public boolean isFresh() {
+        return fresh;
+    }
+
+    public List<LocatedBlock> getDownstream() {
+        return downstream;
+    }
 }
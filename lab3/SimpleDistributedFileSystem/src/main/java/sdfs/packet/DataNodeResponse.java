@@ -2,6 +2,7 @@ package sdfs.packet;
 
 import sdfs.exception.IllegalAccessTokenException;
 
+import java.io.IOException;
 import java.io.Serializable;
 
 public class DataNodeResponse implements Serializable {
@@ -9,6 +10,8 @@ public class DataNodeResponse implements Serializable {
 
     private IllegalArgumentException illegalArgumentException;
     private IllegalAccessTokenException illegalAccessTokenException;
+    // the data could not be stored
+    private IOException ioException;
 
     public byte[] getData() {
         return data;
@@ -22,6 +25,10 @@ public class DataNodeResponse implements Serializable {
         return illegalAccessTokenException;
     }
 
+    public IOException getIOException() {
+        return ioException;
+    }
+
     public void setData(byte[] data) {
         this.data = data;
     }
@@ -33,4 +40,8 @@ public class DataNodeResponse implements Serializable {
     public void setIllegalAccessTokenException(IllegalAccessTokenException illegalAccessTokenException) {
         this.illegalAccessTokenException = illegalAccessTokenException;
     }
+
+    public void setIOException(IOException ioException) {
+        this.ioException = ioException;
+    }
 }
@@ -1,6 +1,16 @@
 package sdfs.packet;
 
+import sdfs.entity.BatchOperation;
+import sdfs.entity.BlockReport;
+import sdfs.entity.DataNodeInfo;
+import sdfs.entity.FileAttributes;
+import sdfs.filetree.LocatedBlock;
+
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public class NameNodeRequest implements Serializable {
@@ -8,6 +18,20 @@ public class NameNodeRequest implements Serializable {
     private UUID token;
     private long number;
     private Type type;
+    // the data node sending a heartbeat or asking for a permission
+    private DataNodeInfo dataNodeInfo;
+    // the attributes of the file to create
+    private FileAttributes fileAttributes;
+    private BlockReport blockReport;
+    private List<BatchOperation> batchOperationList;
+    // the tokens whose leases are renewed
+    private Set<UUID> tokenSet;
+    // the files to get the status of, or to append to the file in the string
+    private List<String> fileUriList;
+    // the name of the snapshot of the directory in the string, the name to list the directory after, or the path to copy the file to
+    private String name;
+    // the replica a data node could not forward a write to
+    private LocatedBlock locatedBlock;
 
     public NameNodeRequest(Type type, String string, UUID token, long number) {
         this.type = type;
@@ -16,10 +40,65 @@ public class NameNodeRequest implements Serializable {
         this.number = number;
     }
 
+    public NameNodeRequest(Type type, String string, FileAttributes fileAttributes) {
+        this.type = type;
+        this.string = string;
+        this.fileAttributes = fileAttributes;
+    }
+
+    public NameNodeRequest(Type type, String string, String name) {
+        this(type, string, 0, name);
+    }
+
+    public NameNodeRequest(Type type, String string, long number, String name) {
+        this.type = type;
+        this.string = string;
+        this.number = number;
+        this.name = name;
+    }
+
+    public NameNodeRequest(Type type, List<BatchOperation> batchOperationList) {
+        this.type = type;
+        this.batchOperationList = batchOperationList;
+    }
+
+    public NameNodeRequest(Type type, Collection<String> fileUris) {
+        this(type, null, fileUris);
+    }
+
+    public NameNodeRequest(Type type, String string, Collection<String> fileUris) {
+        this.type = type;
+        this.string = string;
+        this.fileUriList = new ArrayList<>(fileUris);
+    }
+
+    public NameNodeRequest(Type type, Set<UUID> tokenSet) {
+        this.type = type;
+        this.tokenSet = tokenSet;
+    }
+
+    public NameNodeRequest(Type type, BlockReport blockReport) {
+        this.type = type;
+        this.blockReport = blockReport;
+    }
+
+    public NameNodeRequest(Type type, UUID token, DataNodeInfo dataNodeInfo) {
+        this.type = type;
+        this.token = token;
+        this.dataNodeInfo = dataNodeInfo;
+    }
+
+    public NameNodeRequest(Type type, UUID token, LocatedBlock locatedBlock) {
+        this.type = type;
+        this.token = token;
+        this.locatedBlock = locatedBlock;
+    }
+
     public enum Type {
         OPEN_READ_ONLY, OPEN_READ_WRITE, CREATE, MK_DIR, CLOSE_READ_ONLY, CLOSE_READ_WRITE,
-        ADD_BLOCKS, REMOVE_LAST_BLOCKS, NEW_COW_BLOCK,
-        GET_ACCESS_TOKEN_PERMISSION
+        ADD_BLOCKS, REMOVE_LAST_BLOCKS, NEW_COW_BLOCK, ADD_REPLICATED_BLOCKS, NEW_REPLICATED_COW_BLOCK,
+        GET_ACCESS_TOKEN_PERMISSION, HEARTBEAT, BLOCK_REPORT, BATCH, RENEW_LEASES, OPEN_READ_ONLY_IF_CHANGED, OPEN_APPEND,
+        CREATE_SNAPSHOT, DELETE_SNAPSHOT, LIST, STAT, COPY, CONCAT, DROP_REPLICA
     }
 
     public String getString() {
@@ -34,6 +113,38 @@ public class NameNodeRequest implements Serializable {
         return number;
     }
 
+    public DataNodeInfo getDataNodeInfo() {
+        return dataNodeInfo;
+    }
+
+    public FileAttributes getFileAttributes() {
+        return fileAttributes;
+    }
+
+    public List<BatchOperation> getBatchOperationList() {
+        return batchOperationList;
+    }
+
+    public Set<UUID> getTokenSet() {
+        return tokenSet;
+    }
+
+    public List<String> getFileUriList() {
+        return fileUriList;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LocatedBlock getLocatedBlock() {
+        return locatedBlock;
+    }
+
+    public BlockReport getBlockReport() {
+        return blockReport;
+    }
+
     public Type getType() {
         return type;
     }
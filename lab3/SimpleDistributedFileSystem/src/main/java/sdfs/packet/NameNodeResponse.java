@@ -1,9 +1,13 @@
 package sdfs.packet;
 
 import sdfs.entity.AccessTokenPermission;
+import sdfs.entity.BatchResult;
+import sdfs.entity.DirListing;
+import sdfs.entity.FileStatus;
 import sdfs.entity.SDFSFileChannelData;
 import sdfs.exception.IllegalAccessTokenException;
 import sdfs.exception.SDFSFileAlreadyExistsException;
+import sdfs.filetree.BlockInfo;
 import sdfs.filetree.LocatedBlock;
 
 import java.io.FileNotFoundException;
@@ -14,7 +18,14 @@ import java.util.List;
 public class NameNodeResponse implements Serializable {
     private SDFSFileChannelData sdfsFileChannelData;
     private List<LocatedBlock> blockList;
+    private List<BlockInfo> blockInfoList;
+    // the blocks a data node should delete
+    private List<Integer> deletionList;
+    private List<BatchResult> batchResultList;
     private AccessTokenPermission accessTokenPermission;
+    private DirListing dirListing;
+    // null where there is no file
+    private List<FileStatus> fileStatusList;
 
     private SDFSFileAlreadyExistsException sdfsFileAlreadyExistsException;
     private FileNotFoundException fileNotFoundException;
@@ -43,10 +54,30 @@ public class NameNodeResponse implements Serializable {
         return blockList;
     }
 
+    public List<BlockInfo> getBlockInfoList() {
+        return blockInfoList;
+    }
+
+    public List<BatchResult> getBatchResultList() {
+        return batchResultList;
+    }
+
+    public List<Integer> getDeletionList() {
+        return deletionList;
+    }
+
     public AccessTokenPermission getAccessTokenPermission() {
         return accessTokenPermission;
     }
 
+    public DirListing getDirListing() {
+        return dirListing;
+    }
+
+    public List<FileStatus> getFileStatusList() {
+        return fileStatusList;
+    }
+
     public IllegalAccessTokenException getIllegalAccessTokenException() {
         return illegalAccessTokenException;
     }
@@ -71,6 +102,26 @@ public class NameNodeResponse implements Serializable {
         this.blockList = blockList;
     }
 
+    public void setBlockInfoList(List<BlockInfo> blockInfoList) {
+        this.blockInfoList = blockInfoList;
+    }
+
+    public void setBatchResultList(List<BatchResult> batchResultList) {
+        this.batchResultList = batchResultList;
+    }
+
+    public void setDeletionList(List<Integer> deletionList) {
+        this.deletionList = deletionList;
+    }
+
+    public void setDirListing(DirListing dirListing) {
+        this.dirListing = dirListing;
+    }
+
+    public void setFileStatusList(List<FileStatus> fileStatusList) {
+        this.fileStatusList = fileStatusList;
+    }
+
     public void setSDFSFileAlreadyExistException(SDFSFileAlreadyExistsException sdfsFileAlreadyExistsException) {
         this.sdfsFileAlreadyExistsException = sdfsFileAlreadyExistsException;
     }
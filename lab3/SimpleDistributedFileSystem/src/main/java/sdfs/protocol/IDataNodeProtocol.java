@@ -1,7 +1,10 @@
 package sdfs.protocol;
 
 import sdfs.exception.IllegalAccessTokenException;
+import sdfs.filetree.LocatedBlock;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.UUID;
 
 public interface IDataNodeProtocol {
@@ -29,6 +32,26 @@ public interface IDataNodeProtocol {
      * @param buffer          the buffer that stores the data
      * @throws IllegalArgumentException    if position less than zero, or position+size larger than block size.
      * @throws IllegalAccessTokenException if accessToken is illegal or has no permission on this file
+     * @throws IOException                 if the data node fails to store the data
      */
-    void write(UUID fileAccessToken, int blockNumber, long position, byte[] buffer) throws IllegalAccessTokenException, IllegalArgumentException;
+    void write(UUID fileAccessToken, int blockNumber, long position, byte[] buffer) throws IllegalAccessTokenException, IllegalArgumentException, IOException;
+
+    /**
+     * Write data to a block and forward it along the write pipeline.
+     * The data is forwarded to the first downstream data node, together with the rest of the downstream,
+     * and it only returns once every data node in the pipeline has written it.
+     *
+     * @param fileAccessToken the file accessToken to check whether have permission to write or not.
+     * @param blockNumber     the block number to be written
+     * @param position        the position on the block file
+     * @param buffer          the buffer that stores the data
+     * @param fresh           whether this is the first write to a block given to the file since it was opened,
+     *                        the block is started over then, whatever a block file of the same id holds
+     * @param downstream      the other replicas of the block, in pipeline order
+     * @throws IllegalArgumentException    if position less than zero, or position+size larger than block size.
+     * @throws IllegalAccessTokenException if accessToken is illegal or has no permission on this file,
+     *                                     or the block is fresh but was not given to the file since it was opened
+     * @throws IOException                 if a data node of the pipeline fails to store the data
+     */
+    void write(UUID fileAccessToken, int blockNumber, long position, byte[] buffer, boolean fresh, List<LocatedBlock> downstream) throws IllegalAccessTokenException, IllegalArgumentException, IOException;
 }
\ No newline at end of file
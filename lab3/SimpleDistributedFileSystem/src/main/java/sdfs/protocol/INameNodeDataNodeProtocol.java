@@ -1,16 +1,49 @@
 package sdfs.protocol;
 
 import sdfs.entity.AccessTokenPermission;
+import sdfs.entity.BlockReport;
+import sdfs.entity.DataNodeInfo;
+import sdfs.filetree.LocatedBlock;
 
 import java.net.InetAddress;
+import java.util.List;
 import java.util.UUID;
 
 public interface INameNodeDataNodeProtocol {
     /**
      * Get current file access token permission
+     * Only the blocks stored on the asking data node are allowed
      *
+     * @param dataNodeAddress the address the data node registered with
+     * @param dataNodePort    the port the data node registered with
      * @return Access token permission
      */
-    AccessTokenPermission getAccessTokenPermission(UUID fileAccessToken, InetAddress dataNodeAddress);
+    AccessTokenPermission getAccessTokenPermission(UUID fileAccessToken, InetAddress dataNodeAddress, int dataNodePort);
 
+    /**
+     * Report the state of a data node, the first heartbeat of a data node registers it
+     * New blocks are only placed on data nodes that keep sending heartbeats
+     *
+     * @param dataNodeInfo the state of the data node
+     */
+    void sendHeartbeat(DataNodeInfo dataNodeInfo);
+
+    /**
+     * Report the blocks a data node stores, or the change since its last report
+     * Blocks no file refers to any more are given back to be deleted, a limited amount at a time
+     *
+     * @param blockReport the blocks of the data node
+     * @return the blocks the data node should delete
+     */
+    List<Integer> blockReport(BlockReport blockReport);
+
+    /**
+     * Report a replica a write could not be forwarded to along the pipeline
+     * It is taken out of its block in the file the token writes, so that the file does not list a replica without the data
+     * The last replica of a block is never taken out
+     *
+     * @param fileAccessToken the token the write was made with
+     * @param replica         the replica that did not get the write
+     */
+    void dropReplica(UUID fileAccessToken, LocatedBlock replica);
 }
@@ -1,13 +1,20 @@
 package sdfs.protocol;
 
+import sdfs.entity.BatchOperation;
+import sdfs.entity.BatchResult;
+import sdfs.entity.DirListing;
+import sdfs.entity.FileAttributes;
+import sdfs.entity.FileStatus;
 import sdfs.entity.SDFSFileChannelData;
 import sdfs.exception.IllegalAccessTokenException;
 import sdfs.exception.SDFSFileAlreadyExistsException;
+import sdfs.filetree.BlockInfo;
 import sdfs.filetree.LocatedBlock;
 
 import java.io.FileNotFoundException;
 import java.nio.channels.OverlappingFileLockException;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public interface INameNodeProtocol {
@@ -22,6 +29,18 @@ public interface INameNodeProtocol {
      */
     SDFSFileChannelData openReadonly(String fileUri) throws FileNotFoundException;
 
+    /**
+     * Open a readonly file that is already exist, unless a copy of its file info at the given version is at hand.
+     * The same as openReadonly, except that the file info is left out when the file is still at that version,
+     * so that the client may use its own copy instead of receiving the whole block list again.
+     *
+     * @param fileUri the file uri to be open
+     * @param version the version of the file info the client has
+     * @return SDFSFileChannelData whose file info is null if the file is still at the given version
+     * @throws FileNotFoundException if the file is not exist
+     */
+    SDFSFileChannelData openReadonlyIfChanged(String fileUri, long version) throws FileNotFoundException;
+
     /**
      * Open a readwrite file that is already exist.
      * At most one UUID with readwrite permission could exist on the same file at the same time.
@@ -33,6 +52,19 @@ public interface INameNodeProtocol {
      */
     SDFSFileChannelData openReadwrite(String fileUri) throws OverlappingFileLockException, FileNotFoundException;
 
+    /**
+     * Open a file that is already exist to append to.
+     * Like a readwrite file, except that the data already in the file may not be changed,
+     * so its last block is extended in place instead of being copied on write.
+     * Readers never see past the size the file had when it was opened until it is closed.
+     *
+     * @param fileUri the file uri to be open
+     * @return SDFSFileChannelData represent the file
+     * @throws OverlappingFileLockException if the file is already opened readwrite
+     * @throws FileNotFoundException        if the file is not exist
+     */
+    SDFSFileChannelData openAppend(String fileUri) throws OverlappingFileLockException, FileNotFoundException;
+
     /**
      * Create a empty file. It should maintain a readwrite file on the memory and return the accessToken to client.
      *
@@ -42,6 +74,18 @@ public interface INameNodeProtocol {
      */
     SDFSFileChannelData create(String fileUri) throws SDFSFileAlreadyExistsException, FileNotFoundException;
 
+    /**
+     * Create a empty file with the given attributes, the attributes never change afterwards.
+     *
+     * @param fileUri        The file uri to be create
+     * @param fileAttributes The attributes of the file, such as its replication and block size
+     * @return The SDFSFileChannelData represent the file.
+     * @throws SDFSFileAlreadyExistsException if the file is already exist
+     * @throws IllegalArgumentException       if the replication is not in [1, MAX_REPLICATION]
+     *                                        or the block size is not in [MIN_BLOCK_SIZE, MAX_BLOCK_SIZE]
+     */
+    SDFSFileChannelData create(String fileUri, FileAttributes fileAttributes) throws SDFSFileAlreadyExistsException, FileNotFoundException, IllegalArgumentException;
+
     /**
      * Close a readonly file.
      *
@@ -55,7 +99,7 @@ public interface INameNodeProtocol {
      *
      * @param fileAccessToken file to be closed
      * @param newFileSize     The new file size after modify
-     * @throws IllegalArgumentException    if new file size not in (blockAmount * BLOCK_SIZE, (blockAmount + 1) * BLOCK_SIZE]
+     * @throws IllegalArgumentException    if new file size not in ((blockAmount - 1) * blockSize, blockAmount * blockSize] with the block size of the file
      * @throws IllegalAccessTokenException if accessToken is illegal
      */
     void closeReadwriteFile(UUID fileAccessToken, long newFileSize) throws IllegalAccessTokenException, IllegalArgumentException;
@@ -68,6 +112,79 @@ public interface INameNodeProtocol {
      */
     void mkdir(String fileUri) throws SDFSFileAlreadyExistsException, FileNotFoundException;
 
+    /**
+     * Copy the last closed version of a file to a new file, without copying any of its data.
+     * Both files share the blocks, a block is only duplicated once either file changes it.
+     *
+     * @param srcUri the file to copy, which may be in a snapshot
+     * @param dstUri the path of the new file
+     * @throws SDFSFileAlreadyExistsException if a directory or file is already at the new path
+     * @throws FileNotFoundException          if the file to copy or the directory of the new file is not exist
+     */
+    void copy(String srcUri, String dstUri) throws SDFSFileAlreadyExistsException, FileNotFoundException;
+
+    /**
+     * Append other files to a file, without copying any of their data, as a single operation.
+     * The blocks of the sources are added to the file, which the sources keep as well.
+     * Only the last source may end inside a block, and the file itself must end at the end of a block.
+     *
+     * @param targetUri  the file to append to, which must not be opened read write
+     * @param sourceUris the files to append, in order, which may be in snapshots
+     * @throws FileNotFoundException        if a file is not exist
+     * @throws OverlappingFileLockException if the file to append to is opened read write
+     * @throws IllegalArgumentException     if there is no source, the file is a source, a file but the last ends inside a block,
+     *                                      or a source has another block size or compression
+     */
+    void concat(String targetUri, List<String> sourceUris) throws FileNotFoundException, OverlappingFileLockException, IllegalArgumentException;
+
+    /**
+     * List a page of the entries of a directory, in the order of their names, without opening any file.
+     * A file is listed as of its last closed version.
+     * The snapshots of a directory are listed as directories at dirUri/.snapshot.
+     *
+     * @param dirUri     the directory path, empty for the root directory
+     * @param startAfter the name to list after, null to list from the first entry
+     * @param limit      the most entries to list, the name node may list fewer
+     * @return the page of entries, and whether there are more after it
+     * @throws FileNotFoundException    if the directory is not exist
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    DirListing list(String dirUri, String startAfter, int limit) throws FileNotFoundException, IllegalArgumentException;
+
+    /**
+     * Get the status of many files or directories in one request, without opening any of them.
+     * A file is seen as of its last closed version.
+     *
+     * @param fileUris the uris of the files or directories, which may be in snapshots
+     * @return the status of each uri in the same order, null where there is nothing at the uri
+     */
+    List<FileStatus> stat(List<String> fileUris);
+
+    /**
+     * Take a read only snapshot of a directory and everything below it, as it is at this moment.
+     * The files of the snapshot are opened read only at dirUri/.snapshot/snapshotName/...
+     * No block is copied, a block is only duplicated once a file sharing it is changed.
+     * Every directory and file below is copied though, and changes below the directory wait until that is done.
+     *
+     * @param dirUri       the directory path, empty for the root directory
+     * @param snapshotName the name of the snapshot
+     * @throws SDFSFileAlreadyExistsException if the directory already has a snapshot with the name
+     * @throws FileNotFoundException          if the directory is not exist
+     * @throws IllegalArgumentException       if the name is empty or contains a slash,
+     *                                        or there are more directories and files below than a snapshot may copy
+     */
+    void createSnapshot(String dirUri, String snapshotName) throws SDFSFileAlreadyExistsException, FileNotFoundException, IllegalArgumentException;
+
+    /**
+     * Delete a snapshot of a directory.
+     * Files of the snapshot that are still open can be read until they are closed.
+     *
+     * @param dirUri       the directory path, empty for the root directory
+     * @param snapshotName the name of the snapshot
+     * @throws FileNotFoundException if the directory or the snapshot is not exist
+     */
+    void deleteSnapshot(String dirUri, String snapshotName) throws FileNotFoundException;
+
     /**
      * Request a special amount of free blocks for a file
      * No metadata should be written to disk until it is correctly close
@@ -79,6 +196,17 @@ public interface INameNodeProtocol {
      */
     List<LocatedBlock> addBlocks(UUID fileAccessToken, int blockAmount) throws IllegalAccessTokenException;
 
+    /**
+     * Request a special amount of free blocks for a file, with all their replicas
+     * The first replica of each block is where the write pipeline starts
+     *
+     * @param fileAccessToken the file accessToken with readwrite state
+     * @param blockAmount     the request block amount
+     * @return the replicas of each new block
+     * @throws IllegalAccessTokenException if access token is illegal
+     */
+    List<BlockInfo> addReplicatedBlocks(UUID fileAccessToken, int blockAmount) throws IllegalAccessTokenException;
+
     /**
      * Delete the last blocks for a file
      * No metadata should be written to disk until it is correctly close
@@ -98,4 +226,32 @@ public interface INameNodeProtocol {
      * @throws IllegalStateException if there is already open on write on this file block
      */
     LocatedBlock newCopyOnWriteBlock(UUID fileAccessToken, int fileBlockNumber) throws IllegalAccessTokenException, IndexOutOfBoundsException;
+
+    /**
+     * Request a new open on write block with all its replicas
+     *
+     * @param fileBlockNumber the block number in the file that require open on write
+     * @return the replicas of the open on write block
+     */
+    BlockInfo newReplicatedCopyOnWriteBlock(UUID fileAccessToken, int fileBlockNumber) throws IllegalAccessTokenException, IndexOutOfBoundsException;
+
+    /**
+     * Run several operations in one request, one after another in the given order
+     * An operation that fails does not stop the ones after it
+     * The logs of all the operations are written at once before returning
+     *
+     * @param operations the operations to run
+     * @return the result of every operation, in the same order
+     * @throws IllegalArgumentException if there are more operations than the name node runs in one batch, then none is run
+     */
+    List<BatchResult> batch(List<BatchOperation> operations) throws IllegalArgumentException;
+
+    /**
+     * Renew the leases of the given access tokens
+     * A file whose token is not renewed for a while is closed by the name node, without any change
+     * A client renews all its tokens in one request
+     *
+     * @param fileAccessTokens the tokens of the files still open, tokens not open any more are ignored
+     */
+    void renewLeases(Set<UUID> fileAccessTokens);
 }
@@ -10,6 +10,17 @@ class Util {
         random.nextInt(1000) + 34000
     }
 
+    /**
+     * distinct ports nothing listens on right now, taken from the system instead of a fixed range
+     * so that servers bound to them do not collide with ports the system handed out meanwhile
+     */
+    static List<Integer> generateFreePorts(int amount) {
+        def sockets = (1..amount).collect { new ServerSocket(0) }
+        def ports = sockets*.localPort
+        sockets*.close()
+        ports
+    }
+
     static String generateFilename() {
         RandomStringUtils.random(255).replace('/', ':')
     }
@@ -0,0 +1,55 @@
+package sdfs.client
+
+import sdfs.filetree.BlockInfo
+import sdfs.filetree.LocatedBlock
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class HedgedReaderTest extends Specification {
+    def hedgedReader = new HedgedReader()
+    def fast = new LocatedBlock(InetAddress.getLocalHost(), 1, 0)
+    def slow = new LocatedBlock(InetAddress.getLocalHost(), 2, 0)
+    def blockInfo = new BlockInfo()
+
+    def setup() {
+        blockInfo.addLocatedBlock(slow)
+        blockInfo.addLocatedBlock(fast)
+    }
+
+    def "Replicas are ordered by recent latency"() {
+        when:
+        hedgedReader.recordLatency(slow, TimeUnit.MILLISECONDS.toNanos(100))
+        hedgedReader.recordLatency(fast, TimeUnit.MILLISECONDS.toNanos(1))
+
+        then:
+        hedgedReader.order(blockInfo) == [fast, slow]
+
+        when:
+        hedgedReader.recordFailure(fast)
+
+        then:
+        hedgedReader.order(blockInfo) == [slow, fast]
+    }
+
+    def "Hedging threshold follows the latency percentile"() {
+        expect:
+        hedgedReader.thresholdNanos == TimeUnit.MILLISECONDS.toNanos(50)
+
+        when:
+        for (int i = 1; i <= 16; i++) {
+            hedgedReader.recordLatency(fast, TimeUnit.MILLISECONDS.toNanos(i))
+        }
+
+        then:
+        hedgedReader.thresholdNanos == TimeUnit.MILLISECONDS.toNanos(16)
+
+        when:
+        for (int i = 0; i < 256; i++) {
+            hedgedReader.recordLatency(fast, TimeUnit.MICROSECONDS.toNanos(10))
+        }
+
+        then:
+        hedgedReader.thresholdNanos == TimeUnit.MILLISECONDS.toNanos(2)
+    }
+}
@@ -1,6 +1,8 @@
 package sdfs.client
 
 import sdfs.datanode.DataNodeServer
+import sdfs.entity.BatchOperation
+import sdfs.entity.FileAttributes
 import sdfs.exception.SDFSFileAlreadyExistsException
 import sdfs.namenode.NameNodeServer
 import sdfs.protocol.SDFSConfiguration
@@ -21,11 +23,13 @@ class SDFSClientBasicTest extends Specification {
     DataNodeServer dataNodeServer
     @Shared
     ISDFSClient client
+    @Shared
+    SDFSConfiguration configuration
 
     def setupSpec() {
         System.setProperty("sdfs.namenode.dir", File.createTempDir().absolutePath)
         System.setProperty("sdfs.datanode.dir", File.createTempDir().absolutePath)
-        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
         nameNodeServer = new NameNodeServer(configuration, 10)
         dataNodeServer = new DataNodeServer(configuration)
         client = new SDFSClient(configuration, 3)
@@ -216,4 +220,170 @@ class SDFSClientBasicTest extends Specification {
         then:
         noExceptionThrown()
     }
-}
\ No newline at end of file
+
+    def "Test batch"() {
+        def dirName = generateFilename()
+        def filenames = (1..16).collect { "$dirName/${generateFilename()}" }
+        def data = ByteBuffer.wrap("batch".bytes)
+
+        when:
+        def results = client.batch([BatchOperation.mkdir(dirName)] + filenames.collect { BatchOperation.create(it) })
+
+        then:
+        results.size() == filenames.size() + 1
+        results.every { it.succeeded }
+
+        when:
+        def channel = client.getChannel(results[1])
+        channel.write(data)
+        channel.close()
+        def closeResults = client.batch(results.drop(2).collect { BatchOperation.closeReadwriteFile(it.SDFSFileChannelData.token, 0) })
+
+        then:
+        closeResults.every { it.succeeded }
+        client.openReadonly(filenames[0]).size() == 5
+        client.openReadonly(filenames[1]).size() == 0
+
+        when:
+        client.getChannel(client.batch([BatchOperation.openReadonly(generateFilename())])[0])
+
+        then:
+        thrown(FileNotFoundException)
+    }
+
+    def "Test metadata cache"() {
+        def filename = generateFilename()
+        def channel = client.create(filename)
+        channel.write(ByteBuffer.wrap("cached".bytes))
+        channel.close()
+        def metrics = ((SDFSClient) client).metrics
+        def hits = metrics.metadataHits
+
+        when:
+        def first = client.openReadonly(filename)
+        def second = client.openReadonly(filename)
+        def buffer = ByteBuffer.allocate(6)
+        second.read(buffer)
+        first.close()
+        second.close()
+
+        then:
+        metrics.metadataHits == hits + 1
+        new String(buffer.array()) == "cached"
+
+        // a read-write close changes the version, so the cached copy is replaced
+        when:
+        channel = client.openReadWrite(filename)
+        channel.position(6)
+        channel.write(ByteBuffer.wrap(" again".bytes))
+        channel.close()
+        def third = client.openReadonly(filename)
+        def size = third.size()
+        third.close()
+
+        then:
+        metrics.metadataHits == hits + 1
+        size == 12
+    }
+
+    def "Test block size"() {
+        def filename = generateFilename()
+        def data = new byte[20 * 1024]
+        new Random(7).nextBytes(data)
+
+        when:
+        def channel = client.create(filename, new FileAttributes(1, 8 * 1024))
+        channel.write(ByteBuffer.wrap(data))
+        def blockAmount = channel.fileInfo.blockAmount
+        channel.close()
+        def readChannel = client.openReadonly(filename)
+        def buffer = ByteBuffer.allocate(data.length)
+        readChannel.read(buffer)
+        readChannel.close()
+
+        then:
+        blockAmount == 3
+        buffer.array() == data
+
+        when:
+        client.create(generateFilename(), new FileAttributes(1, 1024))
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "Test list"() {
+        def parentDir = generateFilename()
+        client.mkdir(parentDir)
+        def fileNames = (0..<25).collect { String.format("f%02d", it) }
+        fileNames.each { client.create("$parentDir/$it").close() }
+        ["d0", "d1", "d2"].each { client.mkdir("$parentDir/$it") }
+        def fc = client.openReadWrite("$parentDir/f07")
+        fc.write(ByteBuffer.allocate(100))
+        fc.close()
+        // pages of 4 entries, so the listing goes through several of them
+        System.setProperty("sdfs.client.list.page.size", "4")
+        def pagingClient = new SDFSClient(configuration, 3)
+        System.clearProperty("sdfs.client.list.page.size")
+
+        when:
+        def statuses = pagingClient.list(parentDir).collect()
+
+        then:
+        statuses*.name == ["d0", "d1", "d2"] + fileNames
+        statuses.take(3).every { it.directory }
+        statuses.find { it.name == "f07" }.with { it.fileSize == 100 && it.blockAmount == 1 && it.version == 2 }
+        statuses.find { it.name == "f08" }.with { it.fileSize == 0 && it.blockAmount == 0 }
+
+        // the snapshots of a directory are listed under .snapshot, and their directories too
+        when:
+        client.createSnapshot(parentDir, "s1")
+        client.createSnapshot(parentDir, "s0")
+
+        then:
+        client.list("$parentDir/.snapshot").collect()*.name == ["s0", "s1"]
+        client.list("$parentDir/.snapshot/s1").collect()*.name == ["d0", "d1", "d2"] + fileNames
+        !client.list("$parentDir/d0").hasNext()
+
+        when:
+        client.list("$parentDir/f07")
+
+        then:
+        thrown(FileNotFoundException)
+    }
+
+    def "Test stat"() {
+        def parentDir = generateFilename()
+        client.mkdir(parentDir)
+        client.mkdir("$parentDir/dir")
+        def fc = client.create("$parentDir/file")
+        fc.write(ByteBuffer.allocate(100))
+        fc.close()
+        client.createSnapshot(parentDir, "s")
+        // a writer that is not closed yet is not seen
+        fc = client.openReadWrite("$parentDir/file")
+        fc.write(ByteBuffer.allocate(200))
+
+        when:
+        def statuses = client.stat("$parentDir/file", "$parentDir/dir/", "$parentDir/missing", "",
+                "$parentDir/.snapshot", "$parentDir/.snapshot/s", "$parentDir/.snapshot/s/file", "$parentDir/file/x")
+
+        then:
+        statuses.size() == 8
+        statuses[0].with { name == "file" && !directory && fileSize == 100 && blockAmount == 1 && version == 1 }
+        statuses[1].with { name == "dir" && directory }
+        statuses[2] == null
+        statuses[3].directory
+        statuses[4].with { name == ".snapshot" && directory }
+        statuses[5].with { name == "s" && directory }
+        statuses[6].with { name == "file" && fileSize == 100 }
+        statuses[7] == null
+
+        when:
+        fc.close()
+
+        then:
+        client.stat("$parentDir/file")[0].with { fileSize == 200 && version == 2 }
+        client.stat("$parentDir/.snapshot/s/file")[0].fileSize == 100
+    }
+}
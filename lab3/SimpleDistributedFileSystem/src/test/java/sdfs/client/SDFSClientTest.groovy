@@ -2,6 +2,8 @@ package sdfs.client
 
 import sdfs.datanode.DataNode
 import sdfs.datanode.DataNodeServer
+import sdfs.entity.FileAttributes
+import sdfs.exception.SDFSFileAlreadyExistsException
 import sdfs.namenode.NameNodeServer
 import sdfs.protocol.SDFSConfiguration
 import spock.lang.Shared
@@ -25,12 +27,14 @@ class SDFSClientTest extends Specification {
     def dataBuffer = ByteBuffer.allocate(FILE_SIZE)
     @Shared
     def buffer = ByteBuffer.allocate(FILE_SIZE)
+    @Shared
+    def dataNodeDir = File.createTempDir().absolutePath
     def parentDir = generateFilename()
     def filename = parentDir + "/" + generateFilename()
 
     def setupSpec() {
         System.setProperty("sdfs.namenode.dir", File.createTempDir().absolutePath)
-        System.setProperty("sdfs.datanode.dir", File.createTempDir().absolutePath)
+        System.setProperty("sdfs.datanode.dir", dataNodeDir)
         SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
         nameNodeServer = new NameNodeServer(configuration, 10)
         dataNodeServer = new DataNodeServer(configuration)
@@ -295,4 +299,350 @@ class SDFSClientTest extends Specification {
         then:
         noExceptionThrown()
     }
-}
\ No newline at end of file
+
+    def "Test sparse write"() {
+        def position = 3 * DataNode.BLOCK_SIZE + 10
+
+        when:
+        def fc = client.create(filename)
+        fc.position(position)
+        fc.write(ByteBuffer.wrap([42] as byte[]))
+        def blockList = fc.fileInfo.blockList
+        // block files left by older blocks of the same ids
+        (0..2).each { new File(dataNodeDir, "${blockList.getId(it)}.block").bytes = [9] * 100 as byte[] }
+        fc.close()
+
+        // the skipped blocks are holes that were never written
+        then:
+        blockList.size() == 4
+        (0..2).every { !new File(dataNodeDir, "${blockList.getId(it)}.block").exists() }
+        new File(dataNodeDir, "${blockList.getId(3)}.block").length() == 11
+
+        // the holes read as zeros
+        when:
+        fc = client.openReadonly(filename)
+        def size = fc.size()
+        def readBuffer = ByteBuffer.allocate(position + 1)
+        fc.read(readBuffer)
+        fc.close()
+
+        then:
+        size == position + 1
+        (0..<position).every { readBuffer.get(it) == 0 as byte }
+        readBuffer.get(position) == 42 as byte
+
+        // writing in the middle of a hole block copies nothing but the new bytes
+        when:
+        fc = client.openReadWrite(filename)
+        fc.position(DataNode.BLOCK_SIZE + 100)
+        fc.write(ByteBuffer.wrap([7] as byte[]))
+        blockList = fc.fileInfo.blockList
+        fc.close()
+        fc = client.openReadonly(filename)
+        readBuffer = ByteBuffer.allocate(position + 1)
+        fc.read(readBuffer)
+        fc.close()
+
+        then:
+        new File(dataNodeDir, "${blockList.getId(1)}.block").length() == 101
+        readBuffer.get(DataNode.BLOCK_SIZE + 99) == 0 as byte
+        readBuffer.get(DataNode.BLOCK_SIZE + 100) == 7 as byte
+        readBuffer.get(position) == 42 as byte
+    }
+
+    def "Test append mode"() {
+        writeData()
+        def tail = ByteBuffer.wrap((0..<100).collect { (it + 1) as byte } as byte[])
+
+        when:
+        def reader = client.openReadonly(filename)
+        def fc = client.openAppend(filename)
+        def oldBlocks = (0..<fc.fileInfo.blockAmount).collect { fc.fileInfo.blockList.getId(it) }
+        fc.position(0)
+        fc.write(tail)
+        fc.flush()
+
+        // every write goes to the end, and the last block keeps its id
+        then:
+        fc.size() == FILE_SIZE + 100
+        (0..<oldBlocks.size()).every { fc.fileInfo.blockList.getId(it) == oldBlocks[it] }
+        // a reader opened before does not see the appended bytes
+        reader.size() == FILE_SIZE
+
+        when:
+        fc.truncate(FILE_SIZE - 1)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        when:
+        client.openReadWrite(filename)
+
+        then:
+        thrown(OverlappingFileLockException)
+
+        when:
+        fc.close()
+        reader.close()
+        fc = client.openReadonly(filename)
+        def readBuffer = ByteBuffer.allocate(FILE_SIZE + 100)
+        fc.read(readBuffer)
+        fc.close()
+
+        then:
+        (0..<FILE_SIZE).every { readBuffer.get(it) == dataBuffer.get(it) }
+        (0..<100).every { readBuffer.get(FILE_SIZE + it) == (it + 1) as byte }
+    }
+
+    def "Test snapshot"() {
+        writeData()
+        def snapshotFilename = parentDir + "/.snapshot/backup/" + filename.substring(parentDir.length() + 1)
+        def newData = ByteBuffer.wrap((0..<100).collect { -1 as byte } as byte[])
+
+        when:
+        client.createSnapshot(parentDir, "backup")
+        def fc = client.openReadWrite(filename)
+        fc.write(newData)
+        fc.truncate(FILE_SIZE - 1)
+        fc.close()
+        def readBuffer = ByteBuffer.allocate(FILE_SIZE)
+        fc = client.openReadonly(snapshotFilename)
+        fc.read(readBuffer)
+        def snapshotSize = fc.size()
+        fc.close()
+
+        // the snapshot still has the old data and size, the file the new ones
+        then:
+        snapshotSize == FILE_SIZE
+        (0..<FILE_SIZE).every { readBuffer.get(it) == dataBuffer.get(it) }
+        client.openReadonly(filename).with { def size = it.size(); it.close(); size } == FILE_SIZE - 1
+
+        when:
+        client.openReadWrite(snapshotFilename)
+
+        then:
+        thrown(FileNotFoundException)
+
+        when:
+        client.mkdir(parentDir + "/.snapshot")
+
+        then:
+        thrown(SDFSFileAlreadyExistsException)
+
+        when:
+        client.createSnapshot(parentDir, "backup")
+
+        then:
+        thrown(SDFSFileAlreadyExistsException)
+
+        // a file of the snapshot opened before it is deleted can still be read
+        when:
+        fc = client.openReadonly(snapshotFilename)
+        client.deleteSnapshot(parentDir, "backup")
+        readBuffer.clear()
+        fc.read(readBuffer)
+        fc.close()
+
+        then:
+        (0..<FILE_SIZE).every { readBuffer.get(it) == dataBuffer.get(it) }
+
+        when:
+        client.openReadonly(snapshotFilename)
+
+        then:
+        thrown(FileNotFoundException)
+    }
+
+    def "Test copy"() {
+        writeData()
+        def copyFilename = parentDir + "/" + generateFilename()
+        def newData = ByteBuffer.wrap((0..<100).collect { -1 as byte } as byte[])
+        def tail = ByteBuffer.wrap((0..<100).collect { (it + 1) as byte } as byte[])
+
+        when:
+        client.copy(filename, copyFilename)
+        def fc = client.openReadonly(filename)
+        def copy = client.openReadonly(copyFilename)
+        def blocks = (0..<fc.fileInfo.blockAmount).collect { fc.fileInfo.blockList.getId(it) }
+        def copyBlocks = (0..<copy.fileInfo.blockAmount).collect { copy.fileInfo.blockList.getId(it) }
+        fc.close()
+        copy.close()
+
+        // no block is copied
+        then:
+        copyBlocks == blocks
+
+        // changing the copy leaves the file as it is
+        when:
+        copy = client.openReadWrite(copyFilename)
+        copy.write(newData)
+        copy.close()
+        def readBuffer = ByteBuffer.allocate(FILE_SIZE)
+        fc = client.openReadonly(filename)
+        fc.read(readBuffer)
+        fc.close()
+
+        then:
+        (0..<FILE_SIZE).every { readBuffer.get(it) == dataBuffer.get(it) }
+
+        // the shared last block is copied before it is appended to, instead of extended in place
+        when:
+        fc = client.openAppend(filename)
+        fc.write(tail)
+        def newLastBlock = fc.fileInfo.blockList.getId(blocks.size() - 1)
+        fc.close()
+        copy = client.openReadonly(copyFilename)
+        readBuffer.clear()
+        copy.read(readBuffer)
+        def copySize = copy.size()
+        copy.close()
+
+        then:
+        newLastBlock != blocks.last()
+        copySize == FILE_SIZE
+        (0..<100).every { readBuffer.get(it) == -1 as byte }
+        (100..<FILE_SIZE).every { readBuffer.get(it) == dataBuffer.get(it) }
+
+        when:
+        fc = client.openReadonly(filename)
+        readBuffer = ByteBuffer.allocate(FILE_SIZE + 100)
+        fc.read(readBuffer)
+        fc.close()
+
+        then:
+        (0..<FILE_SIZE).every { readBuffer.get(it) == dataBuffer.get(it) }
+        (0..<100).every { readBuffer.get(FILE_SIZE + it) == (it + 1) as byte }
+
+        when:
+        client.copy(filename, copyFilename)
+
+        then:
+        thrown(SDFSFileAlreadyExistsException)
+
+        when:
+        client.copy(filename + "_missing", parentDir + "/" + generateFilename())
+
+        then:
+        thrown(FileNotFoundException)
+    }
+
+    private def createFile(String fileUri, int size, int from) {
+        def fc = client.create(fileUri)
+        fc.write(ByteBuffer.wrap((0..<size).collect { (it + from) as byte } as byte[]))
+        fc.close()
+    }
+
+    private def blockIds(String fileUri) {
+        def fc = client.openReadonly(fileUri)
+        def ids = (0..<fc.fileInfo.blockAmount).collect { fc.fileInfo.blockList.getId(it) }
+        fc.close()
+        return ids
+    }
+
+    def "Test concat"() {
+        writeData()
+        def targetFilename = parentDir + "/" + generateFilename()
+        def alignedFilename = parentDir + "/" + generateFilename()
+        def tailFilename = parentDir + "/" + generateFilename()
+        createFile(targetFilename, DataNode.BLOCK_SIZE, 0)
+        createFile(alignedFilename, 2 * DataNode.BLOCK_SIZE, 1)
+        createFile(tailFilename, 100, 2)
+        def targetBlocks = blockIds(targetFilename)
+        def alignedBlocks = blockIds(alignedFilename)
+        def sourceBlocks = blockIds(filename)
+
+        when:
+        client.concat(targetFilename, alignedFilename, filename, tailFilename)
+        def blocks = blockIds(targetFilename)
+        def fc = client.openReadonly(targetFilename)
+        def size = fc.size()
+        def readBuffer = ByteBuffer.allocate((int) size)
+        fc.read(readBuffer)
+        fc.close()
+
+        // the blocks of the sources up to the one ending inside a block are shared, the last source is copied
+        then:
+        size == 3 * DataNode.BLOCK_SIZE + FILE_SIZE + 100
+        blocks.subList(0, 1 + alignedBlocks.size() + sourceBlocks.size() - 1) == targetBlocks + alignedBlocks + sourceBlocks.subList(0, sourceBlocks.size() - 1)
+        (0..<DataNode.BLOCK_SIZE).every { readBuffer.get(it) == it as byte }
+        (0..<2 * DataNode.BLOCK_SIZE).every { readBuffer.get(DataNode.BLOCK_SIZE + it) == (it + 1) as byte }
+        (0..<FILE_SIZE).every { readBuffer.get(3 * DataNode.BLOCK_SIZE + it) == dataBuffer.get(it) }
+        (0..<100).every { readBuffer.get(3 * DataNode.BLOCK_SIZE + FILE_SIZE + it) == (it + 2) as byte }
+        // the sources are left as they are
+        blockIds(alignedFilename) == alignedBlocks
+        blockIds(filename) == sourceBlocks
+
+        when: "a source of another replication is copied, since its replicas would not fit the block list of the target"
+        def replicatedFilename = parentDir + "/" + generateFilename()
+        fc = client.create(replicatedFilename, new FileAttributes(2))
+        fc.write(ByteBuffer.wrap((0..<DataNode.BLOCK_SIZE).collect { (it + 3) as byte } as byte[]))
+        fc.close()
+        def replicatedBlocks = blockIds(replicatedFilename)
+        def alignedTarget = parentDir + "/" + generateFilename()
+        createFile(alignedTarget, DataNode.BLOCK_SIZE, 0)
+        client.concat(alignedTarget, replicatedFilename)
+        blocks = blockIds(alignedTarget)
+        fc = client.openReadonly(alignedTarget)
+        readBuffer = ByteBuffer.allocate((int) fc.size())
+        fc.read(readBuffer)
+        fc.close()
+
+        then:
+        blocks.size() == 2
+        !replicatedBlocks.contains(blocks[1])
+        (0..<DataNode.BLOCK_SIZE).every { readBuffer.get(DataNode.BLOCK_SIZE + it) == (it + 3) as byte }
+
+        when:
+        client.concat(targetFilename, targetFilename)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        when:
+        client.concat(targetFilename, filename + "_missing")
+
+        then:
+        thrown(FileNotFoundException)
+
+        when:
+        fc = client.openReadWrite(alignedFilename)
+        client.concat(alignedFilename, tailFilename)
+
+        then:
+        thrown(OverlappingFileLockException)
+
+        cleanup:
+        fc?.close()
+    }
+
+    def "Test compressed file"() {
+        def text = ("2016-12-01 12:00:00 INFO block written\n" * (FILE_SIZE / 38 + 1)).bytes[0..<FILE_SIZE] as byte[]
+        def newData = ByteBuffer.wrap((0..<100).collect { -1 as byte } as byte[])
+        def tail = ByteBuffer.wrap((0..<100).collect { (it + 1) as byte } as byte[])
+
+        when:
+        def fc = client.create(filename, new FileAttributes(1, FileAttributes.DEFAULT_BLOCK_SIZE, true))
+        fc.write(ByteBuffer.wrap(text))
+        fc.close()
+        fc = client.openReadWrite(filename)
+        fc.position(DataNode.BLOCK_SIZE - 50)
+        fc.write(newData)
+        fc.close()
+        fc = client.openAppend(filename)
+        fc.write(tail)
+        def blocks = (0..<fc.fileInfo.blockAmount).collect { fc.fileInfo.blockList.getId(it) }
+        fc.close()
+        fc = client.openReadonly(filename)
+        def readBuffer = ByteBuffer.allocate(FILE_SIZE + 100)
+        fc.read(readBuffer)
+        fc.close()
+        (0..<100).each { text[DataNode.BLOCK_SIZE - 50 + it] = -1 as byte }
+
+        // the full blocks take much less space on the data node
+        then:
+        (0..<FILE_SIZE).every { readBuffer.get(it) == text[it] }
+        (0..<100).every { readBuffer.get(FILE_SIZE + it) == (it + 1) as byte }
+        blocks.take(2).every { new File(dataNodeDir, it + ".block").length() * 3 < DataNode.BLOCK_SIZE }
+        client.stat(filename)[0].compressed
+    }
+}
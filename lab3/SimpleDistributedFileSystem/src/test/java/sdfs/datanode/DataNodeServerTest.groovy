@@ -1,5 +1,6 @@
 package sdfs.datanode
 
+import sdfs.entity.FileAttributes
 import sdfs.exception.IllegalAccessTokenException
 import sdfs.namenode.NameNode
 import sdfs.namenode.NameNodeServer
@@ -221,4 +222,58 @@ class DataNodeServerTest extends Specification {
         then:
         noExceptionThrown()
     }
-}
\ No newline at end of file
+
+    def "A write that can not be stored fails"() {
+        def accessToken = nameNode.create(filename, new FileAttributes(1, FileAttributes.DEFAULT_BLOCK_SIZE, true)).token
+        def blockNumber = nameNode.addBlocks(accessToken, 1)[0].id
+        def blockFile = new File(System.getProperty("sdfs.datanode.dir"), "${blockNumber}.block")
+        // a header telling of more data than the block holds
+        blockFile.bytes = [1, 0, 0, 1, 0, 7, 7] as byte[]
+
+        when:
+        dataNode.write(accessToken, blockNumber, 0, dataBuffer)
+
+        then:
+        thrown(IOException)
+        blockFile.bytes == [1, 0, 0, 1, 0, 7, 7] as byte[]
+        !new File(blockFile.path + ".tmp").exists()
+    }
+
+    def "A new block starts over whatever a block file of its id holds"() {
+        def accessToken = nameNode.create(filename, new FileAttributes(1, FileAttributes.DEFAULT_BLOCK_SIZE, compressed)).token
+        def blockNumber = nameNode.addBlocks(accessToken, 1)[0].id
+        // left by a block of the same id that the name node has not heard of
+        def blockFile = new File(System.getProperty("sdfs.datanode.dir"), "${blockNumber}.block")
+        blockFile.bytes = dataBuffer
+        def data = [1, 2, 3] as byte[]
+
+        when:
+        dataNode.write(accessToken, blockNumber, 0, data, true, [])
+
+        then:
+        dataNode.read(accessToken, blockNumber, 0, BUFFER_SIZE) == data
+        // a hole is left without a block file
+        when:
+        def holeNumber = nameNode.addBlocks(accessToken, 1)[0].id
+        def holeFile = new File(System.getProperty("sdfs.datanode.dir"), "${holeNumber}.block")
+        holeFile.bytes = dataBuffer
+        dataNode.write(accessToken, holeNumber, 0, new byte[0], true, [])
+
+        then:
+        !holeFile.exists()
+        dataNode.read(accessToken, holeNumber, 0, BUFFER_SIZE).length == 0
+        // a block the file already had may not be started over
+        when:
+        nameNode.removeLastBlocks(accessToken, 1)
+        nameNode.closeReadwriteFile(accessToken, data.length)
+        accessToken = nameNode.openReadwrite(filename).token
+        dataNode.write(accessToken, blockNumber, 0, new byte[1], true, [])
+
+        then:
+        thrown(IllegalAccessTokenException)
+        dataNode.read(accessToken, blockNumber, 0, BUFFER_SIZE) == data
+
+        where:
+        compressed << [false, true]
+    }
+}
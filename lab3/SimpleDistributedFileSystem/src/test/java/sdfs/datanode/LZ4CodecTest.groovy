@@ -0,0 +1,68 @@
+package sdfs.datanode
+
+import spock.lang.Specification
+
+class LZ4CodecTest extends Specification {
+    private static byte[] roundTrip(byte[] data) {
+        def compressed = new byte[LZ4Codec.maxCompressedLength(data.length)]
+        def length = LZ4Codec.compress(data, data.length, compressed)
+        LZ4Codec.decompress(compressed, 0, length, data.length, data.length)
+    }
+
+    def "Data comes back as it was"() {
+        expect:
+        roundTrip(data) == data
+
+        where:
+        data << [
+                new byte[0],
+                "abc".bytes,
+                ("log line 42: request served in 3 ms\n" * 2000).bytes,
+                // runs and literals longer than a token holds, and matches overlapping what they copy
+                new byte[70000],
+                (0..<70000).collect { (it * 7919 % 251) as byte } as byte[],
+                { def random = new Random(42); def bytes = new byte[100000]; random.nextBytes(bytes); bytes }()
+        ]
+    }
+
+    def "Text is several times smaller"() {
+        def data = (0..<2000).collect { "2016-12-01 12:00:${it % 60} INFO block $it written\n" }.join().bytes
+
+        when:
+        def compressed = new byte[LZ4Codec.maxCompressedLength(data.length)]
+        def length = LZ4Codec.compress(data, data.length, compressed)
+
+        then:
+        length * 3 < data.length
+    }
+
+    def "Corrupt data is rejected"() {
+        def data = ("abcdefgh" * 100).bytes
+        def compressed = new byte[LZ4Codec.maxCompressedLength(data.length)]
+        def length = LZ4Codec.compress(data, data.length, compressed)
+
+        when:
+        LZ4Codec.decompress(compressed, 0, length - 1, data.length, data.length)
+
+        then:
+        thrown(IOException)
+
+        when:
+        LZ4Codec.decompress(compressed, 0, length, data.length + 1, data.length + 1)
+
+        then:
+        thrown(IOException)
+
+        when: "a length no block has is not allocated"
+        LZ4Codec.decompress(compressed, 0, length, Integer.MAX_VALUE, DataNode.BLOCK_SIZE)
+
+        then:
+        thrown(IOException)
+
+        when:
+        LZ4Codec.decompress(compressed, 0, length, -1, DataNode.BLOCK_SIZE)
+
+        then:
+        thrown(IOException)
+    }
+}
@@ -0,0 +1,235 @@
+package sdfs.datanode
+
+import sdfs.client.HedgedReader
+import sdfs.client.SDFSClient
+import sdfs.entity.DataNodeInfo
+import sdfs.entity.FileAttributes
+import sdfs.filetree.BlockInfo
+import sdfs.filetree.LocatedBlock
+import sdfs.namenode.LeastOutstandingRequestsPlacementPolicy
+import sdfs.namenode.LeastUsedSpacePlacementPolicy
+import sdfs.namenode.NameNode
+import sdfs.namenode.NameNodeServer
+import sdfs.namenode.RoundRobinPlacementPolicy
+import sdfs.protocol.SDFSConfiguration
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+
+import static sdfs.Util.generateFilename
+import static sdfs.Util.generateFreePorts
+
+class MultiDataNodeTest extends Specification {
+    static final int DATA_NODE_AMOUNT = 3
+    static final int FILE_SIZE = 9 * DataNode.BLOCK_SIZE
+    @Shared
+    NameNode nameNode
+    @Shared
+    SDFSClient client
+    @Shared
+    List<Integer> dataNodePorts = []
+    @Shared
+    Map<Integer, File> dataNodeDirs = [:]
+    @Shared
+    Map<Integer, DataNode> dataNodes = [:]
+    @Shared
+    int nameNodePort
+    @Shared
+    int deadDataNodePort
+
+    def setupSpec() {
+        System.setProperty("sdfs.namenode.dir", File.createTempDir().absolutePath)
+        System.setProperty("sdfs.datanode.blockreport.seconds", "1")
+        def ports = generateFreePorts(DATA_NODE_AMOUNT + 2)
+        nameNodePort = ports[0]
+        deadDataNodePort = ports[1]
+        // the data node of the client configuration is never started, blocks must go to the registered ones
+        def configuration = new SDFSConfiguration(InetAddress.getLocalHost(), nameNodePort, InetAddress.getLocalHost(), deadDataNodePort)
+        NameNodeServer nameNodeServer = new NameNodeServer(configuration, 10)
+        nameNode = nameNodeServer.nameNode
+        new Thread(nameNodeServer).start()
+        for (int i = 0; i < DATA_NODE_AMOUNT; i++) {
+            int port = ports[2 + i]
+            dataNodePorts << port
+            dataNodeDirs[port] = File.createTempDir()
+            def dataNodeConfiguration = new SDFSConfiguration(InetAddress.getLocalHost(), nameNodePort, InetAddress.getLocalHost(), port)
+            def dataNodeServer = new DataNodeServer(dataNodeConfiguration, dataNodeDirs[port].absolutePath)
+            dataNodes[port] = dataNodeServer.dataNode
+            new Thread(dataNodeServer).start()
+        }
+        client = new SDFSClient(configuration, 3)
+        // wait for the first heartbeats
+        for (int i = 0; i < 100 && nameNode.liveDataNodes.size() < DATA_NODE_AMOUNT; i++) {
+            Thread.sleep(100)
+        }
+    }
+
+    @Unroll
+    def "Blocks are spread over data nodes with #policy.class.simpleName"() {
+        nameNode.blockPlacementPolicy = policy
+        def filename = generateFilename()
+        def data = new byte[FILE_SIZE]
+        new Random().nextBytes(data)
+
+        expect:
+        nameNode.liveDataNodes.size() == DATA_NODE_AMOUNT
+
+        when:
+        def channel = client.create(filename)
+        channel.write(ByteBuffer.wrap(data))
+        channel.close()
+        def ports = channel.fileInfo.blockInfoList.collect { it.iterator().next().port }
+
+        then:
+        ports.size() == FILE_SIZE / DataNode.BLOCK_SIZE
+        dataNodePorts.containsAll(ports)
+        ports.toSet().size() == DATA_NODE_AMOUNT
+
+        when:
+        channel = client.openReadonly(filename)
+        def buffer = ByteBuffer.allocate(FILE_SIZE)
+        channel.read(buffer)
+        channel.close()
+
+        then:
+        buffer.array() == data
+
+        where:
+        policy << [new RoundRobinPlacementPolicy(), new LeastUsedSpacePlacementPolicy(), new LeastOutstandingRequestsPlacementPolicy()]
+    }
+
+    @Unroll
+    def "Blocks are written through a pipeline of #replication replicas"() {
+        def filename = generateFilename()
+        def data = new byte[FILE_SIZE]
+        new Random().nextBytes(data)
+
+        when:
+        def channel = client.create(filename, new FileAttributes(replication))
+        channel.write(ByteBuffer.wrap(data))
+        channel.close()
+        def blockInfoList = client.openReadonly(filename).fileInfo.blockInfoList
+
+        then:
+        blockInfoList.size() == FILE_SIZE / DataNode.BLOCK_SIZE
+        blockInfoList.every { blockInfo ->
+            def ports = blockInfo.collect { it.port }
+            ports.size() == Math.min(replication, DATA_NODE_AMOUNT) && ports.toSet().size() == ports.size()
+        }
+        blockInfoList.withIndex().every { blockInfo, i ->
+            def expected = Arrays.copyOfRange(data, i * DataNode.BLOCK_SIZE, (i + 1) * DataNode.BLOCK_SIZE)
+            blockInfo.every { new File(dataNodeDirs[it.port], "${it.id}.block").bytes == expected }
+        }
+
+        where:
+        replication << [2, 3, 5]
+    }
+
+    def "Replication must be positive"() {
+        when:
+        client.create(generateFilename(), new FileAttributes(0))
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "Reads go on to another replica when one fails"() {
+        def filename = generateFilename()
+        def data = new byte[DataNode.BLOCK_SIZE]
+        new Random().nextBytes(data)
+        def channel = client.create(filename, new FileAttributes(2))
+        channel.write(ByteBuffer.wrap(data))
+        channel.close()
+        def readonlyData = nameNode.openReadonly(filename)
+        def replicas = readonlyData.fileInfo.getBlockInfo(0).collect()
+        def blockInfo = new BlockInfo()
+        blockInfo.addLocatedBlock(new LocatedBlock(InetAddress.getLocalHost(), deadDataNodePort, replicas[0].id))
+        replicas.each { blockInfo.addLocatedBlock(it) }
+        def hedgedReader = new HedgedReader()
+
+        expect:
+        hedgedReader.read(readonlyData.token, blockInfo, DataNode.BLOCK_SIZE) == data
+        // the dead replica is not tried first any more
+        hedgedReader.read(readonlyData.token, blockInfo, DataNode.BLOCK_SIZE) == data
+
+        cleanup:
+        nameNode.closeReadonlyFile(readonlyData.token)
+    }
+
+    def "Blocks replaced by copy on write are deleted from data nodes"() {
+        def filename = generateFilename()
+        def data = new byte[DataNode.BLOCK_SIZE]
+        new Random().nextBytes(data)
+        def channel = client.create(filename, new FileAttributes(2))
+        channel.write(ByteBuffer.wrap(data))
+        channel.close()
+        // an opened file keeps its blocks, so close it again
+        channel = client.openReadonly(filename)
+        def oldReplicas = channel.fileInfo.getBlockInfo(0).collect()
+        channel.close()
+        def oldBlockFiles = oldReplicas.collect { new File(dataNodeDirs[it.port], "${it.id}.block") }
+
+        expect:
+        oldBlockFiles.every { it.exists() }
+
+        when:
+        channel = client.openReadWrite(filename)
+        channel.write(ByteBuffer.wrap(new byte[16]))
+        channel.close()
+        for (int i = 0; i < 100 && (oldBlockFiles.any { it.exists() } || nameNode.pendingDeletionAmount > 0); i++) {
+            Thread.sleep(100)
+        }
+        channel = client.openReadonly(filename)
+        def newReplicas = channel.fileInfo.getBlockInfo(0).collect()
+        channel.close()
+
+        then:
+        newReplicas[0].id != oldReplicas[0].id
+        oldBlockFiles.every { !it.exists() }
+        newReplicas.every { new File(dataNodeDirs[it.port], "${it.id}.block").exists() }
+        nameNode.pendingDeletionAmount == 0
+    }
+
+    // registers the dead data node, so it goes last
+    def "A replica the pipeline can not reach is taken out of its block"() {
+        def filename = generateFilename()
+        def data = new byte[DataNode.BLOCK_SIZE]
+        new Random().nextBytes(data)
+        nameNode.sendHeartbeat(new DataNodeInfo(InetAddress.getLocalHost(), deadDataNodePort, 0, 0))
+        def token = nameNode.create(filename, new FileAttributes(DATA_NODE_AMOUNT + 1)).token
+        def replicas = nameNode.addReplicatedBlocks(token, 1)[0].collect()
+        def dead = replicas.find { it.port == deadDataNodePort }
+        def live = replicas.findAll { it.port != deadDataNodePort }
+
+        expect:
+        dead != null
+        live.size() == DATA_NODE_AMOUNT
+
+        // the dead replica is passed over, the ones after it still get the data
+        when:
+        dataNodes[live[0].port].write(token, live[0].id, 0, data, true, [live[1], dead, live[2]])
+        nameNode.closeReadwriteFile(token, data.length)
+        def readonlyData = nameNode.openReadonly(filename)
+        def ports = readonlyData.fileInfo.getBlockInfo(0).collect { it.port }
+        nameNode.closeReadonlyFile(readonlyData.token)
+
+        then:
+        ports.toSet() == live.collect { it.port }.toSet()
+        live.every { new File(dataNodeDirs[it.port], "${it.id}.block").bytes == data }
+    }
+
+    def "A heartbeat registers the data node at the address it comes from"() {
+        def port = generateFreePorts(1)[0]
+        def otherAddress = InetAddress.getByName("192.0.2.1")
+
+        when:
+        new NameNodeStub(InetAddress.getLocalHost(), nameNodePort).sendHeartbeat(new DataNodeInfo(otherAddress, port, 0, 0))
+        def registered = nameNode.liveDataNodes.findAll { it.port == port }
+
+        then:
+        registered*.address == [InetAddress.getLocalHost()]
+        !nameNode.liveDataNodes.any { it.address == otherAddress }
+    }
+}
@@ -0,0 +1,59 @@
+package sdfs.filetree
+
+import spock.lang.Specification
+
+class BlockListTest extends Specification {
+    private static int[] replicas(int blockID) {
+        [blockID % 7, BlockList.NO_DATA_NODE] as int[]
+    }
+
+    private static boolean holds(BlockList blockList, List<Integer> ids) {
+        blockList.size() == ids.size() && (0..<ids.size()).every {
+            blockList.getId(it) == ids[it] && blockList.getDataNodeIndex(it, 0) == ids[it] % 7 &&
+                    blockList.getDataNodeIndex(it, 1) == BlockList.NO_DATA_NODE
+        }
+    }
+
+    def "Copies are independent of each other"() {
+        def blockList = new BlockList(2)
+        def ids = (0..<2000).toList()
+        ids.each { blockList.add(it, replicas(it)) }
+
+        when:
+        def copy = blockList.copy()
+        copy.set(1500, 9999, replicas(9999))
+        copy.removeLast()
+        copy.add(8888, replicas(8888))
+        blockList.set(3, 7777, replicas(7777))
+
+        then:
+        holds(copy, ids.take(1500) + [9999] + ids.subList(1501, 1999) + [8888])
+        holds(blockList, ids.take(3) + [7777] + ids.drop(4))
+
+        when:
+        def copyOfCopy = copy.copy()
+        (0..<1000).each { copy.removeLast() }
+        copy.add(6666, replicas(6666))
+
+        then:
+        holds(copy, ids.take(1000) + [6666])
+        copyOfCopy.size() == 2000
+        copyOfCopy.getId(1000) == 1000
+    }
+
+    def "Serialization keeps the blocks"() {
+        def blockList = new BlockList(2)
+        (0..<100).each { blockList.add(it, replicas(it)) }
+        blockList.removeLast()
+
+        when:
+        def bytes = new ByteArrayOutputStream()
+        new ObjectOutputStream(bytes).withCloseable { it.writeObject(blockList) }
+        def readBlockList = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).withCloseable { it.readObject() } as BlockList
+        readBlockList.add(100, replicas(100))
+
+        then:
+        holds(readBlockList, (0..<99).toList() + [100])
+        holds(blockList, (0..<99).toList())
+    }
+}
@@ -0,0 +1,51 @@
+package sdfs.loadgen
+
+import groovy.json.JsonSlurper
+import sdfs.datanode.DataNode
+import spock.lang.Specification
+
+class LoadGeneratorTest extends Specification {
+    LoadOptions options = new LoadOptions()
+
+    def setup() {
+        options.threads = 4
+        options.warmupSeconds = 0
+        options.durationSeconds = 2
+        options.files = 8
+        options.fileSize = 2 * DataNode.BLOCK_SIZE
+        options.dataNodes = 2
+        options.cacheSize = 4
+    }
+
+    def "Every operation of the mix is measured in a closed loop"() {
+        options.workload = Workload.MIXED
+
+        when:
+        def report = new LoadGenerator(options).run()
+
+        then:
+        Workload.MIXED.weightMap.keySet().every { report.getHistogram(it).count > 0 && report.getErrors(it) == 0 }
+        report.totalThroughput > 0
+
+        when:
+        def json = new JsonSlurper().parseText(report.toJson())
+
+        then:
+        json.workload == "MIXED"
+        json.operations.keySet() == Workload.MIXED.weightMap.keySet()*.name() as Set
+        json.operations.RANDOM_READ.count == report.getHistogram(Operation.RANDOM_READ).count
+        report.toText().contains("SEQUENTIAL_READ")
+    }
+
+    def "An open loop issues operations at the given rate"() {
+        options.workload = Workload.METADATA
+        options.rate = 200
+
+        when:
+        def report = new LoadGenerator(options).run()
+        def count = Operation.values().sum { report.getHistogram(it).count + report.getErrors(it) }
+
+        then:
+        count >= 300 && count <= 440
+    }
+}
@@ -0,0 +1,84 @@
+package sdfs.metrics
+
+import spock.lang.Specification
+
+import javax.management.ObjectName
+import java.lang.management.ManagementFactory
+import java.util.concurrent.TimeUnit
+
+class LatencyHistogramTest extends Specification {
+    enum TestType {
+        FAST, SLOW
+    }
+
+    def "Every value falls into a bucket whose bound is close above it"() {
+        expect:
+        [0L, 1L, 15L, 16L, 17L, 1000L, 123456789L, Long.MAX_VALUE].every { value ->
+            def upperBound = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value))
+            upperBound >= value && upperBound - value <= value / 16
+        }
+    }
+
+    def "Percentiles are within the precision of the buckets"() {
+        def histogram = new LatencyHistogram()
+
+        when:
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i))
+        }
+
+        then:
+        histogram.count == 10000
+        Math.abs(histogram.meanMicros - 5000.5) < 0.001
+        histogram.maxMicros == 10000
+        Math.abs(histogram.p50Micros - 5000) <= 5000 / 16
+        Math.abs(histogram.p99Micros - 9900) <= 9900 / 16
+        histogram.getPercentileNanos(100) == TimeUnit.MICROSECONDS.toNanos(10000)
+
+        when:
+        histogram.reset()
+
+        then:
+        histogram.count == 0
+        histogram.p99Micros == 0
+    }
+
+    def "Recording from many threads loses nothing"() {
+        def histogram = new LatencyHistogram()
+        def threads = (1..8).collect { n ->
+            Thread.start {
+                for (int i = 0; i < 10000; i++) {
+                    histogram.record(n * 1000)
+                }
+            }
+        }
+
+        when:
+        threads*.join()
+
+        then:
+        histogram.count == 80000
+        histogram.getPercentileNanos(100) >= 8000
+    }
+
+    def "Request latencies are published as MBeans"() {
+        def requestMetrics = new RequestMetrics<TestType>(TestType)
+        def mBeanServer = ManagementFactory.platformMBeanServer
+
+        when:
+        requestMetrics.register("type=TestRequest")
+        requestMetrics.record(TestType.SLOW, TimeUnit.MILLISECONDS.toNanos(3))
+
+        then:
+        mBeanServer.getAttribute(new ObjectName("sdfs:type=TestRequest,request=SLOW"), "Count") == 1L
+        mBeanServer.getAttribute(new ObjectName("sdfs:type=TestRequest,request=SLOW"), "MaxMicros") == 3000L
+        mBeanServer.getAttribute(new ObjectName("sdfs:type=TestRequest,request=FAST"), "Count") == 0L
+
+        when: "registering again replaces the old MBeans"
+        def newRequestMetrics = new RequestMetrics<TestType>(TestType)
+        newRequestMetrics.register("type=TestRequest")
+
+        then:
+        mBeanServer.getAttribute(new ObjectName("sdfs:type=TestRequest,request=SLOW"), "Count") == 0L
+    }
+}
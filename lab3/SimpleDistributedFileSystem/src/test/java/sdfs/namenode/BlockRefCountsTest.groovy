@@ -0,0 +1,76 @@
+package sdfs.namenode
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+class BlockRefCountsTest extends Specification {
+    def "Counts agree with a map through growth and removal"() {
+        def refCounts = new BlockRefCounts()
+        def model = new HashMap<Integer, Integer>()
+        def random = new Random(42)
+
+        when:
+        for (int i = 0; i < 200000; i++) {
+            // a small range of ids so that runs form and entries are shifted back on removal
+            int blockID = random.nextInt(4096)
+            switch (random.nextInt(3)) {
+                case 0:
+                    refCounts.reference(blockID)
+                    model.merge(blockID, 1, Integer.&sum)
+                    break
+                case 1:
+                    refCounts.release(blockID)
+                    if (model.containsKey(blockID)) {
+                        model.compute(blockID, { k, v -> v == 1 ? null : v - 1 })
+                    }
+                    break
+                default:
+                    assert refCounts.referenceIfAbsent(blockID) == !model.containsKey(blockID)
+                    model.putIfAbsent(blockID, 1)
+            }
+        }
+
+        then:
+        refCounts.size() == model.size()
+        (0..<4096).every { refCounts.getCount(it) == model.getOrDefault(it, 0) }
+
+        when:
+        model.each { blockID, count -> count.times { refCounts.release(blockID) } }
+
+        then:
+        refCounts.size() == 0
+        (0..<4096).every { !refCounts.contains(it) }
+    }
+
+    def "Concurrent references and releases balance out"() {
+        def refCounts = new BlockRefCounts()
+        def threadAmount = 8
+        def start = new CountDownLatch(1)
+        def threads = (0..<threadAmount).collect {
+            new Thread({
+                start.await()
+                for (int round = 0; round < 50; round++) {
+                    for (int blockID = 0; blockID < 1000; blockID++) {
+                        refCounts.reference(blockID)
+                    }
+                    for (int blockID = 0; blockID < 1000; blockID++) {
+                        refCounts.release(blockID)
+                    }
+                }
+                for (int blockID = 0; blockID < 1000; blockID++) {
+                    refCounts.reference(blockID)
+                }
+            })
+        }
+
+        when:
+        threads*.start()
+        start.countDown()
+        threads*.join()
+
+        then:
+        refCounts.size() == 1000
+        (0..<1000).every { refCounts.getCount(it) == threadAmount }
+    }
+}
@@ -0,0 +1,105 @@
+package sdfs.namenode
+
+import sdfs.client.SDFSClient
+import sdfs.exception.IllegalAccessTokenException
+import sdfs.protocol.SDFSConfiguration
+import spock.lang.Specification
+
+import static sdfs.Util.generateFilename
+import static sdfs.Util.generatePort
+
+class LeaseTest extends Specification {
+    def dir = File.createTempDir().absolutePath
+
+    def setup() {
+        System.setProperty("sdfs.namenode.dir", dir)
+        System.setProperty("sdfs.namenode.lease.seconds", "2")
+        System.setProperty("sdfs.namenode.lease.check.seconds", "1")
+    }
+
+    def cleanup() {
+        System.clearProperty("sdfs.namenode.lease.seconds")
+        System.clearProperty("sdfs.namenode.lease.check.seconds")
+        System.clearProperty("sdfs.client.lease.renew.seconds")
+    }
+
+    def "Tokens that are not renewed expire"() {
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        NameNode nameNode = new NameNode(configuration, 10)
+        def filename = generateFilename()
+        def filename2 = generateFilename()
+        nameNode.create(filename2).token.with { nameNode.closeReadwriteFile(it, 0) }
+        def writeToken = nameNode.create(filename).token
+        nameNode.addBlocks(writeToken, 2)
+        def readToken = nameNode.openReadonly(filename2).token
+        sleep(4000)
+
+        when:
+        nameNode.closeReadonlyFile(readToken)
+
+        then:
+        thrown(IllegalAccessTokenException)
+
+        when:
+        nameNode.closeReadwriteFile(writeToken, 0)
+
+        then:
+        thrown(IllegalAccessTokenException)
+
+        // the expired writer neither holds the file nor changed it
+        when:
+        def data = nameNode.openReadwrite(filename)
+        nameNode.closeReadwriteFile(data.token, 0)
+
+        then:
+        data.fileInfo.blockAmount == 0
+
+        // the expiry is logged, so the token is not opened again after a restart
+        when:
+        System.clearProperty("sdfs.namenode.lease.seconds")
+        configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        nameNode = new NameNode(configuration, 10)
+        def token = nameNode.openReadwrite(filename).token
+
+        then:
+        nameNode.getAccessTokenPermission(writeToken, configuration.dataNodeAddress, configuration.dataNodePort) == null
+        nameNode.getAccessTokenPermission(token, configuration.dataNodeAddress, configuration.dataNodePort) != null
+    }
+
+    def "Renewed tokens do not expire"() {
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        NameNode nameNode = new NameNode(configuration, 10)
+        def filename = generateFilename()
+        def writeToken = nameNode.create(filename).token
+        def readToken = nameNode.openReadonly(filename).token
+        for (int i = 0; i < 8; i++) {
+            sleep(500)
+            nameNode.renewLeases([writeToken, readToken] as Set)
+        }
+
+        when:
+        nameNode.closeReadonlyFile(readToken)
+        nameNode.closeReadwriteFile(writeToken, 0)
+
+        then:
+        noExceptionThrown()
+    }
+
+    def "Clients renew the leases of their open channels"() {
+        System.setProperty("sdfs.client.lease.renew.seconds", "1")
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        NameNodeServer nameNodeServer = new NameNodeServer(configuration, 10)
+        new Thread(nameNodeServer).start()
+        SDFSClient client = new SDFSClient(configuration, 3)
+        def filename = generateFilename()
+        def writeChannel = client.create(filename)
+        sleep(4000)
+
+        when:
+        writeChannel.close()
+        client.openReadonly(filename).close()
+
+        then:
+        noExceptionThrown()
+    }
+}
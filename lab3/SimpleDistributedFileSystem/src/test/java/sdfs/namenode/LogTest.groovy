@@ -1,7 +1,16 @@
 package sdfs.namenode
 
 import sdfs.datanode.DataNode
+import sdfs.entity.BatchOperation
+import sdfs.entity.DataNodeInfo
+import sdfs.entity.FileAttributes
+import sdfs.exception.IllegalAccessTokenException
 import sdfs.exception.SDFSFileAlreadyExistsException
+import sdfs.filetree.DataNodeTable
+import sdfs.filetree.DirNode
+import sdfs.namenode.log.CommitLog
+import sdfs.namenode.log.MkdirLog
+import sdfs.namenode.log.StartLog
 import sdfs.protocol.INameNodeProtocol
 import sdfs.protocol.SDFSConfiguration
 import spock.lang.Specification
@@ -18,6 +27,16 @@ class LogTest extends Specification {
     def dir3 = File.createTempDir().absolutePath
     def dir4 = File.createTempDir().absolutePath
 
+    private static void copyLogSegments(String from, String to) {
+        new File(from).eachFileMatch(~/namenode\.log\.\d+/) {
+            Files.copy(it.toPath(), Paths.get(to, it.name))
+        }
+    }
+
+    private static int countLogSegments(String dir) {
+        new File(dir).listFiles().count { it.name ==~ /namenode\.log\.\d+/ }
+    }
+
     def "Log"() {
         System.setProperty("sdfs.namenode.dir", dir1)
         SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
@@ -42,7 +61,7 @@ class LogTest extends Specification {
         nameNode.closeReadwriteFile(accessToken, 1)
         nameNode.closeReadwriteFile(accessToken2, DataNode.BLOCK_SIZE * 2)
         Files.copy(Paths.get(dir1, "root.node"), Paths.get(dir3, "root.node"))
-        Files.copy(Paths.get(dir1, "namenode.log"), Paths.get(dir3, "namenode.log"))
+        copyLogSegments(dir1, dir3)
         sleep(3000)
         Files.copy(Paths.get(dir1, "root.node"), Paths.get(dir4, "root.node"))
         System.setProperty("sdfs.namenode.dir", dir2)
@@ -118,5 +137,330 @@ class LogTest extends Specification {
         fileInfo4.blockInfoList[0][0] == locatedBlock2
         fileInfo4.blockInfoList[1][0] == copyOnWriteBlock2
     }
-}
 
+    def "Log segments"() {
+        System.setProperty("sdfs.namenode.dir", dir1)
+        System.setProperty("sdfs.namenode.log.segment.bytes", "4096")
+        System.setProperty("sdfs.namenode.checkpoint.log.bytes", "65536")
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        INameNodeProtocol nameNode = new NameNode(configuration, 1000)
+        def parentDir = generateFilename()
+        nameNode.mkdir(parentDir)
+        // an open file pins the segment holding its open log
+        def filename = generateFilename()
+        def accessToken = nameNode.create("$parentDir/$filename").token
+        def locatedBlock = nameNode.addBlocks(accessToken, 1)[0]
+        def dirNames = []
+        for (int i = 0; i < 200; i++) {
+            dirNames << generateFilename()
+            nameNode.mkdir("$parentDir/${dirNames[i]}")
+        }
+        sleep(1000)
+
+        when:
+        def pinnedSegmentCount = countLogSegments(dir1)
+
+        then:
+        pinnedSegmentCount > 1
+
+        when:
+        nameNode.closeReadwriteFile(accessToken, 1)
+        for (int i = 0; i < 200; i++)
+            nameNode.mkdir("$parentDir/${generateFilename()}")
+        sleep(1000)
+
+        then:
+        countLogSegments(dir1) < pinnedSegmentCount
+
+        when:
+        Files.copy(Paths.get(dir1, "root.node"), Paths.get(dir2, "root.node"))
+        copyLogSegments(dir1, dir2)
+        System.setProperty("sdfs.namenode.dir", dir2)
+        def nameNode2 = new NameNode(configuration, 1000)
+        nameNode2.mkdir("$parentDir/${dirNames[0]}")
+
+        then:
+        thrown(SDFSFileAlreadyExistsException)
+
+        when:
+        def fileInfo = nameNode2.openReadonly("$parentDir/$filename").fileInfo
+
+        then:
+        fileInfo.fileSize == 1
+        fileInfo.blockInfoList[0][0] == locatedBlock
+
+        cleanup:
+        System.clearProperty("sdfs.namenode.log.segment.bytes")
+        System.clearProperty("sdfs.namenode.checkpoint.log.bytes")
+    }
+
+    def "A transaction is not split between a deleted and a kept log segment"() {
+        System.setProperty("sdfs.namenode.dir", dir1)
+        System.setProperty("sdfs.namenode.log.segment.bytes", "1024")
+        System.setProperty("sdfs.namenode.checkpoint.log.bytes", "1024")
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        def nameNode = new NameNode(configuration, 1000)
+        sleep(1000)
+        // the log of this mkdir alone fills a segment, and asks for a check point before its commit
+        def dirName = "d" * 2000
+        nameNode.mkdir(dirName)
+        // the open log of this file pins its segment once the check point is written
+        def filename = generateFilename()
+        def token = nameNode.create(filename).token
+        sleep(1000)
+        Files.copy(Paths.get(dir1, "root.node"), Paths.get(dir2, "root.node"))
+        copyLogSegments(dir1, dir2)
+
+        when:
+        System.setProperty("sdfs.namenode.dir", dir2)
+        def nameNode2 = new NameNode(configuration, 1000)
+        nameNode2.closeReadwriteFile(token, 0)
+        nameNode2.mkdir(dirName)
+
+        then:
+        thrown(SDFSFileAlreadyExistsException)
+        nameNode2.openReadonly(filename).fileInfo.fileSize == 0
+
+        cleanup:
+        System.clearProperty("sdfs.namenode.log.segment.bytes")
+        System.clearProperty("sdfs.namenode.checkpoint.log.bytes")
+    }
+
+    def "A log written before the log was segmented is replayed"() {
+        def dirName = generateFilename()
+        new File(dir1, "namenode.log").withObjectOutputStream {
+            it.writeObject(new StartLog(1))
+            it.writeObject(new MkdirLog(1, dirName))
+            it.writeObject(new CommitLog(1))
+        }
+        System.setProperty("sdfs.namenode.dir", dir1)
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+
+        when:
+        def nameNode = new NameNode(configuration, 1000)
+        nameNode.mkdir(dirName)
+
+        then:
+        thrown(SDFSFileAlreadyExistsException)
+        !new File(dir1, "namenode.log").exists()
+    }
+
+    def "Operations of a batch are written to the log together and replayed"() {
+        System.setProperty("sdfs.namenode.dir", dir1)
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        def nameNode = new NameNode(configuration, 1000)
+        sleep(1000)
+        def dirName = generateFilename()
+        def filename = generateFilename()
+        def missingFilename = generateFilename()
+
+        when:
+        def results = nameNode.batch([
+                BatchOperation.mkdir(dirName),
+                BatchOperation.create("$dirName/$filename"),
+                BatchOperation.mkdir(dirName),
+                BatchOperation.openReadonly("$dirName/$missingFilename")
+        ])
+
+        then:
+        results*.succeeded == [true, true, false, false]
+        results[1].SDFSFileChannelData.writable
+        results[2].exception instanceof SDFSFileAlreadyExistsException
+        results[3].exception instanceof FileNotFoundException
+
+        when:
+        def closeResults = nameNode.batch([BatchOperation.closeReadwriteFile(results[1].SDFSFileChannelData.token, 0)])
+        Files.copy(Paths.get(dir1, "root.node"), Paths.get(dir2, "root.node"))
+        copyLogSegments(dir1, dir2)
+        System.setProperty("sdfs.namenode.dir", dir2)
+        def nameNode2 = new NameNode(configuration, 1000)
+
+        then:
+        closeResults[0].succeeded
+        nameNode2.openReadonly("$dirName/$filename").fileInfo.fileSize == 0
+
+        when:
+        nameNode2.mkdir(dirName)
+
+        then:
+        thrown(SDFSFileAlreadyExistsException)
+    }
+
+    def "A batch larger than the limit is refused as a whole"() {
+        System.setProperty("sdfs.namenode.dir", dir1)
+        System.setProperty("sdfs.namenode.batch.limit", "2")
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        def nameNode = new NameNode(configuration, 1000)
+        sleep(1000)
+        def dirNames = (1..3).collect { generateFilename() }
+
+        when:
+        nameNode.batch(dirNames.collect { BatchOperation.mkdir(it) })
+
+        then:
+        thrown(IllegalArgumentException)
+
+        when:
+        def results = nameNode.batch(dirNames.take(2).collect { BatchOperation.mkdir(it) })
+
+        then: "nothing of the refused batch was run"
+        results*.succeeded == [true, true]
+
+        cleanup:
+        System.clearProperty("sdfs.namenode.batch.limit")
+    }
+
+    def "Block ids given out before a restart are not given out again"() {
+        System.setProperty("sdfs.namenode.dir", dir1)
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        def nameNode = new NameNode(configuration, 1)
+        sleep(1000)
+        // blocks no file refers to any more, so the file tree does not tell their ids
+        def token = nameNode.create(generateFilename()).token
+        def imageBlocks = nameNode.addBlocks(token, 2)*.id
+        nameNode.removeLastBlocks(token, 2)
+        nameNode.closeReadwriteFile(token, 0)
+        sleep(3000)
+        Files.copy(Paths.get(dir1, "root.node"), Paths.get(dir2, "root.node"))
+        // a name node that writes no image after the first one
+        System.setProperty("sdfs.namenode.dir", dir3)
+        def nameNode3 = new NameNode(configuration, 1000)
+        sleep(1000)
+        token = nameNode3.create(generateFilename()).token
+        def logBlocks = nameNode3.addBlocks(token, 2)*.id
+        nameNode3.removeLastBlocks(token, 2)
+        nameNode3.closeReadwriteFile(token, 0)
+        Files.copy(Paths.get(dir3, "root.node"), Paths.get(dir4, "root.node"))
+        copyLogSegments(dir3, dir4)
+
+        when: "the image keeps the next block id"
+        System.setProperty("sdfs.namenode.dir", dir2)
+        def nameNode2 = new NameNode(configuration, 1000)
+        def newBlock = nameNode2.addBlocks(nameNode2.create(generateFilename()).token, 1)[0].id
+
+        then:
+        newBlock > imageBlocks.max()
+
+        when: "the log keeps the ids given out since the image"
+        System.setProperty("sdfs.namenode.dir", dir4)
+        def nameNode4 = new NameNode(configuration, 1000)
+        newBlock = nameNode4.addBlocks(nameNode4.create(generateFilename()).token, 1)[0].id
+
+        then:
+        newBlock > logBlocks.max()
+    }
+
+    def "A replica dropped from a pipeline stays dropped after a restart"() {
+        System.setProperty("sdfs.namenode.dir", dir1)
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        // a name node that writes no image after the first one
+        def nameNode = new NameNode(configuration, 1000)
+        sleep(1000)
+        def dataNodePort = generatePort()
+        nameNode.sendHeartbeat(new DataNodeInfo(InetAddress.getLocalHost(), dataNodePort, 0, 0))
+        nameNode.sendHeartbeat(new DataNodeInfo(InetAddress.getLocalHost(), dataNodePort + 1, 0, 0))
+        def filename = generateFilename()
+        def token = nameNode.create(filename, new FileAttributes(2)).token
+        def replicas = nameNode.addReplicatedBlocks(token, 1)[0].collect()
+        nameNode.dropReplica(token, replicas[1])
+        Files.copy(Paths.get(dir1, "root.node"), Paths.get(dir2, "root.node"))
+        copyLogSegments(dir1, dir2)
+
+        when:
+        System.setProperty("sdfs.namenode.dir", dir2)
+        def nameNode2 = new NameNode(configuration, 1000)
+        nameNode2.closeReadwriteFile(token, 1)
+        def ports = nameNode2.openReadonly(filename).fileInfo.getBlockInfo(0).collect { it.port }
+
+        then:
+        replicas.size() == 2
+        ports == [replicas[0].port]
+    }
+
+    def "Without the next block id of the image, block ids wait for the data nodes to report"() {
+        def dataBlockManager = new DataBlockManager(new DirNode(), -1, 1)
+        def newBlock = null
+        def allocator = Thread.start { newBlock = dataBlockManager.getNextBlockNumber() }
+
+        when:
+        sleep(500)
+
+        then:
+        allocator.alive
+
+        when: "the data node stores blocks no file refers to"
+        dataBlockManager.blockReport(0, true, [0, 1], [])
+        allocator.join()
+
+        then:
+        newBlock == 2
+    }
+
+    private static void writeImage(String dir, Closure write) {
+        new File(dir, "root.node").withOutputStream { write(new DataOutputStream(it)) }
+    }
+
+    def "An image of another format stops the name node instead of being misread"() {
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+
+        when:
+        writeImage(dir1) { DataOutputStream out ->
+            out.writeInt(DiskFlusher.IMAGE_MAGIC)
+            out.writeInt(DiskFlusher.IMAGE_VERSION + 1)
+        }
+        System.setProperty("sdfs.namenode.dir", dir1)
+        new NameNode(configuration, 1000)
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        writeImage(dir2) { DataOutputStream out -> new ObjectOutputStream(out).with { writeObject("not a file tree"); flush() } }
+        System.setProperty("sdfs.namenode.dir", dir2)
+        new NameNode(configuration, 1000)
+
+        then:
+        thrown(IllegalStateException)
+
+        when: "an image written before the header was added is still read"
+        def rootNode = new DirNode()
+        def dirName = generateFilename()
+        rootNode.createDir(dirName)
+        writeImage(dir3) { DataOutputStream out -> new ObjectOutputStream(out).with { writeObject(rootNode); writeObject(new DataNodeTable()); flush() } }
+        System.setProperty("sdfs.namenode.dir", dir3)
+        new NameNode(configuration, 1000).mkdir(dirName)
+
+        then:
+        thrown(SDFSFileAlreadyExistsException)
+    }
+
+    def "Read only opens and closes are not logged"() {
+        System.setProperty("sdfs.namenode.dir", dir1)
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        def nameNode = new NameNode(configuration, 1000)
+        sleep(1000)
+        def filename = generateFilename()
+        nameNode.closeReadwriteFile(nameNode.create(filename).token, 0)
+        def logBytes = nameNode.metrics.logBytesWritten
+
+        when:
+        for (int i = 0; i < 100; i++) {
+            nameNode.closeReadonlyFile(nameNode.openReadonly(filename).token)
+        }
+        def token = nameNode.openReadonly(filename).token
+
+        then:
+        nameNode.metrics.logBytesWritten == logBytes
+
+        when:
+        Files.copy(Paths.get(dir1, "root.node"), Paths.get(dir2, "root.node"))
+        copyLogSegments(dir1, dir2)
+        System.setProperty("sdfs.namenode.dir", dir2)
+        def nameNode2 = new NameNode(configuration, 1000)
+        nameNode2.closeReadonlyFile(token)
+
+        then: "read only tokens live in memory only"
+        thrown(IllegalAccessTokenException)
+        nameNode2.openReadonly(filename).fileInfo.fileSize == 0
+    }
+}
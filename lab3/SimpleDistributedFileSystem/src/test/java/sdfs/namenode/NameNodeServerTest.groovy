@@ -260,4 +260,74 @@ class NameNodeServerTest extends Specification {
         then:
         noExceptionThrown()
     }
+
+    def "OpenAppend"() {
+        def filename = generateFilename()
+        def accessToken = nameNode.create(filename).token
+        def blocks = nameNode.addBlocks(accessToken, 2)
+        nameNode.closeReadwriteFile(accessToken, DataNode.BLOCK_SIZE + 10)
+        def appendData = nameNode.openAppend(filename)
+        def appendToken = appendData.token
+        def dataNode = blocks[0]
+        def newBlock = nameNode.addBlocks(appendToken, 1)[0]
+        def permission = nameNode.getAccessTokenPermission(appendToken, dataNode.address, dataNode.port)
+
+        // the old blocks may only be written past the old end of the file
+        expect:
+        appendData.appending
+        permission.getWritableOffset(blocks[0].id) == DataNode.BLOCK_SIZE
+        permission.getWritableOffset(blocks[1].id) == 10
+        permission.getWritableOffset(newBlock.id) == 0
+
+        when:
+        nameNode.newCopyOnWriteBlock(appendToken, 1)
+
+        then:
+        thrown(IllegalAccessTokenException)
+
+        when:
+        nameNode.removeLastBlocks(appendToken, 2)
+
+        then:
+        thrown(IndexOutOfBoundsException)
+
+        // the new block can go, but the file can not get shorter than it was
+        when:
+        nameNode.removeLastBlocks(appendToken, 1)
+        nameNode.closeReadwriteFile(appendToken, DataNode.BLOCK_SIZE + 5)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "Readers keep the blocks of the version they opened"() {
+        def filename = generateFilename()
+        def accessToken = nameNode.create(filename).token
+        def oldBlock = nameNode.addBlocks(accessToken, 1)[0]
+        nameNode.closeReadwriteFile(accessToken, 1)
+        def readonlyData = nameNode.openReadonly(filename)
+        def refCounts = nameNode.dataBlockManager.refCounts
+
+        // the reader shares the block list with the file tree and holds no reference to each block
+        expect:
+        refCounts.getCount(oldBlock.id) == 1
+
+        // the old block stays referenced while it is read, though the file tree no longer holds it
+        when:
+        accessToken = nameNode.openReadwrite(filename).token
+        def newBlock = nameNode.newCopyOnWriteBlock(accessToken, 0)
+        nameNode.closeReadwriteFile(accessToken, 1)
+
+        then:
+        readonlyData.fileInfo.getLocatedBlock(0).id == oldBlock.id
+        refCounts.getCount(oldBlock.id) == 1
+        refCounts.getCount(newBlock.id) == 1
+
+        when:
+        nameNode.closeReadonlyFile(readonlyData.token)
+
+        then:
+        !refCounts.contains(oldBlock.id)
+        refCounts.getCount(newBlock.id) == 1
+    }
 }
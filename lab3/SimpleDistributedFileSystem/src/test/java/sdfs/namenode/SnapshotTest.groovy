@@ -0,0 +1,167 @@
+package sdfs.namenode
+
+import sdfs.protocol.SDFSConfiguration
+import spock.lang.Specification
+
+import static sdfs.Util.generateFilename
+import static sdfs.Util.generatePort
+
+class SnapshotTest extends Specification {
+    def dir = File.createTempDir().absolutePath
+
+    def setup() {
+        System.setProperty("sdfs.namenode.dir", dir)
+    }
+
+    private static NameNode startNameNode() {
+        SDFSConfiguration configuration = new SDFSConfiguration(InetAddress.getLocalHost(), generatePort(), InetAddress.getLocalHost(), generatePort())
+        new NameNode(configuration, 10)
+    }
+
+    def "Snapshots share blocks until the file changes, also after a restart"() {
+        NameNode nameNode = startNameNode()
+        def dirname = generateFilename()
+        def filename = dirname + "/" + generateFilename()
+        def snapshotFilename = dirname + "/.snapshot/backup/" + filename.substring(dirname.length() + 1)
+        nameNode.mkdir(dirname)
+        def token = nameNode.create(filename).token
+        def oldBlocks = nameNode.addBlocks(token, 2)*.id
+        def blockSize = nameNode.openReadonly(filename).with { nameNode.closeReadonlyFile(it.token); it.fileInfo.blockSize }
+        nameNode.closeReadwriteFile(token, blockSize + 1)
+        def refCounts = { nameNode.dataBlockManager.refCounts }
+
+        // taking the snapshot references no block
+        when:
+        nameNode.createSnapshot(dirname, "backup")
+
+        then:
+        oldBlocks.every { refCounts().getCount(it) == 1 }
+        nameNode.openReadonly(snapshotFilename).with { nameNode.closeReadonlyFile(it.token); it.fileInfo.blockAmount } == 2
+
+        // changing the file copies only the changed block, the snapshot keeps the old one
+        when:
+        token = nameNode.openReadwrite(filename).token
+        def newBlock = nameNode.newCopyOnWriteBlock(token, 0).id
+        nameNode.closeReadwriteFile(token, blockSize + 1)
+        token = nameNode.openReadwrite(filename).token
+        nameNode.removeLastBlocks(token, 1)
+        nameNode.closeReadwriteFile(token, 1)
+
+        then:
+        refCounts().getCount(oldBlocks[0]) == 1
+        refCounts().getCount(oldBlocks[1]) == 1
+        refCounts().getCount(newBlock) == 1
+
+        // the snapshot and the references it keeps survive a restart
+        when:
+        nameNode = startNameNode()
+        def snapshotData = nameNode.openReadonly(snapshotFilename)
+
+        then:
+        snapshotData.fileInfo.blockAmount == 2
+        snapshotData.fileInfo.getLocatedBlock(0).id == oldBlocks[0]
+        nameNode.openReadonly(filename).with { nameNode.closeReadonlyFile(it.token); it.fileInfo.getLocatedBlock(0).id } == newBlock
+        oldBlocks.every { refCounts().getCount(it) == 1 }
+
+        // the blocks only the snapshot kept become garbage with it, once it is not read any more
+        when:
+        nameNode.deleteSnapshot(dirname, "backup")
+
+        then:
+        oldBlocks.every { refCounts().getCount(it) == 1 }
+
+        when:
+        nameNode.closeReadonlyFile(snapshotData.token)
+
+        then:
+        oldBlocks.every { !refCounts().contains(it) }
+        refCounts().getCount(newBlock) == 1
+
+        when:
+        nameNode.openReadonly(snapshotFilename)
+
+        then:
+        thrown(FileNotFoundException)
+
+        // the deletion is logged too
+        when:
+        nameNode = startNameNode()
+        nameNode.openReadonly(snapshotFilename)
+
+        then:
+        thrown(FileNotFoundException)
+        oldBlocks.every { !refCounts().contains(it) }
+    }
+
+    def "A snapshot deleted while it is opened gives its block list back only once"() {
+        NameNode nameNode = startNameNode()
+        def dirname = generateFilename()
+        def filename = dirname + "/" + generateFilename()
+        nameNode.mkdir(dirname)
+        def token = nameNode.create(filename).token
+        def oldBlock = nameNode.addBlocks(token, 1)[0].id
+        nameNode.closeReadwriteFile(token, 1)
+        def refCounts = { nameNode.dataBlockManager.refCounts }
+
+        // readers race the deletion, each open either fails or is counted as a reader of the snapshot
+        when:
+        for (int i = 0; i < 200; i++) {
+            def snapshotFilename = dirname + "/.snapshot/s$i/" + filename.substring(dirname.length() + 1)
+            nameNode.createSnapshot(dirname, "s$i")
+            def reader = Thread.start {
+                while (true) {
+                    try {
+                        nameNode.closeReadonlyFile(nameNode.openReadonly(snapshotFilename).token)
+                    } catch (FileNotFoundException ignored) {
+                        break
+                    }
+                }
+            }
+            nameNode.deleteSnapshot(dirname, "s$i")
+            reader.join()
+        }
+        // a reader of the file keeps the block list it reads when the file changes
+        def readToken = nameNode.openReadonly(filename).token
+        token = nameNode.openReadwrite(filename).token
+        def newBlock = nameNode.newCopyOnWriteBlock(token, 0).id
+        nameNode.closeReadwriteFile(token, 1)
+
+        then:
+        refCounts().getCount(oldBlock) == 1
+        refCounts().getCount(newBlock) == 1
+
+        when:
+        nameNode.closeReadonlyFile(readToken)
+
+        then:
+        !refCounts().contains(oldBlock)
+    }
+
+    def "A snapshot of more entries than the limit is refused"() {
+        System.setProperty("sdfs.namenode.snapshot.limit", "3")
+        NameNode nameNode = startNameNode()
+        def dirname = generateFilename()
+        def subDirname = dirname + "/" + generateFilename()
+        nameNode.mkdir(dirname)
+        nameNode.mkdir(subDirname)
+        nameNode.closeReadwriteFile(nameNode.create(subDirname + "/" + generateFilename()).token, 0)
+        nameNode.closeReadwriteFile(nameNode.create(subDirname + "/" + generateFilename()).token, 0)
+
+        when:
+        nameNode.createSnapshot(dirname, "full")
+
+        then:
+        notThrown(IllegalArgumentException)
+
+        when:
+        nameNode.closeReadwriteFile(nameNode.create(subDirname + "/" + generateFilename()).token, 0)
+        nameNode.createSnapshot(dirname, "over")
+
+        then:
+        thrown(IllegalArgumentException)
+        nameNode.list(dirname + "/.snapshot", null, 10).fileStatusList*.name == ["full"]
+
+        cleanup:
+        System.clearProperty("sdfs.namenode.snapshot.limit")
+    }
+}